@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.packet;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.jivesoftware.smack.util.MultiMap;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.xml.XmlPullParser;
+
+import org.jxmpp.JxmppContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare the cost of the extension element storage of stanzas. Run with the gc profiler, which is enabled by the jmh
+ * conventions, to see the allocation per operation ("gc.alloc.rate.norm"). The previous storage, a cloned
+ * {@link MultiMap}, is measured by {@link #cloneMultiMap(Blackhole)}, the current one by
+ * {@link #buildExtensionElements(Blackhole)}. {@link #parseMessage(Blackhole)} shows the allocation of parsing a batch
+ * of stanzas.
+ */
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class StanzaExtensionsJmh {
+
+    private static final int PARSERS_PER_ITERATION = 1000;
+
+    @Param({"0", "1", "3", "12"})
+    private int extensionCount;
+
+    private String message;
+
+    private MultiMap<QName, XmlElement> extensionElementsMap;
+
+    /**
+     * The parsers consumed by one iteration of {@link #parseMessage(Blackhole)}, which are created beforehand, so that
+     * neither their creation nor a per-invocation setup is measured.
+     */
+    private XmlPullParser[] parsers;
+
+    private int parserIndex;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<message xmlns='jabber:client' from='juliet@example.org/balcony' to='romeo@example.net'")
+          .append(" id='ktx72v49'><body>Art thou not Romeo, and a Montague?</body>");
+        extensionElementsMap = new MultiMap<>();
+        for (int i = 0; i < extensionCount; i++) {
+            String namespace = "urn:example:extension:" + i;
+            sb.append("<ext xmlns='").append(namespace).append("'/>");
+            StandardExtensionElement extensionElement = StandardExtensionElement.builder("ext", namespace).build();
+            extensionElementsMap.put(extensionElement.getQName(), extensionElement);
+        }
+        sb.append("</message>");
+        message = sb.toString();
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws Exception {
+        parsers = new XmlPullParser[PARSERS_PER_ITERATION];
+        for (int i = 0; i < PARSERS_PER_ITERATION; i++) {
+            parsers[i] = PacketParserUtils.getParserFor(message);
+        }
+        parserIndex = 0;
+    }
+
+    @Benchmark
+    public void cloneMultiMap(Blackhole blackhole) {
+        blackhole.consume(extensionElementsMap.clone());
+    }
+
+    @Benchmark
+    public void buildExtensionElements(Blackhole blackhole) {
+        blackhole.consume(ExtensionElements.from(extensionElementsMap));
+    }
+
+    /**
+     * Parse a message with one of the parsers prepared for the current iteration. Every iteration is a batch of exactly
+     * {@value #PARSERS_PER_ITERATION} invocations, hence the reported time and allocation are those of the whole batch.
+     *
+     * @param blackhole the blackhole.
+     * @throws Exception if parsing failed.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10, batchSize = PARSERS_PER_ITERATION)
+    @Measurement(iterations = 10, batchSize = PARSERS_PER_ITERATION)
+    public void parseMessage(Blackhole blackhole) throws Exception {
+        XmlPullParser parser = parsers[parserIndex++];
+        Message parsedMessage = PacketParserUtils.parseMessage(parser, XmlEnvironment.EMPTY,
+                        JxmppContext.getDefaultContext());
+        blackhole.consume(parsedMessage);
+    }
+}
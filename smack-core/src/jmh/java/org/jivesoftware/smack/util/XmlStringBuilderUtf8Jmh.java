@@ -0,0 +1,162 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.StandardExtensionElement;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the UTF-8 serialization of {@link XmlStringBuilder} straight into byte buffers, which escapes while encoding,
+ * with the toString() followed by encode() path.
+ */
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class XmlStringBuilderUtf8Jmh {
+
+    public enum Payload {
+        message,
+        presence,
+        pubsub,
+    }
+
+    @Param
+    private Payload payload;
+
+    private Stanza stanza;
+
+    private final DirectByteBufferPool bufferPool = new DirectByteBufferPool(4 * 1024 * 1024);
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(16 * 1024);
+
+    @Setup(Level.Trial)
+    public void setup() throws XmppStringprepException {
+        switch (payload) {
+        case message:
+            stanza = StanzaBuilder.buildMessage("message-id-1")
+                .to(JidCreate.from("juliet@capulet.lit/balcony"))
+                .from(JidCreate.from("romeo@montague.lit/orchard"))
+                .setBody("Art thou not Romeo, and a Montague? <Neither, fair saint, if either thee dislike> & ‘ünïcödé’")
+                .addExtension(StandardExtensionElement.builder("active", "http://jabber.org/protocol/chatstates").build())
+                .addExtension(StandardExtensionElement.builder("request", "urn:xmpp:receipts").build())
+                .build();
+            break;
+        case presence:
+            stanza = StanzaBuilder.buildPresence("presence-id-1")
+                .ofType(Presence.Type.available)
+                .setMode(Presence.Mode.away)
+                .setStatus("Wherefore art thou? I'm out & about")
+                .setPriority(5)
+                .addExtension(StandardExtensionElement.builder("c", "http://jabber.org/protocol/caps")
+                        .addAttribute("hash", "sha-1")
+                        .addAttribute("node", "https://igniterealtime.org/projects/smack")
+                        .addAttribute("ver", "QgayPKawpkPSDYmwT/WM94uAlu0=")
+                        .build())
+                .build();
+            break;
+        case pubsub:
+            StandardExtensionElement.Builder entry = StandardExtensionElement.builder("entry", "http://www.w3.org/2005/Atom")
+                .addElement("title", "Soliloquy")
+                .addElement("summary", "To be, or not to be: that is the question: Whether 'tis nobler in the mind to "
+                        + "suffer the slings & arrows of outrageous fortune, or to take arms against a sea of troubles, "
+                        + "and by opposing end them?")
+                .addElement("published", "2003-12-13T18:30:02Z")
+                .addElement("updated", "2003-12-13T18:30:02Z");
+            StandardExtensionElement pubsub = StandardExtensionElement.builder("pubsub", "http://jabber.org/protocol/pubsub")
+                .addElement(StandardExtensionElement.builder("publish", "http://jabber.org/protocol/pubsub")
+                        .addAttribute("node", "princely_musings")
+                        .addElement(StandardExtensionElement.builder("item", "http://jabber.org/protocol/pubsub")
+                                .addAttribute("id", "ae890ac52d0df67ed7cfdf51b644e901")
+                                .addElement(entry.build())
+                                .build())
+                        .build())
+                .build();
+            stanza = StanzaBuilder.buildMessage("pubsub-id-1")
+                .to(JidCreate.from("pubsub.shakespeare.lit"))
+                .addExtension(pubsub)
+                .build();
+            break;
+        }
+    }
+
+    private XmlStringBuilder toXml() {
+        return (XmlStringBuilder) stanza.toXML(XmlEnvironment.EMPTY);
+    }
+
+    @Benchmark
+    public ByteBuffer toStringAndEncode() {
+        return UTF8.encode(toXml().toString());
+    }
+
+    @Benchmark
+    public ByteBuffer toUtf8HeapByteBuffer() {
+        return toXml().toUtf8ByteBuffer(XmlEnvironment.EMPTY, ByteBuffer::allocate);
+    }
+
+    @Benchmark
+    public int toUtf8PooledDirectByteBuffer() {
+        ByteBuffer byteBuffer = toXml().toUtf8ByteBuffer(XmlEnvironment.EMPTY, bufferPool::acquire);
+        int remaining = byteBuffer.remaining();
+        bufferPool.release(byteBuffer);
+        return remaining;
+    }
+
+    @Benchmark
+    public int writeToOutputStreamWriter() throws IOException {
+        outputStream.reset();
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        toXml().write(writer, XmlEnvironment.EMPTY);
+        writer.flush();
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public int writeToOutputStream() throws IOException {
+        outputStream.reset();
+        toXml().write(outputStream, XmlEnvironment.EMPTY);
+        return outputStream.size();
+    }
+}
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2009 Jive Software, 2018-2025 Florian Schmaus.
+ * Copyright 2009 Jive Software, 2018-2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,19 +24,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -73,10 +69,12 @@ import org.jivesoftware.smack.datatypes.UInt16;
 import org.jivesoftware.smack.debugger.SmackDebugger;
 import org.jivesoftware.smack.debugger.SmackDebuggerFactory;
 import org.jivesoftware.smack.filter.IQReplyFilter;
+import org.jivesoftware.smack.filter.StanzaDispatchKey;
 import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.filter.StanzaIdFilter;
 import org.jivesoftware.smack.internal.SmackTlsContext;
 import org.jivesoftware.smack.iqrequest.IQRequestHandler;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.AbstractStreamOpen;
 import org.jivesoftware.smack.packet.Bind;
 import org.jivesoftware.smack.packet.ErrorIQ;
@@ -167,6 +165,12 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         SMACK_REACTOR = SmackReactor.getInstance();
     }
 
+    /**
+     * The timer wheel shared by all connections, used for timeouts which are usually cancelled before they expire, like
+     * the timeouts of pending IQ requests.
+     */
+    protected static final TimerWheel TIMER_WHEEL = new TimerWheel(SMACK_REACTOR, 100, TimeUnit.MILLISECONDS, 512);
+
     /**
      * Counter to uniquely identify connections that are created.
      */
@@ -193,26 +197,29 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
      * A collection of StanzaCollectors which collects packets for a specified filter
      * and perform blocking and polling operations on the result queue.
      * <p>
-     * We use a ConcurrentLinkedQueue here, because its Iterator is weakly
-     * consistent and we want {@link #invokeStanzaCollectorsAndNotifyRecvListeners(Stanza)} for-each
-     * loop to be lock free. As drawback, removing a StanzaCollector is O(n).
-     * The alternative would be a synchronized HashSet, but this would mean a
-     * synchronized block around every usage of <code>collectors</code>.
+     * The collectors are indexed by the dispatch key of their filters, which allows
+     * {@link #invokeStanzaCollectorsAndNotifyRecvListeners(Stanza)} to find the matching collectors, lock free, without
+     * testing every collector's filter.
      * </p>
      */
-    private final Collection<StanzaCollector> collectors = new ConcurrentLinkedQueue<>();
+    private final StanzaDispatchIndex<StanzaCollector> collectors = new StanzaDispatchIndex<>();
 
-    private final Map<StanzaListener, ListenerWrapper> recvListeners = new LinkedHashMap<>();
+    private final StanzaDispatchIndex<StanzaListener> recvListeners = new StanzaDispatchIndex<>();
+
+    /**
+     * The IQ requests send via {@link #sendIqRequestAsync(IQ, long)} which are awaiting their response, by stanza ID.
+     */
+    private final Map<String, PendingIqRequest> pendingIqRequests = new ConcurrentHashMap<>();
 
     /**
      * List of PacketListeners that will be notified synchronously when a new stanza was received.
      */
-    private final Map<StanzaListener, ListenerWrapper> syncRecvListeners = new LinkedHashMap<>();
+    private final StanzaDispatchIndex<StanzaListener> syncRecvListeners = new StanzaDispatchIndex<>();
 
     /**
      * List of PacketListeners that will be notified asynchronously when a new stanza was received.
      */
-    private final Map<StanzaListener, ListenerWrapper> asyncRecvListeners = new LinkedHashMap<>();
+    private final StanzaDispatchIndex<StanzaListener> asyncRecvListeners = new StanzaDispatchIndex<>();
 
     /**
      * List of PacketListeners that will be notified when a new stanza was sent.
@@ -329,26 +336,6 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
 
     private ParsingExceptionCallback parsingExceptionCallback = SmackConfiguration.getDefaultParsingExceptionCallback();
 
-    /**
-     * A cached thread pool executor service with custom thread factory to set meaningful names on the threads and set
-     * them 'daemon'.
-     */
-    private static final ExecutorService CACHED_EXECUTOR_SERVICE = Executors.newCachedThreadPool(new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable runnable) {
-            Thread thread = new Thread(runnable);
-            thread.setName("Smack Cached Executor");
-            thread.setDaemon(true);
-            thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
-                @Override
-                public void uncaughtException(Thread t, Throwable e) {
-                    LOGGER.log(Level.WARNING, t + " encountered uncaught exception", e);
-                }
-            });
-            return thread;
-        }
-    });
-
     protected static final AsyncButOrdered<AbstractXMPPConnection> ASYNC_BUT_ORDERED = new AsyncButOrdered<>();
 
     /**
@@ -1010,7 +997,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             // case the Exception is a StreamErrorException.
             instantShutdown();
 
-            for (StanzaCollector collector : collectors) {
+            for (StanzaCollector collector : collectors.values()) {
                 collector.notifyConnectionError(exception);
             }
 
@@ -1058,8 +1045,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     @SuppressWarnings("TypeParameterUnusedInFormals")
     public <I extends IQ> I sendIqRequestAndWaitForResponse(IQ request)
             throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
+        final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+        final long sentNanos = metrics != null ? System.nanoTime() : 0;
         StanzaCollector collector = createStanzaCollectorAndSend(request);
         IQ resultResponse = collector.nextResultOrThrow();
+        if (metrics != null) {
+            metrics.iqRoundTripTime.recordSince(sentNanos);
+        }
         @SuppressWarnings("unchecked")
         I concreteResultResponse = (I) resultResponse;
         return concreteResultResponse;
@@ -1102,7 +1094,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     public StanzaCollector createStanzaCollector(StanzaCollector.Configuration configuration) {
         StanzaCollector collector = new StanzaCollector(this, configuration);
         // Add the collector to the list of active collectors.
-        collectors.add(collector);
+        collectors.put(collector, collector.getStanzaFilter());
         return collector;
     }
 
@@ -1116,18 +1108,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         if (stanzaListener == null) {
             throw new NullPointerException("Given stanza listener must not be null");
         }
-        ListenerWrapper wrapper = new ListenerWrapper(stanzaListener, stanzaFilter);
-        synchronized (recvListeners) {
-            recvListeners.put(stanzaListener, wrapper);
-        }
+        recvListeners.put(stanzaListener, stanzaFilter);
         return new ListenerHandle.StanzaListenerHandle(this, stanzaListener);
     }
 
     @Override
     public final boolean removeStanzaListener(StanzaListener stanzaListener) {
-        synchronized (recvListeners) {
-            return recvListeners.remove(stanzaListener) != null;
-        }
+        return recvListeners.remove(stanzaListener);
     }
 
     @Override
@@ -1135,18 +1122,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         if (packetListener == null) {
             throw new NullPointerException("Packet listener is null.");
         }
-        ListenerWrapper wrapper = new ListenerWrapper(packetListener, packetFilter);
-        synchronized (syncRecvListeners) {
-            syncRecvListeners.put(packetListener, wrapper);
-        }
+        syncRecvListeners.put(packetListener, packetFilter);
         return new ListenerHandle.SyncStanzaListenerHandle(this, packetListener);
     }
 
     @Override
     public boolean removeSyncStanzaListener(StanzaListener packetListener) {
-        synchronized (syncRecvListeners) {
-            return syncRecvListeners.remove(packetListener) != null;
-        }
+        return syncRecvListeners.remove(packetListener);
     }
 
     @Override
@@ -1154,18 +1136,13 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         if (packetListener == null) {
             throw new NullPointerException("Packet listener is null.");
         }
-        ListenerWrapper wrapper = new ListenerWrapper(packetListener, packetFilter);
-        synchronized (asyncRecvListeners) {
-            asyncRecvListeners.put(packetListener, wrapper);
-        }
+        asyncRecvListeners.put(packetListener, packetFilter);
         return new ListenerHandle.AsyncStanzaListenerHandle(this, packetListener);
     }
 
     @Override
     public boolean removeAsyncStanzaListener(StanzaListener packetListener) {
-        synchronized (asyncRecvListeners) {
-            return asyncRecvListeners.remove(packetListener) != null;
-        }
+        return asyncRecvListeners.remove(packetListener);
     }
 
     @Override
@@ -1206,6 +1183,11 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         }
         Stanza packet = (Stanza) sendTopLevelStreamElement;
 
+        final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+        if (metrics != null) {
+            metrics.stanzaSent(packet);
+        }
+
         final List<StanzaListener> listenersToNotify = new ArrayList<>();
         synchronized (sendListeners) {
             for (ListenerWrapper listenerWrapper : sendListeners.values()) {
@@ -1506,8 +1488,18 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         maybeNotifyDebuggerAboutIncoming(stanza);
 
         lastStanzaReceived = System.currentTimeMillis();
-        // Deliver the incoming packet to listeners.
+
+        final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+        if (metrics == null) {
+            // Deliver the incoming packet to listeners.
+            invokeStanzaCollectorsAndNotifyRecvListeners(stanza);
+            return;
+        }
+
+        metrics.stanzaReceived(stanza);
+        final long dispatchStartNanos = System.nanoTime();
         invokeStanzaCollectorsAndNotifyRecvListeners(stanza);
+        metrics.stanzaDispatchTime.recordSince(dispatchStartNanos);
     }
 
     /**
@@ -1619,11 +1611,19 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
             }
         }
 
+        if (packet instanceof IQ && !pendingIqRequests.isEmpty()) {
+            completePendingIqRequest((IQ) packet);
+        }
+
+        // Determine the dispatch keys of the stanza once, they are used to look up the matching listeners and collectors.
+        final List<StanzaDispatchKey> stanzaDispatchKeys = new ArrayList<>(8);
+        StanzaDispatchKey.addKeysOf(packet, stanzaDispatchKeys);
+
         // First handle the async recv listeners. Note that this code is very similar to what follows a few lines below,
         // the only difference is that asyncRecvListeners is used here and that the packet listeners are started in
         // their own thread.
         final Collection<StanzaListener> listenersToNotify = new ArrayList<>();
-        extractMatchingListeners(packet, asyncRecvListeners, listenersToNotify);
+        asyncRecvListeners.extractMatching(packet, stanzaDispatchKeys, listenersToNotify);
         for (final StanzaListener listener : listenersToNotify) {
             asyncGoLimited(new Runnable() {
                 @Override
@@ -1638,7 +1638,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         }
 
         listenersToNotify.clear();
-        extractMatchingListeners(packet, recvListeners, listenersToNotify);
+        recvListeners.extractMatching(packet, stanzaDispatchKeys, listenersToNotify);
         final Semaphore listenerSemaphore = new Semaphore(1 - listenersToNotify.size());
         for (StanzaListener stanzaListener : listenersToNotify) {
             asyncGoLimited(() -> {
@@ -1659,14 +1659,17 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
 
         // Notify collectors after we invoked the listeners. This allows the listeners to adjust their behavior on state
         // changing operations, e.g., leaving a MUC, which are often based on collectors.
-        // Loop through all collectors and notify the appropriate ones.
-        for (StanzaCollector collector : collectors) {
-            collector.processStanza(packet);
+        // Look up the matching collectors and notify them. The index already evaluated the filters of the collectors, hence
+        // the stanza is handed to them without evaluating the filter a second time.
+        final List<StanzaCollector> collectorsToNotify = new ArrayList<>();
+        collectors.extractMatching(packet, stanzaDispatchKeys, collectorsToNotify);
+        for (StanzaCollector collector : collectorsToNotify) {
+            collector.processAcceptedStanza(packet);
         }
 
         // Notify the receive listeners interested in the packet
         listenersToNotify.clear();
-        extractMatchingListeners(packet, syncRecvListeners, listenersToNotify);
+        syncRecvListeners.extractMatching(packet, stanzaDispatchKeys, listenersToNotify);
         // Decouple incoming stanza processing from listener invocation. Unlike async listeners, this uses a single
         // threaded executor service and therefore keeps the order.
         ASYNC_BUT_ORDERED.performAsyncButOrdered(this, new Runnable() {
@@ -1676,13 +1679,11 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
                 // listener is a different timepoint where the listener is actually invoked (here), we have to check
                 // again if the listener is still active.
                 Iterator<StanzaListener> it = listenersToNotify.iterator();
-                synchronized (syncRecvListeners) {
-                    while (it.hasNext()) {
-                        StanzaListener stanzaListener = it.next();
-                        if (!syncRecvListeners.containsKey(stanzaListener)) {
-                            // The listener was removed from syncRecvListener, also remove him from listenersToNotify.
-                            it.remove();
-                        }
+                while (it.hasNext()) {
+                    StanzaListener stanzaListener = it.next();
+                    if (!syncRecvListeners.contains(stanzaListener)) {
+                        // The listener was removed from syncRecvListener, also remove him from listenersToNotify.
+                        it.remove();
                     }
                 }
                 for (StanzaListener listener : listenersToNotify) {
@@ -1699,17 +1700,6 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         });
     }
 
-    private static void extractMatchingListeners(Stanza stanza, Map<StanzaListener, ListenerWrapper> listeners,
-                    Collection<StanzaListener> listenersToNotify) {
-        synchronized (listeners) {
-            for (ListenerWrapper listenerWrapper : listeners.values()) {
-                if (listenerWrapper.filterMatches(stanza)) {
-                    listenersToNotify.add(listenerWrapper.getListener());
-                }
-            }
-        }
-    }
-
     /**
      * Sets whether the connection has already logged in the server. This method assures that the
      * {@link #wasAuthenticated} flag is never reset once it has ever been set.
@@ -1971,10 +1961,109 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         return sendIqRequestAsync(request, getReplyTimeout());
     }
 
+    private static final class PendingIqRequest {
+        private final IQReplyFilter replyFilter;
+        private final InternalSmackFuture<IQ, Exception> future = new InternalSmackFuture<>();
+        private TimerWheel.Timeout timeout;
+
+        /**
+         * The time the request was sent, only set if metrics are enabled.
+         */
+        private final long sentNanos;
+
+        private PendingIqRequest(IQReplyFilter replyFilter, SmackMetrics metrics) {
+            this.replyFilter = replyFilter;
+            this.sentNanos = metrics != null ? System.nanoTime() : 0;
+        }
+
+        private synchronized void setTimeout(TimerWheel.Timeout timeout) {
+            this.timeout = timeout;
+        }
+
+        private synchronized void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
     @Override
     public SmackFuture<IQ, Exception> sendIqRequestAsync(IQ request, long timeout) {
-        StanzaFilter replyFilter = new IQReplyFilter(request, this);
-        return sendAsync(request, replyFilter, timeout);
+        IQReplyFilter replyFilter = new IQReplyFilter(request, this);
+
+        final String stanzaId = request.getStanzaId();
+        final PendingIqRequest pendingIqRequest = new PendingIqRequest(replyFilter, SmackMetrics.getIfEnabled());
+        if (stanzaId == null || pendingIqRequests.putIfAbsent(stanzaId, pendingIqRequest) != null) {
+            // There is already a pending request with the same stanza ID. Fall back to the filter based matching, which
+            // is able to handle this.
+            return sendAsync(request, replyFilter, timeout);
+        }
+
+        pendingIqRequest.setTimeout(TIMER_WHEEL.newTimeout(() -> {
+            if (!pendingIqRequests.remove(stanzaId, pendingIqRequest)) {
+                // We lost a race against the response, there is nothing more to do here.
+                return;
+            }
+
+            Exception exception;
+            if (!isConnected()) {
+                exception = new NotConnectedException(AbstractXMPPConnection.this, replyFilter);
+            } else {
+                exception = NoResponseException.newWith(AbstractXMPPConnection.this, replyFilter);
+            }
+            pendingIqRequest.future.setException(exception);
+        }, timeout, TimeUnit.MILLISECONDS));
+
+        try {
+            sendStanzaNonBlocking(request);
+        }
+        catch (NotConnectedException | OutgoingQueueFullException exception) {
+            if (pendingIqRequests.remove(stanzaId, pendingIqRequest)) {
+                pendingIqRequest.cancelTimeout();
+                pendingIqRequest.future.setException(exception);
+            }
+        }
+
+        return pendingIqRequest.future;
+    }
+
+    private void completePendingIqRequest(final IQ iq) {
+        final String stanzaId = iq.getStanzaId();
+        if (stanzaId == null) {
+            return;
+        }
+
+        final PendingIqRequest pendingIqRequest = pendingIqRequests.get(stanzaId);
+        if (pendingIqRequest == null) {
+            return;
+        }
+
+        // Verify that the response is not spoofed, i.e., that it is from the entity the request was sent to.
+        if (!pendingIqRequest.replyFilter.accept(iq)) {
+            return;
+        }
+
+        if (!pendingIqRequests.remove(stanzaId, pendingIqRequest)) {
+            // We lost a race against the timeout.
+            return;
+        }
+        pendingIqRequest.cancelTimeout();
+
+        final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+        if (metrics != null && pendingIqRequest.sentNanos != 0) {
+            metrics.iqRoundTripTime.recordSince(pendingIqRequest.sentNanos);
+        }
+
+        // Complete the future asynchronously, as this could invoke user code in form of the future's callbacks.
+        asyncGoLimited(() -> {
+            try {
+                XMPPErrorException.ifHasErrorThenThrow(iq);
+                pendingIqRequest.future.setResult(iq);
+            }
+            catch (XMPPErrorException exception) {
+                pendingIqRequest.future.setException(exception);
+            }
+        });
     }
 
     @Override
@@ -2158,6 +2247,17 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
         lastDataReceived = System.currentTimeMillis();
     }
 
+    /**
+     * Request an acknowledgement from the server if Stream Management (XEP-0198) is enabled. This does not block and
+     * is cheaper than an XMPP ping. The server's answer is reflected by {@link #getLastDataReceived()}.
+     *
+     * @return <code>true</code> if an acknowledgement was requested, <code>false</code> if Stream Management is not
+     *         enabled or the request could not be queued.
+     */
+    public boolean requestSmAcknowledgementIfEnabled() {
+        return false;
+    }
+
     @Override
     public long getLastDataReceived() {
         if (lastDataReceived == 0) {
@@ -2280,7 +2380,7 @@ public abstract class AbstractXMPPConnection implements XMPPConnection {
     }
 
     protected static void asyncGo(Runnable runnable) {
-        CACHED_EXECUTOR_SERVICE.execute(runnable);
+        SmackExecutors.getAsyncExecutor().execute(runnable);
     }
 
     @SuppressWarnings("static-method")
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.jivesoftware.smack.SmackFuture.InternalSmackFuture;
+import org.jivesoftware.smack.packet.IQ;
+
+/**
+ * A batch of independent IQ requests which are pipelined, i.e., sent without waiting for the response of the previous
+ * request. At most {@code maxInFlight} requests of the batch await their response at the same time. The initial window
+ * of requests is queued back-to-back, so that the connection's writer is able to send them with a single flush. Every
+ * time a request is completed, the next one is sent.
+ */
+final class IqRequestBatch {
+
+    private final XMPPConnection connection;
+
+    private final List<IQ> requests;
+
+    private final List<InternalSmackFuture<IQ, Exception>> futures;
+
+    /**
+     * The number of further requests which may be sent. Guarded by this.
+     */
+    private int permits;
+
+    /**
+     * The index of the next request to send. Guarded by this.
+     */
+    private int nextRequest;
+
+    /**
+     * True while a thread is sending requests of this batch. Guarded by this.
+     */
+    private boolean sending;
+
+    private IqRequestBatch(XMPPConnection connection, Collection<? extends IQ> requests, int maxInFlight) {
+        this.connection = connection;
+        this.requests = new ArrayList<>(requests);
+        this.permits = maxInFlight;
+
+        List<InternalSmackFuture<IQ, Exception>> futures = new ArrayList<>(this.requests.size());
+        for (int i = 0; i < this.requests.size(); i++) {
+            futures.add(new InternalSmackFuture<>());
+        }
+        this.futures = futures;
+    }
+
+    static List<SmackFuture<IQ, Exception>> send(XMPPConnection connection, Collection<? extends IQ> requests,
+                    int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of in-flight IQ requests must be at least one");
+        }
+
+        IqRequestBatch batch = new IqRequestBatch(connection, requests, maxInFlight);
+        batch.sending = true;
+        batch.sendRequests();
+
+        return Collections.unmodifiableList(batch.futures);
+    }
+
+    private void requestCompleted() {
+        synchronized (this) {
+            permits++;
+            if (sending) {
+                // Another thread is already sending requests, it will pick up the new permit.
+                return;
+            }
+            sending = true;
+        }
+        sendRequests();
+    }
+
+    /**
+     * Send requests as long as there are permits. This is a loop, instead of a recursion via the completion callback,
+     * as a request may complete immediately, for example if the connection is not connected.
+     */
+    private void sendRequests() {
+        while (true) {
+            final int index;
+            synchronized (this) {
+                if (permits == 0 || nextRequest == requests.size()) {
+                    sending = false;
+                    return;
+                }
+                index = nextRequest++;
+                if (futures.get(index).isCancelled()) {
+                    // There is no need to send requests whose future was already cancelled.
+                    continue;
+                }
+                permits--;
+            }
+
+            final InternalSmackFuture<IQ, Exception> future = futures.get(index);
+            SmackFuture<IQ, Exception> responseFuture = connection.sendIqRequestAsync(requests.get(index));
+            responseFuture.onCompletion(f -> {
+                // Send the next request first, so that it is not delayed by the callbacks of the completed future.
+                requestCompleted();
+
+                IQ response = f.getIfAvailable();
+                if (response != null) {
+                    future.setResult(response);
+                } else {
+                    future.setException(f.getExceptionIfAvailable());
+                }
+            });
+        }
+    }
+}
@@ -58,6 +58,26 @@ public abstract class Manager {
         return connection;
     }
 
+    /**
+     * A timer wheel with a granularity of one second, for periodic tasks of many connections, like automatic pings.
+     */
+    private static final TimerWheel COARSE_TIMER_WHEEL = new TimerWheel(AbstractXMPPConnection.SMACK_REACTOR, 1,
+                    TimeUnit.SECONDS, 1024);
+
+    /**
+     * Schedule a non-blocking task on a timer wheel with a granularity of one second. Unlike {@link #schedule(Runnable,
+     * long, TimeUnit)}, the reactor wakes up at most once per second to run all tasks due, regardless of how many
+     * tasks are scheduled.
+     *
+     * @param runnable the task, which must not block.
+     * @param delay the delay.
+     * @param unit the time unit of the delay.
+     * @return the timeout, which can be used to cancel the task.
+     */
+    protected static final TimerWheel.Timeout scheduleCoarse(Runnable runnable, long delay, TimeUnit unit) {
+        return COARSE_TIMER_WHEEL.newTimeout(runnable, delay, unit);
+    }
+
     protected static final ScheduledAction schedule(Runnable runnable, long delay, TimeUnit unit) {
         return schedule(runnable, delay, unit, ScheduledAction.Kind.NonBlocking);
     }
@@ -26,7 +26,8 @@ package org.jivesoftware.smack;
 public interface ReconnectionListener {
 
     /**
-     * The connection will retry to reconnect in the specified number of seconds.
+     * The connection will retry to reconnect in the specified number of seconds. This method is invoked once the next
+     * reconnection attempt got scheduled, and with zero seconds right before the attempt is made.
      * <p>
      * Note: This method is only called if {@link ReconnectionManager#isAutomaticReconnectEnabled()} returns true, i.e.
      * only when the reconnection manager is enabled for the connection.
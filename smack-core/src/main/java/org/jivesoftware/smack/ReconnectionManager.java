@@ -23,12 +23,16 @@ import java.util.Random;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jivesoftware.smack.XMPPException.StreamErrorException;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.StreamError;
-import org.jivesoftware.smack.util.Async;
+import org.jivesoftware.smack.util.TokenBucket;
 
 /**
  * Handles the automatic reconnection process. Every time a connection is dropped without
@@ -37,17 +41,20 @@ import org.jivesoftware.smack.util.Async;
  *
  * There are two possible reconnection policies:
  *
- * {@link ReconnectionPolicy#RANDOM_INCREASING_DELAY} - The reconnection mechanism will try to reconnect periodically:
- * <ol>
- *  <li>For the first minute it will attempt to connect once every ten seconds.
- *  <li>For the next five minutes it will attempt to connect once a minute.
- *  <li>If that fails it will indefinitely try to connect once every five minutes.
- * </ol>
+ * {@link ReconnectionPolicy#RANDOM_INCREASING_DELAY} - The reconnection mechanism will try to reconnect with an
+ * exponential backoff: The delay before the first attempt is between five and ten seconds, and the upper bound of the
+ * delay doubles with every failed attempt, up to five minutes. The actual delay is chosen randomly from the upper half,
+ * so that connections which were lost at the same time, e.g. because of a server outage, do not try to reconnect at
+ * the same time.
  *
  * {@link ReconnectionPolicy#FIXED_DELAY} - The reconnection mechanism will try to reconnect after a fixed delay
  * independently from the number of reconnection attempts already performed.
  * <p>
- * Interrupting the reconnection thread will abort the reconnection mechanism.
+ * The reconnection attempts are scheduled with Smack's reactor, hence no thread is occupied while waiting for the next
+ * attempt. The attempts themselves run on Smack's asynchronous executor. Additionally, the rate at which reconnection
+ * attempts of all connections are started is limited by a global token bucket, see
+ * {@link #setReconnectionAttemptRateLimit(double, int)}, and the number of reconnection attempts in progress at the
+ * same time is limited too, see {@link #setMaxConcurrentReconnectionAttempts(int)}.
  * </p>
  *
  * @author Francisco Vives
@@ -105,12 +112,71 @@ public final class ReconnectionManager {
         return enabledPerDefault;
     }
 
+    private static final int DEFAULT_RECONNECTION_ATTEMPTS_PER_SECOND = 50;
+
+    private static final int DEFAULT_RECONNECTION_ATTEMPTS_BURST = 100;
+
+    private static volatile TokenBucket reconnectionAttemptTokenBucket = new TokenBucket(
+                    DEFAULT_RECONNECTION_ATTEMPTS_PER_SECOND, DEFAULT_RECONNECTION_ATTEMPTS_BURST);
+
+    /**
+     * Limit the rate at which reconnection attempts are started, across all connections. This prevents a reconnection
+     * storm, where thousands of connections try to connect, negotiate TLS and authenticate at the same time once a
+     * server becomes available again. Attempts exceeding the limit are delayed. The default is 50 attempts per second
+     * with a burst of 100 attempts.
+     *
+     * @param attemptsPerSecond the number of reconnection attempts per second, or a non-positive value to disable the
+     *        limit.
+     * @param burst the number of reconnection attempts that may be started at once.
+     */
+    public static void setReconnectionAttemptRateLimit(double attemptsPerSecond, int burst) {
+        if (attemptsPerSecond <= 0) {
+            reconnectionAttemptTokenBucket = null;
+            return;
+        }
+        reconnectionAttemptTokenBucket = new TokenBucket(attemptsPerSecond, burst);
+    }
+
+    private static final int DEFAULT_MAX_CONCURRENT_RECONNECTION_ATTEMPTS = 50;
+
+    private static volatile Semaphore reconnectionAttemptPermits = new Semaphore(
+                    DEFAULT_MAX_CONCURRENT_RECONNECTION_ATTEMPTS);
+
+    /**
+     * Limit the number of reconnection attempts, across all connections, that are in progress at the same time. A
+     * reconnection attempt is in progress from the moment it is started until the connection is established and
+     * authenticated, or the attempt failed. Limiting only the rate at which attempts are started does not bound the
+     * number of attempts in progress if the server is slow to respond, which is usually the case while it recovers.
+     * Attempts exceeding the limit are delayed. The default is 50 attempts.
+     *
+     * @param maxConcurrentAttempts the maximum number of reconnection attempts in progress at the same time, or a
+     *        non-positive value to disable the limit.
+     */
+    public static void setMaxConcurrentReconnectionAttempts(int maxConcurrentAttempts) {
+        if (maxConcurrentAttempts <= 0) {
+            reconnectionAttemptPermits = null;
+            return;
+        }
+        // Attempts in progress release their permit to the semaphore they acquired it from.
+        reconnectionAttemptPermits = new Semaphore(maxConcurrentAttempts);
+    }
+
+    /**
+     * The base delay before a reconnection attempt, which was delayed because too many reconnection attempts are in
+     * progress, is due again.
+     */
+    private static final long RECONNECTION_ATTEMPT_PERMIT_RETRY_MILLIS = 250;
+
+    private static final int RANDOM_INCREASING_DELAY_INITIAL_SECONDS = 10;
+
+    private static final int RANDOM_INCREASING_DELAY_MAX_SECONDS = 5 * 60;
+
+    private static final Random RANDOM = new Random();
+
     private final Set<ReconnectionListener> reconnectionListeners = new CopyOnWriteArraySet<>();
 
     // Holds the connection to the server
     private final WeakReference<AbstractXMPPConnection> weakRefConnection;
-    private final int randomBase = new Random().nextInt(13) + 2; // between 2 and 15 seconds
-    private final Runnable reconnectionRunnable;
 
     private static int defaultFixedDelay = 15;
     private static ReconnectionPolicy defaultReconnectionPolicy = ReconnectionPolicy.RANDOM_INCREASING_DELAY;
@@ -186,130 +252,35 @@ public final class ReconnectionManager {
 
     boolean done = false;
 
-    private Thread reconnectionThread;
+    /**
+     * Incremented every time a reconnection cycle is started or aborted. Pending actions of a previous cycle compare
+     * this against the value they were created with and become no-ops if they differ.
+     */
+    private int reconnectionCycle;
 
-    private ReconnectionManager(AbstractXMPPConnection connection) {
-        weakRefConnection = new WeakReference<>(connection);
+    private boolean reconnectionInProgress;
 
-        reconnectionRunnable = new Runnable() {
-
-            /**
-             * Holds the current number of reconnection attempts
-             */
-            private int attempts = 0;
-
-            /**
-             * Returns the number of seconds until the next reconnection attempt.
-             *
-             * @return the number of seconds until the next reconnection attempt.
-             */
-            private int timeDelay() {
-                attempts++;
-
-                // Delay variable to be assigned
-                int delay;
-                switch (reconnectionPolicy) {
-                case FIXED_DELAY:
-                    delay = fixedDelay;
-                    break;
-                case RANDOM_INCREASING_DELAY:
-                    if (attempts > 13) {
-                        delay = randomBase * 6 * 5; // between 2.5 and 7.5 minutes (~5 minutes)
-                    }
-                    else if (attempts > 7) {
-                        delay = randomBase * 6; // between 30 and 90 seconds (~1 minutes)
-                    }
-                    else {
-                        delay = randomBase; // 10 seconds
-                    }
-                    break;
-                default:
-                    throw new AssertionError("Unknown reconnection policy " + reconnectionPolicy);
-                }
+    /**
+     * The number of reconnection attempts in the current reconnection cycle.
+     */
+    private int attempts;
 
-                return delay;
-            }
+    private long reconnectionCycleStartNanos;
 
-            /**
-             * The process will try the reconnection until the connection succeed or the user cancel it
-             */
-            @Override
-            public void run() {
-                final AbstractXMPPConnection connection = weakRefConnection.get();
-                if (connection == null) {
-                    return;
-                }
+    private ScheduledAction scheduledReconnectionAttempt;
 
-                // Reset attempts to zero since a new reconnection cycle is started once this runs.
-                attempts = 0;
-
-                // The process will try to reconnect until the connection is established or
-                // the user cancel the reconnection process AbstractXMPPConnection.disconnect().
-                while (isReconnectionPossible(connection)) {
-                    // Find how much time we should wait until the next reconnection
-                    int remainingSeconds = timeDelay();
-                    // Sleep until we're ready for the next reconnection attempt. Notify
-                    // listeners once per second about how much time remains before the next
-                    // reconnection attempt.
-                    while (remainingSeconds > 0) {
-                        if (!isReconnectionPossible(connection)) {
-                            return;
-                        }
-                        try {
-                            Thread.sleep(1000);
-                            remainingSeconds--;
-                            for (ReconnectionListener listener : reconnectionListeners) {
-                                listener.reconnectingIn(remainingSeconds);
-                            }
-                        }
-                        catch (InterruptedException e) {
-                            LOGGER.log(Level.FINE, "Reconnection Thread was interrupted, aborting reconnection mechanism", e);
-                            // Exit the reconnection thread in case it was interrupted.
-                            return;
-                        }
-                    }
+    private Thread reconnectionAttemptThread;
 
-                    for (ReconnectionListener listener : reconnectionListeners) {
-                        listener.reconnectingIn(0);
-                    }
+    private int statsReconnectionCycles;
+    private int statsAttempts;
+    private int statsFailedAttempts;
+    private int statsThrottledAttempts;
+    private int statsSuccessfulReconnections;
+    private long statsLastTimeToReconnectMillis = -1;
+    private long statsMaxTimeToReconnectMillis = -1;
 
-                    if (!isReconnectionPossible(connection)) {
-                        return;
-                    }
-                    // Makes a reconnection attempt
-                    try {
-                        try {
-                            connection.connect();
-                        }
-                        catch (SmackException.AlreadyConnectedException e) {
-                            LOGGER.log(Level.FINER, "Connection was already connected on reconnection attempt", e);
-                        }
-                        connection.login();
-                    }
-                    catch (SmackException.AlreadyLoggedInException e) {
-                        // This can happen if another thread concurrently triggers a reconnection
-                        // and/or login. Obviously it should not be handled as a reconnection
-                        // failure. See also SMACK-725.
-                        LOGGER.log(Level.FINER, "Reconnection not required, was already logged in", e);
-                    }
-                    catch (SmackException | IOException | XMPPException e) {
-                        // Fires the failed reconnection notification
-                        for (ReconnectionListener listener : reconnectionListeners) {
-                            listener.reconnectionFailed(e);
-                        }
-                        // Failed to reconnect, try again.
-                        continue;
-                    } catch (InterruptedException e) {
-                        LOGGER.log(Level.FINE, "Reconnection Thread was interrupted, aborting reconnection mechanism", e);
-                        // Exit the reconnection thread in case it was interrupted.
-                        return;
-                    }
-
-                    // Successfully reconnected .
-                    return;
-                }
-            }
-        };
+    private ReconnectionManager(AbstractXMPPConnection connection) {
+        weakRefConnection = new WeakReference<>(connection);
 
         // If the reconnection mechanism is enable per default, enable it for this ReconnectionManager instance
         if (getEnabledPerDefault()) {
@@ -317,6 +288,27 @@ public final class ReconnectionManager {
         }
     }
 
+    /**
+     * Returns the number of milliseconds until the next reconnection attempt.
+     *
+     * @return the number of milliseconds until the next reconnection attempt.
+     */
+    private long nextReconnectionDelayMillis() {
+        assert Thread.holdsLock(this);
+
+        switch (reconnectionPolicy) {
+        case FIXED_DELAY:
+            return TimeUnit.SECONDS.toMillis(fixedDelay);
+        case RANDOM_INCREASING_DELAY:
+            long maxDelaySeconds = Math.min(RANDOM_INCREASING_DELAY_MAX_SECONDS,
+                            (long) RANDOM_INCREASING_DELAY_INITIAL_SECONDS << Math.min(attempts, 16));
+            long maxDelayMillis = TimeUnit.SECONDS.toMillis(maxDelaySeconds);
+            return maxDelayMillis / 2 + (long) (RANDOM.nextDouble() * (maxDelayMillis / 2));
+        default:
+            throw new AssertionError("Unknown reconnection policy " + reconnectionPolicy);
+        }
+    }
+
     /**
      * Enable the automatic reconnection mechanism. Does nothing if already enabled.
      */
@@ -371,20 +363,214 @@ public final class ReconnectionManager {
      * Starts a reconnection mechanism if it was configured to do that.
      * The algorithm is been executed when the first connection error is detected.
      */
-    private synchronized void reconnect() {
-        XMPPConnection connection = this.weakRefConnection.get();
-        if (connection == null) {
-            LOGGER.fine("Connection is null, will not reconnect");
-            return;
+    private void reconnect() {
+        synchronized (this) {
+            XMPPConnection connection = this.weakRefConnection.get();
+            if (connection == null) {
+                LOGGER.fine("Connection is null, will not reconnect");
+                return;
+            }
+            // Avoid running duplicated reconnection cycles.
+            if (reconnectionInProgress) {
+                return;
+            }
+
+            reconnectionInProgress = true;
+            reconnectionCycle++;
+            attempts = 0;
+            reconnectionCycleStartNanos = System.nanoTime();
+            statsReconnectionCycles++;
         }
-        // Since there is no thread running, creates a new one to attempt
-        // the reconnection.
-        // avoid to run duplicated reconnectionThread -- fd: 16/09/2010
-        if (reconnectionThread != null && reconnectionThread.isAlive())
-            return;
 
-        reconnectionThread = Async.go(reconnectionRunnable,
-                        "Smack Reconnection Manager (" + connection.getConnectionCounter() + ')');
+        scheduleNextReconnectionAttempt();
+    }
+
+    private void scheduleNextReconnectionAttempt() {
+        final long delayMillis;
+        synchronized (this) {
+            if (!reconnectionInProgress) {
+                return;
+            }
+            delayMillis = nextReconnectionDelayMillis();
+            final int cycle = reconnectionCycle;
+            scheduledReconnectionAttempt = AbstractXMPPConnection.schedule(() -> reconnectionAttemptDue(cycle),
+                            delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        int seconds = (int) TimeUnit.MILLISECONDS.toSeconds(delayMillis + 999);
+        for (ReconnectionListener listener : reconnectionListeners) {
+            listener.reconnectingIn(seconds);
+        }
+    }
+
+    /**
+     * Invoked by the reactor once the next reconnection attempt is due. Starts the attempt, which blocks, with Smack's
+     * asynchronous executor, unless the reconnection attempt rate limit is exceeded, or too many reconnection attempts
+     * are in progress, in which case the attempt is re-scheduled.
+     *
+     * @param cycle the reconnection cycle this attempt belongs to.
+     */
+    private void reconnectionAttemptDue(int cycle) {
+        final AbstractXMPPConnection connection = weakRefConnection.get();
+        final Semaphore permits = reconnectionAttemptPermits;
+        synchronized (this) {
+            if (cycle != reconnectionCycle) {
+                return;
+            }
+            if (connection == null || !isReconnectionPossible(connection)) {
+                reconnectionInProgress = false;
+                return;
+            }
+
+            TokenBucket tokenBucket = reconnectionAttemptTokenBucket;
+            if (tokenBucket != null) {
+                long waitNanos = tokenBucket.tryAcquire();
+                if (waitNanos > 0) {
+                    statsThrottledAttempts++;
+                    // Add some jitter, so that the throttled attempts do not contend for the next token all at once.
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+                    waitMillis += (long) (RANDOM.nextDouble() * waitMillis);
+                    scheduledReconnectionAttempt = AbstractXMPPConnection.schedule(() -> reconnectionAttemptDue(cycle),
+                                    waitMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+
+            if (permits != null && !permits.tryAcquire()) {
+                statsThrottledAttempts++;
+                long waitMillis = RECONNECTION_ATTEMPT_PERMIT_RETRY_MILLIS;
+                waitMillis += (long) (RANDOM.nextDouble() * waitMillis);
+                scheduledReconnectionAttempt = AbstractXMPPConnection.schedule(() -> reconnectionAttemptDue(cycle),
+                                waitMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            scheduledReconnectionAttempt = null;
+        }
+
+        try {
+            AbstractXMPPConnection.asyncGo(() -> {
+                try {
+                    attemptReconnection(connection, cycle);
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "Could not start reconnection attempt, aborting reconnection mechanism", e);
+            if (permits != null) {
+                permits.release();
+            }
+            synchronized (this) {
+                if (cycle == reconnectionCycle) {
+                    reconnectionInProgress = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a reconnection attempt and schedules the next one if it fails. The caller holds a reconnection attempt
+     * permit, if the number of concurrent reconnection attempts is limited, and releases it once this method returns.
+     *
+     * @param connection the connection.
+     * @param cycle the reconnection cycle this attempt belongs to.
+     */
+    private void attemptReconnection(AbstractXMPPConnection connection, int cycle) {
+        synchronized (this) {
+            if (cycle != reconnectionCycle) {
+                return;
+            }
+            if (!isReconnectionPossible(connection)) {
+                reconnectionInProgress = false;
+                return;
+            }
+            attempts++;
+            statsAttempts++;
+            reconnectionAttemptThread = Thread.currentThread();
+        }
+
+        try {
+            for (ReconnectionListener listener : reconnectionListeners) {
+                listener.reconnectingIn(0);
+            }
+
+            final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+            if (metrics != null) {
+                metrics.reconnectionAttempts.increment();
+            }
+            try {
+                try {
+                    connection.connect();
+                }
+                catch (SmackException.AlreadyConnectedException e) {
+                    LOGGER.log(Level.FINER, "Connection was already connected on reconnection attempt", e);
+                }
+                connection.login();
+            }
+            catch (SmackException.AlreadyLoggedInException e) {
+                // This can happen if another thread concurrently triggers a reconnection
+                // and/or login. Obviously it should not be handled as a reconnection
+                // failure. See also SMACK-725.
+                LOGGER.log(Level.FINER, "Reconnection not required, was already logged in", e);
+            }
+            catch (SmackException | IOException | XMPPException e) {
+                if (metrics != null) {
+                    metrics.reconnectionFailures.increment();
+                }
+                synchronized (this) {
+                    statsFailedAttempts++;
+                }
+                // Fires the failed reconnection notification
+                for (ReconnectionListener listener : reconnectionListeners) {
+                    listener.reconnectionFailed(e);
+                }
+                // Failed to reconnect, try again.
+                synchronized (this) {
+                    if (cycle != reconnectionCycle) {
+                        return;
+                    }
+                    if (!isReconnectionPossible(connection)) {
+                        reconnectionInProgress = false;
+                        return;
+                    }
+                }
+                scheduleNextReconnectionAttempt();
+                return;
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.FINE, "Reconnection attempt was interrupted, aborting reconnection mechanism", e);
+                synchronized (this) {
+                    if (cycle == reconnectionCycle) {
+                        reconnectionInProgress = false;
+                    }
+                }
+                return;
+            }
+
+            // Successfully reconnected.
+            final long timeToReconnectMillis;
+            synchronized (this) {
+                timeToReconnectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reconnectionCycleStartNanos);
+                statsSuccessfulReconnections++;
+                statsLastTimeToReconnectMillis = timeToReconnectMillis;
+                statsMaxTimeToReconnectMillis = Math.max(statsMaxTimeToReconnectMillis, timeToReconnectMillis);
+                if (cycle == reconnectionCycle) {
+                    reconnectionInProgress = false;
+                }
+            }
+            if (metrics != null) {
+                metrics.reconnectionSuccesses.increment();
+                metrics.reconnectionTime.record(timeToReconnectMillis);
+            }
+        } finally {
+            synchronized (this) {
+                if (reconnectionAttemptThread == Thread.currentThread()) {
+                    reconnectionAttemptThread = null;
+                }
+            }
+        }
     }
 
     /**
@@ -393,12 +579,30 @@ public final class ReconnectionManager {
      * @since 4.2.2
      */
     public synchronized void abortPossiblyRunningReconnection() {
-        if (reconnectionThread == null) {
+        if (!reconnectionInProgress) {
             return;
         }
 
-        reconnectionThread.interrupt();
-        reconnectionThread = null;
+        reconnectionCycle++;
+        reconnectionInProgress = false;
+
+        if (scheduledReconnectionAttempt != null) {
+            scheduledReconnectionAttempt.cancel();
+            scheduledReconnectionAttempt = null;
+        }
+        if (reconnectionAttemptThread != null) {
+            reconnectionAttemptThread.interrupt();
+            reconnectionAttemptThread = null;
+        }
+    }
+
+    /**
+     * Get the statistics of this reconnection manager.
+     *
+     * @return the statistics.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(this);
     }
 
     private final ConnectionListener connectionListener = new ConnectionListener() {
@@ -448,4 +652,66 @@ public final class ReconnectionManager {
          */
         FIXED_DELAY,
     }
+
+    public static final class Stats {
+        /**
+         * The number of reconnection cycles, i.e. the number of times the connection was lost and the reconnection
+         * mechanism got started.
+         */
+        public final int reconnectionCycles;
+
+        public final int attempts;
+        public final int failedAttempts;
+
+        /**
+         * The number of times a due reconnection attempt got delayed because of the global reconnection attempt rate
+         * limit, or because of the global limit of concurrent reconnection attempts.
+         */
+        public final int throttledAttempts;
+
+        public final int successfulReconnections;
+
+        /**
+         * The time in milliseconds it took to re-establish the connection the last time, or -1.
+         */
+        public final long lastTimeToReconnectMillis;
+
+        /**
+         * The maximum time in milliseconds it took to re-establish the connection, or -1.
+         */
+        public final long maxTimeToReconnectMillis;
+
+        private Stats(ReconnectionManager reconnectionManager) {
+            assert Thread.holdsLock(reconnectionManager);
+
+            reconnectionCycles = reconnectionManager.statsReconnectionCycles;
+            attempts = reconnectionManager.statsAttempts;
+            failedAttempts = reconnectionManager.statsFailedAttempts;
+            throttledAttempts = reconnectionManager.statsThrottledAttempts;
+            successfulReconnections = reconnectionManager.statsSuccessfulReconnections;
+            lastTimeToReconnectMillis = reconnectionManager.statsLastTimeToReconnectMillis;
+            maxTimeToReconnectMillis = reconnectionManager.statsMaxTimeToReconnectMillis;
+        }
+
+        private transient String toStringCache;
+
+        @Override
+        public String toString() {
+            if (toStringCache != null) {
+                return toStringCache;
+            }
+
+            toStringCache =
+                "reconnection-cycles: " + reconnectionCycles + '\n'
+              + "attempts: " + attempts + '\n'
+              + "failed-attempts: " + failedAttempts + '\n'
+              + "throttled-attempts: " + throttledAttempts + '\n'
+              + "successful-reconnections: " + successfulReconnections + '\n'
+              + "last-time-to-reconnect-millis: " + lastTimeToReconnectMillis + '\n'
+              + "max-time-to-reconnect-millis: " + maxTimeToReconnectMillis + '\n'
+              ;
+
+            return toStringCache;
+        }
+    }
 }
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2018-2024 Florian Schmaus
+ * Copyright 2018-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -34,11 +34,17 @@ public class ScheduledAction implements Delayed {
     final SmackReactor smackReactor;
     final Kind kind;
 
-    ScheduledAction(Runnable action, Date releaseTime, SmackReactor smackReactor, Kind kind) {
+    /**
+     * The index of the event loop this action is scheduled on, or -1 if the reactor is not sharded.
+     */
+    final int eventLoopIndex;
+
+    ScheduledAction(Runnable action, Date releaseTime, SmackReactor smackReactor, Kind kind, int eventLoopIndex) {
         this.action = action;
         this.releaseTime = releaseTime;
         this.smackReactor = smackReactor;
         this.kind = kind;
+        this.eventLoopIndex = eventLoopIndex;
     }
 
     /**
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2003-2007 Jive Software, 2018-2025 Florian Schmaus.
+ * Copyright 2003-2007 Jive Software, 2018-2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -379,10 +379,139 @@ public final class SmackConfiguration {
         }
     }
 
-    public static int getDefaultConcurrencyLevelLimit() {
+    /**
+     * The threading mode used by Smack's executors.
+     *
+     * @see SmackExecutors
+     */
+    public enum ThreadingMode {
+        /**
+         * Use pools of platform threads. This is the default.
+         */
+        platformThreads,
+        /**
+         * Use a new virtual thread per task. Requires a platform with virtual thread support, i.e., Java 21 or higher.
+         * This allows the blocking APIs of Smack, like {@link StanzaCollector#nextResult()}, to be used by a large number
+         * of concurrent operations.
+         */
+        virtualThreads,
+    }
+
+    private static ThreadingMode threadingMode = ThreadingMode.platformThreads;
+
+    private static int virtualThreadsConcurrencyLevelLimit = 1024;
+
+    public static synchronized ThreadingMode getThreadingMode() {
+        return threadingMode;
+    }
+
+    /**
+     * Set the threading mode used by Smack's executors. Executors which are created by components when they are
+     * initialized, for example by managers, are only affected if the threading mode is set before the component is
+     * initialized. Hence this should be set before the first connection is created.
+     *
+     * @param threadingMode the threading mode.
+     * @throws IllegalStateException if virtual threads where requested, but are not supported on this platform.
+     * @see SmackExecutors#isVirtualThreadsSupported()
+     */
+    public static synchronized void setThreadingMode(ThreadingMode threadingMode) {
+        Objects.requireNonNull(threadingMode, "Must set threading mode");
+        if (threadingMode == ThreadingMode.virtualThreads && !SmackExecutors.isVirtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported on this platform");
+        }
+        SmackExecutors.onThreadingModeChanged(threadingMode);
+        SmackConfiguration.threadingMode = threadingMode;
+    }
+
+    /**
+     * Set the default limit of concurrent asynchronous operations per connection, used if the threading mode is
+     * {@link ThreadingMode#virtualThreads}.
+     *
+     * @param virtualThreadsConcurrencyLevelLimit the limit of concurrent asynchronous operations per connection.
+     */
+    public static synchronized void setVirtualThreadsConcurrencyLevelLimit(int virtualThreadsConcurrencyLevelLimit) {
+        if (virtualThreadsConcurrencyLevelLimit < 1) {
+            throw new IllegalArgumentException("Concurrency level limit must be greater than 0");
+        }
+        SmackConfiguration.virtualThreadsConcurrencyLevelLimit = virtualThreadsConcurrencyLevelLimit;
+    }
+
+    /**
+     * Get the default limit of concurrent asynchronous operations per connection. This depends on the threading mode:
+     * With platform threads it is derived from the number of available processors, with virtual threads it is the
+     * value set by {@link #setVirtualThreadsConcurrencyLevelLimit(int)}.
+     *
+     * @return the default limit of concurrent asynchronous operations per connection.
+     */
+    public static synchronized int getDefaultConcurrencyLevelLimit() {
+        if (threadingMode == ThreadingMode.virtualThreads) {
+            return virtualThreadsConcurrencyLevelLimit;
+        }
         return defaultConcurrencyLevelLimit;
     }
 
+    private static long reactorBufferPoolMaxBytes = 8 * 1024 * 1024;
+
+    public static synchronized long getReactorBufferPoolMaxBytes() {
+        return reactorBufferPoolMaxBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes held by the pool of direct byte buffers shared by all connections of a
+     * {@link SmackReactor}. This needs to be set before the reactor is created, i.e., before the first connection is
+     * created. Afterwards the pool can be adjusted via {@link SmackReactor#getBufferPool()}.
+     *
+     * @param reactorBufferPoolMaxBytes the maximum number of pooled bytes.
+     */
+    public static synchronized void setReactorBufferPoolMaxBytes(long reactorBufferPoolMaxBytes) {
+        if (reactorBufferPoolMaxBytes < 0) {
+            throw new IllegalArgumentException("Maximum pooled bytes must not be negative");
+        }
+        SmackConfiguration.reactorBufferPoolMaxBytes = reactorBufferPoolMaxBytes;
+    }
+
+    private static int reactorEventLoopCount;
+
+    public static synchronized int getReactorEventLoopCount() {
+        return reactorEventLoopCount;
+    }
+
+    /**
+     * Set the number of independent event loops of the {@link SmackReactor}. If zero, which is the default, all reactor
+     * threads share a single selector. Otherwise, the reactor runs in sharded mode with the given number of event loops,
+     * each with its own thread and selector, and connections are pinned to one event loop. The sharded mode scales
+     * better with a large number of connections. This needs to be set before the reactor is created, i.e., before the
+     * first connection is created.
+     *
+     * @param reactorEventLoopCount the number of event loops, or zero to disable the sharded mode.
+     */
+    public static synchronized void setReactorEventLoopCount(int reactorEventLoopCount) {
+        if (reactorEventLoopCount < 0) {
+            throw new IllegalArgumentException("Event loop count must not be negative");
+        }
+        SmackConfiguration.reactorEventLoopCount = reactorEventLoopCount;
+    }
+
+    private static int iqRequestBatchMaxInFlight = 32;
+
+    public static synchronized int getIqRequestBatchMaxInFlight() {
+        return iqRequestBatchMaxInFlight;
+    }
+
+    /**
+     * Set the default maximum number of IQ requests of a batch, sent via
+     * {@link XMPPConnection#sendIqRequestsAsync(Collection)}, which may await their response at the same
+     * time. The default is 32.
+     *
+     * @param iqRequestBatchMaxInFlight the maximum number of in-flight IQ requests of a batch.
+     */
+    public static synchronized void setIqRequestBatchMaxInFlight(int iqRequestBatchMaxInFlight) {
+        if (iqRequestBatchMaxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of in-flight IQ requests must be at least one");
+        }
+        SmackConfiguration.iqRequestBatchMaxInFlight = iqRequestBatchMaxInFlight;
+    }
+
     private static final Set<Class<? extends ModularXmppClientToServerConnectionModuleDescriptor>> KNOWN_MODULES = new HashSet<>();
 
     public static boolean addModule(Class<? extends ModularXmppClientToServerConnectionModuleDescriptor> moduleDescriptor) {
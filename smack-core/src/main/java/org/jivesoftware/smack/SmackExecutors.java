@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.SmackConfiguration.ThreadingMode;
+
+/**
+ * The executors used by Smack to run operations asynchronously, e.g. to invoke listeners. Depending on the
+ * {@link SmackConfiguration#setThreadingMode(ThreadingMode) threading mode}, the executors are either backed by
+ * platform threads or by virtual threads.
+ */
+public final class SmackExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(SmackExecutors.class.getName());
+
+    /**
+     * A cached thread pool executor service with custom thread factory to set meaningful names on the threads and set
+     * them 'daemon'.
+     */
+    private static final ExecutorService CACHED_EXECUTOR_SERVICE = Executors.newCachedThreadPool(
+                    newDaemonThreadFactory("Smack Cached Executor"));
+
+    private static Supplier<ExecutorService> virtualThreadExecutorServiceFactory;
+
+    /**
+     * The executor service used for asynchronous operations in virtual threads mode. Created on the first switch to
+     * virtual threads and reused by every following switch, so that toggling the threading mode does not leak executor
+     * services.
+     */
+    private static ExecutorService virtualThreadAsyncExecutorService;
+
+    private static volatile Executor asyncExecutor = CACHED_EXECUTOR_SERVICE;
+
+    private SmackExecutors() {
+    }
+
+    /**
+     * Get the executor used to run asynchronous operations, like {@link AbstractXMPPConnection#asyncGo(Runnable)}.
+     *
+     * @return the executor used to run asynchronous operations.
+     */
+    public static Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Schedule an action, which is run by the {@link #getAsyncExecutor() async executor} once the given delay elapsed.
+     * The delay is tracked by the Smack reactor, hence this does not require a connection and no thread is blocked while
+     * waiting.
+     *
+     * @param runnable the action.
+     * @param delay the delay.
+     * @param unit the unit of the delay.
+     * @return the scheduled action, which may be used to cancel it.
+     */
+    public static ScheduledAction schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return SmackReactor.getInstance().schedule(() -> getAsyncExecutor().execute(runnable), delay, unit,
+                        ScheduledAction.Kind.NonBlocking);
+    }
+
+    /**
+     * Create a new executor service for components which manage their own executor service. With platform threads, this
+     * is a cached thread pool, otherwise an executor service creating a new virtual thread per task.
+     *
+     * @param threadName the name of the threads of the executor service.
+     * @return a new executor service.
+     */
+    public static ExecutorService newCachedExecutorService(String threadName) {
+        if (SmackConfiguration.getThreadingMode() == ThreadingMode.virtualThreads) {
+            return getVirtualThreadExecutorServiceFactory().get();
+        }
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(threadName));
+    }
+
+    /**
+     * Create a new executor service with a bounded number of threads. With virtual threads, the number of threads is
+     * not bounded, as virtual threads are cheap, and a new virtual thread is created per task.
+     *
+     * @param threadCount the number of threads.
+     * @param threadName the name of the threads of the executor service.
+     * @return a new executor service.
+     */
+    public static ExecutorService newFixedExecutorService(int threadCount, String threadName) {
+        if (SmackConfiguration.getThreadingMode() == ThreadingMode.virtualThreads) {
+            return getVirtualThreadExecutorServiceFactory().get();
+        }
+        return Executors.newFixedThreadPool(threadCount, newDaemonThreadFactory(threadName));
+    }
+
+    /**
+     * Set the factory for executor services which create a new virtual thread per task. This is usually invoked by the
+     * Smack initializer of the platform, if the platform supports virtual threads.
+     *
+     * @param virtualThreadExecutorServiceFactory the factory.
+     */
+    public static synchronized void setVirtualThreadExecutorServiceFactory(
+                    Supplier<ExecutorService> virtualThreadExecutorServiceFactory) {
+        SmackExecutors.virtualThreadExecutorServiceFactory = virtualThreadExecutorServiceFactory;
+
+        // The executor service created by the previous factory must not outlive it.
+        final ExecutorService previousAsyncExecutorService = virtualThreadAsyncExecutorService;
+        if (previousAsyncExecutorService == null) {
+            return;
+        }
+        virtualThreadAsyncExecutorService = null;
+        if (asyncExecutor == previousAsyncExecutorService) {
+            if (virtualThreadExecutorServiceFactory != null) {
+                asyncExecutor = getVirtualThreadAsyncExecutorService();
+            } else {
+                asyncExecutor = CACHED_EXECUTOR_SERVICE;
+            }
+        }
+        // Already submitted tasks are still executed.
+        previousAsyncExecutorService.shutdown();
+    }
+
+    public static synchronized boolean isVirtualThreadsSupported() {
+        return virtualThreadExecutorServiceFactory != null;
+    }
+
+    private static synchronized Supplier<ExecutorService> getVirtualThreadExecutorServiceFactory() {
+        if (virtualThreadExecutorServiceFactory == null) {
+            throw new IllegalStateException("Virtual threads are not supported on this platform");
+        }
+        return virtualThreadExecutorServiceFactory;
+    }
+
+    private static synchronized ExecutorService getVirtualThreadAsyncExecutorService() {
+        if (virtualThreadAsyncExecutorService == null) {
+            virtualThreadAsyncExecutorService = getVirtualThreadExecutorServiceFactory().get();
+        }
+        return virtualThreadAsyncExecutorService;
+    }
+
+    static synchronized void onThreadingModeChanged(ThreadingMode threadingMode) {
+        switch (threadingMode) {
+        case platformThreads:
+            // Runnables already submitted to the virtual thread executor are still executed by it. The executor is kept
+            // for the next switch to virtual threads, it does not hold any idle threads.
+            asyncExecutor = CACHED_EXECUTOR_SERVICE;
+            break;
+        case virtualThreads:
+            // Runnables already submitted to the previous executor are still executed by it. The cached thread pool's
+            // idle threads will eventually terminate.
+            asyncExecutor = getVirtualThreadAsyncExecutorService();
+            break;
+        }
+    }
+
+    private static ThreadFactory newDaemonThreadFactory(String threadName) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setName(threadName);
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        LOGGER.log(Level.WARNING, t + " encountered uncaught exception", e);
+                    }
+                });
+                return thread;
+            }
+        };
+    }
+}
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2018-2024 Florian Schmaus
+ * Copyright 2018-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -35,11 +35,15 @@ import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jivesoftware.smack.metrics.SmackMetrics;
+import org.jivesoftware.smack.util.DirectByteBufferPool;
+
 /**
  * The SmackReactor for non-blocking I/O.
  * <p>
@@ -48,6 +52,13 @@ import java.util.logging.Logger;
  * <li>Multiple reactor threads</li>
  * <li>Scheduled actions</li>
  * </ul>
+ * <p>
+ * By default, all reactor threads share a single {@link Selector}. Alternatively, the reactor can run in sharded mode,
+ * see {@link SmackConfiguration#setReactorEventLoopCount(int)}. In this mode, the reactor consists of multiple
+ * independent event loops, each with its own thread, selector and scheduled actions. Every channel is pinned to one
+ * event loop when it is registered, so that the event loops do not contend with each other. This allows to scale to a
+ * large number of connections.
+ * </p>
  *
  * <pre>
  *
@@ -82,9 +93,19 @@ public class SmackReactor {
         return INSTANCE;
     }
 
+    /**
+     * The selector shared by all reactor threads, or <code>null</code> if the reactor runs in sharded mode.
+     */
     private final Selector selector;
     private final String reactorName;
 
+    /**
+     * The event loops if this reactor runs in sharded mode, <code>null</code> otherwise.
+     */
+    private final EventLoop[] eventLoops;
+
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
     private final List<Reactor> reactorThreads = Collections.synchronizedList(new ArrayList<>());
 
     private final DelayQueue<ScheduledAction> scheduledActions = new DelayQueue<>();
@@ -102,9 +123,32 @@ public class SmackReactor {
 
     private final Queue<SetInterestOps> pendingSetInterestOps = new ConcurrentLinkedQueue<>();
 
+    private final DirectByteBufferPool bufferPool = new DirectByteBufferPool(
+                    SmackConfiguration.getReactorBufferPoolMaxBytes());
+
     SmackReactor(String reactorName) {
+        this(reactorName, SmackConfiguration.getReactorEventLoopCount());
+    }
+
+    SmackReactor(String reactorName, int eventLoopCount) {
         this.reactorName = reactorName;
 
+        if (eventLoopCount > 0) {
+            selector = null;
+            eventLoops = new EventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                EventLoop eventLoop = new EventLoop(i);
+                eventLoop.setDaemon(true);
+                eventLoop.setName("Smack " + reactorName + " Event Loop #" + i);
+                eventLoops[i] = eventLoop;
+            }
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.start();
+            }
+            return;
+        }
+
+        eventLoops = null;
         try {
             selector = Selector.open();
         }
@@ -115,9 +159,34 @@ public class SmackReactor {
         setReactorThreadCount(DEFAULT_REACTOR_THREAD_COUNT);
     }
 
+    /**
+     * Check if this reactor runs in sharded mode, i.e., with multiple independent event loops.
+     *
+     * @return <code>true</code> if this reactor runs in sharded mode.
+     */
+    public boolean isSharded() {
+        return eventLoops != null;
+    }
+
+    /**
+     * Get the pool of direct byte buffers shared by all connections using this reactor.
+     *
+     * @return the buffer pool of this reactor.
+     */
+    public DirectByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public SelectionKey registerWithSelector(SelectableChannel channel, int ops, ChannelSelectedCallback callback)
             throws ClosedChannelException {
-        SelectionKeyAttachment selectionKeyAttachment = new SelectionKeyAttachment(callback);
+        if (eventLoops != null) {
+            // Pin the channel to one of the event loops.
+            EventLoop eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+            SelectionKeyAttachment selectionKeyAttachment = new SelectionKeyAttachment(callback, eventLoop);
+            return eventLoop.register(channel, ops, selectionKeyAttachment);
+        }
+
+        SelectionKeyAttachment selectionKeyAttachment = new SelectionKeyAttachment(callback, null);
 
         registrationLock.lock();
         try {
@@ -129,6 +198,13 @@ public class SmackReactor {
     }
 
     public void setInterestOps(SelectionKey selectionKey, int interestOps) {
+        SelectionKeyAttachment selectionKeyAttachment = (SelectionKeyAttachment) selectionKey.attachment();
+        EventLoop eventLoop = selectionKeyAttachment.eventLoop;
+        if (eventLoop != null) {
+            eventLoop.setInterestOps(selectionKey, interestOps);
+            return;
+        }
+
         SetInterestOps setInterestOps = new SetInterestOps(selectionKey, interestOps);
         pendingSetInterestOps.add(setInterestOps);
         selector.wakeup();
@@ -144,16 +220,57 @@ public class SmackReactor {
         }
     }
 
+    /**
+     * Schedule a non-blocking action, which will be run by a reactor thread. If called from within a channel selected
+     * callback, then the action will be run by the event loop running the callback. Note that the reactor schedules
+     * actions with millisecond granularity, hence a delay below one millisecond causes the action to be run on the
+     * next iteration of the reactor.
+     *
+     * @param runnable the non-blocking action.
+     * @param delay the delay.
+     * @param unit the unit of the delay.
+     * @return the scheduled action.
+     */
+    public ScheduledAction schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return schedule(runnable, delay, unit, ScheduledAction.Kind.NonBlocking);
+    }
+
     @SuppressWarnings("JavaUtilDate")
     ScheduledAction schedule(Runnable runnable, long delay, TimeUnit unit, ScheduledAction.Kind scheduledActionKind) {
         long releaseTimeEpoch = System.currentTimeMillis() + unit.toMillis(delay);
         Date releaseTimeDate = new Date(releaseTimeEpoch);
-        ScheduledAction scheduledAction = new ScheduledAction(runnable, releaseTimeDate, this, scheduledActionKind);
+
+        if (eventLoops != null) {
+            // Prefer the current event loop, so that actions scheduled from within a channel selected callback, or
+            // another scheduled action, stay on the same event loop.
+            EventLoop eventLoop = getCurrentEventLoop();
+            if (eventLoop == null) {
+                eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+            }
+            ScheduledAction scheduledAction = new ScheduledAction(runnable, releaseTimeDate, this, scheduledActionKind,
+                            eventLoop.index);
+            eventLoop.schedule(scheduledAction);
+            return scheduledAction;
+        }
+
+        ScheduledAction scheduledAction = new ScheduledAction(runnable, releaseTimeDate, this, scheduledActionKind, -1);
         scheduledActions.add(scheduledAction);
         selector.wakeup();
         return scheduledAction;
     }
 
+    private EventLoop getCurrentEventLoop() {
+        Thread currentThread = Thread.currentThread();
+        if (!(currentThread instanceof EventLoop)) {
+            return null;
+        }
+        EventLoop eventLoop = (EventLoop) currentThread;
+        if (eventLoop.getSmackReactor() != this) {
+            return null;
+        }
+        return eventLoop;
+    }
+
     /**
      * Cancels the scheduled action.
      *
@@ -161,9 +278,138 @@ public class SmackReactor {
      * @return <code>true</code> if the scheduled action was still pending and got removed, <code>false</code> otherwise.
      */
     boolean cancel(ScheduledAction scheduledAction) {
+        if (scheduledAction.eventLoopIndex >= 0) {
+            return eventLoops[scheduledAction.eventLoopIndex].scheduledActions.remove(scheduledAction);
+        }
         return scheduledActions.remove(scheduledAction);
     }
 
+    /**
+     * An independent event loop of a reactor in sharded mode. Every event loop runs on its own thread and has its own
+     * selector and scheduled actions. All channel selected callbacks of the channels registered with an event loop, as
+     * well as the non-blocking scheduled actions of the event loop, are run by the event loop's thread.
+     */
+    private final class EventLoop extends Thread {
+
+        private final int index;
+
+        private final Selector selector;
+
+        private final DelayQueue<ScheduledAction> scheduledActions = new DelayQueue<>();
+
+        private final Queue<SetInterestOps> pendingSetInterestOps = new ConcurrentLinkedQueue<>();
+
+        private final Lock registrationLock = new ReentrantLock();
+
+        private EventLoop(int index) {
+            this.index = index;
+            try {
+                selector = Selector.open();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private SmackReactor getSmackReactor() {
+            return SmackReactor.this;
+        }
+
+        private SelectionKey register(SelectableChannel channel, int ops, SelectionKeyAttachment selectionKeyAttachment)
+                        throws ClosedChannelException {
+            registrationLock.lock();
+            try {
+                selector.wakeup();
+                return channel.register(selector, ops, selectionKeyAttachment);
+            } finally {
+                registrationLock.unlock();
+            }
+        }
+
+        private void setInterestOps(SelectionKey selectionKey, int interestOps) {
+            if (Thread.currentThread() == this) {
+                // The event loop thread is not in select(), hence we can set the interest ops right away.
+                setInterestOpsCancelledKeySafe(selectionKey, interestOps);
+                return;
+            }
+
+            pendingSetInterestOps.add(new SetInterestOps(selectionKey, interestOps));
+            selector.wakeup();
+        }
+
+        private void schedule(ScheduledAction scheduledAction) {
+            scheduledActions.add(scheduledAction);
+            if (Thread.currentThread() != this) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                for (ScheduledAction dueScheduledAction; (dueScheduledAction = scheduledActions.poll()) != null;) {
+                    SmackMetrics metrics = SmackMetrics.getIfEnabled();
+                    if (metrics != null) {
+                        metrics.reactorScheduledActionDelay.record(-dueScheduledAction.getTimeToDueMillis());
+                    }
+                    try {
+                        dueScheduledAction.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Scheduled action threw", e);
+                    }
+                }
+
+                for (SetInterestOps setInterestOps; (setInterestOps = pendingSetInterestOps.poll()) != null;) {
+                    setInterestOpsCancelledKeySafe(setInterestOps.selectionKey, setInterestOps.interestOps);
+                }
+
+                ScheduledAction nextScheduledAction = scheduledActions.peek();
+                long selectWait;
+                if (nextScheduledAction == null) {
+                    selectWait = 0;
+                } else {
+                    selectWait = nextScheduledAction.getTimeToDueMillis();
+                    if (selectWait <= 0) {
+                        continue;
+                    }
+                }
+
+                // See the comment in Reactor.handleScheduledActionsOrPerformSelect() why we do this.
+                registrationLock.lock();
+                registrationLock.unlock();
+
+                int newSelectedKeysCount;
+                try {
+                    newSelectedKeysCount = selector.select(selectWait);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "IOException while using select()", e);
+                    continue;
+                }
+
+                SmackMetrics metrics = SmackMetrics.getIfEnabled();
+                if (metrics != null) {
+                    metrics.reactorSelectedKeys.record(newSelectedKeysCount);
+                }
+
+                if (newSelectedKeysCount == 0) {
+                    continue;
+                }
+
+                Set<SelectionKey> selectedKeySet = selector.selectedKeys();
+                List<SelectionKey> selectedKeys = new ArrayList<>(selectedKeySet.size());
+                for (SelectionKey selectionKey : selectedKeySet) {
+                    SelectionKeyAttachment selectionKeyAttachment = (SelectionKeyAttachment) selectionKey.attachment();
+                    selectionKeyAttachment.setRacing();
+                    setInterestOpsCancelledKeySafe(selectionKey, 0);
+                    selectedKeys.add(selectionKey);
+                }
+                selectedKeySet.clear();
+
+                handleSelectedKeys(selectedKeys);
+            }
+        }
+    }
+
     private final class Reactor extends Thread {
 
         private volatile long shutdownRequestTimestamp = -1;
@@ -206,6 +452,10 @@ public class SmackReactor {
             }
 
             if (dueScheduledAction != null) {
+                SmackMetrics metrics = SmackMetrics.getIfEnabled();
+                if (metrics != null) {
+                    metrics.reactorScheduledActionDelay.record(-dueScheduledAction.getTimeToDueMillis());
+                }
                 dueScheduledAction.run();
                 return;
             }
@@ -260,6 +510,11 @@ public class SmackReactor {
                     return;
                 }
 
+                SmackMetrics metrics = SmackMetrics.getIfEnabled();
+                if (metrics != null) {
+                    metrics.reactorSelectedKeys.record(newSelectedKeysCount);
+                }
+
                 if (newSelectedKeysCount == 0) {
                     return;
                 }
@@ -351,29 +606,35 @@ public class SmackReactor {
             handleSelectedKeys(selectedKeys);
         }
 
-        private void setInterestOpsCancelledKeySafe(SelectionKey selectionKey, int interestOps) {
-            try {
-                selectionKey.interestOps(interestOps);
-            }
-            catch (CancelledKeyException e) {
-                final Level keyCancelledLogLevel = Level.FINER;
-                if (LOGGER.isLoggable(keyCancelledLogLevel)) {
-                    LOGGER.log(keyCancelledLogLevel, "Key '" + selectionKey + "' has been cancelled", e);
-                }
-            }
-        }
-
         void requestShutdown() {
             shutdownRequestTimestamp = System.currentTimeMillis();
         }
     }
 
+    private static void setInterestOpsCancelledKeySafe(SelectionKey selectionKey, int interestOps) {
+        try {
+            selectionKey.interestOps(interestOps);
+        }
+        catch (CancelledKeyException e) {
+            final Level keyCancelledLogLevel = Level.FINER;
+            if (LOGGER.isLoggable(keyCancelledLogLevel)) {
+                LOGGER.log(keyCancelledLogLevel, "Key '" + selectionKey + "' has been cancelled", e);
+            }
+        }
+    }
+
     private static void handleSelectedKeys(Collection<SelectionKey> selectedKeys) {
         for (SelectionKey selectionKey : selectedKeys) {
             SelectableChannel channel = selectionKey.channel();
             SelectionKeyAttachment selectionKeyAttachment = (SelectionKeyAttachment) selectionKey.attachment();
             ChannelSelectedCallback channelSelectedCallback = selectionKeyAttachment.channelSelectedCallback;
-            channelSelectedCallback.onChannelSelected(channel, selectionKey);
+            // Isolate the callbacks from each other, so that a throwing callback neither kills the reactor thread nor
+            // prevents the callbacks of the other selected keys from being invoked.
+            try {
+                channelSelectedCallback.onChannelSelected(channel, selectionKey);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Channel selected callback " + channelSelectedCallback + " threw", e);
+            }
         }
     }
 
@@ -382,6 +643,9 @@ public class SmackReactor {
     }
 
     public void setReactorThreadCount(int reactorThreadCount) {
+        if (eventLoops != null) {
+            throw new IllegalStateException("The number of threads of a sharded reactor is fixed to its event loop count");
+        }
         if (reactorThreadCount < 2) {
             throw new IllegalArgumentException("Must have at least two reactor threads, but you requested " + reactorThreadCount);
         }
@@ -424,8 +688,14 @@ public class SmackReactor {
         private final ChannelSelectedCallback channelSelectedCallback;
         private final AtomicBoolean reactorThreadRacing = new AtomicBoolean();
 
-        private SelectionKeyAttachment(ChannelSelectedCallback channelSelectedCallback) {
+        /**
+         * The event loop the channel is pinned to, or <code>null</code> if the reactor is not sharded.
+         */
+        private final EventLoop eventLoop;
+
+        private SelectionKeyAttachment(ChannelSelectedCallback channelSelectedCallback, EventLoop eventLoop) {
             this.channelSelectedCallback = channelSelectedCallback;
+            this.eventLoop = eventLoop;
         }
 
         private void setRacing() {
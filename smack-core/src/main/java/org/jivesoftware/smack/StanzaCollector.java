@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2003-2007 Jive Software, 2016-2024 Florian Schmaus.
+ * Copyright 2003-2007 Jive Software, 2016-2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -349,17 +349,27 @@ public final class StanzaCollector implements AutoCloseable {
      */
     void processStanza(Stanza packet) {
         if (packetFilter == null || packetFilter.accept(packet)) {
-            synchronized (this) {
-                if (resultQueue.size() == maxQueueSize) {
-                    Stanza rolledOverStanza = resultQueue.poll();
-                    assert rolledOverStanza != null;
-                }
-                resultQueue.add(packet);
-                notifyAll();
-            }
-            if (collectorToReset != null) {
-                collectorToReset.waitStart = System.currentTimeMillis();
+            processAcceptedStanza(packet);
+        }
+    }
+
+    /**
+     * Adds a stanza, which is already known to be accepted by the filter of this stanza collector, to the result
+     * queue.
+     *
+     * @param packet the stanza accepted by the filter of this collector.
+     */
+    void processAcceptedStanza(Stanza packet) {
+        synchronized (this) {
+            if (resultQueue.size() == maxQueueSize) {
+                Stanza rolledOverStanza = resultQueue.poll();
+                assert rolledOverStanza != null;
             }
+            resultQueue.add(packet);
+            notifyAll();
+        }
+        if (collectorToReset != null) {
+            collectorToReset.waitStart = System.currentTimeMillis();
         }
     }
 
@@ -0,0 +1,194 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jivesoftware.smack.filter.StanzaDispatchKey;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * An index of values, e.g. stanza listeners or collectors, by the {@link StanzaDispatchKey} of their stanza filters.
+ * Finding the values whose filter accepts an incoming stanza costs a hash lookup per key of the stanza, plus testing
+ * the values whose filters do not provide a dispatch key.
+ * <p>
+ * Lookups are lock free. Modifications are serialized, but only copy the (typically small) list of values sharing the
+ * same dispatch key. The values are returned in the order they where added.
+ * </p>
+ *
+ * @param <V> the type of the values.
+ */
+final class StanzaDispatchIndex<V> {
+
+    private static final Comparator<Entry<?>> SEQUENCE_NUMBER_COMPARATOR = (e1, e2) -> Long.compare(e1.sequenceNumber,
+                    e2.sequenceNumber);
+
+    private static final class Entry<V> {
+        private final V value;
+        private final StanzaFilter filter;
+        private final StanzaDispatchKey dispatchKey;
+        private final long sequenceNumber;
+
+        private Entry(V value, StanzaFilter filter, StanzaDispatchKey dispatchKey, long sequenceNumber) {
+            this.value = value;
+            this.filter = filter;
+            this.dispatchKey = dispatchKey;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        private boolean filterMatches(Stanza stanza) {
+            return filter == null || filter.accept(stanza);
+        }
+    }
+
+    private final Map<V, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final Map<StanzaDispatchKey, List<Entry<V>>> keyedEntries = new ConcurrentHashMap<>();
+
+    private final List<Entry<V>> unkeyedEntries = new CopyOnWriteArrayList<>();
+
+    private long nextSequenceNumber;
+
+    /**
+     * Add the given value with the given filter. If the value was already added, then its filter is replaced.
+     *
+     * @param value the value.
+     * @param filter the filter, or <code>null</code> if the value should match every stanza.
+     */
+    synchronized void put(V value, StanzaFilter filter) {
+        Entry<V> previousEntry = removeEntry(value);
+
+        final long sequenceNumber;
+        if (previousEntry != null) {
+            // Keep the position of the value, like a LinkedHashMap would do.
+            sequenceNumber = previousEntry.sequenceNumber;
+        } else {
+            sequenceNumber = nextSequenceNumber++;
+        }
+
+        StanzaDispatchKey dispatchKey = filter != null ? filter.getDispatchKey() : null;
+        Entry<V> entry = new Entry<>(value, filter, dispatchKey, sequenceNumber);
+
+        if (dispatchKey == null) {
+            unkeyedEntries.add(entry);
+        } else {
+            List<Entry<V>> keyedEntryList = keyedEntries.get(dispatchKey);
+            if (keyedEntryList == null) {
+                keyedEntryList = new CopyOnWriteArrayList<>();
+                keyedEntries.put(dispatchKey, keyedEntryList);
+            }
+            keyedEntryList.add(entry);
+        }
+
+        entries.put(value, entry);
+    }
+
+    /**
+     * Remove the given value.
+     *
+     * @param value the value to remove.
+     * @return <code>true</code> if the value was removed, <code>false</code> if it was not part of this index.
+     */
+    synchronized boolean remove(V value) {
+        return removeEntry(value) != null;
+    }
+
+    private Entry<V> removeEntry(V value) {
+        assert Thread.holdsLock(this);
+
+        Entry<V> entry = entries.remove(value);
+        if (entry == null) {
+            return null;
+        }
+
+        StanzaDispatchKey dispatchKey = entry.dispatchKey;
+        if (dispatchKey == null) {
+            unkeyedEntries.remove(entry);
+        } else {
+            List<Entry<V>> keyedEntryList = keyedEntries.get(dispatchKey);
+            keyedEntryList.remove(entry);
+            if (keyedEntryList.isEmpty()) {
+                keyedEntries.remove(dispatchKey);
+            }
+        }
+
+        return entry;
+    }
+
+    boolean contains(V value) {
+        return entries.containsKey(value);
+    }
+
+    /**
+     * Get a weakly consistent view of all values of this index.
+     *
+     * @return all values of this index.
+     */
+    Collection<V> values() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Add every value whose filter accepts the given stanza to the given collection.
+     *
+     * @param stanza the stanza.
+     * @param stanzaDispatchKeys the dispatch keys of the stanza, as determined by
+     *        {@link StanzaDispatchKey#addKeysOf(Stanza, List)}.
+     * @param matchingValues the collection the matching values are added to.
+     */
+    void extractMatching(Stanza stanza, List<StanzaDispatchKey> stanzaDispatchKeys,
+                    Collection<? super V> matchingValues) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<Entry<V>> matchingEntries = new ArrayList<>();
+        for (StanzaDispatchKey stanzaDispatchKey : stanzaDispatchKeys) {
+            List<Entry<V>> keyedEntryList = keyedEntries.get(stanzaDispatchKey);
+            if (keyedEntryList == null) {
+                continue;
+            }
+            for (Entry<V> entry : keyedEntryList) {
+                if (entry.filterMatches(stanza)) {
+                    matchingEntries.add(entry);
+                }
+            }
+        }
+
+        for (Entry<V> entry : unkeyedEntries) {
+            if (entry.filterMatches(stanza)) {
+                matchingEntries.add(entry);
+            }
+        }
+
+        if (matchingEntries.size() > 1) {
+            matchingEntries.sort(SEQUENCE_NUMBER_COMPARATOR);
+        }
+
+        for (Entry<V> entry : matchingEntries) {
+            matchingValues.add(entry.value);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel for a large number of timeouts which are usually cancelled before they expire, like the
+ * timeouts of IQ requests. Scheduling and cancelling a timeout are O(1) and lock free. Instead of one
+ * {@link ScheduledAction} per timeout, the wheel uses a single scheduled action, which is only present while the wheel
+ * holds timeouts, and which advances the wheel by one tick at a time.
+ * <p>
+ * The timeouts fire with a granularity of the tick duration, i.e., they may fire up to one tick later than requested.
+ * The tasks of expired timeouts are run on a reactor thread and hence must not block.
+ * </p>
+ */
+public final class TimerWheel {
+
+    private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getName());
+
+    public static final class Timeout {
+        private volatile Runnable task;
+
+        private final long deadlineNanos;
+
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancel this timeout.
+         *
+         * @return <code>true</code> if the timeout was cancelled, <code>false</code> if it already expired or was
+         *         cancelled before.
+         */
+        public boolean cancel() {
+            // Drop the reference to the task, so that the garbage collector is able to reclaim it (and everything it
+            // references) even though the timeout is only removed from its bucket once the wheel reaches the bucket.
+            synchronized (this) {
+                if (task == null) {
+                    return false;
+                }
+                task = null;
+                return true;
+            }
+        }
+
+        public boolean isCancelledOrExpired() {
+            return task == null;
+        }
+
+        private Runnable expire() {
+            synchronized (this) {
+                Runnable task = this.task;
+                this.task = null;
+                return task;
+            }
+        }
+    }
+
+    private final SmackReactor reactor;
+
+    private final long tickDurationNanos;
+
+    /**
+     * The buckets of the wheel. Only accessed by the currently running tick action.
+     */
+    private final List<List<Timeout>> wheel;
+
+    private final int mask;
+
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean ticking = new AtomicBoolean();
+
+    private final long startTimeNanos = System.nanoTime();
+
+    /**
+     * The number of the last tick processed. Only accessed by the currently running tick action.
+     */
+    private long lastTick = -1;
+
+    /**
+     * The number of timeouts in the buckets of the wheel. Only accessed by the currently running tick action.
+     */
+    private int bucketedTimeouts;
+
+    private final Runnable tickAction = this::tick;
+
+    /**
+     * Create a new timer wheel.
+     *
+     * @param reactor the reactor driving the timer wheel.
+     * @param tickDuration the duration of a tick.
+     * @param unit the time unit of the tick duration.
+     * @param wheelSize the number of buckets, will be rounded up to the next power of two.
+     */
+    public TimerWheel(SmackReactor reactor, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid wheel size: " + wheelSize);
+        }
+        this.reactor = reactor;
+        this.tickDurationNanos = unit.toNanos(tickDuration);
+
+        int normalizedWheelSize = Integer.highestOneBit(wheelSize);
+        if (normalizedWheelSize < wheelSize) {
+            normalizedWheelSize <<= 1;
+        }
+        wheel = new ArrayList<>(normalizedWheelSize);
+        for (int i = 0; i < normalizedWheelSize; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        mask = normalizedWheelSize - 1;
+    }
+
+    /**
+     * Schedule the given task to be run after the given delay, unless the returned timeout is cancelled before.
+     *
+     * @param task the task, which must not block.
+     * @param delay the delay.
+     * @param unit the time unit of the delay.
+     * @return the timeout.
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        long deadlineNanos = System.nanoTime() - startTimeNanos + unit.toNanos(delay);
+        Timeout timeout = new Timeout(task, deadlineNanos);
+        newTimeouts.add(timeout);
+
+        if (ticking.compareAndSet(false, true)) {
+            scheduleNextTick();
+        }
+
+        return timeout;
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startTimeNanos) / tickDurationNanos;
+    }
+
+    private void scheduleNextTick() {
+        long nextTickNanos = (currentTick() + 1) * tickDurationNanos;
+        long delayNanos = nextTickNanos - (System.nanoTime() - startTimeNanos);
+        reactor.schedule(tickAction, Math.max(TimeUnit.NANOSECONDS.toMillis(delayNanos), 1), TimeUnit.MILLISECONDS,
+                        ScheduledAction.Kind.NonBlocking);
+    }
+
+    private void tick() {
+        final long currentTick = currentTick();
+        if (lastTick < 0 || bucketedTimeouts == 0) {
+            // The wheel was idle, there is no need to process the buckets of the ticks that passed meanwhile.
+            lastTick = currentTick - 1;
+        }
+
+        List<Runnable> expiredTasks = new ArrayList<>();
+        // Process the elapsed ticks first, so that new timeouts are never put into buckets of already processed ticks.
+        for (long tick = lastTick + 1; tick <= currentTick; tick++) {
+            expireBucket(tick, expiredTasks);
+        }
+        lastTick = currentTick;
+
+        for (Timeout timeout; (timeout = newTimeouts.poll()) != null;) {
+            if (timeout.isCancelledOrExpired()) {
+                continue;
+            }
+            long deadlineTick = timeout.deadlineNanos / tickDurationNanos;
+            if (deadlineTick <= currentTick) {
+                Runnable task = timeout.expire();
+                if (task != null) {
+                    expiredTasks.add(task);
+                }
+                continue;
+            }
+            timeout.remainingRounds = (deadlineTick - currentTick - 1) / wheel.size();
+            wheel.get((int) (deadlineTick & mask)).add(timeout);
+            bucketedTimeouts++;
+        }
+
+        for (Runnable task : expiredTasks) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Exception in timer wheel task", e);
+            }
+        }
+
+        if (bucketedTimeouts > 0 || !newTimeouts.isEmpty()) {
+            scheduleNextTick();
+            return;
+        }
+
+        ticking.set(false);
+        // Re-check after resetting the ticking flag to avoid a lost wakeup, as a timeout could have been added right
+        // after we checked newTimeouts.
+        if (!newTimeouts.isEmpty() && ticking.compareAndSet(false, true)) {
+            scheduleNextTick();
+        }
+    }
+
+    private void expireBucket(long tick, List<Runnable> expiredTasks) {
+        List<Timeout> bucket = wheel.get((int) (tick & mask));
+        if (bucket.isEmpty()) {
+            return;
+        }
+
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.isCancelledOrExpired()) {
+                it.remove();
+                bucketedTimeouts--;
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            it.remove();
+            bucketedTimeouts--;
+            Runnable task = timeout.expire();
+            if (task != null) {
+                expiredTasks.add(task);
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2009 Jive Software.
+ * Copyright 2009 Jive Software, 2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@
 package org.jivesoftware.smack;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -649,6 +651,36 @@ public interface XMPPConnection {
      */
     SmackFuture<IQ, Exception> sendIqRequestAsync(IQ request, long timeout);
 
+    /**
+     * Send a batch of independent IQ requests asynchronously. The requests are pipelined, i.e., the connection does not
+     * wait for the response of one request before sending the next one. At most
+     * {@link SmackConfiguration#getIqRequestBatchMaxInFlight()} requests await their response at the same time.
+     *
+     * @param requests the IQ requests to send.
+     * @return a list of SmackFutures for the responses, in the same order as the requests.
+     * @see #sendIqRequestsAsync(Collection, int)
+     */
+    default List<SmackFuture<IQ, Exception>> sendIqRequestsAsync(Collection<? extends IQ> requests) {
+        return sendIqRequestsAsync(requests, SmackConfiguration.getIqRequestBatchMaxInFlight());
+    }
+
+    /**
+     * Send a batch of independent IQ requests asynchronously. The requests are pipelined, i.e., the connection does not
+     * wait for the response of one request before sending the next one. The first {@code maxInFlight} requests are
+     * queued back-to-back, so that they are usually written with a single flush. Whenever a request is completed, the
+     * next request is sent, hence the latency of the whole batch is close to a single round-trip if the batch fits into
+     * the window. Requests whose future is cancelled before they are sent, are not sent at all. The connection's default
+     * reply timeout applies to every request, starting when the request is sent.
+     *
+     * @param requests the IQ requests to send.
+     * @param maxInFlight the maximum number of requests awaiting their response at the same time.
+     * @return a list of SmackFutures for the responses, in the same order as the requests.
+     * @since 4.5.0
+     */
+    default List<SmackFuture<IQ, Exception>> sendIqRequestsAsync(Collection<? extends IQ> requests, int maxInFlight) {
+        return IqRequestBatch.send(this, requests, maxInFlight);
+    }
+
     /**
      * Send a stanza asynchronously, waiting for exactly one response stanza using the given reply filter. The
      * connection's default reply timeout will be used.
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 import javax.net.ssl.SSLSession;
 
 import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.NonzaCallback;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
@@ -65,12 +66,14 @@ import org.jivesoftware.smack.fsm.StateTransitionResult;
 import org.jivesoftware.smack.fsm.StateTransitionResult.AttemptResult;
 import org.jivesoftware.smack.internal.AbstractStats;
 import org.jivesoftware.smack.internal.SmackTlsContext;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.AbstractStreamClose;
 import org.jivesoftware.smack.packet.AbstractStreamOpen;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.packet.Nonza;
 import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.StreamError;
 import org.jivesoftware.smack.packet.TopLevelStreamElement;
 import org.jivesoftware.smack.packet.XmlEnvironment;
@@ -160,6 +163,9 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
     private final Map<Class<? extends ModularXmppClientToServerConnectionModuleDescriptor>, ModularXmppClientToServerConnectionModule<? extends ModularXmppClientToServerConnectionModuleDescriptor>> connectionModules = new HashMap<>();
 
     private final Map<Class<? extends ModularXmppClientToServerConnectionModuleDescriptor>, XmppClientToServerTransport> transports = new HashMap<>();
+
+    private StreamManagementHooks streamManagementHooks;
+
     /**
      * This is one of those cases where the field is modified by one thread and read by another. We currently use
      * CopyOnWriteArrayList but should potentially use a VarHandle once Smack supports them.
@@ -182,6 +188,11 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
                 ModularXmppClientToServerConnection.this.parseAndProcessElement(wrappedCompleteElement);
             }
 
+            @Override
+            public void parseAndProcessElement(XmlPullParser parser) {
+                ModularXmppClientToServerConnection.this.parseAndProcessElement(parser);
+            }
+
             @Override
             public void notifyConnectionError(Exception e) {
                 ModularXmppClientToServerConnection.this.notifyConnectionError(e);
@@ -200,6 +211,10 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
 
             @Override
             public void fireFirstLevelElementSendListeners(TopLevelStreamElement element) {
+                final StreamManagementHooks streamManagementHooks = ModularXmppClientToServerConnection.this.streamManagementHooks;
+                if (streamManagementHooks != null) {
+                    streamManagementHooks.onTopLevelStreamElementSent(element);
+                }
                 ModularXmppClientToServerConnection.this.firePacketSendingListeners(element);
             }
 
@@ -284,6 +299,21 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             public void notifyDataReceived() {
                 ModularXmppClientToServerConnection.this.notifyDataReceived();
             }
+
+            @Override
+            public NonzaCallback.Builder buildNonzaCallback() {
+                return ModularXmppClientToServerConnection.this.buildNonzaCallback();
+            }
+
+            @Override
+            public void send(TopLevelStreamElement element) throws NotConnectedException, InterruptedException {
+                ModularXmppClientToServerConnection.this.sendInternal(element);
+            }
+
+            @Override
+            public void setStreamResumed(boolean streamResumed) {
+                ModularXmppClientToServerConnection.this.streamResumed = streamResumed;
+            }
         };
 
         // Construct the modules from the module descriptor. We do this before constructing the state graph, as the
@@ -299,6 +329,11 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             if (transport != null) {
                 transports.put(moduleDescriptorClass, transport);
             }
+
+            StreamManagementHooks streamManagementHooks = connectionModule.getStreamManagementHooks();
+            if (streamManagementHooks != null) {
+                this.streamManagementHooks = streamManagementHooks;
+            }
         }
 
         GraphVertex<StateDescriptor> initialStateDescriptorVertex = configuration.initialStateDescriptorVertex;
@@ -507,7 +542,13 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             throw new NotConnectedException();
         }
 
+        final StreamManagementHooks streamManagementHooks = this.streamManagementHooks;
+        if (streamManagementHooks != null && element instanceof Stanza) {
+            streamManagementHooks.beforeStanzaQueued((Stanza) element);
+        }
+
         outgoingElementsQueue.put(element);
+        recordOutgoingQueueDepth();
         transport.notifyAboutNewOutgoingElements();
     }
 
@@ -518,14 +559,30 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             throw new NotConnectedException();
         }
 
+        final StreamManagementHooks streamManagementHooks = element instanceof Stanza ? this.streamManagementHooks : null;
+        if (streamManagementHooks != null && !streamManagementHooks.tryBeforeStanzaQueued((Stanza) element)) {
+            throw new OutgoingQueueFullException();
+        }
+
         boolean enqueued = outgoingElementsQueue.offer(element);
         if (!enqueued) {
+            if (streamManagementHooks != null) {
+                streamManagementHooks.stanzaNotQueued((Stanza) element);
+            }
             throw new OutgoingQueueFullException();
         }
+        recordOutgoingQueueDepth();
 
         transport.notifyAboutNewOutgoingElements();
     }
 
+    private void recordOutgoingQueueDepth() {
+        final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+        if (metrics != null) {
+            metrics.outgoingQueueDepth.record(outgoingElementsQueue.size());
+        }
+    }
+
     @Override
     protected void shutdown() {
         shutdown(false);
@@ -541,7 +598,18 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
         return configuration;
     }
 
+    @Override
+    public boolean requestSmAcknowledgementIfEnabled() {
+        final StreamManagementHooks streamManagementHooks = this.streamManagementHooks;
+        return streamManagementHooks != null && streamManagementHooks.requestAcknowledgement();
+    }
+
     private void shutdown(boolean instant) {
+        final StreamManagementHooks streamManagementHooks = this.streamManagementHooks;
+        if (streamManagementHooks != null) {
+            streamManagementHooks.beforeShutdown(instant);
+        }
+
         Class<? extends StateDescriptor> mandatoryIntermediateState;
         if (instant) {
             mandatoryIntermediateState = InstantShutdownStateDescriptor.class;
@@ -585,32 +653,7 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             outerloop: while (true) {
                 switch (event) {
                 case START_ELEMENT:
-                    final String name = parser.getName();
-                    // Note that we don't handle "stream" here as it's done in the splitter.
-                    switch (name) {
-                    case Message.ELEMENT:
-                    case IQ.IQ_ELEMENT:
-                    case Presence.ELEMENT:
-                        try {
-                            parseAndProcessStanza(parser);
-                        } finally {
-                            // TODO: Here would be the following stream management code.
-                            // clientHandledStanzasCount = SMUtils.incrementHeight(clientHandledStanzasCount);
-                        }
-                        break;
-                    case "error":
-                        StreamError streamError = PacketParserUtils.parseStreamError(parser, null, getJxmppContext());
-                        StreamErrorException streamErrorException = new StreamErrorException(streamError);
-                        setCurrentConnectionExceptionAndNotify(streamErrorException);
-                        throw streamErrorException;
-                    case "features":
-                        parseFeatures(parser);
-                        afterFeaturesReceived();
-                        break;
-                    default:
-                        parseAndProcessNonza(parser);
-                        break;
-                    }
+                    parseAndProcessTopLevelElement(parser);
                     break;
                 case END_DOCUMENT:
                     break outerloop;
@@ -624,6 +667,47 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
         }
     }
 
+    private void parseAndProcessElement(XmlPullParser parser) {
+        try {
+            parseAndProcessTopLevelElement(parser);
+        } catch (XmlPullParserException | IOException | InterruptedException | StreamErrorException
+                        | SmackParsingException e) {
+            notifyConnectionError(e);
+        }
+    }
+
+    private void parseAndProcessTopLevelElement(XmlPullParser parser) throws XmlPullParserException, IOException,
+                    InterruptedException, StreamErrorException, SmackParsingException {
+        final String name = parser.getName();
+        // Note that we don't handle "stream" here as it's done in the splitter.
+        switch (name) {
+        case Message.ELEMENT:
+        case IQ.IQ_ELEMENT:
+        case Presence.ELEMENT:
+            try {
+                parseAndProcessStanza(parser);
+            } finally {
+                final StreamManagementHooks streamManagementHooks = this.streamManagementHooks;
+                if (streamManagementHooks != null) {
+                    streamManagementHooks.onIncomingStanzaHandled();
+                }
+            }
+            break;
+        case "error":
+            StreamError streamError = PacketParserUtils.parseStreamError(parser, null, getJxmppContext());
+            StreamErrorException streamErrorException = new StreamErrorException(streamError);
+            setCurrentConnectionExceptionAndNotify(streamErrorException);
+            throw streamErrorException;
+        case "features":
+            parseFeatures(parser);
+            afterFeaturesReceived();
+            break;
+        default:
+            parseAndProcessNonza(parser);
+            break;
+        }
+    }
+
     private synchronized void prepareToWaitForFeaturesReceived() {
         featuresReceived = false;
     }
@@ -933,8 +1017,7 @@ public final class ModularXmppClientToServerConnection extends AbstractXMPPConne
             LoginContext loginContext = walkStateGraphContext.getLoginContext();
             Resourcepart resource = bindResourceAndEstablishSession(loginContext.resource);
 
-            // TODO: This should be a field in the Stream Management (SM) module. Here should be hook which the SM
-            // module can use to set the field instead.
+            // The Stream Management (SM) module sets this to true if the stream was resumed instead.
             streamResumed = false;
 
             return new ResourceBoundResult(resource, loginContext.resource);
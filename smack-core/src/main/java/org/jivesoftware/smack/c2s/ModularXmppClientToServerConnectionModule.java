@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2020 Florian Schmaus
+ * Copyright 2020-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -37,4 +37,8 @@ public abstract class ModularXmppClientToServerConnectionModule<MD extends Modul
     protected XmppClientToServerTransport getTransport() {
         return null;
     }
+
+    protected StreamManagementHooks getStreamManagementHooks() {
+        return null;
+    }
 }
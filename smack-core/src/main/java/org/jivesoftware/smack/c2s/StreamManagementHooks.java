@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.c2s;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+
+/**
+ * Hooks into the stanza flow of a {@link ModularXmppClientToServerConnection}, as required to implement Stream
+ * Management (XEP-0198). A connection module provides those hooks via
+ * {@link ModularXmppClientToServerConnectionModule#getStreamManagementHooks()}.
+ */
+public interface StreamManagementHooks {
+
+    /**
+     * Invoked before an outgoing stanza is put into the outgoing queue. Implementations may block until there is
+     * capacity for the stanza.
+     *
+     * @param stanza the stanza about to be queued.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    void beforeStanzaQueued(Stanza stanza) throws InterruptedException;
+
+    /**
+     * Non-blocking variant of {@link #beforeStanzaQueued(Stanza)}.
+     *
+     * @param stanza the stanza about to be queued.
+     * @return <code>true</code> if the stanza can be queued, <code>false</code> otherwise.
+     */
+    boolean tryBeforeStanzaQueued(Stanza stanza);
+
+    /**
+     * Invoked if a stanza, for which {@link #tryBeforeStanzaQueued(Stanza)} returned <code>true</code>, could not be
+     * queued after all.
+     *
+     * @param stanza the stanza that was not queued.
+     */
+    void stanzaNotQueued(Stanza stanza);
+
+    /**
+     * Invoked by the transport once a top-level stream element was written. The invocations happen in the order in
+     * which the elements appear on the wire.
+     *
+     * @param element the top-level stream element that was sent.
+     */
+    void onTopLevelStreamElementSent(TopLevelStreamElement element);
+
+    /**
+     * Invoked after an incoming stanza was handled.
+     */
+    void onIncomingStanzaHandled();
+
+    /**
+     * Request an acknowledgement from the server, if Stream Management is enabled. Must not block.
+     *
+     * @return <code>true</code> if an acknowledgement was requested, <code>false</code> otherwise.
+     */
+    boolean requestAcknowledgement();
+
+    /**
+     * Invoked before the connection is shut down.
+     *
+     * @param instant <code>true</code> if this is an instant shutdown, e.g. because of a connection error.
+     */
+    void beforeShutdown(boolean instant);
+
+}
@@ -22,9 +22,12 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.util.ListIterator;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import org.jivesoftware.smack.NonzaCallback;
+import org.jivesoftware.smack.ScheduledAction;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
@@ -42,6 +45,7 @@ import org.jivesoftware.smack.internal.SmackTlsContext;
 import org.jivesoftware.smack.packet.Nonza;
 import org.jivesoftware.smack.packet.TopLevelStreamElement;
 import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.util.DirectByteBufferPool;
 import org.jivesoftware.smack.util.PacketParserUtils;
 import org.jivesoftware.smack.xml.XmlPullParser;
 import org.jivesoftware.smack.xml.XmlPullParserException;
@@ -73,6 +77,14 @@ public abstract class ModularXmppClientToServerConnectionInternal {
         reactor.setInterestOps(selectionKey, interestOps);
     }
 
+    public ScheduledAction schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return reactor.schedule(runnable, delay, unit);
+    }
+
+    public DirectByteBufferPool getBufferPool() {
+        return reactor.getBufferPool();
+    }
+
     public final void withSmackDebugger(Consumer<SmackDebugger> smackDebuggerConsumer) {
         if (smackDebugger == null) {
             return;
@@ -87,6 +99,14 @@ public abstract class ModularXmppClientToServerConnectionInternal {
     // of type string. But would this also work for BOSH or WebSocket?
     public abstract void parseAndProcessElement(String wrappedCompleteIncomingElement);
 
+    /**
+     * Parse and process the top-level stream element the given parser is currently positioned at. This allows
+     * transports to keep a single parser per stream instead of creating a new parser for every element.
+     *
+     * @param parser a XML pull parser positioned at the START_ELEMENT event of a top-level stream element.
+     */
+    public abstract void parseAndProcessElement(XmlPullParser parser);
+
     public abstract void notifyConnectionError(Exception e);
 
     public final String onStreamOpen(String streamOpen) {
@@ -145,4 +165,18 @@ public abstract class ModularXmppClientToServerConnectionInternal {
 
     public abstract void notifyDataReceived();
 
+    public abstract NonzaCallback.Builder buildNonzaCallback();
+
+    /**
+     * Send the given top-level stream element without invoking the stanza interceptors. This is used to re-send
+     * stanzas that already went through the interceptors, e.g. after a stream was resumed.
+     *
+     * @param element the element to send.
+     * @throws NotConnectedException if the connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    public abstract void send(TopLevelStreamElement element) throws NotConnectedException, InterruptedException;
+
+    public abstract void setStreamResumed(boolean streamResumed);
+
 }
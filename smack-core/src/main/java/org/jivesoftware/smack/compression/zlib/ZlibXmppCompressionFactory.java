@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2018 Florian Schmaus
+ * Copyright 2018-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,10 @@ package org.jivesoftware.smack.compression.zlib;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Adler32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -32,13 +36,132 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
 
     public static final ZlibXmppCompressionFactory INSTANCE = new ZlibXmppCompressionFactory();
 
+    /**
+     * A preset dictionary of common XMPP vocabulary. Zlib favors the strings at the end of the dictionary, hence the
+     * most frequent ones are placed last.
+     */
+    private static final byte[] PRESET_DICTIONARY = (
+                    "<stream:features><compression xmlns='http://jabber.org/features/compress'><method>zlib</method>"
+                    + "<sm xmlns='urn:xmpp:sm:3'/><c xmlns='http://jabber.org/protocol/caps' hash='sha-1' node='' ver=''/>"
+                    + "<query xmlns='jabber:iq:roster'><item jid='' subscription='both'/></query>"
+                    + "<pubsub xmlns='http://jabber.org/protocol/pubsub'><items node=''><item id=''>"
+                    + "<event xmlns='http://jabber.org/protocol/pubsub#event'>"
+                    + "<query xmlns='http://jabber.org/protocol/disco#info'><identity category='' type=''/><feature var=''/>"
+                    + "<ping xmlns='urn:xmpp:ping'/><iq type='result' id=''/><iq type='get' id='' to=''>"
+                    + "<iq type='set' id=''><delay xmlns='urn:xmpp:delay' stamp=''/><thread></thread>"
+                    + "<active xmlns='http://jabber.org/protocol/chatstates'/>"
+                    + "<composing xmlns='http://jabber.org/protocol/chatstates'/>"
+                    + "<received xmlns='urn:xmpp:receipts' id=''/><request xmlns='urn:xmpp:receipts'/>"
+                    + "<stanza-id xmlns='urn:xmpp:sid:0' by='' id=''/><origin-id xmlns='urn:xmpp:sid:0' id=''/>"
+                    + "<show>away</show><show>chat</show><show>dnd</show><show>xa</show><status></status><priority>0</priority>"
+                    + "<presence type='unavailable' from='' to=''/><presence from='' to='' id=''>"
+                    + "<r xmlns='urn:xmpp:sm:3'/><a xmlns='urn:xmpp:sm:3' h=''/>"
+                    + "<message type='chat' from='' to='' id=''><body></body></message>"
+                    ).getBytes(StandardCharsets.UTF_8);
+
+    private static final int PRESET_DICTIONARY_ID;
+
+    static {
+        Adler32 adler32 = new Adler32();
+        adler32.update(PRESET_DICTIONARY, 0, PRESET_DICTIONARY.length);
+        PRESET_DICTIONARY_ID = (int) adler32.getValue();
+    }
+
+    private static final int MAX_POOLED_INSTANCES = 32;
+
+    /**
+     * Pools of {@link Deflater} and {@link Inflater} instances shared by all connections, so that the native memory of
+     * those instances is re-used.
+     */
+    private static final Deque<Deflater> DEFLATER_POOL = new ArrayDeque<>(MAX_POOLED_INSTANCES);
+    private static final Deque<Inflater> INFLATER_POOL = new ArrayDeque<>(MAX_POOLED_INSTANCES);
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean presetDictionary;
+
     private ZlibXmppCompressionFactory() {
         super("zlib", 100);
     }
 
     @Override
     public XmppInputOutputFilter fabricate(ConnectionConfiguration configuration) {
-        return new ZlibXmppInputOutputFilter();
+        return new ZlibXmppInputOutputFilter(compressionLevel, presetDictionary);
+    }
+
+    /**
+     * Set the compression level used for new connections. Lower levels require less CPU time, which is usually
+     * preferable for the small stanzas of XMPP, where higher levels rarely achieve a better ratio.
+     *
+     * @param compressionLevel the compression level, between 0 and 9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Set if a preset dictionary of common XMPP vocabulary is used to compress the outgoing data of new connections.
+     * This considerably improves the compression ratio of small stanzas.
+     * <p>
+     * <b>Warning:</b> Decompressing data compressed with a preset dictionary requires the very same dictionary. Only
+     * enable this if the remote side is known to use Smack's preset dictionary, since XEP-0138 does not specify one.
+     * Incoming data compressed with Smack's preset dictionary is always decompressed, regardless of this setting. Also
+     * note that the dictionary is lost after the first full flush, hence this is most beneficial if the flush method is
+     * {@link FlushMethod#SYNC_FLUSH}.
+     * </p>
+     *
+     * @param presetDictionary <code>true</code> if the preset dictionary should be used.
+     */
+    public void setPresetDictionaryEnabled(boolean presetDictionary) {
+        this.presetDictionary = presetDictionary;
+    }
+
+    private static Deflater acquireDeflater(int compressionLevel) {
+        Deflater deflater;
+        synchronized (DEFLATER_POOL) {
+            deflater = DEFLATER_POOL.pollFirst();
+        }
+        if (deflater == null) {
+            return new Deflater(compressionLevel);
+        }
+        deflater.setLevel(compressionLevel);
+        return deflater;
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        synchronized (DEFLATER_POOL) {
+            if (DEFLATER_POOL.size() < MAX_POOLED_INSTANCES) {
+                DEFLATER_POOL.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater;
+        synchronized (INFLATER_POOL) {
+            inflater = INFLATER_POOL.pollFirst();
+        }
+        if (inflater == null) {
+            return new Inflater();
+        }
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        synchronized (INFLATER_POOL) {
+            if (INFLATER_POOL.size() < MAX_POOLED_INSTANCES) {
+                INFLATER_POOL.addFirst(inflater);
+                return;
+            }
+        }
+        inflater.end();
     }
 
     private static final class ZlibXmppInputOutputFilter implements XmppInputOutputFilter {
@@ -46,33 +169,49 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
         private static final int MINIMUM_OUTPUT_BUFFER_INITIAL_SIZE = 4;
         private static final int MINIMUM_OUTPUT_BUFFER_INCREASE = 480;
 
-        private final Deflater compressor;
-        private final Inflater decompressor = new Inflater();
+        private final int compressionLevel;
+        private final boolean presetDictionary;
+
+        /**
+         * The compressor and decompressor, which are returned to the pool, and set to <code>null</code>, once the filter
+         * got closed.
+         */
+        private Deflater compressor;
+        private Inflater decompressor;
 
         private long compressorInBytes;
         private long compressorOutBytes;
+        private long compressorNanos;
 
         private long decompressorInBytes;
         private long decompressorOutBytes;
+        private long decompressorNanos;
 
         private int maxOutputOutput = -1;
         private int maxInputOutput = -1;
 
         private int maxBytesWrittenAfterFullFlush = -1;
 
-        private ZlibXmppInputOutputFilter() {
-            this(Deflater.DEFAULT_COMPRESSION);
-        }
-
-        private ZlibXmppInputOutputFilter(int compressionLevel) {
-            compressor = new Deflater(compressionLevel);
+        private ZlibXmppInputOutputFilter(int compressionLevel, boolean presetDictionary) {
+            this.compressionLevel = compressionLevel;
+            this.presetDictionary = presetDictionary;
+            compressor = acquireDeflater(compressionLevel);
+            if (presetDictionary) {
+                compressor.setDictionary(PRESET_DICTIONARY);
+            }
+            decompressor = acquireInflater();
         }
 
         private ByteBuffer outputBuffer;
 
         @Override
-        public OutputResult output(ByteBuffer outputData, boolean isFinalDataOfElement, boolean destinationAddressChanged,
-                        boolean moreDataAvailable) throws IOException {
+        public synchronized OutputResult output(ByteBuffer outputData, boolean isFinalDataOfElement,
+                        boolean destinationAddressChanged, boolean moreDataAvailable) throws IOException {
+            if (compressor == null) {
+                // The filter was closed.
+                return OutputResult.NO_OUTPUT;
+            }
+
             if (destinationAddressChanged && XMPPInputOutputStream.getFlushMethod() == FlushMethod.FULL_FLUSH) {
                 outputBuffer = ByteBuffer.allocate(256);
 
@@ -134,6 +273,7 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
         private int deflate(int flushMode) {
 //            compressor.finish();
 
+            final long startNanos = System.nanoTime();
             int totalBytesWritten = 0;
             while (true) {
                 int initialOutputBufferPosition = outputBuffer.position();
@@ -165,11 +305,17 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
                 outputBuffer = newCurrentOutputBuffer;
             }
 
+            compressorNanos += System.nanoTime() - startNanos;
             return totalBytesWritten;
         }
 
         @Override
-        public ByteBuffer input(ByteBuffer inputData) throws IOException {
+        public synchronized ByteBuffer input(ByteBuffer inputData) throws IOException {
+            if (decompressor == null) {
+                // The filter was closed.
+                return null;
+            }
+
             int bytesRemaining = inputData.remaining();
 
             final byte[] inputBytes;
@@ -195,6 +341,7 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
             // variant. It appears to hold most of the times, if not, then the buffer resize mechanism will take care of
             // it.
             ByteBuffer outputBuffer = ByteBuffer.allocate(2 * length);
+            final long startNanos = System.nanoTime();
             while (true) {
                 byte[] inflateOutputBuffer = outputBuffer.array();
                 int inflateOutputBufferOffset = outputBuffer.position();
@@ -212,6 +359,14 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
 
                 decompressorOutBytes += bytesInflated;
 
+                if (decompressor.needsDictionary()) {
+                    if (decompressor.getAdler() != PRESET_DICTIONARY_ID) {
+                        throw new IOException("Compressed data requires unknown preset dictionary " + decompressor.getAdler());
+                    }
+                    decompressor.setDictionary(PRESET_DICTIONARY);
+                    continue;
+                }
+
                 if (decompressor.needsInput()) {
                     break;
                 }
@@ -225,6 +380,8 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
                 outputBuffer = increasedOutputBuffer;
             }
 
+            decompressorNanos += System.nanoTime() - startNanos;
+
             if (bytesInflated == 0) {
                 return null;
             }
@@ -234,6 +391,18 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
             return outputBuffer;
         }
 
+        @Override
+        public synchronized void closeInputOutput() {
+            if (compressor != null) {
+                releaseDeflater(compressor);
+                compressor = null;
+            }
+            if (decompressor != null) {
+                releaseInflater(decompressor);
+                decompressor = null;
+            }
+        }
+
         @Override
         public Stats getStats() {
             return new Stats(this);
@@ -246,13 +415,20 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
     }
 
     public static final class Stats {
+        public final int compressionLevel;
+        public final boolean presetDictionary;
+
         public final long compressorInBytes;
         public final long compressorOutBytes;
         public final double compressionRatio;
+        public final long compressorNanos;
+        public final double compressorNanosPerByte;
 
         public final long decompressorInBytes;
         public final long decompressorOutBytes;
         public final double decompressionRatio;
+        public final long decompressorNanos;
+        public final double decompressorNanosPerByte;
 
         public final int maxOutputOutput;
         public final int maxInputOutput;
@@ -260,14 +436,21 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
         public final int maxBytesWrittenAfterFullFlush;
 
         private Stats(ZlibXmppInputOutputFilter filter) {
+            compressionLevel = filter.compressionLevel;
+            presetDictionary = filter.presetDictionary;
+
             // Note that we read the out bytes before the in bytes to not over approximate the compression ratio.
             compressorOutBytes = filter.compressorOutBytes;
             compressorInBytes = filter.compressorInBytes;
             compressionRatio = (double) compressorOutBytes / compressorInBytes;
+            compressorNanos = filter.compressorNanos;
+            compressorNanosPerByte = (double) compressorNanos / compressorInBytes;
 
             decompressorOutBytes = filter.decompressorOutBytes;
             decompressorInBytes = filter.decompressorInBytes;
             decompressionRatio = (double) decompressorInBytes / decompressorOutBytes;
+            decompressorNanos = filter.decompressorNanos;
+            decompressorNanosPerByte = (double) decompressorNanos / decompressorOutBytes;
 
             maxOutputOutput = filter.maxOutputOutput;
             maxInputOutput = filter.maxInputOutput;
@@ -283,12 +466,18 @@ public final class ZlibXmppCompressionFactory extends XmppCompressionFactory {
             }
 
             toStringCache =
-                "compressor-in-bytes: "  + compressorInBytes + '\n'
+                "compression-level: " + compressionLevel + '\n'
+              + "preset-dictionary: " + presetDictionary + '\n'
+              + "compressor-in-bytes: "  + compressorInBytes + '\n'
               + "compressor-out-bytes: " + compressorOutBytes + '\n'
               + "compression-ratio: " + compressionRatio + '\n'
+              + "compressor-nanos: " + compressorNanos + '\n'
+              + "compressor-nanos-per-byte: " + compressorNanosPerByte + '\n'
               + "decompressor-in-bytes: " + decompressorInBytes + '\n'
               + "decompressor-out-bytes: " + decompressorOutBytes + '\n'
               + "decompression-ratio: " + decompressionRatio + '\n'
+              + "decompressor-nanos: " + decompressorNanos + '\n'
+              + "decompressor-nanos-per-byte: " + decompressorNanosPerByte + '\n'
               + "max-output-output: " + maxOutputOutput + '\n'
               + "max-input-output: " + maxInputOutput + '\n'
               + "max-bytes-written-after-full-flush: " + maxBytesWrittenAfterFullFlush + '\n'
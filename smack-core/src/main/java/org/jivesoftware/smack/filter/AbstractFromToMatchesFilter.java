@@ -99,6 +99,33 @@ public abstract class AbstractFromToMatchesFilter implements StanzaFilter {
 
     protected abstract Jid getAddressToCompare(Stanza stanza);
 
+    /**
+     * Get the address which equals the full or the bare form of every address accepted by this filter.
+     *
+     * @return the address or <code>null</code> if there is no such address.
+     */
+    protected final Jid getDispatchAddress() {
+        if (address == null) {
+            return null;
+        }
+
+        switch (matchMode) {
+        case exact:
+        case ignoreResourcepart:
+            return address;
+        case child:
+        case strictChild:
+            // The children of an entity bare JID all share the same bare JID. This is not true for domain bare JIDs,
+            // whose children include entity bare JIDs of the domain.
+            if (address.isEntityBareJid()) {
+                return address;
+            }
+            return null;
+        default:
+            throw new IllegalStateException("Unknown matchMode: " + matchMode);
+        }
+    }
+
     @Override
     public final String toString() {
         return getClass().getSimpleName() + " (" + matchMode + "): " + address;
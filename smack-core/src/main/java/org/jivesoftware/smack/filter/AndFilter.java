@@ -65,4 +65,20 @@ public class AndFilter extends AbstractListFilter implements StanzaFilter {
         return true;
     }
 
+    /**
+     * Returns the most selective dispatch key of the filters, as every stanza accepted by this filter is accepted by
+     * all of them.
+     */
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        StanzaDispatchKey dispatchKey = null;
+        for (StanzaFilter filter : filters) {
+            StanzaDispatchKey filterDispatchKey = filter.getDispatchKey();
+            if (filterDispatchKey != null && filterDispatchKey.isMoreSelectiveThan(dispatchKey)) {
+                dispatchKey = filterDispatchKey;
+            }
+        }
+        return dispatchKey;
+    }
+
 }
@@ -51,6 +51,11 @@ public abstract class FlexibleStanzaTypeFilter<S extends Stanza> implements Stan
 
     protected abstract boolean acceptSpecific(S packet);
 
+    @Override
+    public final StanzaDispatchKey getDispatchKey() {
+        return StanzaDispatchKey.forStanzaType(stanzaType);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + ": " + stanzaType.toString();
@@ -96,4 +96,13 @@ public final class FromMatchesFilter extends AbstractFromToMatchesFilter {
         return stanza.getFrom();
     }
 
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        Jid dispatchAddress = getDispatchAddress();
+        if (dispatchAddress == null) {
+            return null;
+        }
+        return StanzaDispatchKey.forFrom(dispatchAddress);
+    }
+
 }
@@ -128,6 +128,11 @@ public class IQReplyFilter implements StanzaFilter {
         }
     }
 
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        return StanzaDispatchKey.forStanzaId(packetId);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
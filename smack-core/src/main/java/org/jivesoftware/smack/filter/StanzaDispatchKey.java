@@ -0,0 +1,180 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.filter;
+
+import java.util.List;
+
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.XmlElement;
+
+import org.jxmpp.jid.Jid;
+
+/**
+ * A key used to index stanza filters, so that incoming stanzas can be dispatched to their listeners and collectors
+ * via a hash lookup instead of testing every filter. A dispatch key describes a property which <em>every</em> stanza
+ * accepted by the filter must have. It is a necessary, but not sufficient, condition: the filter is still invoked for
+ * every stanza with a matching key.
+ *
+ * @see StanzaFilter#getDispatchKey()
+ */
+public final class StanzaDispatchKey {
+
+    public enum Kind {
+        /**
+         * The stanza ID. This is the most selective kind.
+         */
+        stanzaId,
+        /**
+         * The 'from' address, either in its full or in its bare form.
+         */
+        from,
+        /**
+         * The namespace of a stanza extension element.
+         */
+        extensionNamespace,
+        /**
+         * The stanza type, i.e. message, presence or IQ. This is the least selective kind.
+         */
+        stanzaType,
+    }
+
+    private final Kind kind;
+    private final Object value;
+    private final int hashCode;
+
+    private StanzaDispatchKey(Kind kind, Object value) {
+        this.kind = kind;
+        this.value = value;
+        this.hashCode = 31 * kind.hashCode() + value.hashCode();
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Check if this key is more selective than the given key, i.e., if it likely matches fewer stanzas.
+     *
+     * @param other the other key, may be <code>null</code>.
+     * @return <code>true</code> if this key is more selective than the other key.
+     */
+    public boolean isMoreSelectiveThan(StanzaDispatchKey other) {
+        if (other == null) {
+            return true;
+        }
+        return kind.ordinal() < other.kind.ordinal();
+    }
+
+    public static StanzaDispatchKey forStanzaId(String stanzaId) {
+        return new StanzaDispatchKey(Kind.stanzaId, stanzaId);
+    }
+
+    /**
+     * Create a dispatch key for the given 'from' address. Stanzas from a full JID produce keys for their full and for
+     * their bare JID. Hence filters matching a bare JID, and all its children, can use the bare JID as key.
+     *
+     * @param from the 'from' address.
+     * @return the dispatch key.
+     */
+    public static StanzaDispatchKey forFrom(Jid from) {
+        return new StanzaDispatchKey(Kind.from, from);
+    }
+
+    public static StanzaDispatchKey forExtensionNamespace(String namespace) {
+        return new StanzaDispatchKey(Kind.extensionNamespace, namespace);
+    }
+
+    /**
+     * Create a dispatch key for the given stanza type. Returns <code>null</code> if the type is not a sub-type of
+     * {@link Message}, {@link Presence} or {@link IQ}, as this can not be used as key.
+     *
+     * @param stanzaType the stanza type.
+     * @return the dispatch key or <code>null</code>.
+     */
+    public static StanzaDispatchKey forStanzaType(Class<? extends Stanza> stanzaType) {
+        final Class<? extends Stanza> baseType;
+        if (Message.class.isAssignableFrom(stanzaType)) {
+            baseType = Message.class;
+        } else if (Presence.class.isAssignableFrom(stanzaType)) {
+            baseType = Presence.class;
+        } else if (IQ.class.isAssignableFrom(stanzaType)) {
+            baseType = IQ.class;
+        } else {
+            return null;
+        }
+        return new StanzaDispatchKey(Kind.stanzaType, baseType);
+    }
+
+    /**
+     * Add all dispatch keys of the given stanza to the given list.
+     *
+     * @param stanza the stanza.
+     * @param keys the list the keys are added to.
+     */
+    public static void addKeysOf(Stanza stanza, List<StanzaDispatchKey> keys) {
+        String stanzaId = stanza.getStanzaId();
+        if (stanzaId != null) {
+            keys.add(forStanzaId(stanzaId));
+        }
+
+        Jid from = stanza.getFrom();
+        if (from != null) {
+            keys.add(forFrom(from));
+            if (from.hasResource()) {
+                keys.add(forFrom(from.asBareJid()));
+            }
+        }
+
+        for (XmlElement extension : stanza.getExtensions()) {
+            StanzaDispatchKey extensionKey = forExtensionNamespace(extension.getNamespace());
+            // Stanzas typically carry only a few extensions, hence the linear search is fine.
+            if (!keys.contains(extensionKey)) {
+                keys.add(extensionKey);
+            }
+        }
+
+        StanzaDispatchKey stanzaTypeKey = forStanzaType(stanza.getClass());
+        if (stanzaTypeKey != null) {
+            keys.add(stanzaTypeKey);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof StanzaDispatchKey)) {
+            return false;
+        }
+        StanzaDispatchKey otherKey = (StanzaDispatchKey) other;
+        return kind == otherKey.kind && value.equals(otherKey.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return kind + ": " + value;
+    }
+}
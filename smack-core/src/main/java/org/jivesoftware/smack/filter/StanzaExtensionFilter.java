@@ -70,6 +70,11 @@ public class StanzaExtensionFilter implements StanzaFilter {
         return packet.hasExtension(elementName, namespace);
     }
 
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        return StanzaDispatchKey.forExtensionNamespace(namespace);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + ": element=" + elementName + " namespace=" + namespace;
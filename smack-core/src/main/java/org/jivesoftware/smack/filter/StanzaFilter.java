@@ -68,6 +68,18 @@ public interface StanzaFilter extends Predicate<Stanza> {
         return accept(stanza);
     }
 
+    /**
+     * Get the dispatch key of this filter. Every stanza accepted by this filter must also produce this key, see
+     * {@link StanzaDispatchKey}. This allows the connection to find the listeners and collectors interested in an
+     * incoming stanza via a hash lookup. Filters overriding {@link #accept(Stanza)} of a filter with a dispatch key,
+     * which possibly accept stanzas without that key, must override this method and return <code>null</code>.
+     *
+     * @return the dispatch key of this filter, or <code>null</code> if the filter does not have one.
+     */
+    default StanzaDispatchKey getDispatchKey() {
+        return null;
+    }
+
     default <S extends Stanza> Predicate<S> asPredicate(Class<?> stanzaClass) {
         return s -> {
             if (!stanzaClass.isAssignableFrom(s.getClass())) {
@@ -53,6 +53,11 @@ public class StanzaIdFilter implements StanzaFilter {
         return stanzaId.equals(stanza.getStanzaId());
     }
 
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        return StanzaDispatchKey.forStanzaId(stanzaId);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + ": id=" + stanzaId;
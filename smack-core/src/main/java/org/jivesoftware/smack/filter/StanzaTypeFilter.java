@@ -56,6 +56,11 @@ public final class StanzaTypeFilter implements StanzaFilter {
         return packetType.isInstance(packet);
     }
 
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        return StanzaDispatchKey.forStanzaType(packetType);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + ": " + packetType.getSimpleName();
@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative long values, e.g., latencies in nanoseconds. Like HdrHistogram, the histogram uses
+ * log-linear buckets: Every power of two is divided into {@value #SUB_BUCKET_COUNT} linear sub-buckets, which bounds
+ * the relative error of the reported values to about 3%, while the memory footprint is constant. Recording a value is
+ * lock free and does not allocate.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+    }
+
+    /**
+     * Create a new histogram which is not part of a {@link MetricRegistry}, e.g. for statistics exposed by a single
+     * component. Use {@link MetricRegistry#histogram(String)} for histograms which should be reported.
+     *
+     * @return a new histogram.
+     */
+    public static Histogram create() {
+        return new Histogram();
+    }
+
+    static int bucketIndexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOfBucket(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        long subBucket = bucketIndex % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Record the given value. Negative values are recorded as zero.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketIndexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Record the time elapsed since the given start time, as returned by {@link System#nanoTime()}.
+     *
+     * @param startNanos the start time in nanoseconds.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    public static final class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long max;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+
+        private Snapshot(Histogram histogram) {
+            long[] counts = new long[BUCKET_COUNT];
+            long totalCount = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = histogram.buckets.get(i);
+                totalCount += counts[i];
+            }
+
+            count = totalCount;
+            mean = totalCount == 0 ? 0 : (double) histogram.sum.sum() / histogram.count.sum();
+            max = histogram.max.get();
+            p50 = valueAtPercentile(counts, totalCount, 50, max);
+            p90 = valueAtPercentile(counts, totalCount, 90, max);
+            p99 = valueAtPercentile(counts, totalCount, 99, max);
+            p999 = valueAtPercentile(counts, totalCount, 99.9, max);
+        }
+
+        private static long valueAtPercentile(long[] counts, long totalCount, double percentile, long max) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= countAtPercentile) {
+                    return Math.min(highestValueOfBucket(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + mean + " p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " p999=" + p999
+                            + " max=" + max;
+        }
+    }
+}
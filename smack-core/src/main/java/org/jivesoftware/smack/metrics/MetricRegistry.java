@@ -0,0 +1,86 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A registry of named metrics. The metrics are created on first use and live as long as the registry.
+ */
+public final class MetricRegistry {
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Get the counter with the given name, creating it if necessary.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Get the histogram with the given name, creating it if necessary.
+     *
+     * @param name the name of the histogram.
+     * @return the histogram.
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Register a gauge with the given name, replacing a previously registered gauge with the same name.
+     *
+     * @param name the name of the gauge.
+     * @param gauge the gauge.
+     */
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Report the current values of all metrics of this registry to the given reporter.
+     *
+     * @param reporter the reporter.
+     */
+    public void report(MetricsReporter reporter) {
+        reporter.beginReport();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            reporter.reportCounter(entry.getKey(), entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            reporter.reportGauge(entry.getKey(), entry.getValue().getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            reporter.reportHistogram(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        reporter.endReport();
+    }
+}
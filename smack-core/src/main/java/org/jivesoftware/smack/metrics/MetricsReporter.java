@@ -0,0 +1,38 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+/**
+ * A reporter of metrics, which exports the metrics of a {@link MetricRegistry}, e.g., to a monitoring system.
+ *
+ * @see MetricRegistry#report(MetricsReporter)
+ */
+public interface MetricsReporter {
+
+    default void beginReport() {
+    }
+
+    void reportCounter(String name, long count);
+
+    void reportGauge(String name, long value);
+
+    void reportHistogram(String name, Histogram.Snapshot snapshot);
+
+    default void endReport() {
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * The metrics recorded by Smack. The metrics are aggregated over all connections. Metrics are disabled by default, in
+ * which case the instrumented code paths only perform a single null check:
+ * <pre>{@code
+ * SmackMetrics metrics = SmackMetrics.getIfEnabled();
+ * if (metrics != null) {
+ *     metrics.reconnectionAttempts.increment();
+ * }
+ * }</pre>
+ * Once enabled, the metrics can be exported by passing a {@link MetricsReporter} to
+ * {@link MetricRegistry#report(MetricsReporter)} of the registry.
+ */
+public final class SmackMetrics {
+
+    private static volatile SmackMetrics instance;
+
+    /**
+     * Enable the metrics, recording them in the given registry.
+     *
+     * @param registry the registry to record the metrics in.
+     * @return the enabled metrics.
+     */
+    public static synchronized SmackMetrics enable(MetricRegistry registry) {
+        SmackMetrics metrics = instance;
+        if (metrics != null && metrics.registry == registry) {
+            return metrics;
+        }
+        metrics = new SmackMetrics(registry);
+        instance = metrics;
+        return metrics;
+    }
+
+    public static synchronized void disable() {
+        instance = null;
+    }
+
+    /**
+     * Get the metrics if they are enabled.
+     *
+     * @return the metrics or <code>null</code> if metrics are disabled.
+     */
+    public static SmackMetrics getIfEnabled() {
+        return instance;
+    }
+
+    public final MetricRegistry registry;
+
+    private final Counter messagesReceived;
+    private final Counter presencesReceived;
+    private final Counter iqsReceived;
+
+    private final Counter messagesSent;
+    private final Counter presencesSent;
+    private final Counter iqsSent;
+
+    /**
+     * The time in nanoseconds it takes to dispatch an incoming stanza to the matching listeners and collectors.
+     */
+    public final Histogram stanzaDispatchTime;
+
+    /**
+     * The time in nanoseconds between sending an IQ request and receiving its response.
+     */
+    public final Histogram iqRoundTripTime;
+
+    /**
+     * The depth of the outgoing queue of a connection, sampled whenever an element is put into the queue.
+     */
+    public final Histogram outgoingQueueDepth;
+
+    public final Counter bytesReadFromNetwork;
+    public final Counter bytesReadAfterFilters;
+    public final Counter bytesWrittenToNetwork;
+    public final Counter bytesWrittenBeforeFilters;
+
+    public final Counter reconnectionAttempts;
+    public final Counter reconnectionFailures;
+    public final Counter reconnectionSuccesses;
+
+    /**
+     * The time in milliseconds from losing a connection until it was re-established by the reconnection manager.
+     */
+    public final Histogram reconnectionTime;
+
+    /**
+     * The time in milliseconds between sending an automatic server ping and receiving its pong.
+     */
+    public final Histogram pingRoundTripTime;
+
+    /**
+     * The time in milliseconds the reactor ran a scheduled action later than it was due.
+     */
+    public final Histogram reactorScheduledActionDelay;
+
+    /**
+     * The number of selection keys that became ready per select operation of the reactor.
+     */
+    public final Histogram reactorSelectedKeys;
+
+    private SmackMetrics(MetricRegistry registry) {
+        this.registry = registry;
+
+        messagesReceived = registry.counter("smack.stanzas.received.message");
+        presencesReceived = registry.counter("smack.stanzas.received.presence");
+        iqsReceived = registry.counter("smack.stanzas.received.iq");
+
+        messagesSent = registry.counter("smack.stanzas.sent.message");
+        presencesSent = registry.counter("smack.stanzas.sent.presence");
+        iqsSent = registry.counter("smack.stanzas.sent.iq");
+
+        stanzaDispatchTime = registry.histogram("smack.stanzas.dispatch-time-nanos");
+        iqRoundTripTime = registry.histogram("smack.iq.round-trip-time-nanos");
+        outgoingQueueDepth = registry.histogram("smack.outgoing-queue.depth");
+
+        bytesReadFromNetwork = registry.counter("smack.bytes.read.network");
+        bytesReadAfterFilters = registry.counter("smack.bytes.read.after-filters");
+        bytesWrittenToNetwork = registry.counter("smack.bytes.written.network");
+        bytesWrittenBeforeFilters = registry.counter("smack.bytes.written.before-filters");
+
+        reconnectionAttempts = registry.counter("smack.reconnection.attempts");
+        reconnectionFailures = registry.counter("smack.reconnection.failures");
+        reconnectionSuccesses = registry.counter("smack.reconnection.successes");
+        reconnectionTime = registry.histogram("smack.reconnection.time-millis");
+        pingRoundTripTime = registry.histogram("smack.ping.round-trip-time-millis");
+
+        reactorScheduledActionDelay = registry.histogram("smack.reactor.scheduled-action-delay-millis");
+        reactorSelectedKeys = registry.histogram("smack.reactor.selected-keys");
+    }
+
+    public void stanzaReceived(Stanza stanza) {
+        increment(stanza, messagesReceived, presencesReceived, iqsReceived);
+    }
+
+    public void stanzaSent(Stanza stanza) {
+        increment(stanza, messagesSent, presencesSent, iqsSent);
+    }
+
+    private static void increment(Stanza stanza, Counter messageCounter, Counter presenceCounter, Counter iqCounter) {
+        if (stanza instanceof Message) {
+            messageCounter.increment();
+        } else if (stanza instanceof Presence) {
+            presenceCounter.increment();
+        } else if (stanza instanceof IQ) {
+            iqCounter.increment();
+        }
+    }
+}
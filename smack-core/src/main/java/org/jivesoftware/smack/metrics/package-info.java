@@ -0,0 +1,22 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Metrics of Smack, like counters of the stanzas sent and received and histograms of IQ round-trip times. Metrics are
+ * disabled by default and can be enabled via {@link org.jivesoftware.smack.metrics.SmackMetrics#enable(MetricRegistry)}.
+ */
+package org.jivesoftware.smack.metrics;
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.packet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.jivesoftware.smack.util.MultiMap;
+import org.jivesoftware.smack.util.XmppElementUtil;
+
+/**
+ * An immutable container of the extension elements of a stanza. Most stanzas carry only a handful of extension
+ * elements, hence they are stored in a plain array, which is scanned linearly. Only if the number of extension elements
+ * exceeds {@link #LINEAR_SCAN_THRESHOLD}, an additional index from the qualified name to the first position is
+ * created.
+ * <p>
+ * Like in {@link MultiMap}, extension elements with the same qualified name are kept next to each other and the groups
+ * are ordered by the first insertion of their qualified name. Since instances are immutable, they can be read without
+ * synchronization and shared between stanzas. Modifications return a new instance.
+ * </p>
+ */
+final class ExtensionElements {
+
+    static final int LINEAR_SCAN_THRESHOLD = 8;
+
+    private static final XmlElement[] NO_ELEMENTS = new XmlElement[0];
+
+    static final ExtensionElements EMPTY = new ExtensionElements(NO_ELEMENTS, new QName[0]);
+
+    private final XmlElement[] elements;
+
+    /**
+     * The qualified names of the elements, at the same position as the element. Cached, as some implementations of
+     * {@link XmlElement#getQName()} create a new QName instance on every invocation.
+     */
+    private final QName[] qnames;
+
+    private final Map<QName, Integer> firstPositions;
+
+    private ExtensionElements(XmlElement[] elements, QName[] qnames) {
+        this.elements = elements;
+        this.qnames = qnames;
+
+        if (qnames.length > LINEAR_SCAN_THRESHOLD) {
+            Map<QName, Integer> firstPositions = new HashMap<>(qnames.length);
+            for (int i = qnames.length - 1; i >= 0; i--) {
+                firstPositions.put(qnames[i], i);
+            }
+            this.firstPositions = firstPositions;
+        } else {
+            this.firstPositions = null;
+        }
+    }
+
+    static ExtensionElements from(MultiMap<QName, XmlElement> extensionElements) {
+        if (extensionElements.isEmpty()) {
+            return EMPTY;
+        }
+
+        XmlElement[] elements = new XmlElement[extensionElements.size()];
+        QName[] qnames = new QName[elements.length];
+        int i = 0;
+        for (QName qname : extensionElements.keySet()) {
+            for (XmlElement element : extensionElements.getAll(qname)) {
+                elements[i] = element;
+                qnames[i] = qname;
+                i++;
+            }
+        }
+        return new ExtensionElements(elements, qnames);
+    }
+
+    int size() {
+        return elements.length;
+    }
+
+    boolean isEmpty() {
+        return elements.length == 0;
+    }
+
+    private int firstPositionOf(QName qname) {
+        if (firstPositions != null) {
+            Integer position = firstPositions.get(qname);
+            if (position == null) {
+                return -1;
+            }
+            return position;
+        }
+
+        for (int i = 0; i < qnames.length; i++) {
+            if (qnames[i].equals(qname)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int endOfGroup(int firstPosition) {
+        QName qname = qnames[firstPosition];
+        int end = firstPosition + 1;
+        while (end < qnames.length && qnames[end].equals(qname)) {
+            end++;
+        }
+        return end;
+    }
+
+    XmlElement getFirst(QName qname) {
+        int position = firstPositionOf(qname);
+        if (position < 0) {
+            return null;
+        }
+        return elements[position];
+    }
+
+    boolean contains(QName qname) {
+        return firstPositionOf(qname) >= 0;
+    }
+
+    boolean containsNamespace(String namespace) {
+        for (QName qname : qnames) {
+            if (qname.getNamespaceURI().equals(namespace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get an unmodifiable view of all extension elements. Since the backing array is never modified, the view is
+     * effectively a snapshot.
+     *
+     * @return an unmodifiable list of all extension elements.
+     */
+    List<XmlElement> getAll() {
+        if (elements.length == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(elements));
+    }
+
+    List<XmlElement> getAll(QName qname) {
+        int position = firstPositionOf(qname);
+        if (position < 0) {
+            return Collections.emptyList();
+        }
+        int end = endOfGroup(position);
+        if (end - position == 1) {
+            return Collections.singletonList(elements[position]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(elements).subList(position, end));
+    }
+
+    <E extends ExtensionElement> List<E> getAll(Class<E> extensionElementClass) {
+        QName qname = XmppElementUtil.getQNameFor(extensionElementClass);
+        int position = firstPositionOf(qname);
+        if (position < 0) {
+            return Collections.emptyList();
+        }
+        int end = endOfGroup(position);
+
+        List<E> res = new ArrayList<>(end - position);
+        for (int i = position; i < end; i++) {
+            E e = XmppElementUtil.castOrThrow(elements[i], extensionElementClass);
+            res.add(e);
+        }
+        return res;
+    }
+
+    /**
+     * Return a new instance which additionally contains the given element. The element is placed after the last
+     * element with the same qualified name, or at the end if there is none.
+     *
+     * @param element the element to add.
+     * @return a new instance containing the element.
+     */
+    ExtensionElements with(XmlElement element) {
+        QName qname = element.getQName();
+        int position = firstPositionOf(qname);
+        int insertAt = position < 0 ? elements.length : endOfGroup(position);
+
+        XmlElement[] newElements = new XmlElement[elements.length + 1];
+        QName[] newQnames = new QName[newElements.length];
+        System.arraycopy(elements, 0, newElements, 0, insertAt);
+        System.arraycopy(qnames, 0, newQnames, 0, insertAt);
+        newElements[insertAt] = element;
+        newQnames[insertAt] = qname;
+        System.arraycopy(elements, insertAt, newElements, insertAt + 1, elements.length - insertAt);
+        System.arraycopy(qnames, insertAt, newQnames, insertAt + 1, qnames.length - insertAt);
+
+        return new ExtensionElements(newElements, newQnames);
+    }
+
+    /**
+     * Return a new instance without the elements with the given qualified name, or this instance if there are none.
+     *
+     * @param qname the qualified name of the elements to remove.
+     * @return an instance without elements of the given qualified name.
+     */
+    ExtensionElements without(QName qname) {
+        int position = firstPositionOf(qname);
+        if (position < 0) {
+            return this;
+        }
+        int end = endOfGroup(position);
+
+        int newLength = elements.length - (end - position);
+        if (newLength == 0) {
+            return EMPTY;
+        }
+
+        XmlElement[] newElements = new XmlElement[newLength];
+        QName[] newQnames = new QName[newLength];
+        System.arraycopy(elements, 0, newElements, 0, position);
+        System.arraycopy(qnames, 0, newQnames, 0, position);
+        System.arraycopy(elements, end, newElements, position, elements.length - end);
+        System.arraycopy(qnames, end, newQnames, position, qnames.length - end);
+
+        return new ExtensionElements(newElements, newQnames);
+    }
+
+    MultiMap<QName, XmlElement> toMultiMap() {
+        MultiMap<QName, XmlElement> multiMap = new MultiMap<>();
+        for (int i = 0; i < elements.length; i++) {
+            multiMap.put(qnames[i], elements[i]);
+        }
+        return multiMap;
+    }
+}
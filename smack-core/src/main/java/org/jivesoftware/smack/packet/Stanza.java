@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2003-2007 Jive Software.
+ * Copyright 2003-2007 Jive Software, 2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,9 +20,9 @@ package org.jivesoftware.smack.packet;
 import static org.jivesoftware.smack.util.StringUtils.requireNotNullNorEmpty;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.xml.namespace.QName;
 
@@ -32,7 +32,6 @@ import org.jivesoftware.smack.util.MultiMap;
 import org.jivesoftware.smack.util.PacketUtil;
 import org.jivesoftware.smack.util.StringUtils;
 import org.jivesoftware.smack.util.XmlStringBuilder;
-import org.jivesoftware.smack.util.XmppElementUtil;
 
 import org.jxmpp.jid.Jid;
 
@@ -64,7 +63,14 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     protected static final String DEFAULT_LANGUAGE =
             java.util.Locale.getDefault().getLanguage().toLowerCase(Locale.US);
 
-    private final MultiMap<QName, XmlElement> extensionElements;
+    private static final AtomicReferenceFieldUpdater<Stanza, ExtensionElements> EXTENSION_ELEMENTS_UPDATER =
+                    AtomicReferenceFieldUpdater.newUpdater(Stanza.class, ExtensionElements.class, "extensionElements");
+
+    /**
+     * The extension elements of this stanza. The container is immutable, hence readers only need to read this field
+     * once and require no synchronization. The legacy mutators replace the container using compare-and-set.
+     */
+    private volatile ExtensionElements extensionElements;
 
     // Assume that all stanzas Smack handles are in the client namespace, since Smack is an XMPP client library. We can
     // change this behavior later if it is required.
@@ -90,7 +96,7 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     protected String language;
 
     protected Stanza() {
-        extensionElements = new MultiMap<>();
+        extensionElements = ExtensionElements.EMPTY;
         usedStanzaIdSource = null;
         id = StandardStanzaIdSource.DEFAULT.getNewStanzaId();
     }
@@ -115,7 +121,7 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
 
         language = stanzaBuilder.language;
 
-        extensionElements = stanzaBuilder.extensionElements.clone();
+        extensionElements = ExtensionElements.from(stanzaBuilder.extensionElements);
     }
 
     protected Stanza(Stanza p) {
@@ -126,7 +132,8 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
         from = p.getFrom();
         error = p.error;
 
-        extensionElements = p.extensionElements.clone();
+        // The container is immutable, so it can be shared with the copy.
+        extensionElements = p.extensionElements;
     }
 
     @Override
@@ -246,10 +253,7 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
 
     @Override
     public final List<XmlElement> getExtensions() {
-        synchronized (extensionElements) {
-            // No need to create a new list, values() will already create a new one for us
-            return extensionElements.values();
-        }
+        return extensionElements.getAll();
     }
 
     public final MultiMap<QName, XmlElement> getExtensionsMap() {
@@ -257,15 +261,13 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     }
 
     final MultiMap<QName, XmlElement> cloneExtensionsMap() {
-        synchronized (extensionElements) {
-            return extensionElements.clone();
-        }
+        return extensionElements.toMultiMap();
     }
 
     /**
      * Return a list of all extensions with the given element name <em>and</em> namespace.
      * <p>
-     * Changes to the returned set will update the stanza extensions, if the returned set is not the empty set.
+     * The returned list is an unmodifiable snapshot.
      * </p>
      *
      * @param elementName the element name, must not be null.
@@ -282,18 +284,12 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
 
     @Override
     public final List<XmlElement> getExtensions(QName qname) {
-        List<XmlElement> res;
-        synchronized (extensionElements) {
-            res = extensionElements.getAll(qname);
-        }
-        return Collections.unmodifiableList(res);
+        return extensionElements.getAll(qname);
     }
 
     @Override
     public final <E extends ExtensionElement> List<E> getExtensions(Class<E> extensionElementClass) {
-        synchronized (extensionElements) {
-            return XmppElementUtil.getElementsFrom(extensionElements, extensionElementClass);
-        }
+        return extensionElements.getAll(extensionElementClass);
     }
 
     /**
@@ -337,9 +333,7 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
 
     @Override
     public final XmlElement getExtension(QName qname) {
-        synchronized (extensionElements) {
-            return extensionElements.getFirst(qname);
-        }
+        return extensionElements.getFirst(qname);
     }
 
     /**
@@ -354,10 +348,10 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     // TODO: Mark this as deprecated once StanzaBuilder is ready and all call sites are gone.
     public final void addExtension(XmlElement extension) {
         if (extension == null) return;
-        QName key = extension.getQName();
-        synchronized (extensionElements) {
-            extensionElements.put(key, extension);
-        }
+        ExtensionElements current;
+        do {
+            current = extensionElements;
+        } while (!EXTENSION_ELEMENTS_UPDATER.compareAndSet(this, current, current.with(extension)));
     }
 
     /**
@@ -375,14 +369,14 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     // TODO: Mark this as deprecated once StanzaBuilder is ready and all call sites are gone.
     public final XmlElement overrideExtension(XmlElement extension) {
         if (extension == null) return null;
-        synchronized (extensionElements) {
-            // Note that we need to use removeExtension(String, String) here. If would use
-            // removeExtension(ExtensionElement) then we would remove based on the equality of ExtensionElement, which
-            // is not what we want in this case.
-            XmlElement removedExtension = removeExtension(extension.getElementName(), extension.getNamespace());
-            addExtension(extension);
-            return removedExtension;
-        }
+        // Note that we remove based on the qualified name here. If would remove based on the equality of
+        // ExtensionElement, then we would not replace extension elements which are merely of the same kind.
+        QName key = extension.getQName();
+        ExtensionElements current;
+        do {
+            current = extensionElements;
+        } while (!EXTENSION_ELEMENTS_UPDATER.compareAndSet(this, current, current.without(key).with(extension)));
+        return current.getFirst(key);
     }
 
     /**
@@ -413,22 +407,13 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
             return hasExtension(namespace);
         }
         QName key = new QName(namespace, elementName);
-        synchronized (extensionElements) {
-            return extensionElements.containsKey(key);
-        }
+        return extensionElements.contains(key);
     }
 
     // Overridden in order to avoid an extra copy.
     @Override
     public final boolean hasExtension(String namespace) {
-        synchronized (extensionElements) {
-            for (XmlElement packetExtension : extensionElements.values()) {
-                if (packetExtension.getNamespace().equals(namespace)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return extensionElements.containsNamespace(namespace);
     }
 
     /**
@@ -441,9 +426,11 @@ public abstract class Stanza implements StanzaView, TopLevelStreamElement {
     // TODO: Mark this as deprecated once StanzaBuilder is ready and all call sites are gone.
     public final XmlElement removeExtension(String elementName, String namespace) {
         QName key = new QName(namespace, elementName);
-        synchronized (extensionElements) {
-            return extensionElements.remove(key);
-        }
+        ExtensionElements current;
+        do {
+            current = extensionElements;
+        } while (!EXTENSION_ELEMENTS_UPDATER.compareAndSet(this, current, current.without(key)));
+        return current.getFirst(key);
     }
 
     /**
@@ -0,0 +1,206 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of direct byte buffers, which is meant to be shared by many connections, e.g., all connections of a
+ * {@link org.jivesoftware.smack.SmackReactor}. Buffers are pooled in size classes, which are powers of two between the
+ * minimum and the maximum buffer size. Requests for buffers larger than the maximum buffer size are served with a
+ * fresh buffer which is not pooled.
+ * <p>
+ * Note that the pool does not track the acquired buffers. It is the responsibility of the user to not use a buffer
+ * after it was released, and to release every buffer at most once.
+ * </p>
+ */
+public final class DirectByteBufferPool {
+
+    public static final int DEFAULT_MIN_BUFFER_SIZE = 512;
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+
+    private final int minBufferSizeShift;
+
+    private final int maxBufferSize;
+
+    private final List<Queue<ByteBuffer>> sizeClasses;
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private volatile long maxPooledBytes;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder allocatedUnpooled = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    public DirectByteBufferPool(long maxPooledBytes) {
+        this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, maxPooledBytes);
+    }
+
+    /**
+     * Create a new direct byte buffer pool.
+     *
+     * @param minBufferSize the minimum buffer size, must be a power of two.
+     * @param maxBufferSize the maximum buffer size, must be a power of two.
+     * @param maxPooledBytes the maximum number of bytes held by pooled buffers.
+     */
+    public DirectByteBufferPool(int minBufferSize, int maxBufferSize, long maxPooledBytes) {
+        if (Integer.bitCount(minBufferSize) != 1 || Integer.bitCount(maxBufferSize) != 1) {
+            throw new IllegalArgumentException("Buffer sizes must be a power of two");
+        }
+        if (minBufferSize > maxBufferSize) {
+            throw new IllegalArgumentException("Minimum buffer size must not be greater than the maximum buffer size");
+        }
+        minBufferSizeShift = Integer.numberOfTrailingZeros(minBufferSize);
+        this.maxBufferSize = maxBufferSize;
+
+        int sizeClassCount = Integer.numberOfTrailingZeros(maxBufferSize) - minBufferSizeShift + 1;
+        sizeClasses = new ArrayList<>(sizeClassCount);
+        for (int i = 0; i < sizeClassCount; i++) {
+            sizeClasses.add(new ConcurrentLinkedQueue<>());
+        }
+
+        setMaxPooledBytes(maxPooledBytes);
+    }
+
+    /**
+     * Set the maximum number of bytes held by pooled buffers. Released buffers which would exceed this limit are
+     * discarded.
+     *
+     * @param maxPooledBytes the maximum number of bytes held by pooled buffers.
+     */
+    public void setMaxPooledBytes(long maxPooledBytes) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("Maximum pooled bytes must not be negative");
+        }
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    private int sizeClassIndexFor(int capacity) {
+        if (capacity <= 1 << minBufferSizeShift) {
+            return 0;
+        }
+        int sizeClassShift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return sizeClassShift - minBufferSizeShift;
+    }
+
+    /**
+     * Acquire a cleared direct byte buffer with at least the given capacity.
+     *
+     * @param minCapacity the minimum capacity of the buffer.
+     * @return a cleared direct byte buffer.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        acquired.increment();
+
+        if (minCapacity > maxBufferSize) {
+            allocatedUnpooled.increment();
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+
+        int sizeClassIndex = sizeClassIndexFor(minCapacity);
+        ByteBuffer buffer = sizeClasses.get(sizeClassIndex).poll();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            reused.increment();
+            ((java.nio.Buffer) buffer).clear();
+            return buffer;
+        }
+
+        allocated.increment();
+        return ByteBuffer.allocateDirect(1 << (sizeClassIndex + minBufferSizeShift));
+    }
+
+    /**
+     * Release the given buffer to this pool. Buffers not acquired from this pool, e.g. heap buffers or buffers
+     * exceeding the maximum buffer size, are ignored.
+     *
+     * @param buffer the buffer to release, may be <code>null</code>.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (capacity > maxBufferSize || Integer.bitCount(capacity) != 1 || capacity < 1 << minBufferSizeShift) {
+            return;
+        }
+
+        released.increment();
+
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            discarded.increment();
+            return;
+        }
+
+        sizeClasses.get(sizeClassIndexFor(capacity)).add(buffer);
+    }
+
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    public static final class Stats {
+        public final long acquired;
+        public final long reused;
+        public final long allocated;
+        public final long allocatedUnpooled;
+        public final long released;
+        public final long discarded;
+        public final long pooledBytes;
+        public final long maxPooledBytes;
+
+        private Stats(DirectByteBufferPool pool) {
+            acquired = pool.acquired.sum();
+            reused = pool.reused.sum();
+            allocated = pool.allocated.sum();
+            allocatedUnpooled = pool.allocatedUnpooled.sum();
+            released = pool.released.sum();
+            discarded = pool.discarded.sum();
+            pooledBytes = pool.pooledBytes.get();
+            maxPooledBytes = pool.maxPooledBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "acquired: " + acquired + '\n'
+                 + "reused: " + reused + '\n'
+                 + "allocated: " + allocated + '\n'
+                 + "allocated-unpooled: " + allocatedUnpooled + '\n'
+                 + "released: " + released + '\n'
+                 + "discarded: " + discarded + '\n'
+                 + "pooled-bytes: " + pooledBytes + '\n'
+                 + "max-pooled-bytes: " + maxPooledBytes + '\n'
+                 ;
+        }
+    }
+}
@@ -92,7 +92,7 @@ public class StringUtils {
         return escapeForXml(input, XmlEscapeMode.forText);
     }
 
-    private enum XmlEscapeMode {
+    enum XmlEscapeMode {
         safe,
         forAttribute,
         forAttributeApos,
@@ -106,90 +106,17 @@ public class StringUtils {
      * @param input the CharSequence to escape.
      * @return the string with appropriate characters escaped.
      */
-    private static CharSequence escapeForXml(final CharSequence input, final XmlEscapeMode xmlEscapeMode) {
+    static CharSequence escapeForXml(final CharSequence input, final XmlEscapeMode xmlEscapeMode) {
         if (input == null) {
             return null;
         }
         final int len = input.length();
         final StringBuilder out = new StringBuilder((int) (len * 1.3));
         CharSequence toAppend;
-        char ch;
         int last = 0;
         int i = 0;
         while (i < len) {
-            toAppend = null;
-            ch = input.charAt(i);
-            switch (xmlEscapeMode) {
-            case safe:
-                switch (ch) {
-                case '<':
-                    toAppend = LT_ENCODE;
-                    break;
-                case '>':
-                    toAppend = GT_ENCODE;
-                    break;
-                case '&':
-                    toAppend = AMP_ENCODE;
-                    break;
-                case '"':
-                    toAppend = QUOTE_ENCODE;
-                    break;
-                case '\'':
-                    toAppend = APOS_ENCODE;
-                    break;
-                default:
-                    break;
-                }
-                break;
-            case forAttribute:
-                // No need to escape '>' for attributes.
-                switch (ch) {
-                case '<':
-                    toAppend = LT_ENCODE;
-                    break;
-                case '&':
-                    toAppend = AMP_ENCODE;
-                    break;
-                case '"':
-                    toAppend = QUOTE_ENCODE;
-                    break;
-                case '\'':
-                    toAppend = APOS_ENCODE;
-                    break;
-                default:
-                    break;
-                }
-                break;
-            case forAttributeApos:
-                // No need to escape '>' and '"' for attributes using '\'' as quote.
-                switch (ch) {
-                case '<':
-                    toAppend = LT_ENCODE;
-                    break;
-                case '&':
-                    toAppend = AMP_ENCODE;
-                    break;
-                case '\'':
-                    toAppend = APOS_ENCODE;
-                    break;
-                default:
-                    break;
-                }
-                break;
-            case forText:
-                // No need to escape '"', '\'', and '>' for text.
-                switch (ch) {
-                case '<':
-                    toAppend = LT_ENCODE;
-                    break;
-                case '&':
-                    toAppend = AMP_ENCODE;
-                    break;
-                default:
-                    break;
-                }
-                break;
-            }
+            toAppend = escapeForXml(input.charAt(i), xmlEscapeMode);
             if (toAppend != null) {
                 if (i > last) {
                     out.append(input, last, i);
@@ -209,6 +136,71 @@ public class StringUtils {
         return out;
     }
 
+    /**
+     * Get the XML escape sequence for the given character.
+     *
+     * @param ch the character.
+     * @param xmlEscapeMode the escape mode.
+     * @return the escape sequence, or <code>null</code> if the character does not need to be escaped.
+     */
+    static String escapeForXml(char ch, XmlEscapeMode xmlEscapeMode) {
+        switch (xmlEscapeMode) {
+        case safe:
+            switch (ch) {
+            case '<':
+                return LT_ENCODE;
+            case '>':
+                return GT_ENCODE;
+            case '&':
+                return AMP_ENCODE;
+            case '"':
+                return QUOTE_ENCODE;
+            case '\'':
+                return APOS_ENCODE;
+            default:
+                return null;
+            }
+        case forAttribute:
+            // No need to escape '>' for attributes.
+            switch (ch) {
+            case '<':
+                return LT_ENCODE;
+            case '&':
+                return AMP_ENCODE;
+            case '"':
+                return QUOTE_ENCODE;
+            case '\'':
+                return APOS_ENCODE;
+            default:
+                return null;
+            }
+        case forAttributeApos:
+            // No need to escape '>' and '"' for attributes using '\'' as quote.
+            switch (ch) {
+            case '<':
+                return LT_ENCODE;
+            case '&':
+                return AMP_ENCODE;
+            case '\'':
+                return APOS_ENCODE;
+            default:
+                return null;
+            }
+        case forText:
+            // No need to escape '"', '\'', and '>' for text.
+            switch (ch) {
+            case '<':
+                return LT_ENCODE;
+            case '&':
+                return AMP_ENCODE;
+            default:
+                return null;
+            }
+        default:
+            throw new AssertionError();
+        }
+    }
+
     /**
      * Hashes a String using the SHA-1 algorithm and returns the result as a
      * String of hexadecimal numbers. This method is synchronized to avoid
@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket, which limits the rate of operations while allowing bursts. The bucket holds up to
+ * {@code burst} tokens and is refilled with {@code tokensPerSecond} tokens per second. Every operation
+ * consumes one token.
+ */
+public final class TokenBucket {
+
+    private final double tokensPerNanosecond;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Tokens per second must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least one");
+        }
+        tokensPerNanosecond = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        capacity = burst;
+        tokens = burst;
+        lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Try to acquire a token.
+     *
+     * @return zero if a token was acquired, otherwise the number of nanoseconds until the next token becomes available.
+     */
+    public long tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    synchronized long tryAcquire(long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos > 0) {
+            tokens = Math.min(capacity, tokens + elapsedNanos * tokensPerNanosecond);
+            lastRefillNanos = nowNanos;
+        }
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+
+        return (long) Math.ceil((1 - tokens) / tokensPerNanosecond);
+    }
+}
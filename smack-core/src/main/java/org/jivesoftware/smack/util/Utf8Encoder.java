@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.jivesoftware.smack.util.StringUtils.XmlEscapeMode;
+
+/**
+ * Encodes char sequences as UTF-8 straight into byte buffers, without creating intermediate strings or byte arrays.
+ * The parts of an {@link XmlStringBuilder} which require XML escaping are escaped while they are encoded.
+ * <p>
+ * Like {@link java.nio.charset.Charset#encode(String)}, unpaired surrogates are replaced by '?'.
+ * </p>
+ */
+public final class Utf8Encoder {
+
+    private static final byte REPLACEMENT = '?';
+
+    private Utf8Encoder() {
+    }
+
+    /**
+     * Get the number of bytes of the UTF-8 encoding of the given char sequence.
+     *
+     * @param charSequence the char sequence.
+     * @return the number of bytes of the UTF-8 encoding.
+     */
+    public static int encodedLength(CharSequence charSequence) {
+        if (charSequence instanceof XmlEscapedCharSequence) {
+            XmlEscapedCharSequence xmlEscapedCharSequence = (XmlEscapedCharSequence) charSequence;
+            String unescaped = xmlEscapedCharSequence.unescaped;
+            XmlEscapeMode xmlEscapeMode = xmlEscapedCharSequence.xmlEscapeMode;
+            int length = 0;
+            int last = 0;
+            for (int i = 0; i < unescaped.length(); i++) {
+                String escapeSequence = StringUtils.escapeForXml(unescaped.charAt(i), xmlEscapeMode);
+                if (escapeSequence == null) {
+                    continue;
+                }
+                length += encodedLength(unescaped, last, i);
+                // Escape sequences only consist of ASCII characters.
+                length += escapeSequence.length();
+                last = i + 1;
+            }
+            return length + encodedLength(unescaped, last, unescaped.length());
+        }
+        return encodedLength(charSequence, 0, charSequence.length());
+    }
+
+    private static int encodedLength(CharSequence charSequence, int start, int end) {
+        int length = end - start;
+        for (int i = start; i < end; i++) {
+            char c = charSequence.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                            && Character.isLowSurrogate(charSequence.charAt(i + 1))) {
+                // Two chars, encoded as four bytes.
+                length += 2;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced by a single byte.
+                continue;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encode the given char sequence as UTF-8 into the given byte buffer.
+     *
+     * @param charSequence the char sequence.
+     * @param byteBuffer the byte buffer.
+     * @throws BufferOverflowException if there is insufficient space in the byte buffer.
+     * @see #encodedLength(CharSequence)
+     */
+    public static void encode(CharSequence charSequence, ByteBuffer byteBuffer) {
+        if (charSequence instanceof XmlEscapedCharSequence) {
+            XmlEscapedCharSequence xmlEscapedCharSequence = (XmlEscapedCharSequence) charSequence;
+            String unescaped = xmlEscapedCharSequence.unescaped;
+            XmlEscapeMode xmlEscapeMode = xmlEscapedCharSequence.xmlEscapeMode;
+            int last = 0;
+            for (int i = 0; i < unescaped.length(); i++) {
+                String escapeSequence = StringUtils.escapeForXml(unescaped.charAt(i), xmlEscapeMode);
+                if (escapeSequence == null) {
+                    continue;
+                }
+                encode(unescaped, last, i, byteBuffer);
+                encode(escapeSequence, 0, escapeSequence.length(), byteBuffer);
+                last = i + 1;
+            }
+            encode(unescaped, last, unescaped.length(), byteBuffer);
+            return;
+        }
+        encode(charSequence, 0, charSequence.length(), byteBuffer);
+    }
+
+    private static void encode(CharSequence charSequence, int start, int end, ByteBuffer byteBuffer) {
+        if (end - start > byteBuffer.remaining()) {
+            // The encoding requires at least one byte per char.
+            throw new BufferOverflowException();
+        }
+
+        for (int i = start; i < end; i++) {
+            char c = charSequence.charAt(i);
+            if (c < 0x80) {
+                byteBuffer.put((byte) c);
+            } else if (c < 0x800) {
+                byteBuffer.put((byte) (0xc0 | (c >> 6)));
+                byteBuffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                            && Character.isLowSurrogate(charSequence.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, charSequence.charAt(++i));
+                byteBuffer.put((byte) (0xf0 | (codePoint >> 18)));
+                byteBuffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                byteBuffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                byteBuffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate.
+                byteBuffer.put(REPLACEMENT);
+            } else {
+                byteBuffer.put((byte) (0xe0 | (c >> 12)));
+                byteBuffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                byteBuffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import org.jivesoftware.smack.util.StringUtils.XmlEscapeMode;
+
+/**
+ * A char sequence representing the XML escaped variant of a string. The escaping is deferred, so that
+ * {@link Utf8Encoder} is able to escape while encoding, without creating the escaped string. The escaped string is
+ * only created if this char sequence is accessed as such.
+ */
+final class XmlEscapedCharSequence implements CharSequence {
+
+    final String unescaped;
+
+    final XmlEscapeMode xmlEscapeMode;
+
+    private int escapedLength = -1;
+
+    private String escaped;
+
+    XmlEscapedCharSequence(CharSequence unescaped, XmlEscapeMode xmlEscapeMode) {
+        // Take a snapshot of the char sequence, as it could be mutable.
+        this.unescaped = unescaped.toString();
+        this.xmlEscapeMode = xmlEscapeMode;
+    }
+
+    private String escaped() {
+        if (escaped == null) {
+            escaped = StringUtils.escapeForXml(unescaped, xmlEscapeMode).toString();
+        }
+        return escaped;
+    }
+
+    @Override
+    public int length() {
+        if (escapedLength < 0) {
+            int length = 0;
+            for (int i = 0; i < unescaped.length(); i++) {
+                String escapeSequence = StringUtils.escapeForXml(unescaped.charAt(i), xmlEscapeMode);
+                length += escapeSequence == null ? 1 : escapeSequence.length();
+            }
+            escapedLength = length;
+        }
+        return escapedLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return escaped().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return escaped().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return escaped();
+    }
+}
@@ -17,13 +17,16 @@
 package org.jivesoftware.smack.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +34,7 @@ import org.jivesoftware.smack.packet.Element;
 import org.jivesoftware.smack.packet.NamedElement;
 import org.jivesoftware.smack.packet.XmlElement;
 import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.util.StringUtils.XmlEscapeMode;
 
 import org.jxmpp.jid.Jid;
 import org.jxmpp.util.XmppDateTime;
@@ -496,20 +500,20 @@ public class XmlStringBuilder implements Appendable, CharSequence, Element {
 
     public XmlStringBuilder text(CharSequence text) {
         assert text != null;
-        CharSequence escapedText = StringUtils.escapeForXmlText(text);
-        sb.append(escapedText);
+        // Escaping is deferred, so that it can be performed while encoding, see Utf8Encoder.
+        sb.append(new XmlEscapedCharSequence(text, XmlEscapeMode.forText));
         return this;
     }
 
     public XmlStringBuilder escape(String text) {
         assert text != null;
-        sb.append(StringUtils.escapeForXml(text));
+        sb.append(new XmlEscapedCharSequence(text, XmlEscapeMode.safe));
         return this;
     }
 
     public XmlStringBuilder escapeAttributeValue(String value) {
         assert value != null;
-        sb.append(StringUtils.escapeForXmlAttributeApos(value));
+        sb.append(new XmlEscapedCharSequence(value, XmlEscapeMode.forAttributeApos));
         return this;
     }
 
@@ -738,6 +742,83 @@ public class XmlStringBuilder implements Appendable, CharSequence, Element {
         }
     }
 
+    /**
+     * Write the contents of this <code>XmlStringBuilder</code> UTF-8 encoded to an {@link OutputStream}. Unlike
+     * wrapping the output stream into a {@link java.io.OutputStreamWriter}, the parts are encoded straight into a
+     * byte buffer, and escaping is performed while encoding.
+     *
+     * @param outputStream the output stream.
+     * @param enclosingXmlEnvironment the enclosing XML environment.
+     * @throws IOException if an I/O error occurred.
+     */
+    public void write(OutputStream outputStream, XmlEnvironment enclosingXmlEnvironment) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.min(4096, Math.max(length(), 16)));
+        try {
+            appendXmlTo(csq -> {
+                int encodedLength = Utf8Encoder.encodedLength(csq);
+                try {
+                    if (encodedLength > buffer.remaining()) {
+                        outputStream.write(buffer.array(), 0, buffer.position());
+                        ((java.nio.Buffer) buffer).clear();
+                    }
+                    if (encodedLength > buffer.capacity()) {
+                        ByteBuffer largeBuffer = ByteBuffer.allocate(encodedLength);
+                        Utf8Encoder.encode(csq, largeBuffer);
+                        outputStream.write(largeBuffer.array(), 0, largeBuffer.position());
+                        return;
+                    }
+                } catch (IOException e) {
+                    throw new WrappedIoException(e);
+                }
+                Utf8Encoder.encode(csq, buffer);
+            }, enclosingXmlEnvironment);
+        } catch (WrappedIoException e) {
+            throw e.wrappedIoException;
+        }
+        outputStream.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Get the number of bytes of the UTF-8 encoding of this <code>XmlStringBuilder</code>.
+     *
+     * @param enclosingXmlEnvironment the enclosing XML environment.
+     * @return the number of bytes of the UTF-8 encoding.
+     */
+    public int utf8EncodedLength(XmlEnvironment enclosingXmlEnvironment) {
+        int[] encodedLength = new int[1];
+        appendXmlTo(csq -> encodedLength[0] += Utf8Encoder.encodedLength(csq), enclosingXmlEnvironment);
+        return encodedLength[0];
+    }
+
+    /**
+     * Encode this <code>XmlStringBuilder</code> as UTF-8 into the given byte buffer.
+     *
+     * @param byteBuffer the byte buffer.
+     * @param enclosingXmlEnvironment the enclosing XML environment.
+     * @throws java.nio.BufferOverflowException if there is insufficient space in the byte buffer.
+     * @see #utf8EncodedLength(XmlEnvironment)
+     */
+    public void encodeUtf8(ByteBuffer byteBuffer, XmlEnvironment enclosingXmlEnvironment) {
+        appendXmlTo(csq -> Utf8Encoder.encode(csq, byteBuffer), enclosingXmlEnvironment);
+    }
+
+    /**
+     * Encode this <code>XmlStringBuilder</code> as UTF-8 into a byte buffer obtained from the given allocator, which
+     * could, for example, acquire the buffer from a {@link DirectByteBufferPool}. The returned buffer is flipped, that
+     * is, ready to be read.
+     *
+     * @param enclosingXmlEnvironment the enclosing XML environment.
+     * @param byteBufferAllocator a function returning a byte buffer with at least the given remaining capacity.
+     * @return the byte buffer holding the UTF-8 encoding.
+     */
+    public ByteBuffer toUtf8ByteBuffer(XmlEnvironment enclosingXmlEnvironment, IntFunction<ByteBuffer> byteBufferAllocator) {
+        int encodedLength = utf8EncodedLength(enclosingXmlEnvironment);
+        ByteBuffer byteBuffer = byteBufferAllocator.apply(encodedLength);
+        encodeUtf8(byteBuffer, enclosingXmlEnvironment);
+        ((java.nio.Buffer) byteBuffer).flip();
+        return byteBuffer;
+    }
+
     public List<CharSequence> toList(XmlEnvironment enclosingXmlEnvironment) {
         List<CharSequence> res = new ArrayList<>(sb.getAsList().size());
 
@@ -0,0 +1,59 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.TestIQ;
+
+import org.junit.jupiter.api.Test;
+
+public class IqRequestBatchTest {
+
+    @Test
+    public void batchRespectsMaxInFlight() throws Exception {
+        DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+
+        List<IQ> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            IQ request = new TestIQ();
+            request.setStanzaId("batch-" + i);
+            requests.add(request);
+        }
+
+        List<SmackFuture<IQ, Exception>> futures = connection.sendIqRequestsAsync(requests, 2);
+        assertEquals(5, futures.size());
+        assertEquals(2, connection.getNumberOfSentPackets());
+
+        // A request whose future is cancelled before it is sent, is never sent.
+        futures.get(4).cancel(false);
+
+        for (int i = 0; i < 4; i++) {
+            IQ request = connection.getSentPacket();
+            assertEquals("batch-" + i, request.getStanzaId());
+
+            connection.processStanza(IQ.createResultIQ(request));
+            futures.get(i).getOrThrow();
+        }
+
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ReconnectionManagerTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final AtomicInteger attemptsInProgress = new AtomicInteger();
+
+    private final AtomicInteger maxAttemptsInProgress = new AtomicInteger();
+
+    private final AtomicInteger failingAttempts = new AtomicInteger();
+
+    private final List<String> attemptThreadNames = new ArrayList<>();
+
+    private final CountDownLatch releaseAttempts = new CountDownLatch(1);
+
+    @BeforeEach
+    public void disableRateLimit() {
+        ReconnectionManager.setReconnectionAttemptRateLimit(0, 0);
+    }
+
+    @AfterEach
+    public void restoreDefaults() {
+        releaseAttempts.countDown();
+        // The defaults of the reconnection manager.
+        ReconnectionManager.setReconnectionAttemptRateLimit(50, 100);
+        ReconnectionManager.setMaxConcurrentReconnectionAttempts(50);
+    }
+
+    private final class ReconnectingConnection extends DummyConnection {
+        @Override
+        public synchronized AbstractXMPPConnection connect()
+                        throws SmackException, IOException, XMPPException, InterruptedException {
+            int inProgress = attemptsInProgress.incrementAndGet();
+            maxAttemptsInProgress.accumulateAndGet(inProgress, Math::max);
+            synchronized (attemptThreadNames) {
+                attemptThreadNames.add(Thread.currentThread().getName());
+            }
+            try {
+                releaseAttempts.await();
+                if (failingAttempts.getAndUpdate(i -> Math.max(0, i - 1)) > 0) {
+                    throw new IOException("Reconnection attempt failed");
+                }
+                return super.connect();
+            } finally {
+                attemptsInProgress.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void instantShutdown() {
+            // Keep the reconnection mechanism going, which a connection closed event would stop.
+        }
+
+        private void loseConnection() {
+            ReconnectionManager reconnectionManager = ReconnectionManager.getInstanceFor(this);
+            reconnectionManager.setFixedDelay(0);
+            reconnectionManager.enableAutomaticReconnection();
+            for (ConnectionListener connectionListener : connectionListeners) {
+                connectionListener.connectionClosedOnError(new IOException("Connection lost"));
+            }
+        }
+    }
+
+    private static void awaitAuthenticated(List<ReconnectingConnection> connections) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (ReconnectingConnection connection : connections) {
+            while (!connection.isAuthenticated()) {
+                assertTrue(System.currentTimeMillis() < deadline, "Connection was not re-established in time");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void awaitAttemptsInProgress(AtomicInteger attemptsInProgress, int expected)
+                    throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (attemptsInProgress.get() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "Reconnection attempts were not started in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private List<ReconnectingConnection> loseConnections(int count) {
+        List<ReconnectingConnection> connections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ReconnectingConnection connection = new ReconnectingConnection();
+            connection.loseConnection();
+            connections.add(connection);
+        }
+        return connections;
+    }
+
+    @Test
+    public void concurrentReconnectionAttemptsAreLimited() throws InterruptedException {
+        ReconnectionManager.setMaxConcurrentReconnectionAttempts(2);
+        List<ReconnectingConnection> connections = loseConnections(5);
+
+        awaitAttemptsInProgress(attemptsInProgress, 2);
+        // Give the delayed attempts the chance to exceed the limit.
+        Thread.sleep(600);
+        assertEquals(2, attemptsInProgress.get());
+
+        releaseAttempts.countDown();
+        awaitAuthenticated(connections);
+        assertEquals(2, maxAttemptsInProgress.get());
+
+        int throttledAttempts = 0;
+        for (ReconnectingConnection connection : connections) {
+            ReconnectionManager.Stats stats = ReconnectionManager.getInstanceFor(connection).getStats();
+            assertEquals(1, stats.successfulReconnections);
+            throttledAttempts += stats.throttledAttempts;
+        }
+        assertTrue(throttledAttempts >= 3);
+    }
+
+    @Test
+    public void failedReconnectionAttemptReleasesPermit() throws InterruptedException {
+        ReconnectionManager.setMaxConcurrentReconnectionAttempts(1);
+        failingAttempts.set(2);
+        releaseAttempts.countDown();
+
+        List<ReconnectingConnection> connections = loseConnections(2);
+        awaitAuthenticated(connections);
+        assertEquals(1, maxAttemptsInProgress.get());
+
+        int failedAttempts = 0;
+        for (ReconnectingConnection connection : connections) {
+            failedAttempts += ReconnectionManager.getInstanceFor(connection).getStats().failedAttempts;
+        }
+        assertEquals(2, failedAttempts);
+    }
+
+    @Test
+    public void reconnectionAttemptsRunOnAsyncExecutor() throws InterruptedException {
+        releaseAttempts.countDown();
+        List<ReconnectingConnection> connections = loseConnections(3);
+        awaitAuthenticated(connections);
+
+        synchronized (attemptThreadNames) {
+            assertEquals(3, attemptThreadNames.size());
+            for (String threadName : attemptThreadNames) {
+                assertEquals("Smack Cached Executor", threadName);
+            }
+        }
+    }
+
+    @Test
+    public void abortedReconnectionReleasesPermit() throws InterruptedException {
+        ReconnectionManager.setMaxConcurrentReconnectionAttempts(1);
+        ReconnectingConnection aborted = loseConnections(1).get(0);
+        awaitAttemptsInProgress(attemptsInProgress, 1);
+
+        ReconnectionManager.getInstanceFor(aborted).abortPossiblyRunningReconnection();
+
+        ReconnectingConnection other = loseConnections(1).get(0);
+        releaseAttempts.countDown();
+        awaitAuthenticated(List.of(other));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.SmackConfiguration.ThreadingMode;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SmackExecutorsTest {
+
+    /**
+     * The executor services created by the virtual thread executor service factory. This test uses platform thread
+     * pools instead of virtual threads, as the tests run on Java versions without virtual threads.
+     */
+    private final List<ExecutorService> createdExecutorServices = new ArrayList<>();
+
+    @AfterEach
+    public void restoreDefaults() {
+        SmackConfiguration.setThreadingMode(ThreadingMode.platformThreads);
+        SmackExecutors.setVirtualThreadExecutorServiceFactory(null);
+        for (ExecutorService executorService : createdExecutorServices) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void setVirtualThreadExecutorServiceFactory() {
+        SmackExecutors.setVirtualThreadExecutorServiceFactory(() -> {
+            ExecutorService executorService = Executors.newCachedThreadPool();
+            createdExecutorServices.add(executorService);
+            return executorService;
+        });
+    }
+
+    @Test
+    public void virtualThreadsRequireSupport() {
+        assertFalse(SmackExecutors.isVirtualThreadsSupported());
+        assertThrows(IllegalStateException.class,
+                        () -> SmackConfiguration.setThreadingMode(ThreadingMode.virtualThreads));
+        assertEquals(ThreadingMode.platformThreads, SmackConfiguration.getThreadingMode());
+    }
+
+    @Test
+    public void togglingThreadingModeReusesExecutor() {
+        final Object platformThreadsExecutor = SmackExecutors.getAsyncExecutor();
+        setVirtualThreadExecutorServiceFactory();
+
+        SmackConfiguration.setThreadingMode(ThreadingMode.virtualThreads);
+        final Object virtualThreadsExecutor = SmackExecutors.getAsyncExecutor();
+        assertNotSame(platformThreadsExecutor, virtualThreadsExecutor);
+
+        for (int i = 0; i < 3; i++) {
+            SmackConfiguration.setThreadingMode(ThreadingMode.platformThreads);
+            assertSame(platformThreadsExecutor, SmackExecutors.getAsyncExecutor());
+
+            SmackConfiguration.setThreadingMode(ThreadingMode.virtualThreads);
+            assertSame(virtualThreadsExecutor, SmackExecutors.getAsyncExecutor());
+        }
+
+        assertEquals(1, createdExecutorServices.size());
+        assertFalse(createdExecutorServices.get(0).isShutdown());
+    }
+
+    @Test
+    public void replacingFactoryShutsDownPreviousExecutor() {
+        setVirtualThreadExecutorServiceFactory();
+        SmackConfiguration.setThreadingMode(ThreadingMode.virtualThreads);
+
+        setVirtualThreadExecutorServiceFactory();
+        assertEquals(2, createdExecutorServices.size());
+        assertTrue(createdExecutorServices.get(0).isShutdown());
+        assertSame(createdExecutorServices.get(1), SmackExecutors.getAsyncExecutor());
+    }
+
+    @Test
+    public void executorFactoriesFollowThreadingMode() throws InterruptedException {
+        ExecutorService fixedExecutorService = SmackExecutors.newFixedExecutorService(1, "Smack Test Executor");
+        try {
+            List<Thread> threads = new ArrayList<>();
+            fixedExecutorService.execute(() -> threads.add(Thread.currentThread()));
+            fixedExecutorService.shutdown();
+            assertTrue(fixedExecutorService.awaitTermination(5, TimeUnit.SECONDS));
+
+            Thread thread = threads.get(0);
+            assertEquals("Smack Test Executor", thread.getName());
+            assertTrue(thread.isDaemon());
+        } finally {
+            fixedExecutorService.shutdownNow();
+        }
+
+        setVirtualThreadExecutorServiceFactory();
+        SmackConfiguration.setThreadingMode(ThreadingMode.virtualThreads);
+        int createdBefore = createdExecutorServices.size();
+        ExecutorService cachedExecutorService = SmackExecutors.newCachedExecutorService("Smack Test Executor");
+        assertEquals(createdBefore + 1, createdExecutorServices.size());
+        assertSame(createdExecutorServices.get(createdBefore), cachedExecutorService);
+    }
+}
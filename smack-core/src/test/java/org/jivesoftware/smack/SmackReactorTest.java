@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class SmackReactorTest {
+
+    @Test
+    public void shardedReactorRunsScheduledActions() throws InterruptedException {
+        SmackReactor reactor = new SmackReactor("ShardedTestReactor", 2);
+        assertTrue(reactor.isSharded());
+
+        AtomicBoolean cancelledActionRan = new AtomicBoolean();
+        ScheduledAction cancelledAction = reactor.schedule(() -> cancelledActionRan.set(true), 50,
+                        TimeUnit.MILLISECONDS, ScheduledAction.Kind.NonBlocking);
+
+        CountDownLatch ran = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            reactor.schedule(ran::countDown, 10, TimeUnit.MILLISECONDS, ScheduledAction.Kind.NonBlocking);
+        }
+
+        assertTrue(cancelledAction.cancel());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertFalse(cancelledActionRan.get());
+    }
+
+    @Test
+    public void shardedReactorSelectsRegisteredChannels() throws IOException, InterruptedException {
+        SmackReactor reactor = new SmackReactor("ShardedTestReactor", 2);
+
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+
+        CountDownLatch selected = new CountDownLatch(1);
+        reactor.registerWithSelector(pipe.source(), SelectionKey.OP_READ, (channel, selectionKey) -> {
+            try {
+                pipe.source().read(ByteBuffer.allocate(16));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            selected.countDown();
+        });
+
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 42 }));
+        assertTrue(selected.await(5, TimeUnit.SECONDS));
+
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test
+    public void throwingCallbackDoesNotAffectOtherChannels() throws IOException, InterruptedException {
+        throwingCallbackDoesNotAffectOtherChannels(new SmackReactor("ThrowingCallbackTestReactor", 0));
+    }
+
+    @Test
+    public void throwingCallbackDoesNotAffectOtherChannelsOfEventLoop() throws IOException, InterruptedException {
+        throwingCallbackDoesNotAffectOtherChannels(new SmackReactor("ThrowingCallbackTestReactor", 1));
+    }
+
+    private static void throwingCallbackDoesNotAffectOtherChannels(SmackReactor reactor)
+                    throws IOException, InterruptedException {
+        Pipe throwingPipe = Pipe.open();
+        throwingPipe.source().configureBlocking(false);
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+
+        CountDownLatch throwingCallbackInvoked = new CountDownLatch(1);
+        reactor.registerWithSelector(throwingPipe.source(), SelectionKey.OP_READ, (channel, selectionKey) -> {
+            throwingCallbackInvoked.countDown();
+            throw new IllegalStateException("Test exception thrown by a channel selected callback");
+        });
+
+        CountDownLatch firstSelection = new CountDownLatch(1);
+        CountDownLatch secondSelection = new CountDownLatch(2);
+        reactor.registerWithSelector(pipe.source(), SelectionKey.OP_READ, (channel, selectionKey) -> {
+            try {
+                pipe.source().read(ByteBuffer.allocate(16));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            firstSelection.countDown();
+            secondSelection.countDown();
+            reactor.setInterestOps(selectionKey, SelectionKey.OP_READ);
+        });
+
+        throwingPipe.sink().write(ByteBuffer.wrap(new byte[] { 42 }));
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 42 }));
+        assertTrue(throwingCallbackInvoked.await(5, TimeUnit.SECONDS));
+        assertTrue(firstSelection.await(5, TimeUnit.SECONDS));
+
+        // The reactor thread which invoked the throwing callback is still selecting.
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 42 }));
+        assertTrue(secondSelection.await(5, TimeUnit.SECONDS));
+
+        throwingPipe.sink().close();
+        throwingPipe.source().close();
+        pipe.sink().close();
+        pipe.source().close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jivesoftware.smack.filter.AndFilter;
+import org.jivesoftware.smack.filter.FromMatchesFilter;
+import org.jivesoftware.smack.filter.StanzaDispatchKey;
+import org.jivesoftware.smack.filter.StanzaExtensionFilter;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.filter.StanzaIdFilter;
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StandardExtensionElement;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+public class StanzaDispatchIndexTest {
+
+    private static final EntityFullJid ROMEO;
+    private static final EntityFullJid JULIET;
+
+    static {
+        try {
+            ROMEO = JidCreate.entityFullFrom("romeo@montague.lit/orchard");
+            JULIET = JidCreate.entityFullFrom("juliet@capulet.lit/balcony");
+        } catch (XmppStringprepException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<String> extractMatching(StanzaDispatchIndex<String> index, Stanza stanza) {
+        List<StanzaDispatchKey> keys = new ArrayList<>();
+        StanzaDispatchKey.addKeysOf(stanza, keys);
+        List<String> matching = new ArrayList<>();
+        index.extractMatching(stanza, keys, matching);
+        return matching;
+    }
+
+    @Test
+    public void matchesKeyedAndUnkeyedFiltersInOrder() {
+        StanzaDispatchIndex<String> index = new StanzaDispatchIndex<>();
+        index.put("all", null);
+        index.put("id", new StanzaIdFilter("message-1"));
+        index.put("other-id", new StanzaIdFilter("message-2"));
+        index.put("from-bare", FromMatchesFilter.createBare(ROMEO));
+        index.put("from-full-juliet", FromMatchesFilter.createFull(JULIET));
+        index.put("message", StanzaTypeFilter.MESSAGE);
+        index.put("presence", StanzaTypeFilter.PRESENCE);
+        index.put("extension", new StanzaExtensionFilter("urn:example:extension"));
+        index.put("and", new AndFilter(StanzaTypeFilter.MESSAGE, new StanzaIdFilter("message-1")));
+        StanzaFilter opaqueFilter = s -> s.getTo() == null;
+        index.put("opaque", opaqueFilter);
+
+        Message message = StanzaBuilder.buildMessage("message-1")
+                        .from(ROMEO)
+                        .addExtension(StandardExtensionElement.builder("foo", "urn:example:extension").build())
+                        .build();
+
+        List<String> matching = extractMatching(index, message);
+        assertEquals(Arrays.asList("all", "id", "from-bare", "message", "extension", "and", "opaque"), matching);
+    }
+
+    @Test
+    public void putReplacesFilterAndKeepsOrder() {
+        StanzaDispatchIndex<String> index = new StanzaDispatchIndex<>();
+        index.put("first", StanzaTypeFilter.PRESENCE);
+        index.put("second", StanzaTypeFilter.MESSAGE);
+        index.put("first", StanzaTypeFilter.MESSAGE);
+
+        Message message = StanzaBuilder.buildMessage().build();
+        assertEquals(Arrays.asList("first", "second"), extractMatching(index, message));
+    }
+
+    @Test
+    public void remove() {
+        StanzaDispatchIndex<String> index = new StanzaDispatchIndex<>();
+        index.put("id", new StanzaIdFilter("message-1"));
+
+        assertTrue(index.contains("id"));
+        assertTrue(index.remove("id"));
+        assertFalse(index.remove("id"));
+        assertFalse(index.contains("id"));
+
+        Message message = StanzaBuilder.buildMessage("message-1").build();
+        assertEquals(Collections.emptyList(), extractMatching(index, message));
+    }
+
+    @Test
+    public void collectorFilterIsEvaluatedOncePerStanza() {
+        DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+        StanzaIdFilter idFilter = new StanzaIdFilter("message-1");
+        AtomicInteger evaluations = new AtomicInteger();
+        StanzaFilter countingFilter = new StanzaFilter() {
+            @Override
+            public boolean accept(Stanza stanza) {
+                evaluations.incrementAndGet();
+                return idFilter.accept(stanza);
+            }
+
+            @Override
+            public StanzaDispatchKey getDispatchKey() {
+                return idFilter.getDispatchKey();
+            }
+        };
+
+        Message message = StanzaBuilder.buildMessage("message-1").build();
+        try (StanzaCollector collector = connection.createStanzaCollector(countingFilter)) {
+            connection.processStanza(message);
+            assertSame(message, collector.pollResult());
+        }
+        assertEquals(1, evaluations.get());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    @Test
+    public void timeoutsExpireAndCancelledTimeoutsDoNot() throws InterruptedException {
+        // Use a small wheel, so that the timeouts require multiple rounds.
+        TimerWheel timerWheel = new TimerWheel(SmackReactor.getInstance(), 10, TimeUnit.MILLISECONDS, 4);
+
+        AtomicBoolean cancelledTimeoutRan = new AtomicBoolean();
+        TimerWheel.Timeout cancelledTimeout = timerWheel.newTimeout(() -> cancelledTimeoutRan.set(true), 50,
+                        TimeUnit.MILLISECONDS);
+
+        CountDownLatch expired = new CountDownLatch(2);
+        timerWheel.newTimeout(expired::countDown, 20, TimeUnit.MILLISECONDS);
+        timerWheel.newTimeout(expired::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelledTimeout.cancel());
+        assertFalse(cancelledTimeout.cancel());
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledTimeoutRan.get());
+    }
+
+    @Test
+    public void restartsAfterIdle() throws InterruptedException {
+        TimerWheel timerWheel = new TimerWheel(SmackReactor.getInstance(), 10, TimeUnit.MILLISECONDS, 8);
+
+        CountDownLatch first = new CountDownLatch(1);
+        timerWheel.newTimeout(first::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        // Give the wheel the chance to become idle.
+        Thread.sleep(50);
+
+        CountDownLatch second = new CountDownLatch(1);
+        TimerWheel.Timeout timeout = timerWheel.newTimeout(second::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isCancelledOrExpired());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.compression.zlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jivesoftware.smack.XmppInputOutputFilter;
+
+import org.junit.jupiter.api.Test;
+
+public class ZlibXmppCompressionFactoryTest {
+
+    private static final String STANZA = "<message type='chat' from='juliet@example.org/balcony' to='romeo@example.net'"
+                    + " id='ktx72v49'><body>Art thou not Romeo, and a Montague?</body>"
+                    + "<request xmlns='urn:xmpp:receipts'/></message>";
+
+    private static String roundTrip(XmppInputOutputFilter sender, XmppInputOutputFilter receiver, String data)
+                    throws IOException {
+        ByteBuffer compressed = sender.output(ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)), true, false,
+                        false).filteredOutputData;
+        ((java.nio.Buffer) compressed).flip();
+
+        ByteBuffer decompressed = receiver.input(compressed);
+        ((java.nio.Buffer) decompressed).flip();
+        return StandardCharsets.UTF_8.decode(decompressed).toString();
+    }
+
+    private static XmppInputOutputFilter fabricate(boolean presetDictionary) {
+        ZlibXmppCompressionFactory.INSTANCE.setPresetDictionaryEnabled(presetDictionary);
+        try {
+            return ZlibXmppCompressionFactory.INSTANCE.fabricate(null);
+        } finally {
+            ZlibXmppCompressionFactory.INSTANCE.setPresetDictionaryEnabled(false);
+        }
+    }
+
+    @Test
+    public void presetDictionaryRoundTrip() throws IOException {
+        XmppInputOutputFilter sender = fabricate(true);
+        XmppInputOutputFilter receiver = fabricate(false);
+
+        assertEquals(STANZA, roundTrip(sender, receiver, STANZA));
+        assertEquals(STANZA, roundTrip(sender, receiver, STANZA));
+
+        sender.closeInputOutput();
+        receiver.closeInputOutput();
+    }
+
+    @Test
+    public void presetDictionaryImprovesCompressionOfSmallStanzas() throws IOException {
+        XmppInputOutputFilter withDictionary = fabricate(true);
+        XmppInputOutputFilter withoutDictionary = fabricate(false);
+        XmppInputOutputFilter receiver = fabricate(false);
+        XmppInputOutputFilter otherReceiver = fabricate(false);
+
+        roundTrip(withDictionary, receiver, STANZA);
+        roundTrip(withoutDictionary, otherReceiver, STANZA);
+
+        ZlibXmppCompressionFactory.Stats withDictionaryStats = (ZlibXmppCompressionFactory.Stats) withDictionary.getStats();
+        ZlibXmppCompressionFactory.Stats withoutDictionaryStats = (ZlibXmppCompressionFactory.Stats) withoutDictionary.getStats();
+        assertTrue(withDictionaryStats.compressorOutBytes < withoutDictionaryStats.compressorOutBytes);
+    }
+}
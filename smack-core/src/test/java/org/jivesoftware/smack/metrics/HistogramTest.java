@@ -0,0 +1,99 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void valueIsWithinItsBucket() {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucketIndex = Histogram.bucketIndexOf(value);
+            assertTrue(value <= Histogram.highestValueOfBucket(bucketIndex));
+            if (bucketIndex > 0) {
+                assertTrue(value > Histogram.highestValueOfBucket(bucketIndex - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.count);
+        assertEquals(500.5, snapshot.mean, 0.001);
+        assertEquals(1000, snapshot.max);
+        assertWithinRelativeError(500, snapshot.p50);
+        assertWithinRelativeError(900, snapshot.p90);
+        assertWithinRelativeError(990, snapshot.p99);
+        assertEquals(1000, snapshot.p999);
+    }
+
+    @Test
+    public void emptySnapshot() {
+        Histogram.Snapshot snapshot = new Histogram().getSnapshot();
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.p99);
+        assertEquals(0, snapshot.max);
+    }
+
+    @Test
+    public void registryReportsAllMetrics() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("b").add(42);
+        registry.counter("a").increment();
+        registry.histogram("h").record(7);
+        registry.registerGauge("g", () -> 3);
+
+        List<String> reported = new ArrayList<>();
+        registry.report(new MetricsReporter() {
+            @Override
+            public void reportCounter(String name, long count) {
+                reported.add(name + '=' + count);
+            }
+
+            @Override
+            public void reportGauge(String name, long value) {
+                reported.add(name + '=' + value);
+            }
+
+            @Override
+            public void reportHistogram(String name, Histogram.Snapshot snapshot) {
+                reported.add(name + '=' + snapshot.max);
+            }
+        });
+
+        assertEquals(List.of("a=1", "b=42", "g=3", "h=7"), reported);
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / Histogram.SUB_BUCKET_COUNT,
+                        "Expected " + expected + " but got " + actual);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.packet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.jivesoftware.smack.util.MultiMap;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ExtensionElementsTest {
+
+    private static StandardExtensionElement element(int namespace, String text) {
+        return StandardExtensionElement.builder("ext", "urn:example:" + namespace).setText(text).build();
+    }
+
+    private static QName qname(int namespace) {
+        return new QName("urn:example:" + namespace, "ext");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, ExtensionElements.LINEAR_SCAN_THRESHOLD + 2 })
+    public void behavesLikeMultiMap(int distinctQNames) {
+        MultiMap<QName, XmlElement> multiMap = new MultiMap<>();
+        for (int i = 0; i < distinctQNames; i++) {
+            multiMap.put(qname(i), element(i, "a"));
+        }
+        // Add a second element to the first group, which must be stored next to the first one.
+        multiMap.put(qname(0), element(0, "b"));
+
+        ExtensionElements extensionElements = ExtensionElements.from(multiMap);
+
+        assertEquals(multiMap.values(), extensionElements.getAll());
+        assertEquals(multiMap.getAll(qname(0)), extensionElements.getAll(qname(0)));
+        assertEquals(multiMap.getAll(qname(1)), extensionElements.getAll(qname(1)));
+        assertSame(multiMap.getFirst(qname(1)), extensionElements.getFirst(qname(1)));
+        assertTrue(extensionElements.contains(qname(distinctQNames - 1)));
+        assertFalse(extensionElements.contains(qname(distinctQNames)));
+        assertNull(extensionElements.getFirst(qname(distinctQNames)));
+        assertTrue(extensionElements.getAll(qname(distinctQNames)).isEmpty());
+        assertEquals(multiMap.values(), extensionElements.toMultiMap().values());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, ExtensionElements.LINEAR_SCAN_THRESHOLD + 2 })
+    public void withAndWithoutReturnNewInstances(int distinctQNames) {
+        ExtensionElements extensionElements = ExtensionElements.EMPTY;
+        for (int i = 0; i < distinctQNames; i++) {
+            extensionElements = extensionElements.with(element(i, "a"));
+        }
+
+        XmlElement second = element(0, "b");
+        ExtensionElements withSecond = extensionElements.with(second);
+        assertEquals(distinctQNames, extensionElements.size());
+        assertEquals(distinctQNames + 1, withSecond.size());
+        assertSame(second, withSecond.getAll().get(1));
+
+        ExtensionElements without = withSecond.without(qname(0));
+        assertEquals(distinctQNames - 1, without.size());
+        assertFalse(without.contains(qname(0)));
+        assertEquals(withSecond.getAll(qname(1)), without.getAll(qname(1)));
+        assertSame(without, without.without(qname(0)));
+
+        List<XmlElement> remaining = Arrays.asList(element(0, "c"));
+        assertEquals(remaining, ExtensionElements.EMPTY.with(remaining.get(0)).getAll());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class DirectByteBufferPoolTest {
+
+    @Test
+    public void buffersAreReusedPerSizeClass() {
+        DirectByteBufferPool pool = new DirectByteBufferPool(512, 4096, 1024 * 1024);
+
+        ByteBuffer buffer = pool.acquire(600);
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+
+        buffer.put((byte) 42);
+        pool.release(buffer);
+
+        ByteBuffer reusedBuffer = pool.acquire(1000);
+        assertSame(buffer, reusedBuffer);
+        assertEquals(0, reusedBuffer.position());
+        assertEquals(reusedBuffer.capacity(), reusedBuffer.limit());
+
+        ByteBuffer otherSizeClassBuffer = pool.acquire(100);
+        assertEquals(512, otherSizeClassBuffer.capacity());
+
+        DirectByteBufferPool.Stats stats = pool.getStats();
+        assertEquals(3, stats.acquired);
+        assertEquals(1, stats.reused);
+        assertEquals(2, stats.allocated);
+    }
+
+    @Test
+    public void largeAndForeignBuffersAreNotPooled() {
+        DirectByteBufferPool pool = new DirectByteBufferPool(512, 4096, 1024 * 1024);
+
+        ByteBuffer largeBuffer = pool.acquire(5000);
+        assertEquals(5000, largeBuffer.capacity());
+        pool.release(largeBuffer);
+        pool.release(ByteBuffer.allocate(1024));
+
+        assertEquals(0, pool.getStats().pooledBytes);
+        assertNotSame(largeBuffer, pool.acquire(5000));
+    }
+
+    @Test
+    public void poolIsBounded() {
+        DirectByteBufferPool pool = new DirectByteBufferPool(512, 4096, 1024);
+
+        ByteBuffer first = pool.acquire(1024);
+        ByteBuffer second = pool.acquire(1024);
+        pool.release(first);
+        pool.release(second);
+
+        DirectByteBufferPool.Stats stats = pool.getStats();
+        assertEquals(1024, stats.pooledBytes);
+        assertEquals(1, stats.discarded);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstThenRateLimited() {
+        TokenBucket tokenBucket = new TokenBucket(2, 3);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, tokenBucket.tryAcquire(now));
+        }
+
+        long waitNanos = tokenBucket.tryAcquire(now);
+        assertTrue(waitNanos > 0 && waitNanos <= SECOND / 2, "Unexpected wait time " + waitNanos);
+
+        assertEquals(0, tokenBucket.tryAcquire(now + SECOND / 2));
+        assertTrue(tokenBucket.tryAcquire(now + SECOND / 2) > 0);
+    }
+
+    @Test
+    public void refillIsCappedAtBurst() {
+        TokenBucket tokenBucket = new TokenBucket(100, 2);
+        long later = System.nanoTime() + 60 * SECOND;
+
+        assertEquals(0, tokenBucket.tryAcquire(later));
+        assertEquals(0, tokenBucket.tryAcquire(later));
+        assertTrue(tokenBucket.tryAcquire(later) > 0);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jivesoftware.smack.packet.StandardExtensionElement;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+
+import org.junit.jupiter.api.Test;
+
+public class Utf8EncoderTest {
+
+    private static final String TEXT = "<b>Tom & Jerry</b> 'quoted' \"double\" ünïcödé € 😀 end";
+
+    private static XmlStringBuilder createXml() {
+        StandardExtensionElement element = StandardExtensionElement.builder("element", "urn:example:utf8")
+                        .addAttribute("attr", TEXT)
+                        .setText(TEXT)
+                        .build();
+        return element.toXML(XmlEnvironment.EMPTY);
+    }
+
+    private static byte[] toArray(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void toUtf8ByteBufferEqualsStringEncoding() {
+        XmlStringBuilder xml = createXml();
+        byte[] expected = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(expected.length, xml.utf8EncodedLength(XmlEnvironment.EMPTY));
+
+        ByteBuffer heapBuffer = xml.toUtf8ByteBuffer(XmlEnvironment.EMPTY, ByteBuffer::allocate);
+        assertArrayEquals(expected, toArray(heapBuffer));
+
+        ByteBuffer directBuffer = xml.toUtf8ByteBuffer(XmlEnvironment.EMPTY, ByteBuffer::allocateDirect);
+        assertArrayEquals(expected, toArray(directBuffer));
+    }
+
+    @Test
+    public void writeToOutputStreamEqualsStringEncoding() throws IOException {
+        XmlStringBuilder xml = createXml();
+        byte[] expected = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        xml.write(outputStream, XmlEnvironment.EMPTY);
+        assertArrayEquals(expected, outputStream.toByteArray());
+    }
+
+    @Test
+    public void unpairedSurrogateIsReplaced() {
+        String string = "a\uD83Db\uDE00";
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Utf8Encoder.encodedLength(string));
+        Utf8Encoder.encode(string, byteBuffer);
+        ((java.nio.Buffer) byteBuffer).flip();
+
+        assertArrayEquals("a?b?".getBytes(StandardCharsets.UTF_8), toArray(byteBuffer));
+    }
+
+    @Test
+    public void bufferTooSmallThrows() {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(2);
+        assertThrows(BufferOverflowException.class, () -> Utf8Encoder.encode("€", byteBuffer));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.SmackConfiguration;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.parsing.SmackParsingException;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+import org.jivesoftware.smack.xml.XmlPullParserFactory;
+import org.jivesoftware.smack.xml.stax.StaxXmlPullParserFactory;
+import org.jivesoftware.smack.xml.xpp3.Xpp3XmlPullParserFactory;
+
+import org.jxmpp.JxmppContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link PacketParserUtils#parseStanza(XmlPullParser, XmlEnvironment, JxmppContext)} with representative
+ * corpora of incoming stanzas and with every XML pull parser backend. Every corpus is parsed as one XMPP stream, like
+ * the stanzas would be parsed by a connection. The benchmark lives in smack-experimental, so that the providers of the
+ * extension elements of the corpora, e.g., MUC user, MAM and PubSub event, are registered.
+ * <p>
+ * Run with the gc profiler ({@code -prof gc}), which is enabled by default in the Gradle build, to see the allocation
+ * rate.
+ * </p>
+ */
+@Fork(value = 1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PacketParserUtilsJmh {
+
+    private static final int CORPUS_STANZA_COUNT = 100;
+
+    public enum Parser {
+        xpp3(new Xpp3XmlPullParserFactory()),
+        stax(new StaxXmlPullParserFactory()),
+        ;
+
+        private final XmlPullParserFactory factory;
+
+        Parser(XmlPullParserFactory factory) {
+            this.factory = factory;
+        }
+    }
+
+    public enum Corpus {
+        mucPresenceFlood {
+            @Override
+            void appendStanza(StringBuilder sb, int i) {
+                sb.append("<presence from='coven@chat.shakespeare.lit/participant").append(i)
+                  .append("' to='hag66@shakespeare.lit/pda' id='presence").append(i).append("'>")
+                  .append("<c xmlns='http://jabber.org/protocol/caps' hash='sha-1'"
+                                  + " node='https://igniterealtime.org/projects/smack'"
+                                  + " ver='QgayPKawpkPSDYmwT/WM94uAlu0='/>")
+                  .append("<x xmlns='http://jabber.org/protocol/muc#user'>")
+                  .append("<item affiliation='member' role='participant' jid='participant").append(i)
+                  .append("@shakespeare.lit/desktop'/>")
+                  .append("</x>")
+                  .append("</presence>");
+            }
+        },
+        mamResultPage {
+            @Override
+            void appendStanza(StringBuilder sb, int i) {
+                sb.append("<message to='juliet@capulet.lit/balcony' id='mam").append(i).append("'>")
+                  .append("<result xmlns='urn:xmpp:mam:2' queryid='f27' id='28482-98726-7362").append(i).append("'>")
+                  .append("<forwarded xmlns='urn:xmpp:forward:0'>")
+                  .append("<delay xmlns='urn:xmpp:delay' stamp='2010-07-10T23:08:25Z'/>")
+                  .append("<message xmlns='jabber:client' to='juliet@capulet.lit/balcony'"
+                                  + " from='romeo@montague.lit/orchard' type='chat' id='archived").append(i).append("'>")
+                  .append("<body>Call me but love, and I'll be new baptized; henceforth I never will be Romeo. (")
+                  .append(i).append(")</body>")
+                  .append("<stanza-id xmlns='urn:xmpp:sid:0' by='juliet@capulet.lit' id='28482-98726-7362")
+                  .append(i).append("'/>")
+                  .append("</message>")
+                  .append("</forwarded>")
+                  .append("</result>")
+                  .append("</message>");
+            }
+
+            @Override
+            void appendTrailer(StringBuilder sb) {
+                sb.append("<iq type='result' id='juliet1' to='juliet@capulet.lit/balcony'>")
+                  .append("<fin xmlns='urn:xmpp:mam:2' complete='true'>")
+                  .append("<set xmlns='http://jabber.org/protocol/rsm'>")
+                  .append("<first index='0'>28482-98726-73620</first>")
+                  .append("<last>28482-98726-7362").append(CORPUS_STANZA_COUNT - 1).append("</last>")
+                  .append("<count>").append(CORPUS_STANZA_COUNT).append("</count>")
+                  .append("</set>")
+                  .append("</fin>")
+                  .append("</iq>");
+            }
+        },
+        pubsubEventBurst {
+            @Override
+            void appendStanza(StringBuilder sb, int i) {
+                sb.append("<message from='pubsub.shakespeare.lit' to='francisco@denmark.lit' id='event").append(i)
+                  .append("'>")
+                  .append("<event xmlns='http://jabber.org/protocol/pubsub#event'>")
+                  .append("<items node='princely_musings'>")
+                  .append("<item id='ae890ac52d0df67ed7cfdf51b644e90").append(i).append("'>")
+                  .append("<entry xmlns='http://www.w3.org/2005/Atom'>")
+                  .append("<title>Soliloquy</title>")
+                  .append("<summary>To be, or not to be: that is the question: Whether 'tis nobler in the mind to"
+                                  + " suffer the slings and arrows of outrageous fortune, or to take arms against a"
+                                  + " sea of troubles, and by opposing end them?</summary>")
+                  .append("<link rel='alternate' type='text/html'"
+                                  + " href='http://denmark.lit/2003/12/13/atom03'/>")
+                  .append("<id>tag:denmark.lit,2003:entry-32397").append(i).append("</id>")
+                  .append("<published>2003-12-13T18:30:02Z</published>")
+                  .append("<updated>2003-12-13T18:30:02Z</updated>")
+                  .append("</entry>")
+                  .append("</item>")
+                  .append("</items>")
+                  .append("</event>")
+                  .append("</message>");
+            }
+        },
+        rosterPush {
+            @Override
+            void appendStanza(StringBuilder sb, int i) {
+                sb.append("<iq to='juliet@example.com/balcony' id='push").append(i).append("' type='set'>")
+                  .append("<query xmlns='jabber:iq:roster' ver='ver").append(i).append("'>")
+                  .append("<item jid='contact").append(i).append("@example.net' name='Contact ").append(i)
+                  .append("' subscription='both'>")
+                  .append("<group>Friends</group>")
+                  .append("<group>Lovers</group>")
+                  .append("</item>")
+                  .append("</query>")
+                  .append("</iq>");
+            }
+        },
+        ;
+
+        abstract void appendStanza(StringBuilder sb, int i);
+
+        void appendTrailer(StringBuilder sb) {
+        }
+
+        String createStream() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'"
+                            + " from='example.com' id='stream-id' version='1.0'>");
+            for (int i = 0; i < CORPUS_STANZA_COUNT; i++) {
+                appendStanza(sb, i);
+            }
+            appendTrailer(sb);
+            sb.append("</stream:stream>");
+            return sb.toString();
+        }
+    }
+
+    @Param
+    private Corpus corpus;
+
+    @Param
+    private Parser parser;
+
+    private String stream;
+
+    private JxmppContext jxmppContext;
+
+    @Setup(Level.Trial)
+    public void setup() throws XmlPullParserException, SmackParsingException, IOException {
+        // Obtaining the default JXMPP context also initializes Smack, which registers the providers.
+        jxmppContext = SmackConfiguration.getDefaultJxmppContext();
+        stream = corpus.createStream();
+
+        // Ensure that the corpus is valid.
+        int parsedStanzas = parseStream(null);
+        if (parsedStanzas < CORPUS_STANZA_COUNT) {
+            throw new IllegalStateException("Only parsed " + parsedStanzas + " stanzas of corpus " + corpus);
+        }
+    }
+
+    private int parseStream(Blackhole blackhole) throws XmlPullParserException, SmackParsingException, IOException {
+        XmlPullParser xmlPullParser = parser.factory.newXmlPullParser(new StringReader(stream));
+        ParserUtils.forwardToStartElement(xmlPullParser);
+        XmlEnvironment streamXmlEnvironment = XmlEnvironment.from(xmlPullParser);
+
+        int parsedStanzas = 0;
+        while (true) {
+            XmlPullParser.Event event = xmlPullParser.next();
+            switch (event) {
+            case START_ELEMENT:
+                Stanza stanza = PacketParserUtils.parseStanza(xmlPullParser, streamXmlEnvironment, jxmppContext);
+                if (blackhole != null) {
+                    blackhole.consume(stanza);
+                }
+                parsedStanzas++;
+                break;
+            case END_DOCUMENT:
+                return parsedStanzas;
+            default:
+                // Ignore everything else, e.g. the closing stream tag.
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public int parseStanzas(Blackhole blackhole) throws XmlPullParserException, SmackParsingException, IOException {
+        return parseStream(blackhole);
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.jivesoftware.smackx.chat_markers.filter;
 
+import org.jivesoftware.smack.filter.StanzaDispatchKey;
 import org.jivesoftware.smack.filter.StanzaExtensionFilter;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.XmlElement;
@@ -71,4 +72,10 @@ public final class EligibleForChatMarkerFilter extends StanzaExtensionFilter {
 
         return true;
     }
+
+    // This filter also accepts stanzas without a chat state extension, hence the namespace can not be used as key.
+    @Override
+    public StanzaDispatchKey getDispatchKey() {
+        return null;
+    }
 }
@@ -0,0 +1,605 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.mam;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jivesoftware.smack.SmackException.NoResponseException;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.SmackException.NotLoggedInException;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.util.Objects;
+
+import org.jivesoftware.smackx.delay.packet.DelayInformation;
+import org.jivesoftware.smackx.mam.element.MamElements.MamResultExtension;
+
+import org.jxmpp.jid.Jid;
+
+/**
+ * Synchronizes the messages of a time window of a message archive by splitting the window into time slices, which are
+ * queried concurrently. Every slice is queried via its own {@link MamResultStream}, at most
+ * {@link Builder#setParallelism(int) parallelism} slices are queried at the same time.
+ * <p>
+ * The results are delivered in archive order: all results of a slice are delivered before the results of the next
+ * slice. While a slice is delivered, the concurrently queried later slices prefetch at most
+ * {@link Builder#setMaxBufferedResultsPerSlice(int)} results each. Hence, the memory consumption is bounded by the
+ * parallelism times the maximum number of buffered results per slice, and the number of buffered results per slice
+ * determines how far the later slices are able to get ahead.
+ * </p>
+ * <p>
+ * Consumers which do not require the results in archive order may enable
+ * {@link Builder#setInterleavedDelivery(boolean) interleaved delivery}, where a result is delivered as soon as it was
+ * received, regardless of whether the earlier slices have been delivered completely. Then a slow slice does not hold
+ * back the others.
+ * </p>
+ * <p>
+ * The synchronization regularly reports a {@link Checkpoint} to the {@link Builder#setCheckpointListener(Consumer)
+ * checkpoint listener}. A checkpoint records the progress of every slice: whether the slice was completed, and the last
+ * delivered result of the slice otherwise. If the synchronization fails, for example because the connection was lost,
+ * a new synchronization of the same window can be resumed from the last persisted checkpoint via
+ * {@link Builder#resumeFrom(Checkpoint)}, which queries only the slices which have not been completed, starting after
+ * their last delivered result.
+ * </p>
+ *
+ * <pre>
+ * {@code
+ * MamArchiveSync mamArchiveSync = MamArchiveSync.builder(mamManager)
+ *                                     .between(start, end)
+ *                                     .resumeFrom(loadCheckpoint())
+ *                                     .setCheckpointListener(checkpoint -> persist(checkpoint))
+ *                                     .build();
+ * mamArchiveSync.sync(result -> process(result.getForwarded()));
+ * }
+ * </pre>
+ */
+public final class MamArchiveSync {
+
+    private final MamManager mamManager;
+
+    private final Date start;
+
+    private final Date end;
+
+    private final Jid withJid;
+
+    private final int slices;
+
+    private final int parallelism;
+
+    private final int pageSize;
+
+    private final int maxBufferedResultsPerSlice;
+
+    private final int checkpointInterval;
+
+    private final boolean interleavedDelivery;
+
+    private final Checkpoint resumeFrom;
+
+    private final Consumer<Checkpoint> checkpointListener;
+
+    private MamArchiveSync(Builder builder) {
+        mamManager = builder.mamManager;
+        start = builder.start;
+        end = builder.end;
+        withJid = builder.withJid;
+        slices = builder.slices;
+        parallelism = builder.parallelism;
+        pageSize = builder.pageSize;
+        interleavedDelivery = builder.interleavedDelivery;
+        if (builder.maxBufferedResultsPerSlice > 0) {
+            maxBufferedResultsPerSlice = builder.maxBufferedResultsPerSlice;
+        } else {
+            maxBufferedResultsPerSlice = (interleavedDelivery ? 2 : 10) * builder.pageSize;
+        }
+        checkpointInterval = builder.checkpointInterval > 0 ? builder.checkpointInterval : builder.pageSize;
+        resumeFrom = builder.resumeFrom;
+        checkpointListener = builder.checkpointListener;
+    }
+
+    /**
+     * Synchronize the window of this archive synchronization. Blocks until all results have been delivered to the
+     * given consumer, which is invoked by the calling thread. The results are delivered in archive order, unless
+     * {@link Builder#setInterleavedDelivery(boolean) interleaved delivery} was enabled.
+     *
+     * @param resultConsumer the consumer of the results.
+     * @throws NoResponseException if there was no response from the remote entity.
+     * @throws XMPPErrorException if there was an XMPP error returned.
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws NotLoggedInException if the XMPP connection is not authenticated.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    @SuppressWarnings("JavaUtilDate")
+    public void sync(Consumer<MamResultExtension> resultConsumer) throws NoResponseException, XMPPErrorException,
+                    NotConnectedException, NotLoggedInException, InterruptedException {
+        List<SliceCheckpoint> sliceCheckpoints;
+        if (resumeFrom != null) {
+            sliceCheckpoints = resumeFrom.getSlices();
+        } else {
+            sliceCheckpoints = split(start.getTime(), end.getTime(), slices);
+        }
+
+        List<Slice> allSlices = new ArrayList<>(sliceCheckpoints.size());
+        Deque<Slice> pendingSlices = new ArrayDeque<>(sliceCheckpoints.size());
+        for (SliceCheckpoint sliceCheckpoint : sliceCheckpoints) {
+            Slice slice = new Slice(sliceCheckpoint);
+            allSlices.add(slice);
+            if (!slice.complete) {
+                pendingSlices.add(slice);
+            }
+        }
+
+        // Released by the streams of the running slices whenever there is something to poll.
+        Semaphore updates = new Semaphore(0);
+        Runnable updateListener = updates::release;
+
+        List<Slice> runningSlices = new ArrayList<>(parallelism);
+        boolean checkpointReported = true;
+        int resultsSinceCheckpoint = 0;
+        try {
+            while (!pendingSlices.isEmpty() || !runningSlices.isEmpty()) {
+                while (runningSlices.size() < parallelism && !pendingSlices.isEmpty()) {
+                    Slice slice = pendingSlices.removeFirst();
+                    slice.start(updateListener);
+                    runningSlices.add(slice);
+                }
+
+                // Updates after this point cause another round, hence no update can be missed.
+                updates.drainPermits();
+
+                boolean progress = false;
+                long millisUntilTimeout = Long.MAX_VALUE;
+                // In archive order, only the first running slice is delivered, while the others prefetch their results
+                // until their buffer is full.
+                for (int index = 0; index < runningSlices.size() && (interleavedDelivery || index == 0);) {
+                    Slice slice = runningSlices.get(index);
+
+                    // Deliver at most a page per slice and round, so that every slice makes progress.
+                    MamResultExtension result;
+                    for (int i = 0; i < pageSize && (result = slice.stream.pollResult()) != null; i++) {
+                        resultConsumer.accept(result);
+                        slice.delivered(result);
+                        checkpointReported = false;
+                        progress = true;
+                        if (++resultsSinceCheckpoint >= checkpointInterval) {
+                            reportCheckpoint(allSlices);
+                            checkpointReported = true;
+                            resultsSinceCheckpoint = 0;
+                        }
+                    }
+
+                    if (slice.stream.isExhausted()) {
+                        slice.stream.close();
+                        slice.complete = true;
+                        runningSlices.remove(index);
+                        reportCheckpoint(allSlices);
+                        checkpointReported = true;
+                        progress = true;
+                        continue;
+                    }
+
+                    millisUntilTimeout = Math.min(millisUntilTimeout, slice.stream.getMillisUntilTimeout());
+                    index++;
+                }
+
+                if (!progress) {
+                    // Await an update of a running slice, but poll again once the page in flight timed out.
+                    updates.tryAcquire(Math.max(millisUntilTimeout, 1), TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            for (Slice slice : runningSlices) {
+                slice.stream.close();
+            }
+            if (!checkpointReported) {
+                reportCheckpoint(allSlices);
+            }
+        }
+    }
+
+    private void reportCheckpoint(List<Slice> allSlices) {
+        if (checkpointListener == null) {
+            return;
+        }
+
+        List<SliceCheckpoint> sliceCheckpoints = new ArrayList<>(allSlices.size());
+        for (Slice slice : allSlices) {
+            sliceCheckpoints.add(slice.toCheckpoint());
+        }
+        checkpointListener.accept(new Checkpoint(sliceCheckpoints));
+    }
+
+    /**
+     * Split the given window into the given number of slices. The MAM start and end dates are inclusive, hence every
+     * slice ends one millisecond before the next one starts. Every slice spans at least two milliseconds, as the end
+     * date of a query must be after its start date, hence short windows result in fewer slices.
+     *
+     * @param windowStart the start of the window in milliseconds, inclusive.
+     * @param windowEnd the end of the window in milliseconds, inclusive. Must be after the start.
+     * @param slices the maximum number of slices.
+     * @return the slices of the window.
+     */
+    @SuppressWarnings("JavaUtilDate")
+    static List<SliceCheckpoint> split(long windowStart, long windowEnd, int slices) {
+        long sliceLength = Math.max((windowEnd - windowStart + 1) / slices, 2);
+        List<SliceCheckpoint> result = new ArrayList<>(slices);
+        for (long sliceStart = windowStart; sliceStart < windowEnd;) {
+            long sliceEnd = sliceStart + sliceLength - 1;
+            if (result.size() == slices - 1 || sliceEnd + 2 > windowEnd) {
+                // The last slice, or a slice which would leave too little for another slice, ends with the window.
+                sliceEnd = windowEnd;
+            }
+            result.add(new SliceCheckpoint(new Date(sliceStart), new Date(sliceEnd), null, null, false));
+            sliceStart = sliceEnd + 1;
+        }
+        return result;
+    }
+
+    private final class Slice {
+        private final Date start;
+        private final Date end;
+        private String uid;
+        private Date timestamp;
+        private boolean complete;
+        private MamResultStream stream;
+
+        private Slice(SliceCheckpoint checkpoint) {
+            start = checkpoint.start;
+            end = checkpoint.end;
+            uid = checkpoint.uid;
+            timestamp = checkpoint.timestamp;
+            complete = checkpoint.complete;
+        }
+
+        @SuppressWarnings("JavaUtilDate")
+        private void start(Runnable updateListener) throws NoResponseException, XMPPErrorException,
+                        NotConnectedException, NotLoggedInException, InterruptedException {
+            Date queryStart = start;
+            if (timestamp != null) {
+                // The timestamp of the last delivered result may be the end of the slice, with the UID excluding it.
+                long resumeAt = Math.min(Math.max(start.getTime(), timestamp.getTime()), end.getTime() - 1);
+                queryStart = new Date(resumeAt);
+            }
+
+            MamManager.MamQueryArgs.Builder mamQueryArgs = MamManager.MamQueryArgs.builder()
+                            .limitResultsToJid(withJid)
+                            .limitResultsSince(queryStart)
+                            .limitResultsBefore(end)
+                            .setResultPageSize(pageSize);
+            if (uid != null) {
+                mamQueryArgs.afterUid(uid);
+            }
+            stream = mamManager.streamArchive(mamQueryArgs.build(), maxBufferedResultsPerSlice, updateListener);
+        }
+
+        private void delivered(MamResultExtension result) {
+            uid = result.getId();
+
+            DelayInformation delayInformation = result.getForwarded().getDelayInformation();
+            if (delayInformation != null) {
+                timestamp = delayInformation.getStamp();
+            } else if (timestamp == null) {
+                // Without the archive timestamp of the result, the timestamp of the previous result of this slice, or
+                // else the start of this slice, is the best known lower bound. Keeping it ensures that resuming this
+                // slice never starts before an earlier checkpoint did.
+                timestamp = start;
+            }
+        }
+
+        private SliceCheckpoint toCheckpoint() {
+            return new SliceCheckpoint(start, end, uid, timestamp, complete);
+        }
+    }
+
+    public static Builder builder(MamManager mamManager) {
+        return new Builder(mamManager);
+    }
+
+    public static final class Builder {
+        private final MamManager mamManager;
+        private Date start;
+        private Date end;
+        private Jid withJid;
+        private int slices = 8;
+        private int parallelism = 4;
+        private int pageSize = MamManager.DEFAULT_STREAM_PAGE_SIZE;
+        private int maxBufferedResultsPerSlice = -1;
+        private int checkpointInterval = -1;
+        private boolean interleavedDelivery;
+        private Checkpoint resumeFrom;
+        private Consumer<Checkpoint> checkpointListener;
+
+        private Builder(MamManager mamManager) {
+            this.mamManager = Objects.requireNonNull(mamManager, "MamManager must not be null");
+        }
+
+        /**
+         * Set the window to synchronize. Both dates are inclusive, and the end must be after the start.
+         *
+         * @param start the start of the window.
+         * @param end the end of the window.
+         * @return a reference to this builder.
+         */
+        @SuppressWarnings("JavaUtilDate")
+        public Builder between(Date start, Date end) {
+            if (!end.after(start)) {
+                throw new IllegalArgumentException("End (" + end + ") must be after start (" + start + ')');
+            }
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        public Builder limitResultsToJid(Jid withJid) {
+            this.withJid = withJid;
+            return this;
+        }
+
+        /**
+         * Set the number of time slices the window is split into. The default is 8. Ignored when resuming from a
+         * checkpoint, as the slices of the checkpoint are resumed.
+         *
+         * @param slices the number of slices.
+         * @return a reference to this builder.
+         */
+        public Builder setSlices(int slices) {
+            if (slices < 1) {
+                throw new IllegalArgumentException("Number of slices must be at least one");
+            }
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of slices which are queried at the same time. The default is 4.
+         *
+         * @param parallelism the maximum number of concurrently queried slices.
+         * @return a reference to this builder.
+         */
+        public Builder setParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least one");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder setResultPageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Page size must be at least one");
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of results a slice buffers until they are delivered. Must be at least the page size.
+         * When delivering in archive order, this determines how far the slices after the first running one are able
+         * to get ahead, and the default is ten times the page size. With interleaved delivery, the default is twice the
+         * page size, which allows the next page of a slice to be requested while the current page is delivered.
+         *
+         * @param maxBufferedResultsPerSlice the maximum number of buffered results per slice.
+         * @return a reference to this builder.
+         */
+        public Builder setMaxBufferedResultsPerSlice(int maxBufferedResultsPerSlice) {
+            this.maxBufferedResultsPerSlice = maxBufferedResultsPerSlice;
+            return this;
+        }
+
+        /**
+         * Deliver the results of the concurrently queried slices as soon as they are received, instead of in archive
+         * order. The results of a slice are still delivered in archive order, but the results of different slices are
+         * interleaved, and slices may be completed out of order. Hence, a slice whose query is slow does not hold back
+         * the delivery of the other slices. The default is to deliver in archive order.
+         *
+         * @param interleavedDelivery <code>true</code> to interleave the results of different slices.
+         * @return a reference to this builder.
+         */
+        public Builder setInterleavedDelivery(boolean interleavedDelivery) {
+            this.interleavedDelivery = interleavedDelivery;
+            return this;
+        }
+
+        /**
+         * Set the number of delivered results after which a checkpoint is reported. The default is the page size.
+         *
+         * @param checkpointInterval the number of results between two checkpoints.
+         * @return a reference to this builder.
+         */
+        public Builder setCheckpointInterval(int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * Resume a previous synchronization of the same window from the given checkpoint. Only the results of the
+         * slices which were not completed, and of those only the results after their last delivered result, are
+         * delivered.
+         *
+         * @param checkpoint the checkpoint to resume from, may be <code>null</code>.
+         * @return a reference to this builder.
+         */
+        public Builder resumeFrom(Checkpoint checkpoint) {
+            this.resumeFrom = checkpoint;
+            return this;
+        }
+
+        /**
+         * Set the listener which is notified about new checkpoints, typically in order to persist them. The listener is
+         * invoked by the thread performing the synchronization, after the results up to the checkpoint have been
+         * delivered. It is also invoked with the last checkpoint if the synchronization ends, either successfully or
+         * exceptionally.
+         *
+         * @param checkpointListener the checkpoint listener.
+         * @return a reference to this builder.
+         */
+        public Builder setCheckpointListener(Consumer<Checkpoint> checkpointListener) {
+            this.checkpointListener = checkpointListener;
+            return this;
+        }
+
+        public MamArchiveSync build() {
+            if (start == null) {
+                throw new IllegalStateException("No window to synchronize set");
+            }
+            if (resumeFrom != null && (!resumeFrom.getStart().equals(start) || !resumeFrom.getEnd().equals(end))) {
+                throw new IllegalStateException("Checkpoint from " + resumeFrom.getStart() + " to " + resumeFrom.getEnd()
+                                + " does not cover the window from " + start + " to " + end);
+            }
+            if (maxBufferedResultsPerSlice > 0 && maxBufferedResultsPerSlice < pageSize) {
+                throw new IllegalStateException("Maximum number of buffered results per slice must be at least the page size");
+            }
+            return new MamArchiveSync(this);
+        }
+    }
+
+    /**
+     * The progress of an archive synchronization, i.e., the progress of each of its slices.
+     */
+    public static final class Checkpoint {
+        private final List<SliceCheckpoint> slices;
+
+        /**
+         * Create a checkpoint from the given slices, which must be adjacent and in archive order.
+         *
+         * @param slices the checkpoints of the slices.
+         */
+        @SuppressWarnings("JavaUtilDate")
+        public Checkpoint(List<SliceCheckpoint> slices) {
+            if (slices.isEmpty()) {
+                throw new IllegalArgumentException("Checkpoint must have at least one slice");
+            }
+            for (int i = 1; i < slices.size(); i++) {
+                if (slices.get(i).start.getTime() != slices.get(i - 1).end.getTime() + 1) {
+                    throw new IllegalArgumentException("Slice " + slices.get(i) + " is not adjacent to its predecessor");
+                }
+            }
+            this.slices = Collections.unmodifiableList(new ArrayList<>(slices));
+        }
+
+        public List<SliceCheckpoint> getSlices() {
+            return slices;
+        }
+
+        public Date getStart() {
+            return slices.get(0).start;
+        }
+
+        public Date getEnd() {
+            return slices.get(slices.size() - 1).end;
+        }
+
+        /**
+         * Check if all slices of the synchronization have been completed.
+         *
+         * @return <code>true</code> if the synchronization was completed.
+         */
+        public boolean isComplete() {
+            for (SliceCheckpoint slice : slices) {
+                if (!slice.complete) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint" + slices;
+        }
+    }
+
+    /**
+     * The progress of a slice of an archive synchronization, i.e., whether the slice was completed, and the archive UID
+     * and the timestamp of the last delivered result of the slice otherwise.
+     */
+    public static final class SliceCheckpoint {
+        private final Date start;
+        private final Date end;
+        private final String uid;
+        private final Date timestamp;
+        private final boolean complete;
+
+        /**
+         * Create a checkpoint of a slice.
+         *
+         * @param start the start of the slice, inclusive.
+         * @param end the end of the slice, inclusive. Must be after the start.
+         * @param uid the archive UID of the last delivered result, or <code>null</code> if none was delivered.
+         * @param timestamp the timestamp of the last delivered result, which must be set if and only if the UID is set.
+         * @param complete <code>true</code> if all results of the slice have been delivered.
+         */
+        public SliceCheckpoint(Date start, Date end, String uid, Date timestamp, boolean complete) {
+            this.start = Objects.requireNonNull(start, "Start must not be null");
+            this.end = Objects.requireNonNull(end, "End must not be null");
+            if (!end.after(start)) {
+                throw new IllegalArgumentException("End (" + end + ") must be after start (" + start + ')');
+            }
+            if ((uid == null) != (timestamp == null)) {
+                throw new IllegalArgumentException("Either both, the UID and the timestamp, must be set, or none");
+            }
+            this.uid = uid;
+            this.timestamp = timestamp;
+            this.complete = complete;
+        }
+
+        public Date getStart() {
+            return start;
+        }
+
+        public Date getEnd() {
+            return end;
+        }
+
+        /**
+         * Get the archive UID of the last delivered result of this slice.
+         *
+         * @return the UID, or <code>null</code> if no result of this slice was delivered.
+         */
+        public String getUid() {
+            return uid;
+        }
+
+        /**
+         * Get the timestamp of the last delivered result of this slice. If the result did not carry its archive
+         * timestamp, then this is the timestamp of an earlier result of this slice, or the start of the slice.
+         *
+         * @return the timestamp, or <code>null</code> if no result of this slice was delivered.
+         */
+        public Date getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            return "SliceCheckpoint(" + start + " - " + end + ", " + (complete ? "complete" : uid + ", " + timestamp)
+                            + ')';
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright © 2017-2024 Florian Schmaus, 2016-2017 Fernando Ramirez
+ * Copyright © 2017-2026 Florian Schmaus, 2016-2017 Fernando Ramirez
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -150,6 +150,23 @@ import org.jxmpp.jid.Jid;
  * }
  * </pre>
  *
+ * <h2>Streaming the results</h2>
+ *
+ * If you want to process the whole result set, for example to synchronize the complete history, use {@link #streamArchive(MamQueryArgs)}.
+ * The returned {@link MamResultStream} delivers the results as soon as they are received, and requests the next page while you process the current one.
+ * The number of buffered results is bounded, so that the memory consumption does not depend on the size of the result set.
+ *
+ * <pre>
+ * {@code
+ * try (MamResultStream mamResultStream = mamManager.streamArchive(mamQueryArgs)) {
+ *     MamResultExtension result;
+ *     while ((result = mamResultStream.nextResult()) != null) {
+ *         process(result.getForwarded());
+ *     }
+ * }
+ * }
+ * </pre>
+ *
  * <h2>Get the supported form fields</h2>
  *
  * You can use {@link #retrieveFormFields()} to retrieve a list of the supported additional form fields by this archive.
@@ -181,6 +198,11 @@ public final class MamManager extends Manager {
 
     private static final String ADVANCED_CONFIG_NODE = "urn:xmpp:mam#configure";
 
+    /**
+     * The page size used by {@link #streamArchive(MamQueryArgs)} if the query arguments do not specify one.
+     */
+    public static final int DEFAULT_STREAM_PAGE_SIZE = 100;
+
     /**
      * Get a MamManager for the MAM archive of the local entity (the "user") of the given connection.
      *
@@ -535,6 +557,64 @@ public final class MamManager extends Manager {
         return queryArchive(mamQueryIQ);
     }
 
+    /**
+     * Stream all results matching the given query arguments. The page size of the query arguments, or
+     * {@link #DEFAULT_STREAM_PAGE_SIZE} if they do not specify one, is used to page through the result set, and at most
+     * two pages of results are buffered.
+     *
+     * @param mamQueryArgs the query arguments.
+     * @return the stream of the results.
+     * @throws NoResponseException if there was no response from the remote entity.
+     * @throws XMPPErrorException if there was an XMPP error returned.
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws NotLoggedInException if the XMPP connection is not authenticated.
+     * @throws InterruptedException if the calling thread was interrupted.
+     * @see MamResultStream
+     */
+    public MamResultStream streamArchive(MamQueryArgs mamQueryArgs) throws NoResponseException, XMPPErrorException,
+                    NotConnectedException, NotLoggedInException, InterruptedException {
+        int pageSize = mamQueryArgs.maxResults != null ? mamQueryArgs.maxResults : DEFAULT_STREAM_PAGE_SIZE;
+        return streamArchive(mamQueryArgs, 2 * pageSize);
+    }
+
+    /**
+     * Stream all results matching the given query arguments, buffering at most the given number of results. The next
+     * page is only requested once the buffered results leave room for another page, hence the maximum number of
+     * buffered results must be at least the page size.
+     *
+     * @param mamQueryArgs the query arguments.
+     * @param maxBufferedResults the maximum number of buffered results.
+     * @return the stream of the results.
+     * @throws NoResponseException if there was no response from the remote entity.
+     * @throws XMPPErrorException if there was an XMPP error returned.
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws NotLoggedInException if the XMPP connection is not authenticated.
+     * @throws InterruptedException if the calling thread was interrupted.
+     * @see MamResultStream
+     */
+    public MamResultStream streamArchive(MamQueryArgs mamQueryArgs, int maxBufferedResults)
+                    throws NoResponseException, XMPPErrorException, NotConnectedException, NotLoggedInException,
+                    InterruptedException {
+        return streamArchive(mamQueryArgs, maxBufferedResults, null);
+    }
+
+    MamResultStream streamArchive(MamQueryArgs mamQueryArgs, int maxBufferedResults, Runnable updateListener)
+                    throws NoResponseException, XMPPErrorException, NotConnectedException, NotLoggedInException,
+                    InterruptedException {
+        XMPPConnection connection = getAuthenticatedConnectionOrThrow();
+        MamElementFactory elementFactory = getElementFactory();
+        DataForm dataForm = mamQueryArgs.getDataForm(mamVersion);
+
+        int pageSize = mamQueryArgs.maxResults != null ? mamQueryArgs.maxResults : DEFAULT_STREAM_PAGE_SIZE;
+        boolean pageBackwards = mamQueryArgs.beforeUid != null;
+
+        MamResultStream mamResultStream = new MamResultStream(connection, elementFactory, archiveAddress,
+                        mamQueryArgs.node, dataForm, pageSize, maxBufferedResults, pageBackwards, updateListener);
+        mamResultStream.start(new RSMSet(mamQueryArgs.afterUid, mamQueryArgs.beforeUid, -1, -1, null, pageSize, null,
+                        -1));
+        return mamResultStream;
+    }
+
     private static FormField getWithFormField(Jid withJid) {
         return FormField.builder(FORM_FIELD_WITH)
                         .setValue(withJid.toString())
@@ -0,0 +1,498 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.mam;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.SmackException.NoResponseException;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException.XMPPErrorException;
+import org.jivesoftware.smack.filter.IQReplyFilter;
+import org.jivesoftware.smack.filter.OrFilter;
+import org.jivesoftware.smack.filter.StanzaFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.util.StringUtils;
+
+import org.jivesoftware.smackx.mam.element.MamElementFactory;
+import org.jivesoftware.smackx.mam.element.MamElements.MamResultExtension;
+import org.jivesoftware.smackx.mam.element.MamFinIQ;
+import org.jivesoftware.smackx.mam.element.MamQueryIQ;
+import org.jivesoftware.smackx.mam.filter.MamResultFilter;
+import org.jivesoftware.smackx.rsm.packet.RSMSet;
+import org.jivesoftware.smackx.xdata.packet.DataForm;
+
+import org.jxmpp.jid.Jid;
+
+/**
+ * A stream of the results of a MAM query, which pages through the whole result set. Results are delivered as soon as
+ * they are received, without waiting for the page they belong to to be completed. The next page is requested as soon
+ * as the current page is completed, while the consumer is still processing the results of the current page, but only
+ * if the results buffered by this stream leave room for another page. Hence, at most the configured maximum number of
+ * results is buffered, regardless of the size of the result set.
+ * <p>
+ * If the query arguments request paging backwards, for example via
+ * {@link MamManager.MamQueryArgs.Builder#queryLastPage()}, then the pages are streamed from the newest to the oldest
+ * one, while the results within a page are in archive order.
+ * </p>
+ * <p>
+ * Use {@link #nextResult()} to retrieve the results, or use this stream as {@link Iterator}, which throws a
+ * {@link MamResultStreamException} if retrieving the results failed. Streams which are not consumed until the end
+ * should be {@link #close() closed}.
+ * </p>
+ *
+ * @see MamManager#streamArchive(MamManager.MamQueryArgs)
+ */
+public final class MamResultStream implements Iterator<MamResultExtension>, AutoCloseable {
+
+    private final XMPPConnection connection;
+
+    private final MamElementFactory elementFactory;
+
+    private final Jid archiveAddress;
+
+    private final String node;
+
+    private final DataForm form;
+
+    private final int pageSize;
+
+    private final int maxBufferedResults;
+
+    private final boolean pageBackwards;
+
+    /**
+     * Invoked whenever a result was received, a page was completed, or this stream failed. May be <code>null</code>.
+     */
+    private final Runnable updateListener;
+
+    /**
+     * The received, but not yet consumed results. Guarded by this.
+     */
+    private final ArrayDeque<MamResultExtension> bufferedResults = new ArrayDeque<>();
+
+    /**
+     * The listener of the page in flight, or <code>null</code> if there is no page in flight. Guarded by this.
+     */
+    private PageListener pageInFlight;
+
+    /**
+     * The result set of the next page to request, or <code>null</code> if there is no next page or if it was already
+     * requested. Guarded by this.
+     */
+    private RSMSet nextPageRsmSet;
+
+    /**
+     * The time of the last activity of the page in flight, in nanoseconds. Guarded by this.
+     */
+    private long lastActivity;
+
+    private MamFinIQ lastMamFinIq;
+
+    private Exception failure;
+
+    private boolean closed;
+
+    /**
+     * The result returned by the next invocation of {@link #next()}. Only accessed by the consumer.
+     */
+    private MamResultExtension lookahead;
+
+    MamResultStream(XMPPConnection connection, MamElementFactory elementFactory, Jid archiveAddress, String node,
+                    DataForm form, int pageSize, int maxBufferedResults, boolean pageBackwards) {
+        this(connection, elementFactory, archiveAddress, node, form, pageSize, maxBufferedResults, pageBackwards, null);
+    }
+
+    MamResultStream(XMPPConnection connection, MamElementFactory elementFactory, Jid archiveAddress, String node,
+                    DataForm form, int pageSize, int maxBufferedResults, boolean pageBackwards,
+                    Runnable updateListener) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least one");
+        }
+        if (maxBufferedResults < pageSize) {
+            throw new IllegalArgumentException("Maximum number of buffered results must be at least the page size");
+        }
+        this.connection = connection;
+        this.elementFactory = elementFactory;
+        this.archiveAddress = archiveAddress;
+        this.node = node;
+        this.form = form;
+        this.pageSize = pageSize;
+        this.maxBufferedResults = maxBufferedResults;
+        this.pageBackwards = pageBackwards;
+        this.updateListener = updateListener;
+    }
+
+    void start(RSMSet firstPageRsmSet) throws NotConnectedException, InterruptedException {
+        synchronized (this) {
+            nextPageRsmSet = firstPageRsmSet;
+        }
+        maybeRequestNextPage();
+    }
+
+    /**
+     * Get the next result of the query. Blocks until the next result was received or until the result set has been
+     * streamed completely.
+     *
+     * @return the next result, or <code>null</code> if there are no further results.
+     * @throws NoResponseException if there was no response from the archive.
+     * @throws XMPPErrorException if the archive returned an XMPP error.
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    public MamResultExtension nextResult()
+                    throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
+        if (lookahead != null) {
+            MamResultExtension result = lookahead;
+            lookahead = null;
+            return result;
+        }
+
+        while (true) {
+            MamResultExtension result;
+            synchronized (this) {
+                while (true) {
+                    result = bufferedResults.poll();
+                    if (result != null) {
+                        break;
+                    }
+                    throwIfFailed();
+                    if (closed || (pageInFlight == null && nextPageRsmSet == null)) {
+                        return null;
+                    }
+                    if (pageInFlight == null) {
+                        // The next page was not requested from the listener of the previous page.
+                        break;
+                    }
+
+                    long remaining = remainingReplyTimeout();
+                    if (remaining <= 0) {
+                        throwIfFailed();
+                    }
+                    wait(remaining);
+                }
+            }
+
+            maybeRequestNextPage();
+
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Get the next result of the query, if one was already received. Unlike {@link #nextResult()}, this does not block.
+     * Use {@link #isExhausted()} to determine whether there are further results if this returns <code>null</code>.
+     *
+     * @return the next result, or <code>null</code> if no result is available right now.
+     * @throws NoResponseException if there was no response from the archive.
+     * @throws XMPPErrorException if the archive returned an XMPP error.
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    MamResultExtension pollResult()
+                    throws NoResponseException, XMPPErrorException, NotConnectedException, InterruptedException {
+        MamResultExtension result;
+        synchronized (this) {
+            result = bufferedResults.poll();
+            if (result == null) {
+                throwIfFailed();
+                if (pageInFlight != null && remainingReplyTimeout() <= 0) {
+                    throwIfFailed();
+                }
+            }
+        }
+
+        maybeRequestNextPage();
+
+        return result;
+    }
+
+    /**
+     * Check if this stream has no further results, either because the result set has been streamed completely or
+     * because this stream was closed. A failed stream is not exhausted, as {@link #pollResult()} throws the failure.
+     *
+     * @return <code>true</code> if there are no further results.
+     */
+    synchronized boolean isExhausted() {
+        return bufferedResults.isEmpty() && (closed || (failure == null && pageInFlight == null && nextPageRsmSet == null));
+    }
+
+    /**
+     * Get the number of milliseconds after which the page in flight times out, if no further response is received.
+     *
+     * @return the number of milliseconds until the page in flight times out, or {@link Long#MAX_VALUE} if there is no
+     *         page in flight.
+     */
+    synchronized long getMillisUntilTimeout() {
+        if (pageInFlight == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(remainingMillis(), 0);
+    }
+
+    /**
+     * Get the last fin IQ received by this stream. Once the stream was consumed completely, this contains the result
+     * set of the last page, which can be used to continue the query later on.
+     *
+     * @return the last fin IQ, or <code>null</code> if none was received yet.
+     */
+    public synchronized MamFinIQ getLastMamFinIq() {
+        return lastMamFinIq;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (lookahead != null) {
+            return true;
+        }
+        try {
+            lookahead = nextResult();
+        } catch (NoResponseException | XMPPErrorException | NotConnectedException e) {
+            throw new MamResultStreamException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MamResultStreamException(e);
+        }
+        return lookahead != null;
+    }
+
+    @Override
+    public MamResultExtension next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MamResultExtension result = lookahead;
+        lookahead = null;
+        return result;
+    }
+
+    /**
+     * Close this stream. Results of the page in flight, which are received after this stream was closed, are
+     * discarded.
+     */
+    @Override
+    public void close() {
+        PageListener listener;
+        synchronized (this) {
+            closed = true;
+            bufferedResults.clear();
+            nextPageRsmSet = null;
+            listener = pageInFlight;
+            pageInFlight = null;
+            notifyAll();
+        }
+        if (listener != null) {
+            connection.removeSyncStanzaListener(listener);
+        }
+    }
+
+    private long remainingMillis() {
+        assert Thread.holdsLock(this);
+
+        return connection.getReplyTimeout() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+    }
+
+    /**
+     * Get the remaining time until the page in flight times out. If it timed out, then a {@link NoResponseException} is
+     * recorded as failure of this stream.
+     *
+     * @return the remaining time in milliseconds, which is not positive if the page in flight timed out.
+     */
+    private long remainingReplyTimeout() {
+        assert Thread.holdsLock(this);
+
+        long remaining = remainingMillis();
+        if (remaining <= 0) {
+            failure = NoResponseException.newWith(connection.getReplyTimeout(), pageInFlight.filter, false);
+            connection.removeSyncStanzaListener(pageInFlight);
+            pageInFlight = null;
+        }
+        return remaining;
+    }
+
+    private void notifyUpdateListener() {
+        if (updateListener != null) {
+            updateListener.run();
+        }
+    }
+
+    private void throwIfFailed() throws NoResponseException, XMPPErrorException, NotConnectedException,
+                    InterruptedException {
+        assert Thread.holdsLock(this);
+
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof NoResponseException) {
+            throw (NoResponseException) failure;
+        }
+        if (failure instanceof XMPPErrorException) {
+            throw (XMPPErrorException) failure;
+        }
+        if (failure instanceof NotConnectedException) {
+            throw (NotConnectedException) failure;
+        }
+        if (failure instanceof InterruptedException) {
+            throw (InterruptedException) failure;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    /**
+     * Request the next page, if there is one, if no page is in flight, and if the buffer has room for another page.
+     *
+     * @throws NotConnectedException if the XMPP connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    private void maybeRequestNextPage() throws NotConnectedException, InterruptedException {
+        RSMSet rsmSet;
+        synchronized (this) {
+            if (nextPageRsmSet == null || pageInFlight != null || bufferedResults.size() + pageSize > maxBufferedResults) {
+                return;
+            }
+            rsmSet = nextPageRsmSet;
+            nextPageRsmSet = null;
+        }
+
+        String queryId = StringUtils.secureUniqueRandomString();
+        MamQueryIQ mamQueryIq = elementFactory.newQueryIQ(queryId, node, form);
+        mamQueryIq.setType(IQ.Type.set);
+        mamQueryIq.setTo(archiveAddress);
+        mamQueryIq.addExtension(rsmSet);
+
+        StanzaFilter filter = new OrFilter(new IQReplyFilter(mamQueryIq, connection), new MamResultFilter(mamQueryIq));
+        PageListener listener = new PageListener(filter);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pageInFlight = listener;
+            lastActivity = System.nanoTime();
+        }
+
+        connection.addSyncStanzaListener(listener, filter);
+        try {
+            connection.sendStanza(mamQueryIq);
+        } catch (NotConnectedException | InterruptedException e) {
+            connection.removeSyncStanzaListener(listener);
+            synchronized (this) {
+                if (pageInFlight == listener) {
+                    pageInFlight = null;
+                }
+                failure = e;
+                notifyAll();
+            }
+            notifyUpdateListener();
+            throw e;
+        }
+    }
+
+    private void pageCompleted(IQ response, int resultCount) {
+        assert Thread.holdsLock(this);
+
+        pageInFlight = null;
+        notifyAll();
+
+        if (response.getType() == IQ.Type.error) {
+            failure = new XMPPErrorException(response, response.getError());
+            return;
+        }
+
+        MamFinIQ mamFinIq = (MamFinIQ) response;
+        lastMamFinIq = mamFinIq;
+
+        RSMSet rsmSet = mamFinIq.getRSMSet();
+        if (mamFinIq.isComplete() || rsmSet == null || resultCount == 0) {
+            return;
+        }
+
+        if (pageBackwards) {
+            nextPageRsmSet = new RSMSet(pageSize, rsmSet.getFirst(), RSMSet.PageDirection.before);
+        } else {
+            nextPageRsmSet = new RSMSet(pageSize, rsmSet.getLast(), RSMSet.PageDirection.after);
+        }
+    }
+
+    private final class PageListener implements StanzaListener {
+
+        private final StanzaFilter filter;
+
+        /**
+         * The number of results of the page received so far. Only accessed by the thread invoking this listener.
+         */
+        private int resultCount;
+
+        private PageListener(StanzaFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void processStanza(Stanza stanza) {
+            synchronized (MamResultStream.this) {
+                if (pageInFlight != this) {
+                    // The stream was closed, or it gave up waiting for this page.
+                    return;
+                }
+
+                lastActivity = System.nanoTime();
+
+                if (stanza instanceof Message) {
+                    bufferedResults.add(MamResultExtension.from((Message) stanza));
+                    resultCount++;
+                    MamResultStream.this.notifyAll();
+                } else {
+                    connection.removeSyncStanzaListener(this);
+                    pageCompleted((IQ) stanza, resultCount);
+                }
+            }
+
+            notifyUpdateListener();
+
+            if (stanza instanceof Message) {
+                return;
+            }
+
+            // Prefetch the next page, if the consumer left enough room in the buffer.
+            try {
+                maybeRequestNextPage();
+            } catch (NotConnectedException | InterruptedException e) {
+                // Already recorded as failure of this stream by maybeRequestNextPage().
+            }
+        }
+    }
+
+    /**
+     * Thrown by the {@link Iterator} methods of {@link MamResultStream} if retrieving the results failed. The cause is
+     * the exception which would have been thrown by {@link MamResultStream#nextResult()}.
+     */
+    public static final class MamResultStreamException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private MamResultStreamException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.mam;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.test.util.SmackTestSuite;
+
+import org.jivesoftware.smackx.delay.packet.DelayInformation;
+import org.jivesoftware.smackx.forward.packet.Forwarded;
+import org.jivesoftware.smackx.mam.MamArchiveSync.Checkpoint;
+import org.jivesoftware.smackx.mam.MamArchiveSync.SliceCheckpoint;
+import org.jivesoftware.smackx.mam.element.MamElementFactory;
+import org.jivesoftware.smackx.mam.element.MamElements.MamResultExtension;
+import org.jivesoftware.smackx.mam.element.MamFinIQ;
+import org.jivesoftware.smackx.mam.element.MamQueryIQ;
+import org.jivesoftware.smackx.mam.element.MamVersion;
+import org.jivesoftware.smackx.rsm.packet.RSMSet;
+import org.jivesoftware.smackx.xdata.packet.DataForm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class MamArchiveSyncTest extends SmackTestSuite {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int WAIT_SECONDS = 5;
+
+    private final MamElementFactory elementFactory = MamVersion.MAM2.newElementFactory();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final BlockingQueue<String> deliveredResults = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<Checkpoint> checkpoints = new LinkedBlockingQueue<>();
+
+    private DummyConnection connection;
+
+    private Jid archive;
+
+    private MamManager mamManager;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        archive = JidCreate.from("archive.example.org");
+
+        // Stream the archive like MamManager does, but without discovering the supported MAM version first.
+        mamManager = mock(MamManager.class);
+        when(mamManager.streamArchive(any(), anyInt(), any())).thenAnswer(invocation -> {
+            MamManager.MamQueryArgs mamQueryArgs = invocation.getArgument(0);
+            DataForm form = mamQueryArgs.getDataForm(MamVersion.MAM2);
+            MamQueryIQ query = elementFactory.newQueryIQ("query", null, form);
+            mamQueryArgs.maybeAddRsmSet(query);
+
+            MamResultStream stream = new MamResultStream(connection, elementFactory, archive, null, form, PAGE_SIZE,
+                            invocation.getArgument(1), false, invocation.getArgument(2));
+            stream.start(query.getExtension(RSMSet.class));
+            return stream;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void windowIsSplitIntoAdjacentSlices() {
+        assertSlices(MamArchiveSync.split(0, 999, 4), 0, 249, 250, 499, 500, 749, 750, 999);
+
+        // The last slice ends with the window, even if it is longer than the others.
+        assertSlices(MamArchiveSync.split(0, 1001, 4), 0, 249, 250, 499, 500, 749, 750, 1001);
+        assertSlices(MamArchiveSync.split(1000, 1999, 1), 1000, 1999);
+    }
+
+    @Test
+    public void slicesSpanAtLeastTwoMilliseconds() {
+        // Both ends are inclusive, hence this window spans ten milliseconds.
+        assertSlices(MamArchiveSync.split(0, 9, 8), 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+        // A single remaining millisecond can not form a slice of its own.
+        assertSlices(MamArchiveSync.split(0, 10, 8), 0, 1, 2, 3, 4, 5, 6, 7, 8, 10);
+        assertSlices(MamArchiveSync.split(0, 1, 8), 0, 1);
+    }
+
+    @Test
+    public void slicesAreDeliveredInArchiveOrder() throws Exception {
+        MamArchiveSync mamArchiveSync = newBuilder(0, 1999).setSlices(2).setParallelism(2).build();
+        Future<?> sync = sync(mamArchiveSync);
+
+        MamQueryIQ firstSliceQuery = nextQuery();
+        MamQueryIQ secondSliceQuery = nextQuery();
+        assertQuery(firstSliceQuery, 0, 999, null);
+        assertQuery(secondSliceQuery, 1000, 1999, null);
+
+        // The second slice is queried concurrently, but its results are held back until the first slice is delivered.
+        respond(secondSliceQuery, 1500, 1600);
+        assertNull(deliveredResults.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(checkpoints.isEmpty());
+
+        respond(firstSliceQuery, 500);
+        assertEquals("result-500", nextDeliveredResult());
+        assertEquals("result-1500", nextDeliveredResult());
+        assertEquals("result-1600", nextDeliveredResult());
+        sync.get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        // The slices are completed in archive order.
+        Checkpoint checkpoint = nextCheckpoint();
+        assertTrue(checkpoint.getSlices().get(0).isComplete());
+        assertFalse(checkpoint.getSlices().get(1).isComplete());
+        assertTrue(nextCheckpoint().isComplete());
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+
+    @Test
+    @SuppressWarnings({"UndefinedEquals", "JavaUtilDate"})
+    public void interleavedSlicesAreDeliveredWithoutWaitingForEarlierSlices() throws Exception {
+        MamArchiveSync mamArchiveSync = newBuilder(0, 1999).setSlices(2).setParallelism(2)
+                        .setInterleavedDelivery(true)
+                        .build();
+        Future<?> sync = sync(mamArchiveSync);
+
+        MamQueryIQ firstSliceQuery = nextQuery();
+        MamQueryIQ secondSliceQuery = nextQuery();
+        assertQuery(firstSliceQuery, 0, 999, null);
+        assertQuery(secondSliceQuery, 1000, 1999, null);
+
+        // The first slice is not answered yet, the results of the second slice are delivered nevertheless.
+        respond(secondSliceQuery, 1500, 1600);
+        assertEquals("result-1500", nextDeliveredResult());
+        assertEquals("result-1600", nextDeliveredResult());
+
+        // The second slice completes and persists its progress before the first one.
+        Checkpoint checkpoint = nextCheckpoint();
+        assertFalse(checkpoint.isComplete());
+        assertNull(checkpoint.getSlices().get(0).getUid());
+        assertFalse(checkpoint.getSlices().get(0).isComplete());
+        assertTrue(checkpoint.getSlices().get(1).isComplete());
+
+        respond(firstSliceQuery, 500);
+        assertEquals("result-500", nextDeliveredResult());
+        sync.get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        checkpoint = nextCheckpoint();
+        assertTrue(checkpoint.isComplete());
+        assertEquals("result-500", checkpoint.getSlices().get(0).getUid());
+        assertEquals(new Date(500), checkpoint.getSlices().get(0).getTimestamp());
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+
+    @Test
+    @SuppressWarnings({"UndefinedEquals", "JavaUtilDate"})
+    public void resumesSlicesAfterTheirLastDeliveredResult() throws Exception {
+        List<SliceCheckpoint> slices = new ArrayList<>();
+        // The last delivered result of this slice is at its end, the query must still start before its end.
+        slices.add(new SliceCheckpoint(new Date(0), new Date(999), "result-999", new Date(999), false));
+        slices.add(new SliceCheckpoint(new Date(1000), new Date(1999), "result-1100", new Date(1100), true));
+        slices.add(new SliceCheckpoint(new Date(2000), new Date(2999), "result-2500", new Date(2500), false));
+        slices.add(new SliceCheckpoint(new Date(3000), new Date(3999), null, null, false));
+        Checkpoint resumeFrom = new Checkpoint(slices);
+
+        MamArchiveSync mamArchiveSync = newBuilder(0, 3999).resumeFrom(resumeFrom).build();
+        Future<?> sync = sync(mamArchiveSync);
+
+        // The completed slice is not queried again.
+        MamQueryIQ firstSliceQuery = nextQuery();
+        MamQueryIQ thirdSliceQuery = nextQuery();
+        MamQueryIQ fourthSliceQuery = nextQuery();
+        assertQuery(firstSliceQuery, 998, 999, "result-999");
+        assertQuery(thirdSliceQuery, 2500, 2999, "result-2500");
+        assertQuery(fourthSliceQuery, 3000, 3999, null);
+
+        respond(firstSliceQuery);
+        respond(thirdSliceQuery, 2600);
+        respond(fourthSliceQuery, 3100);
+        sync.get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        List<String> results = new ArrayList<>();
+        deliveredResults.drainTo(results);
+        assertEquals(2, results.size());
+        assertTrue(results.contains("result-2600"));
+        assertTrue(results.contains("result-3100"));
+
+        Checkpoint checkpoint = lastCheckpoint();
+        assertTrue(checkpoint.isComplete());
+        assertEquals("result-999", checkpoint.getSlices().get(0).getUid());
+        assertEquals("result-2600", checkpoint.getSlices().get(2).getUid());
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+
+    @Test
+    @SuppressWarnings({"UndefinedEquals", "JavaUtilDate"})
+    public void resultsWithoutTimestampDoNotMoveCheckpointsBackwards() throws Exception {
+        List<SliceCheckpoint> slices = new ArrayList<>();
+        slices.add(new SliceCheckpoint(new Date(0), new Date(999), null, null, false));
+        slices.add(new SliceCheckpoint(new Date(1000), new Date(1999), "result-1700", new Date(1700), false));
+
+        MamArchiveSync mamArchiveSync = newBuilder(0, 1999).resumeFrom(new Checkpoint(slices)).build();
+        Future<?> sync = sync(mamArchiveSync);
+
+        MamQueryIQ firstSliceQuery = nextQuery();
+        MamQueryIQ secondSliceQuery = nextQuery();
+        respondWithoutTimestamp(firstSliceQuery, "first");
+        respondWithoutTimestamp(secondSliceQuery, "second");
+        sync.get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        Checkpoint checkpoint = lastCheckpoint();
+        // Without an earlier timestamp, the start of the slice is the best known lower bound.
+        assertEquals("first", checkpoint.getSlices().get(0).getUid());
+        assertEquals(new Date(0), checkpoint.getSlices().get(0).getTimestamp());
+        // The resumed slice keeps the timestamp of its checkpoint, instead of falling back to the start of the slice.
+        assertEquals("second", checkpoint.getSlices().get(1).getUid());
+        assertEquals(new Date(1700), checkpoint.getSlices().get(1).getTimestamp());
+    }
+
+    @Test
+    public void checkpointOfOtherWindowIsRejected() {
+        Checkpoint checkpoint = new Checkpoint(MamArchiveSync.split(0, 999, 4));
+        MamArchiveSync.Builder builder = newBuilder(0, 1999).resumeFrom(checkpoint);
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    @SuppressWarnings("JavaUtilDate")
+    private MamArchiveSync.Builder newBuilder(long start, long end) {
+        return MamArchiveSync.builder(mamManager)
+                        .between(new Date(start), new Date(end))
+                        .setResultPageSize(PAGE_SIZE)
+                        .setCheckpointListener(checkpoints::add);
+    }
+
+    private Future<?> sync(MamArchiveSync mamArchiveSync) {
+        return executor.submit(() -> {
+            mamArchiveSync.sync(result -> deliveredResults.add(result.getId()));
+            return null;
+        });
+    }
+
+    private MamQueryIQ nextQuery() {
+        MamQueryIQ query = connection.getSentPacket(WAIT_SECONDS);
+        assertTrue(query != null, "Query was not sent");
+        return query;
+    }
+
+    private String nextDeliveredResult() throws InterruptedException {
+        return deliveredResults.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Checkpoint nextCheckpoint() throws InterruptedException {
+        Checkpoint checkpoint = checkpoints.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(checkpoint != null, "Checkpoint was not reported");
+        return checkpoint;
+    }
+
+    private Checkpoint lastCheckpoint() {
+        List<Checkpoint> reportedCheckpoints = new ArrayList<>();
+        checkpoints.drainTo(reportedCheckpoints);
+        assertFalse(reportedCheckpoints.isEmpty());
+        return reportedCheckpoints.get(reportedCheckpoints.size() - 1);
+    }
+
+    @SuppressWarnings({"UndefinedEquals", "JavaUtilDate"})
+    private static void assertQuery(MamQueryIQ query, long start, long end, String afterUid) throws Exception {
+        DataForm form = query.getDataForm();
+        assertEquals(new Date(start), form.getField("start").getFirstValueAsDate());
+        assertEquals(new Date(end), form.getField("end").getFirstValueAsDate());
+        assertEquals(afterUid, query.getExtension(RSMSet.class).getAfter());
+    }
+
+    private static void assertSlices(List<SliceCheckpoint> slices, long... bounds) {
+        assertEquals(bounds.length / 2, slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            assertEquals(bounds[2 * i], slices.get(i).getStart().getTime());
+            assertEquals(bounds[2 * i + 1], slices.get(i).getEnd().getTime());
+        }
+    }
+
+    /**
+     * Respond with a complete page, containing a result with the archive timestamp of each of the given timestamps.
+     */
+    @SuppressWarnings("JavaUtilDate")
+    private void respond(MamQueryIQ query, long... timestamps) {
+        List<String> uids = new ArrayList<>(timestamps.length);
+        for (long timestamp : timestamps) {
+            String uid = "result-" + timestamp;
+            sendResult(query, uid, new DelayInformation(new Date(timestamp)));
+            uids.add(uid);
+        }
+        sendFin(query, uids);
+    }
+
+    private void respondWithoutTimestamp(MamQueryIQ query, String uid) {
+        sendResult(query, uid, null);
+        sendFin(query, List.of(uid));
+    }
+
+    private void sendResult(MamQueryIQ query, String uid, DelayInformation delayInformation) {
+        Message archivedMessage = StanzaBuilder.buildMessage().setBody("Message " + uid).build();
+        MamResultExtension result = elementFactory.newResultExtension(query.getQueryId(), uid,
+                        new Forwarded<>(archivedMessage, delayInformation));
+        Message carrier = StanzaBuilder.buildMessage()
+                        .from(archive)
+                        .addExtension(result)
+                        .build();
+        connection.processStanza(carrier);
+    }
+
+    private void sendFin(MamQueryIQ query, List<String> uids) {
+        String first = uids.isEmpty() ? null : uids.get(0);
+        String last = uids.isEmpty() ? null : uids.get(uids.size() - 1);
+        RSMSet rsmSet = new RSMSet(null, null, -1, -1, last, -1, first, -1);
+        MamFinIQ fin = elementFactory.newFinIQ(query.getQueryId(), rsmSet, true, true);
+        fin.setType(IQ.Type.result);
+        fin.setStanzaId(query.getStanzaId());
+        fin.setFrom(archive);
+        fin.setTo(connection.getUser());
+        connection.processStanza(fin);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.mam;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.filter.StanzaIdFilter;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.test.util.SmackTestSuite;
+
+import org.jivesoftware.smackx.forward.packet.Forwarded;
+import org.jivesoftware.smackx.mam.element.MamElementFactory;
+import org.jivesoftware.smackx.mam.element.MamElements.MamResultExtension;
+import org.jivesoftware.smackx.mam.element.MamFinIQ;
+import org.jivesoftware.smackx.mam.element.MamQueryIQ;
+import org.jivesoftware.smackx.mam.element.MamVersion;
+import org.jivesoftware.smackx.rsm.packet.RSMSet;
+
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class MamResultStreamTest extends SmackTestSuite {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final MamElementFactory elementFactory = MamVersion.MAM2.newElementFactory();
+
+    @Test
+    public void streamsAllPagesWithBoundedBuffer() throws Exception {
+        DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+        Jid archive = JidCreate.from("archive.example.org");
+
+        MamResultStream stream = new MamResultStream(connection, elementFactory, archive, null, null, PAGE_SIZE,
+                        2 * PAGE_SIZE, false);
+        stream.start(new RSMSet(PAGE_SIZE));
+
+        // The second page is requested as soon as the first page is complete.
+        MamQueryIQ query = connection.getSentPacket();
+        respondWithPage(connection, query, archive, 0, false);
+        query = connection.getSentPacket();
+        assertEquals("result-1", query.getExtension(RSMSet.class).getAfter());
+
+        // The buffer is full after the second page, hence the third page is not requested yet.
+        respondWithPage(connection, query, archive, 2, false);
+        awaitSyncListeners(connection);
+        assertEquals(0, connection.getNumberOfSentPackets());
+
+        assertEquals("result-0", stream.nextResult().getId());
+        assertEquals("result-1", stream.nextResult().getId());
+
+        // Consuming the first page made room for the third page.
+        query = connection.getSentPacket();
+        assertEquals("result-3", query.getExtension(RSMSet.class).getAfter());
+        respondWithPage(connection, query, archive, 4, true);
+
+        for (int i = 2; i < 6; i++) {
+            assertEquals("result-" + i, stream.next().getId());
+        }
+        assertNull(stream.nextResult());
+        assertEquals(0, connection.getNumberOfSentPackets());
+    }
+
+    private void respondWithPage(DummyConnection connection, MamQueryIQ query, Jid archive, int first,
+                    boolean complete) {
+        for (int i = first; i < first + PAGE_SIZE; i++) {
+            Message archivedMessage = StanzaBuilder.buildMessage().setBody("Message " + i).build();
+            MamResultExtension result = elementFactory.newResultExtension(query.getQueryId(), "result-" + i,
+                            new Forwarded<>(archivedMessage));
+            Message carrier = StanzaBuilder.buildMessage()
+                            .from(archive)
+                            .addExtension(result)
+                            .build();
+            connection.processStanza(carrier);
+        }
+
+        RSMSet rsmSet = new RSMSet(null, null, -1, -1, "result-" + (first + PAGE_SIZE - 1), -1, "result-" + first, -1);
+        MamFinIQ fin = elementFactory.newFinIQ(query.getQueryId(), rsmSet, complete, true);
+        fin.setType(IQ.Type.result);
+        fin.setStanzaId(query.getStanzaId());
+        fin.setFrom(archive);
+        fin.setTo(connection.getUser());
+        connection.processStanza(fin);
+    }
+
+    /**
+     * Wait until the synchronous stanza listeners processed all previously received stanzas, as those are invoked in
+     * the order the stanzas were received.
+     */
+    private static void awaitSyncListeners(DummyConnection connection) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Message marker = StanzaBuilder.buildMessage("marker").build();
+        connection.addSyncStanzaListener(stanza -> latch.countDown(), new StanzaIdFilter(marker));
+        connection.processStanza(marker);
+        latch.await();
+    }
+}
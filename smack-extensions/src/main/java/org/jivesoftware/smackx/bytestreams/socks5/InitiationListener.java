@@ -17,11 +17,11 @@
 package org.jivesoftware.smackx.bytestreams.socks5;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.SmackExecutors;
 import org.jivesoftware.smack.iqrequest.AbstractIqRequestHandler;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Stanza;
@@ -55,7 +55,7 @@ final class InitiationListener extends AbstractIqRequestHandler {
     InitiationListener(Socks5BytestreamManager manager) {
         super(Bytestream.ELEMENT, Bytestream.NAMESPACE, IQ.Type.set, Mode.async);
         this.manager = manager;
-        initiationListenerExecutor = Executors.newCachedThreadPool();
+        initiationListenerExecutor = SmackExecutors.newCachedExecutorService("Smack SOCKS5 Bytestream Initiation Listener");
     }
 
 
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright © 2009 Jonas Ådahl, 2011-2024 Florian Schmaus
+ * Copyright © 2009 Jonas Ådahl, 2011-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,7 +33,11 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.jivesoftware.smack.ConnectionCreationListener;
 import org.jivesoftware.smack.ConnectionListener;
@@ -122,7 +126,13 @@ public final class EntityCapsManager extends Manager {
     public static final String NAMESPACE = CapsExtension.NAMESPACE;
     public static final String ELEMENT = CapsExtension.ELEMENT;
 
-    private static final Map<String, MessageDigest> SUPPORTED_HASHES = new HashMap<String, MessageDigest>();
+    private static final Logger LOGGER = Logger.getLogger(EntityCapsManager.class.getName());
+
+    /**
+     * Map of the supported hash algorithms to thread-confined MessageDigest instances, so that verification strings
+     * can be calculated concurrently without contending on a shared digest.
+     */
+    private static final Map<String, ThreadLocal<MessageDigest>> SUPPORTED_HASHES = new HashMap<>();
 
     /**
      * The default hash. Currently 'sha-1'.
@@ -153,6 +163,13 @@ public final class EntityCapsManager extends Manager {
      */
     static final LruCache<Jid, NodeVerHash> JID_TO_NODEVER_CACHE = new LruCache<>(10000);
 
+    /**
+     * Map of "node + '#' + hash" to the latch of the disco#info lookup of this node#ver which is currently in flight.
+     * Used to ensure that concurrent lookups of the same node#ver, e.g. of many MUC occupants using the same client,
+     * only cause a single disco#info query.
+     */
+    private static final Map<String, CountDownLatch> IN_FLIGHT_LOOKUPS = new ConcurrentHashMap<>();
+
     static {
         XMPPConnectionRegistry.addConnectionCreationListener(new ConnectionCreationListener() {
             @Override
@@ -162,8 +179,15 @@ public final class EntityCapsManager extends Manager {
         });
 
         try {
-            MessageDigest sha1MessageDigest = MessageDigest.getInstance(DEFAULT_HASH);
-            SUPPORTED_HASHES.put(DEFAULT_HASH, sha1MessageDigest);
+            // Ensure that the algorithm is available before registering it.
+            MessageDigest.getInstance(DEFAULT_HASH);
+            SUPPORTED_HASHES.put(DEFAULT_HASH, ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(DEFAULT_HASH);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new AssertionError(e);
+                }
+            }));
         } catch (NoSuchAlgorithmException e) {
             // Ignore
         }
@@ -181,22 +205,67 @@ public final class EntityCapsManager extends Manager {
                     return null;
                 }
 
-                try {
-                    info = serviceDiscoveryManager.discoverInfo(jid, nodeVerHash.getNodeVer());
-                } catch (NoResponseException | XMPPErrorException | NotConnectedException | InterruptedException e) {
-                    // TODO log
-                    return null;
-                }
+                return lookupDiscoverInfoByNodeVer(serviceDiscoveryManager, jid, nodeVerHash);
+            }
+        });
+    }
 
-                if (verifyDiscoverInfoVersion(nodeVerHash.getVer(), nodeVerHash.getHash(), info)) {
-                    addDiscoverInfoByNode(nodeVerHash.getNodeVer(), info);
-                } else {
-                    // TODO log
-                }
+    /**
+     * Lookup the DiscoverInfo of the given node#ver by querying the given entity. Only one lookup per node#ver is in
+     * flight at any time: Concurrent callers for the same node#ver wait for the query of the first caller and use its
+     * verified result.
+     *
+     * @param serviceDiscoveryManager the service discovery manager used to query the entity.
+     * @param jid the entity announcing the node#ver.
+     * @param nodeVerHash the node#ver announced by the entity.
+     * @return the DiscoverInfo or null if it could not be retrieved.
+     */
+    private static DiscoverInfo lookupDiscoverInfoByNodeVer(ServiceDiscoveryManager serviceDiscoveryManager, Jid jid,
+                    NodeVerHash nodeVerHash) {
+        final String nodeVer = nodeVerHash.getNodeVer();
+        final CountDownLatch lookupDone = new CountDownLatch(1);
+        CountDownLatch inFlightLookup = IN_FLIGHT_LOOKUPS.putIfAbsent(nodeVer, lookupDone);
+        if (inFlightLookup != null) {
+            // The in-flight lookup always terminates, as its query is bounded by the reply timeout.
+            try {
+                inFlightLookup.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            // If the other lookup failed or its result could not be verified, then we return null here, which
+            // causes the caller to fall back to a disco#info query without node.
+            return getDiscoveryInfoByNodeVer(nodeVer);
+        }
 
+        try {
+            // The previous lookup of this node#ver may have finished after our caller checked the cache.
+            DiscoverInfo info = getDiscoveryInfoByNodeVer(nodeVer);
+            if (info != null) {
                 return info;
             }
-        });
+
+            try {
+                info = serviceDiscoveryManager.discoverInfo(jid, nodeVer);
+            } catch (NoResponseException | XMPPErrorException | NotConnectedException e) {
+                LOGGER.log(Level.FINE, "Could not lookup disco#info of " + nodeVer + " from " + jid, e);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            if (verifyDiscoverInfoVersion(nodeVerHash.getVer(), nodeVerHash.getHash(), info)) {
+                addDiscoverInfoByNode(nodeVer, info);
+            } else {
+                LOGGER.fine("Could not verify disco#info of " + nodeVer + " from " + jid);
+            }
+
+            return info;
+        } finally {
+            IN_FLIGHT_LOOKUPS.remove(nodeVer);
+            lookupDone.countDown();
+        }
     }
 
     /**
@@ -290,12 +359,22 @@ public final class EntityCapsManager extends Manager {
     }
 
     /**
-     * Set the persistent cache implementation.
+     * Set the persistent cache implementation. The in-memory cache is warmed with the entries of the persistent cache
+     * in bulk, up to its maximum size, so that they do not need to be restored one by one on first use.
      *
      * @param cache TODO javadoc me please
+     * @see EntityCapsPersistentCache#loadAll(int)
      */
     public static void setPersistentCache(EntityCapsPersistentCache cache) {
         persistentCache = cache;
+        if (cache == null) {
+            return;
+        }
+
+        Map<String, DiscoverInfo> entries = cache.loadAll(CAPS_CACHE.getMaxCacheSize());
+        for (Map.Entry<String, DiscoverInfo> entry : entries.entrySet()) {
+            CAPS_CACHE.put(entry.getKey(), entry.getValue());
+        }
     }
 
     /**
@@ -654,8 +733,8 @@ public final class EntityCapsManager extends Manager {
             hash = DEFAULT_HASH;
         }
         // SUPPORTED_HASHES uses the format of MessageDigest, which is uppercase, e.g. "SHA-1" instead of "sha-1"
-        MessageDigest md = SUPPORTED_HASHES.get(hash.toUpperCase(Locale.US));
-        if (md == null)
+        ThreadLocal<MessageDigest> threadLocalMessageDigest = SUPPORTED_HASHES.get(hash.toUpperCase(Locale.US));
+        if (threadLocalMessageDigest == null)
             return null;
         // Then transform the hash to lowercase, as this value will be put on the wire within the caps element's hash
         // attribute. I'm not sure if the standard is case insensitive here, but let's assume that even it is, there could
@@ -766,10 +845,7 @@ public final class EntityCapsManager extends Manager {
         // (note: the Base64 output MUST NOT include whitespace and MUST set
         // padding bits to zero).
         byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
-        byte[] digest;
-        synchronized (md) {
-            digest = md.digest(bytes);
-        }
+        byte[] digest = threadLocalMessageDigest.get().digest(bytes);
         String version = Base64.encodeToString(digest);
         return new CapsVersionAndHash(version, hash);
     }
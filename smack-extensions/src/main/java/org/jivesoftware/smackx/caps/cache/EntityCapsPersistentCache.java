@@ -1,6 +1,6 @@
 /*
  *
- * Copyright © 2011-2014 Florian Schmaus
+ * Copyright © 2011-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,9 @@
  */
 package org.jivesoftware.smackx.caps.cache;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 
 public interface EntityCapsPersistentCache {
@@ -35,6 +38,18 @@ public interface EntityCapsPersistentCache {
      */
     DiscoverInfo lookup(String nodeVer);
 
+    /**
+     * Load the entries of the cache in bulk. This is used to warm the in-memory cache when the persistent cache is set.
+     * The default implementation returns an empty map, in which case entries are looked up on demand.
+     *
+     * @param maxEntries the maximum number of entries to load.
+     * @return a map from node#ver to DiscoverInfo.
+     * @since 4.5.0
+     */
+    default Map<String, DiscoverInfo> loadAll(int maxEntries) {
+        return Collections.emptyMap();
+    }
+
     /**
      * Empty the Cache.
      */
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright © 2011-2025 Florian Schmaus
+ * Copyright © 2011-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -108,6 +112,41 @@ public class SimpleDirectoryPersistentCache implements EntityCapsPersistentCache
         return info;
     }
 
+    /**
+     * Load the most recently written entries of the cache directory.
+     *
+     * @param maxEntries the maximum number of entries to load.
+     * @return a map from node#ver to DiscoverInfo.
+     */
+    @Override
+    public Map<String, DiscoverInfo> loadAll(int maxEntries) {
+        File[] files = cacheDir.listFiles(File::isFile);
+        if (files == null) {
+            return new HashMap<>();
+        }
+        if (files.length > maxEntries) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        }
+
+        Map<String, DiscoverInfo> entries = new HashMap<>(Math.min(files.length, maxEntries));
+        for (File file : files) {
+            if (entries.size() >= maxEntries) {
+                break;
+            }
+            try {
+                String nodeVer = filenameEncoder.decode(file.getName());
+                DiscoverInfo info = restoreInfoFromFile(file);
+                if (nodeVer != null && info != null) {
+                    entries.put(nodeVer, info);
+                }
+            }
+            catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not restore info from file " + file, e);
+            }
+        }
+        return entries;
+    }
+
     private File getFileFor(String nodeVer) {
         String filename = filenameEncoder.encode(nodeVer);
         return new File(cacheDir, filename);
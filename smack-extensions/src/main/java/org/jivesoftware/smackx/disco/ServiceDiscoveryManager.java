@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2003-2007 Jive Software, 2018-2024 Florian Schmaus.
+ * Copyright 2003-2007 Jive Software, 2018-2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,11 +22,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,6 +42,7 @@ import org.jivesoftware.smack.Manager;
 import org.jivesoftware.smack.ScheduledAction;
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.SmackFuture;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPConnectionRegistry;
 import org.jivesoftware.smack.XMPPException.XMPPErrorException;
@@ -90,7 +93,11 @@ public final class ServiceDiscoveryManager extends Manager {
     private static final String DEFAULT_IDENTITY_CATEGORY = "client";
     private static final String DEFAULT_IDENTITY_TYPE = "pc";
 
-    private static final List<DiscoInfoLookupShortcutMechanism> discoInfoLookupShortcutMechanisms = new ArrayList<>(2);
+    /**
+     * The registered shortcut mechanisms, sorted by priority. Lookups iterate over this list without locking, as a
+     * mechanism may block while resolving the information, which must not serialize concurrent lookups.
+     */
+    private static final List<DiscoInfoLookupShortcutMechanism> discoInfoLookupShortcutMechanisms = new CopyOnWriteArrayList<>();
 
     private static DiscoverInfo.Identity defaultIdentity = new Identity(DEFAULT_IDENTITY_CATEGORY,
             DEFAULT_IDENTITY_NAME, DEFAULT_IDENTITY_TYPE);
@@ -531,14 +538,12 @@ public final class ServiceDiscoveryManager extends Manager {
         if (entityID == null)
             return discoverInfo(null, null);
 
-        synchronized (discoInfoLookupShortcutMechanisms) {
-            for (DiscoInfoLookupShortcutMechanism discoInfoLookupShortcutMechanism : discoInfoLookupShortcutMechanisms) {
-                DiscoverInfo info = discoInfoLookupShortcutMechanism.getDiscoverInfoByUser(this, entityID);
-                if (info != null) {
-                    // We were able to retrieve the information from Entity Caps and
-                    // avoided a disco request, hurray!
-                    return info;
-                }
+        for (DiscoInfoLookupShortcutMechanism discoInfoLookupShortcutMechanism : discoInfoLookupShortcutMechanisms) {
+            DiscoverInfo info = discoInfoLookupShortcutMechanism.getDiscoverInfoByUser(this, entityID);
+            if (info != null) {
+                // We were able to retrieve the information from Entity Caps and
+                // avoided a disco request, hurray!
+                return info;
             }
         }
 
@@ -576,6 +581,60 @@ public final class ServiceDiscoveryManager extends Manager {
         return (DiscoverInfo) result;
     }
 
+    /**
+     * Discover the information of the given XMPP entities with pipelined disco#info requests. Entities whose
+     * information is available via a {@link DiscoInfoLookupShortcutMechanism}, e.g., Entity Capabilities, do not
+     * cause a request. The requests for the remaining entities are sent as one batch, see
+     * {@link XMPPConnection#sendIqRequestsAsync(Collection)}, so that the information of all entities is usually
+     * discovered within a single round-trip instead of one round-trip per entity.
+     *
+     * @param entityIDs the addresses of the XMPP entities.
+     * @return a map from the entity addresses to futures of their discovered information, in iteration order of the
+     *         given addresses.
+     * @since 4.5.0
+     */
+    public Map<Jid, SmackFuture<DiscoverInfo, Exception>> discoverInfoAsync(Collection<? extends Jid> entityIDs) {
+        final XMPPConnection connection = connection();
+        final Map<Jid, SmackFuture<DiscoverInfo, Exception>> result = new LinkedHashMap<>(entityIDs.size());
+
+        final List<Jid> requestedEntities = new ArrayList<>(entityIDs.size());
+        final List<DiscoverInfo> requests = new ArrayList<>(entityIDs.size());
+        for (Jid entityID : entityIDs) {
+            if (result.containsKey(entityID)) {
+                continue;
+            }
+
+            DiscoverInfo info = null;
+            for (DiscoInfoLookupShortcutMechanism discoInfoLookupShortcutMechanism : discoInfoLookupShortcutMechanisms) {
+                info = discoInfoLookupShortcutMechanism.getDiscoverInfoByUser(this, entityID);
+                if (info != null) {
+                    break;
+                }
+            }
+            if (info != null) {
+                result.put(entityID, SmackFuture.from(info));
+                continue;
+            }
+
+            // Reserve the position of the entity in the result map.
+            result.put(entityID, null);
+            requestedEntities.add(entityID);
+            requests.add(DiscoverInfo.builder(connection).to(entityID).build());
+        }
+
+        List<SmackFuture<IQ, Exception>> responses = connection.sendIqRequestsAsync(requests);
+        for (int i = 0; i < responses.size(); i++) {
+            // The result of a disco#info request is a DiscoverInfo, just like in discoverInfo(Jid, String). Handing
+            // out the futures of the batch, instead of wrapping them, ensures that cancelling a future avoids sending
+            // the request, if it was not yet sent.
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            SmackFuture<DiscoverInfo, Exception> future = (SmackFuture) responses.get(i);
+            result.put(requestedEntities.get(i), future);
+        }
+
+        return result;
+    }
+
     /**
      * Returns the discovered items of a given XMPP entity addressed by its JID.
      *
@@ -897,25 +956,48 @@ public final class ServiceDiscoveryManager extends Manager {
             }
             return serviceDiscoInfo;
         }
+        List<Jid> addresses = new ArrayList<>(items.getItems().size());
         for (DiscoverItems.Item item : items.getItems()) {
-            Jid address = item.getEntityID();
-            try {
-                // TODO is it OK here in all cases to query without the node attribute?
-                // MultipleRecipientManager queried initially also with the node attribute, but this
-                // could be simply a fault instead of intentional.
-                info = discoverInfo(address);
-            }
-            catch (XMPPErrorException | NoResponseException e) {
-                if (encounteredExceptions != null) {
-                    encounteredExceptions.put(address, e);
+            addresses.add(item.getEntityID());
+        }
+        // TODO is it OK here in all cases to query without the node attribute?
+        // MultipleRecipientManager queried initially also with the node attribute, but this
+        // could be simply a fault instead of intentional.
+        // Pipeline the disco#info requests to all items, instead of waiting for one response after another.
+        Map<Jid, SmackFuture<DiscoverInfo, Exception>> itemInfos = discoverInfoAsync(addresses);
+        try {
+            for (Map.Entry<Jid, SmackFuture<DiscoverInfo, Exception>> entry : itemInfos.entrySet()) {
+                Jid address = entry.getKey();
+                try {
+                    info = entry.getValue().getOrThrow();
                 }
-                continue;
-            }
-            if (info.containsFeatures(features)) {
-                serviceDiscoInfo.add(info);
-                if (stopOnFirst) {
-                    break;
+                catch (XMPPErrorException | NoResponseException e) {
+                    if (encounteredExceptions != null) {
+                        encounteredExceptions.put(address, e);
+                    }
+                    continue;
+                }
+                catch (NotConnectedException | InterruptedException e) {
+                    throw e;
                 }
+                catch (Exception e) {
+                    // For example, an OutgoingQueueFullException.
+                    if (encounteredExceptions != null) {
+                        encounteredExceptions.put(address, e);
+                    }
+                    continue;
+                }
+                if (info.containsFeatures(features)) {
+                    serviceDiscoInfo.add(info);
+                    if (stopOnFirst) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // Avoid sending the remaining requests, if we stopped early.
+            for (SmackFuture<DiscoverInfo, Exception> future : itemInfos.values()) {
+                future.cancel(false);
             }
         }
         if (serviceAndFeatures != null) {
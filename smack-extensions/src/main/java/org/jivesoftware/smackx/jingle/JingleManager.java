@@ -20,11 +20,11 @@ import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jivesoftware.smack.Manager;
+import org.jivesoftware.smack.SmackExecutors;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.iqrequest.AbstractIqRequestHandler;
 import org.jivesoftware.smack.iqrequest.IQRequestHandler.Mode;
@@ -46,7 +46,8 @@ public final class JingleManager extends Manager {
 
     private static final Map<XMPPConnection, JingleManager> INSTANCES = new WeakHashMap<>();
 
-    private static final ExecutorService threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService threadPool = SmackExecutors.newFixedExecutorService(
+                    Runtime.getRuntime().availableProcessors(), "Smack Jingle Manager");
 
     public static ExecutorService getThreadPool() {
         return threadPool;
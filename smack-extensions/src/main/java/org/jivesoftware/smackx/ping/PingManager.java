@@ -17,6 +17,7 @@
 package org.jivesoftware.smackx.ping;
 
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -24,18 +25,21 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.jivesoftware.smack.AbstractConnectionClosedListener;
+import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.ConnectionCreationListener;
 import org.jivesoftware.smack.Manager;
-import org.jivesoftware.smack.ScheduledAction;
 import org.jivesoftware.smack.SmackException.NoResponseException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
 import org.jivesoftware.smack.SmackFuture;
 import org.jivesoftware.smack.SmackFuture.InternalProcessStanzaSmackFuture;
+import org.jivesoftware.smack.TimerWheel;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPConnectionRegistry;
 import org.jivesoftware.smack.XMPPException.XMPPErrorException;
 import org.jivesoftware.smack.iqrequest.AbstractIqRequestHandler;
 import org.jivesoftware.smack.iqrequest.IQRequestHandler.Mode;
+import org.jivesoftware.smack.metrics.Histogram;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.StanzaError;
@@ -56,6 +60,11 @@ import org.jxmpp.jid.Jid;
  * The default server ping interval is 30 minutes and can be modified with
  * {@link #setDefaultPingInterval(int)} and {@link #setPingInterval(int)}.
  * </p>
+ * <p>
+ * The automatic server pings of all connections are driven by a shared timer wheel, and spread over the ping interval.
+ * No ping is sent if data was received within the interval. If Stream Management (XEP-0198) is enabled, then an
+ * acknowledgement request is sent instead of a ping IQ, as it is cheaper for both sides.
+ * </p>
  *
  * @author Florian Schmaus
  * @see <a href="http://www.xmpp.org/extensions/xep-0199.html">XEP-0199:XMPP Ping</a>
@@ -112,7 +121,20 @@ public final class PingManager extends Manager {
      */
     private int pingInterval = defaultPingInterval;
 
-    private ScheduledAction nextAutomaticPing;
+    private static final Random RANDOM = new Random();
+
+    private TimerWheel.Timeout nextAutomaticPing;
+
+    /**
+     * The minimum time in milliseconds to wait for the server's answer to an automatic ping. Package-private for unit
+     * testing purposes.
+     */
+    long minimumPingTimeoutMillis = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * The round trip times of the automatic server pings in milliseconds.
+     */
+    private final Histogram pingRoundTripTimes = Histogram.create();
 
     private PingManager(XMPPConnection connection) {
         super(connection);
@@ -355,6 +377,15 @@ public final class PingManager extends Manager {
         return pingInterval;
     }
 
+    /**
+     * Get the round trip times of the automatic server pings in milliseconds.
+     *
+     * @return a snapshot of the round trip times.
+     */
+    public Histogram.Snapshot getPingRoundTripTimes() {
+        return pingRoundTripTimes.getSnapshot();
+    }
+
     /**
      * Register a new PingFailedListener.
      *
@@ -387,14 +418,17 @@ public final class PingManager extends Manager {
         maybeStopPingServerTask();
         if (pingInterval > 0) {
             int nextPingIn = pingInterval - delta;
+            // Ping up to 10% earlier, so that the pings of connections which got established at the same time do not
+            // happen all at once.
+            nextPingIn -= RANDOM.nextInt(nextPingIn / 10 + 1);
             LOGGER.fine("Scheduling ServerPingTask in " + nextPingIn + " seconds (pingInterval="
                             + pingInterval + ", delta=" + delta + ")");
-            nextAutomaticPing = schedule(this::pingServerIfNecessary, nextPingIn, TimeUnit.SECONDS);
+            nextAutomaticPing = scheduleCoarse(this::pingServerIfNecessary, nextPingIn, TimeUnit.SECONDS);
         }
     }
 
     private void maybeStopPingServerTask() {
-        final ScheduledAction nextAutomaticPing = this.nextAutomaticPing;
+        final TimerWheel.Timeout nextAutomaticPing = this.nextAutomaticPing;
         if (nextAutomaticPing != null) {
             nextAutomaticPing.cancel();
             this.nextAutomaticPing = null;
@@ -432,14 +466,46 @@ public final class PingManager extends Manager {
             return;
         }
 
-        final long minimumTimeout = TimeUnit.MINUTES.toMillis(2);
         final long connectionReplyTimeout = connection.getReplyTimeout();
-        final long timeout = connectionReplyTimeout > minimumTimeout ? connectionReplyTimeout : minimumTimeout;
+        final long timeout = Math.max(connectionReplyTimeout, minimumPingTimeoutMillis);
+
+        // Taken before the request, as the answer may arrive before the request method returns.
+        final long requestSent = System.currentTimeMillis();
+        if (connection instanceof AbstractXMPPConnection
+                        && ((AbstractXMPPConnection) connection).requestSmAcknowledgementIfEnabled()) {
+            // The server's answer to the acknowledgement request will update the last data received timestamp. The
+            // server gets the same time to answer as it would get for a ping.
+            synchronized (this) {
+                nextAutomaticPing = scheduleCoarse(() -> {
+                    long answerReceived = connection.getLastDataReceived();
+                    if (answerReceived >= requestSent) {
+                        // The next automatic ping is due one ping interval after the answer, not after this check.
+                        int deltaInSeconds = (int) ((System.currentTimeMillis() - answerReceived) / 1000);
+                        maybeSchedulePingServerTask(Math.min(deltaInSeconds, pingInterval - 1));
+                    } else {
+                        // No data received, fall back to an XMPP ping before declaring the ping as failed.
+                        pingServer(connection, timeout);
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
 
+        pingServer(connection, timeout);
+    }
+
+    private void pingServer(final XMPPConnection connection, long timeout) {
+        final long pingSent = System.nanoTime();
         SmackFuture<Boolean, Exception> pingFuture = pingAsync(connection.getXMPPServiceDomain(), timeout);
         pingFuture.onSuccess(new SuccessCallback<Boolean>() {
             @Override
             public void onSuccess(Boolean result) {
+                long roundTripTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pingSent);
+                pingRoundTripTimes.record(roundTripTime);
+                SmackMetrics metrics = SmackMetrics.getIfEnabled();
+                if (metrics != null) {
+                    metrics.pingRoundTripTime.record(roundTripTime);
+                }
                 // Ping was successful, wind-up the periodic task again
                 maybeSchedulePingServerTask();
             }
@@ -17,14 +17,24 @@
 package org.jivesoftware.smackx.caps;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jivesoftware.smack.DummyConnection;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.test.util.SmackTestSuite;
 import org.jivesoftware.smack.util.StringUtils;
@@ -33,6 +43,7 @@ import org.jivesoftware.smack.util.stringencoder.StringEncoder;
 
 import org.jivesoftware.smackx.caps.cache.EntityCapsPersistentCache;
 import org.jivesoftware.smackx.caps.cache.SimpleDirectoryPersistentCache;
+import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfoBuilder;
 import org.jivesoftware.smackx.xdata.FormField;
@@ -41,12 +52,17 @@ import org.jivesoftware.smackx.xdata.TextSingleFormField;
 import org.jivesoftware.smackx.xdata.packet.DataForm;
 
 import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.Jid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 
 public class EntityCapsManagerTest extends SmackTestSuite {
 
+    private static final int CONCURRENT_LOOKUPS = 8;
+
+    private static final int WAIT_SECONDS = 5;
+
     /**
      * <a href="https://xmpp.org/extensions/xep-0115.html#ver-gen-simple">XEP-
      * 0115 Simple Generation Example</a>.
@@ -101,6 +117,161 @@ public class EntityCapsManagerTest extends SmackTestSuite {
         testSimpleDirectoryCache(Base32.getStringEncoder());
     }
 
+    @Test
+    public void testPersistentCacheIsWarmedInBulk() throws IOException {
+        File cacheDir = createTempDirectory();
+        DiscoverInfo di = createComplexSamplePacket();
+        CapsVersionAndHash versionAndHash = EntityCapsManager.generateVerificationString(di, StringUtils.SHA1);
+        String nodeVer = di.getNode() + "#" + versionAndHash.version;
+        new SimpleDirectoryPersistentCache(cacheDir).addDiscoverInfoByNodePersistent(nodeVer, di);
+
+        EntityCapsManager.clearMemoryCache();
+        EntityCapsManager.setPersistentCache(new SimpleDirectoryPersistentCache(cacheDir));
+        try {
+            DiscoverInfo warmedDi = EntityCapsManager.CAPS_CACHE.lookup(nodeVer);
+            assertNotNull(warmedDi);
+            assertEquals(di.toXML().toString(), warmedDi.toXML().toString());
+        } finally {
+            EntityCapsManager.setPersistentCache(null);
+            EntityCapsManager.clearMemoryCache();
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsOfNodeVerCauseSingleQuery() throws Exception {
+        DiscoverInfo info = createLookupResponseBuilder("lookup").build();
+        String ver = EntityCapsManager.generateVerificationString(info, StringUtils.SHA1).version;
+        EntityCapsManager.NodeVerHash nodeVerHash = new EntityCapsManager.NodeVerHash("https://example.org/single",
+                        ver, StringUtils.SHA1);
+
+        EntityCapsManager.persistentCache = null;
+        EntityCapsManager.clearMemoryCache();
+        try {
+            DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+            List<Thread> threads = new ArrayList<>();
+            List<FutureTask<DiscoverInfo>> lookups = startConcurrentLookups(connection, nodeVerHash, threads);
+
+            DiscoverInfo request = connection.getSentPacket(WAIT_SECONDS);
+            assertNotNull(request);
+            assertEquals(nodeVerHash.getNodeVer(), request.getNode());
+
+            // All other lookups wait for the one in flight, instead of querying the node#ver themselves.
+            awaitLookupsWaitingForInFlightLookup(threads, CONCURRENT_LOOKUPS - 1);
+            respondToLookup(connection, request);
+
+            for (FutureTask<DiscoverInfo> lookup : lookups) {
+                DiscoverInfo result = lookup.get(WAIT_SECONDS, TimeUnit.SECONDS);
+                assertEquals(ver, EntityCapsManager.generateVerificationString(result, StringUtils.SHA1).version);
+            }
+            assertEquals(0, connection.getNumberOfSentPackets());
+            assertNotNull(EntityCapsManager.getDiscoveryInfoByNodeVer(nodeVerHash.getNodeVer()));
+        } finally {
+            EntityCapsManager.clearMemoryCache();
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsFallBackIfResultCanNotBeVerified() throws Exception {
+        EntityCapsManager.NodeVerHash nodeVerHash = new EntityCapsManager.NodeVerHash("https://example.org/bogus",
+                        "bogus", StringUtils.SHA1);
+
+        EntityCapsManager.persistentCache = null;
+        EntityCapsManager.clearMemoryCache();
+        try {
+            DummyConnection connection = DummyConnection.newConnectedDummyConnection();
+            List<Thread> threads = new ArrayList<>();
+            List<FutureTask<DiscoverInfo>> lookups = startConcurrentLookups(connection, nodeVerHash, threads);
+
+            DiscoverInfo request = connection.getSentPacket(WAIT_SECONDS);
+            assertNotNull(request);
+            assertEquals(nodeVerHash.getNodeVer(), request.getNode());
+            awaitLookupsWaitingForInFlightLookup(threads, CONCURRENT_LOOKUPS - 1);
+
+            // The response does not match the announced ver, hence it must not be shared with the waiting lookups.
+            respondToLookup(connection, request);
+
+            // Every waiting lookup falls back to a disco#info query of its own entity, without node.
+            Set<Jid> fallbackQueriedEntities = new HashSet<>();
+            for (int i = 0; i < CONCURRENT_LOOKUPS - 1; i++) {
+                DiscoverInfo fallbackRequest = connection.getSentPacket(WAIT_SECONDS);
+                assertNotNull(fallbackRequest);
+                assertNull(fallbackRequest.getNode());
+                assertTrue(fallbackQueriedEntities.add(fallbackRequest.getTo()));
+                respondToLookup(connection, fallbackRequest);
+            }
+            assertFalse(fallbackQueriedEntities.contains(request.getTo()));
+
+            for (FutureTask<DiscoverInfo> lookup : lookups) {
+                assertNotNull(lookup.get(WAIT_SECONDS, TimeUnit.SECONDS));
+            }
+            assertEquals(0, connection.getNumberOfSentPackets());
+            assertNull(EntityCapsManager.getDiscoveryInfoByNodeVer(nodeVerHash.getNodeVer()));
+        } finally {
+            EntityCapsManager.clearMemoryCache();
+        }
+    }
+
+    /**
+     * Start concurrent lookups of the disco#info of MUC occupants, which all announce the given node#ver.
+     */
+    private static List<FutureTask<DiscoverInfo>> startConcurrentLookups(DummyConnection connection,
+                    EntityCapsManager.NodeVerHash nodeVerHash, List<Thread> threads) throws XmppStringprepException {
+        ServiceDiscoveryManager serviceDiscoveryManager = ServiceDiscoveryManager.getInstanceFor(connection);
+        List<FutureTask<DiscoverInfo>> lookups = new ArrayList<>(CONCURRENT_LOOKUPS);
+        for (int i = 0; i < CONCURRENT_LOOKUPS; i++) {
+            Jid occupant = JidCreate.from("room@muc.example.org/occupant-" + i);
+            EntityCapsManager.JID_TO_NODEVER_CACHE.put(occupant, nodeVerHash);
+
+            FutureTask<DiscoverInfo> lookup = new FutureTask<>(() -> serviceDiscoveryManager.discoverInfo(occupant));
+            Thread thread = new Thread(lookup, "Lookup of " + occupant);
+            thread.setDaemon(true);
+            thread.start();
+            lookups.add(lookup);
+            threads.add(thread);
+        }
+        return lookups;
+    }
+
+    /**
+     * Wait until the given number of threads is blocked on the latch of an in-flight lookup.
+     */
+    private static void awaitLookupsWaitingForInFlightLookup(List<Thread> threads, int count)
+                    throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (true) {
+            int waiting = 0;
+            for (Thread thread : threads) {
+                Object blocker = LockSupport.getBlocker(thread);
+                if (blocker != null && blocker.getClass().getEnclosingClass() == CountDownLatch.class) {
+                    waiting++;
+                }
+            }
+            if (waiting == count) {
+                return;
+            }
+            assertTrue(System.nanoTime() < deadline, waiting + " instead of " + count + " lookups are waiting");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void respondToLookup(DummyConnection connection, DiscoverInfo request) {
+        DiscoverInfo response = createLookupResponseBuilder(request.getStanzaId())
+                        .from(request.getTo())
+                        .to(request.getFrom())
+                        .setNode(request.getNode())
+                        .build();
+        connection.processStanza(response);
+    }
+
+    private static DiscoverInfoBuilder createLookupResponseBuilder(String stanzaId) {
+        DiscoverInfoBuilder di = DiscoverInfo.builder(stanzaId);
+        di.ofType(IQ.Type.result);
+        di.addIdentity(new DiscoverInfo.Identity("client", "pc"));
+        di.addFeature("http://jabber.org/protocol/disco#info");
+        di.addFeature(EntityCapsManager.NAMESPACE);
+        return di;
+    }
+
     @Test
     public void testVerificationDuplicateFeatures() throws XmppStringprepException {
         DiscoverInfo di = createMalformedDiscoverInfo();
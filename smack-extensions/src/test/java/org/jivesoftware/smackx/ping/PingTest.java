@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2012-2019 Florian Schmaus
+ * Copyright 2012-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,11 +20,15 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.jivesoftware.smack.test.util.CharSequenceEquals.equalsCharSequence;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.jxmpp.jid.JidTestUtil.DUMMY_AT_EXAMPLE_ORG;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jivesoftware.smack.DummyConnection;
 import org.jivesoftware.smack.SmackException;
@@ -33,6 +37,7 @@ import org.jivesoftware.smack.ThreadedDummyConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
 import org.jivesoftware.smack.test.util.ElementParserUtils;
 import org.jivesoftware.smack.test.util.SmackTestSuite;
 
@@ -227,6 +232,100 @@ public class PingTest extends SmackTestSuite {
         assertFalse(pingSupported);
     }
 
+    @Test
+    public void automaticPingIsScheduled() throws Exception {
+        DummyConnection con = getAuthenticatedDummyConnectionWithoutIqReplies();
+        PingManager pinger = PingManager.getInstanceFor(con);
+        pinger.minimumPingTimeoutMillis = 0;
+        CountDownLatch pingFailed = new CountDownLatch(1);
+        pinger.registerPingFailedListener(pingFailed::countDown);
+
+        pinger.setPingInterval(1);
+
+        Stanza sentPacket = con.getSentPacket(5);
+        assertTrue(sentPacket instanceof Ping);
+        assertTrue(pingFailed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void disablingAutomaticPingsCancelsScheduledPing() throws Exception {
+        DummyConnection con = getAuthenticatedDummyConnectionWithoutIqReplies();
+        PingManager pinger = PingManager.getInstanceFor(con);
+
+        pinger.setPingInterval(1);
+        pinger.setPingInterval(-1);
+
+        assertNull(con.getSentPacket(3));
+    }
+
+    @Test
+    public void answeredSmAcknowledgementRequestReplacesPing() throws Exception {
+        StreamManagementDummyConnection con = getAuthenticatedStreamManagementDummyConnection();
+        PingManager pinger = PingManager.getInstanceFor(con);
+        pinger.minimumPingTimeoutMillis = 0;
+        try {
+            pinger.setPingInterval(1);
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (con.ackRequests.get() < 2) {
+                assertTrue(System.currentTimeMillis() < deadline, "No second acknowledgement request");
+                Thread.sleep(10);
+            }
+        } finally {
+            pinger.setPingInterval(-1);
+        }
+
+        TopLevelStreamElement sentElement;
+        while ((sentElement = con.getSentPacket(0)) != null) {
+            assertFalse(sentElement instanceof Ping);
+        }
+    }
+
+    @Test
+    public void unansweredSmAcknowledgementRequestFallsBackToPing() throws Exception {
+        StreamManagementDummyConnection con = getAuthenticatedStreamManagementDummyConnection();
+        con.answerAckRequests = false;
+        PingManager pinger = PingManager.getInstanceFor(con);
+        pinger.minimumPingTimeoutMillis = 0;
+        CountDownLatch pingFailed = new CountDownLatch(1);
+        pinger.registerPingFailedListener(pingFailed::countDown);
+
+        pinger.setPingInterval(1);
+
+        Stanza sentPacket = con.getSentPacket(5);
+        assertTrue(sentPacket instanceof Ping);
+        assertEquals(1, con.ackRequests.get());
+        assertTrue(pingFailed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A connection with Stream Management enabled, whose server answers acknowledgement requests, unless configured
+     * otherwise.
+     */
+    private static final class StreamManagementDummyConnection extends DummyConnection {
+        private final AtomicInteger ackRequests = new AtomicInteger();
+
+        private volatile boolean answerAckRequests = true;
+
+        @Override
+        public boolean requestSmAcknowledgementIfEnabled() {
+            ackRequests.incrementAndGet();
+            if (answerAckRequests) {
+                notifyDataReceived();
+            }
+            return true;
+        }
+    }
+
+    private static StreamManagementDummyConnection getAuthenticatedStreamManagementDummyConnection()
+                    throws SmackException, IOException, XMPPException, InterruptedException {
+        StreamManagementDummyConnection con = new StreamManagementDummyConnection();
+        con.setReplyTimeout(500);
+        con.connect();
+        con.login();
+        return con;
+    }
+
     private static ThreadedDummyConnection getAuthenticatedDummyConnection() throws SmackException, IOException, XMPPException, InterruptedException {
         ThreadedDummyConnection connection = new ThreadedDummyConnection();
         connection.connect();
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2003-2007 Jive Software, 2016-2025 Florian Schmaus.
+ * Copyright 2003-2007 Jive Software, 2016-2026 Florian Schmaus.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -273,7 +273,7 @@ public final class Roster extends Manager {
      */
     private final Map<BareJid, RosterEntry> entries = new ConcurrentHashMap<>();
 
-    private final Set<RosterEntry> unfiledEntries = new CopyOnWriteArraySet<>();
+    private final Set<RosterEntry> unfiledEntries = ConcurrentHashMap.newKeySet();
     private final Set<RosterListener> rosterListeners = new LinkedHashSet<>();
 
     private final Set<PresenceEventListener> presenceEventListeners = new CopyOnWriteArraySet<>();
@@ -1460,6 +1460,7 @@ public final class Roster extends Manager {
         synchronized (rosterListenersAndEntriesLock) {
             oldEntry = entries.put(item.getJid(), entry);
         }
+        RosterPacket.Item oldItem = null;
         if (oldEntry == null) {
             BareJid jid = item.getJid();
             addedEntries.add(jid);
@@ -1467,7 +1468,9 @@ public final class Roster extends Manager {
             move(jid, nonRosterPresenceMap, presenceMap);
         }
         else {
-            RosterPacket.Item oldItem = RosterEntry.toRosterItem(oldEntry);
+            // Use the stored item of the old entry, as converting the entry to an item would look up its groups by
+            // checking every group of the roster.
+            oldItem = oldEntry.getItem();
             if (!oldEntry.equalsDeep(entry) || !item.getGroupNames().equals(oldItem.getGroupNames())) {
                 updatedEntries.add(item.getJid());
                 oldEntry.updateItem(item);
@@ -1486,11 +1489,8 @@ public final class Roster extends Manager {
         }
 
         // Add the entry/user to the groups
-        List<String> newGroupNames = new ArrayList<>();
-        for (String groupName : item.getGroupNames()) {
-            // Add the group name to the list.
-            newGroupNames.add(groupName);
-
+        Set<String> newGroupNames = item.getGroupNames();
+        for (String groupName : newGroupNames) {
             // Add the entry to the group.
             RosterGroup group = getGroup(groupName);
             if (group == null) {
@@ -1501,15 +1501,20 @@ public final class Roster extends Manager {
             group.addEntryLocal(entry);
         }
 
-        // Remove user from the remaining groups.
-        List<String> oldGroupNames = new ArrayList<>();
-        for (RosterGroup group : getGroups()) {
-            oldGroupNames.add(group.getName());
+        // A new entry is not part of any group yet. An existing entry has to be removed from its remaining groups,
+        // which are exactly the ones of the old item. Considering only those, instead of all groups of the roster, is
+        // crucial to process large rosters with many groups in linear time.
+        if (oldItem == null) {
+            return;
         }
-        oldGroupNames.removeAll(newGroupNames);
-
-        for (String groupName : oldGroupNames) {
+        for (String groupName : oldItem.getGroupNames()) {
+            if (newGroupNames.contains(groupName)) {
+                continue;
+            }
             RosterGroup group = getGroup(groupName);
+            if (group == null) {
+                continue;
+            }
             group.removeEntryLocal(entry);
             if (group.getEntryCount() == 0) {
                 groups.remove(groupName);
@@ -1822,29 +1827,33 @@ public final class Roster extends Manager {
                 // Non-empty roster result. This stanza contains all the roster elements.
                 RosterPacket rosterPacket = (RosterPacket) packet;
 
-                // Ignore items without valid subscription type
-                ArrayList<Item> validItems = new ArrayList<>();
-                for (RosterPacket.Item item : rosterPacket.getRosterItems()) {
-                    if (hasValidSubscriptionType(item)) {
-                        validItems.add(item);
-                    }
-                }
+                // If there are no entries yet, e.g. because this is the initial roster load, then there is nothing to
+                // delete, and we can avoid tracking the entries of the roster result.
+                final boolean hadEntries = !entries.isEmpty();
 
-                for (RosterPacket.Item item : validItems) {
+                // Process the items in a single pass, creating the roster entries right away. Items without valid
+                // subscription type are ignored.
+                List<RosterPacket.Item> rosterItems = rosterPacket.getRosterItems();
+                List<RosterPacket.Item> validItems = new ArrayList<>(rosterItems.size());
+                for (RosterPacket.Item item : rosterItems) {
+                    if (!hasValidSubscriptionType(item)) {
+                        continue;
+                    }
+                    validItems.add(item);
                     RosterEntry entry = new RosterEntry(item, Roster.this, connection);
                     addUpdateEntry(addedEntries, updatedEntries, unchangedEntries, item, entry);
                 }
 
-                // Delete all entries which where not added or updated
-                Set<Jid> toDelete = new HashSet<>();
-                for (RosterEntry entry : entries.values()) {
-                    toDelete.add(entry.getJid());
-                }
-                toDelete.removeAll(addedEntries);
-                toDelete.removeAll(updatedEntries);
-                toDelete.removeAll(unchangedEntries);
-                for (Jid user : toDelete) {
-                    deleteEntry(deletedEntries, entries.get(user));
+                if (hadEntries) {
+                    // Delete all entries which where not added or updated
+                    Set<Jid> resultJids = new HashSet<>(addedEntries);
+                    resultJids.addAll(updatedEntries);
+                    resultJids.addAll(unchangedEntries);
+                    for (RosterEntry entry : entries.values()) {
+                        if (!resultJids.contains(entry.getJid())) {
+                            deleteEntry(deletedEntries, entry);
+                        }
+                    }
                 }
 
                 if (rosterStore != null) {
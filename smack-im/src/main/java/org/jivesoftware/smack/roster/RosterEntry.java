@@ -126,6 +126,16 @@ public final class RosterEntry extends Manager {
         this.item = item;
     }
 
+    /**
+     * Returns the roster item this entry was created from, or last updated with. Its group names are the groups this
+     * entry belongs to, which, unlike {@link #getGroups()}, does not require to check every group of the roster.
+     *
+     * @return the roster item of this entry.
+     */
+    RosterPacket.Item getItem() {
+        return item;
+    }
+
     /**
      * Returns the pre-approval state of this entry.
      *
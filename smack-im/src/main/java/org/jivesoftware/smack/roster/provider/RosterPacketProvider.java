@@ -17,6 +17,7 @@
 package org.jivesoftware.smack.roster.provider;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.IqData;
@@ -41,6 +42,24 @@ public class RosterPacketProvider extends IqProvider<RosterPacket> {
         String version = parser.getAttributeValue("", "ver");
         roster.setVersion(version);
 
+        parseItems(parser, initialDepth, jxmppContext, roster::addRosterItem);
+        return roster;
+    }
+
+    /**
+     * Parse the roster items of the roster query element the parser is positioned at, and hand every item to the
+     * given consumer as soon as it was parsed. This allows very large rosters to be processed without first collecting
+     * all items.
+     *
+     * @param parser the parser positioned at the start of the query element.
+     * @param initialDepth the depth of the query element.
+     * @param jxmppContext the JXMPP context used when creating JIDs.
+     * @param itemConsumer the consumer of the parsed roster items.
+     * @throws XmlPullParserException if an error in the XML parser occurred.
+     * @throws IOException if an I/O error occurred.
+     */
+    public static void parseItems(XmlPullParser parser, int initialDepth, JxmppContext jxmppContext,
+                    Consumer<RosterPacket.Item> itemConsumer) throws XmlPullParserException, IOException {
         outerloop: while (true) {
             XmlPullParser.Event eventType = parser.next();
             switch (eventType) {
@@ -49,7 +68,7 @@ public class RosterPacketProvider extends IqProvider<RosterPacket> {
                 switch (startTag) {
                 case "item":
                     RosterPacket.Item item = parseItem(parser, jxmppContext);
-                    roster.addRosterItem(item);
+                    itemConsumer.accept(item);
                     break;
                 }
                 break;
@@ -67,7 +86,6 @@ public class RosterPacketProvider extends IqProvider<RosterPacket> {
                 break;
             }
         }
-        return roster;
     }
 
     public static RosterPacket.Item parseItem(XmlPullParser parser, JxmppContext jxmppContext) throws XmlPullParserException, IOException {
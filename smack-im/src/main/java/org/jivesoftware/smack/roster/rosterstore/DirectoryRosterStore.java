@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2013-2015 the original author or authors, 2020-2025 Florian Schmaus
+ * Copyright 2013-2015 the original author or authors, 2020-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,17 +16,25 @@
  */
 package org.jivesoftware.smack.roster.rosterstore;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.roster.packet.RosterPacket;
 import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
 import org.jivesoftware.smack.roster.provider.RosterPacketProvider;
 import org.jivesoftware.smack.util.FileUtils;
@@ -36,11 +44,19 @@ import org.jivesoftware.smack.xml.XmlPullParser;
 import org.jivesoftware.smack.xml.XmlPullParserException;
 
 import org.jxmpp.JxmppContext;
+import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
 
 /**
  * Stores roster entries as specified by RFC 6121 for roster versioning
  * in a set of files.
+ * <p>
+ * A full roster, as persisted by {@link #resetEntries(Collection, String)}, is written sequentially into a single
+ * entries file. Roster pushes processed afterwards are stored in one file per entry, which takes precedence over the
+ * entries file, and removals of entries of the entries file are recorded by tombstone files.
+ * </p>
  *
  * @author Lars Noschinski
  * @author Fabian Schuetz
@@ -50,7 +66,15 @@ public final class DirectoryRosterStore implements RosterStore {
 
     private final File fileDir;
 
+    /**
+     * The items of the entries file, parsed once instead of on every lookup. {@code null} if the entries file has not
+     * been parsed yet or was written since. The items are never handed out directly, as callers may modify them.
+     */
+    private Map<BareJid, Item> entriesFileIndex;
+
     private static final String ENTRY_PREFIX = "entry-";
+    private static final String TOMBSTONE_PREFIX = "removed-";
+    private static final String ENTRIES_FILE_NAME = "__entries__";
     private static final String VERSION_FILE_NAME = "__version__";
     private static final String STORE_ID = "DEFAULT_ROSTER_STORE";
     private static final Logger LOGGER = Logger.getLogger(DirectoryRosterStore.class.getName());
@@ -60,6 +84,11 @@ public final class DirectoryRosterStore implements RosterStore {
         return name.startsWith(ENTRY_PREFIX);
     }
 
+    private static boolean tombstoneFilter(File file) {
+        String name = file.getName();
+        return name.startsWith(TOMBSTONE_PREFIX);
+    }
+
     /**
      * @param baseDir TODO javadoc me please
      *            will be the directory where all roster entries are stored. One
@@ -112,9 +141,38 @@ public final class DirectoryRosterStore implements RosterStore {
         return new File(fileDir, VERSION_FILE_NAME);
     }
 
+    private File getEntriesFile() {
+        return new File(fileDir, ENTRIES_FILE_NAME);
+    }
+
+    private synchronized Map<BareJid, Item> getEntriesFileIndex() {
+        if (entriesFileIndex == null) {
+            Map<BareJid, Item> entries = new LinkedHashMap<>();
+            File entriesFile = getEntriesFile();
+            if (entriesFile.exists() && !readEntries(entriesFile, entries)) {
+                return null;
+            }
+            entriesFileIndex = entries;
+        }
+        return entriesFileIndex;
+    }
+
+    private synchronized void invalidateEntriesFileIndex() {
+        entriesFileIndex = null;
+    }
+
     @Override
     public List<Item> getEntries() {
-        List<Item> entries = new ArrayList<>();
+        Map<BareJid, Item> entriesFileEntries = getEntriesFileIndex();
+        if (entriesFileEntries == null) {
+            // Roster directory store corrupt. Abort and signal this by returning null.
+            return null;
+        }
+
+        Map<BareJid, Item> entries = new LinkedHashMap<>(entriesFileEntries.size());
+        for (Item item : entriesFileEntries.values()) {
+            entries.put(item.getJid(), copyOf(item));
+        }
 
         for (File file : fileDir.listFiles(DirectoryRosterStore::rosterDirFilter)) {
             Item entry = readEntry(file);
@@ -122,15 +180,43 @@ public final class DirectoryRosterStore implements RosterStore {
                 // Roster directory store corrupt. Abort and signal this by returning null.
                 return null;
             }
-            entries.add(entry);
+            entries.put(entry.getJid(), entry);
+        }
+
+        for (File file : fileDir.listFiles(DirectoryRosterStore::tombstoneFilter)) {
+            String encodedJid = file.getName().substring(TOMBSTONE_PREFIX.length());
+            BareJid removedJid;
+            try {
+                removedJid = JidCreate.bareFrom(Base32.decode(encodedJid));
+            } catch (XmppStringprepException | IllegalArgumentException e) {
+                LOGGER.log(Level.SEVERE, "Exception while decoding roster tombstone " + file, e);
+                return null;
+            }
+            entries.remove(removedJid);
         }
 
-        return entries;
+        return new ArrayList<>(entries.values());
     }
 
     @Override
     public Item getEntry(Jid bareJid) {
-        return readEntry(getBareJidFile(bareJid));
+        File entryFile = getBareJidFile(bareJid);
+        if (entryFile.exists()) {
+            return readEntry(entryFile);
+        }
+        if (getTombstoneFile(bareJid).exists()) {
+            return null;
+        }
+
+        Map<BareJid, Item> entriesFileEntries = getEntriesFileIndex();
+        if (entriesFileEntries == null) {
+            return null;
+        }
+        Item item = entriesFileEntries.get(bareJid);
+        if (item == null) {
+            return null;
+        }
+        return copyOf(item);
     }
 
     @Override
@@ -152,12 +238,17 @@ public final class DirectoryRosterStore implements RosterStore {
 
     @Override
     public boolean addEntry(Item item, String version) {
-        return addEntryRaw(item) && setRosterVersion(version);
+        return addEntryRaw(item) && removeTombstone(item.getJid()) && setRosterVersion(version);
     }
 
     @Override
     public boolean removeEntry(Jid bareJid, String version) {
-        return getBareJidFile(bareJid).delete() && setRosterVersion(version);
+        boolean removed = getBareJidFile(bareJid).delete();
+        if (getEntriesFile().exists()) {
+            // The entry may also be part of the entries file, record that it was removed.
+            removed = FileUtils.writeFile(getTombstoneFile(bareJid), "") || removed;
+        }
+        return removed && setRosterVersion(version);
     }
 
     @Override
@@ -165,10 +256,11 @@ public final class DirectoryRosterStore implements RosterStore {
         for (File file : fileDir.listFiles(DirectoryRosterStore::rosterDirFilter)) {
             file.delete();
         }
-        for (Item item : items) {
-            if (!addEntryRaw(item)) {
-                return false;
-            }
+        for (File file : fileDir.listFiles(DirectoryRosterStore::tombstoneFilter)) {
+            file.delete();
+        }
+        if (!writeEntries(items)) {
+            return false;
         }
         return setRosterVersion(version);
     }
@@ -179,6 +271,64 @@ public final class DirectoryRosterStore implements RosterStore {
         resetEntries(Collections.<Item>emptyList(), "");
     }
 
+    /**
+     * Write all the given items with one sequential write into a temporary file, which then atomically replaces the
+     * entries file.
+     *
+     * @param items the items to write.
+     * @return <code>true</code> if successful.
+     */
+    private boolean writeEntries(Collection<Item> items) {
+        invalidateEntriesFileIndex();
+        File entriesFile = getEntriesFile();
+        File tmpEntriesFile = new File(fileDir, ENTRIES_FILE_NAME + ".tmp");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tmpEntriesFile.toPath()))) {
+                outputStream.write(("<" + RosterPacket.ELEMENT + " xmlns='" + RosterPacket.NAMESPACE + "'>")
+                                .getBytes(StandardCharsets.UTF_8));
+                XmlEnvironment xmlEnvironment = XmlEnvironment.builder().withNamespace(RosterPacket.NAMESPACE).build();
+                for (Item item : items) {
+                    item.toXML(xmlEnvironment).write(outputStream, xmlEnvironment);
+                }
+                outputStream.write(("</" + RosterPacket.ELEMENT + ">").getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(tmpEntriesFile.toPath(), entriesFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Exception while writing the roster entries", e);
+            tmpEntriesFile.delete();
+            return false;
+        }
+    }
+
+    private static boolean readEntries(File file, Map<BareJid, Item> entries) {
+        try (Reader reader = Files.newBufferedReader(file.toPath())) {
+            XmlPullParser parser = PacketParserUtils.getParserFor(reader);
+            RosterPacketProvider.parseItems(parser, parser.getDepth(), JxmppContext.getDefaultContext(),
+                            item -> entries.put(item.getJid(), item));
+            return true;
+        } catch (XmlPullParserException | IOException | IllegalArgumentException e) {
+            boolean deleted = file.delete();
+            String message = "Exception while parsing roster entries.";
+            if (deleted) {
+                message += " File was deleted.";
+            }
+            LOGGER.log(Level.SEVERE, message, e);
+            return false;
+        }
+    }
+
+    private static Item copyOf(Item item) {
+        Item copy = new Item(item.getJid(), item.getName(), item.isSubscriptionPending());
+        copy.setItemType(item.getItemType());
+        copy.setApproved(item.isApproved());
+        for (String groupName : item.getGroupNames()) {
+            copy.addGroupName(groupName);
+        }
+        return copy;
+    }
+
     private static Item readEntry(File file) {
         Reader reader;
         try {
@@ -208,9 +358,19 @@ public final class DirectoryRosterStore implements RosterStore {
         return FileUtils.writeFile(getBareJidFile(item.getJid()), item.toXML());
     }
 
+    private boolean removeTombstone(Jid bareJid) {
+        File tombstoneFile = getTombstoneFile(bareJid);
+        return !tombstoneFile.exists() || tombstoneFile.delete();
+    }
+
     private File getBareJidFile(Jid bareJid) {
         String encodedJid = Base32.encode(bareJid.toString());
         return new File(fileDir, ENTRY_PREFIX + encodedJid);
     }
 
+    private File getTombstoneFile(Jid bareJid) {
+        String encodedJid = Base32.encode(bareJid.toString());
+        return new File(fileDir, TOMBSTONE_PREFIX + encodedJid);
+    }
+
 }
@@ -0,0 +1,599 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster.rosterstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.provider.RosterPacketProvider;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+
+import org.jxmpp.JxmppContext;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+/**
+ * A roster store backed by a single append-only log file. Every roster push appends one record to the log, and the
+ * store keeps an in-memory index from the bare JID of an entry to the offset of its latest record. Loading the cached
+ * roster on startup costs one sequential read of the log, and the roster version is read from the last record without
+ * reading the whole log.
+ * <p>
+ * Once the log contains considerably more superseded records than live entries, it is compacted by rewriting it with
+ * only the live entries. Persisting a full roster via {@link #resetEntries(Collection, String)} also rewrites the log
+ * in one sequential write. A record at the end of the log that was only partially written, e.g. because the process
+ * crashed, is discarded when the log is read the next time. A corrupt record within the log is reported as error
+ * instead, so that the records following it are not discarded silently.
+ * </p>
+ * <p>
+ * The on-disk format consists of a magic number followed by records. Every record is framed by its length, before and
+ * after the record's body, which allows to read the log forwards and backwards.
+ * </p>
+ */
+public final class LogFileRosterStore implements RosterStore {
+
+    private static final Logger LOGGER = Logger.getLogger(LogFileRosterStore.class.getName());
+
+    private static final int MAGIC = 0x534d5231;
+
+    private static final int MAGIC_LENGTH = 4;
+
+    private static final byte ITEM_RECORD = 'A';
+    private static final byte REMOVE_RECORD = 'R';
+    private static final byte VERSION_RECORD = 'V';
+
+    /**
+     * The minimum number of records before the log is considered for compaction.
+     */
+    private static final int COMPACTION_MIN_RECORDS = 1024;
+
+    private final File logFile;
+
+    /**
+     * The index from bare JID to the offset of the latest item record of the entry. Lazily loaded, <code>null</code>
+     * if not yet loaded.
+     */
+    private Map<BareJid, Long> index;
+
+    /**
+     * The number of records in the log. Only valid if the index is loaded.
+     */
+    private long recordCount;
+
+    private String rosterVersion;
+
+    private LogFileRosterStore(File logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Creates a new roster store on disk. An existing file will be overwritten.
+     *
+     * @param logFile the file of the store.
+     * @return A {@link LogFileRosterStore} instance if successful, <code>null</code> else.
+     */
+    public static LogFileRosterStore init(File logFile) {
+        LogFileRosterStore store = new LogFileRosterStore(logFile);
+        synchronized (store) {
+            if (!store.rewrite(Collections.<Item>emptyList(), "")) {
+                return null;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Opens a roster store.
+     *
+     * @param logFile the file of the store.
+     * @return A {@link LogFileRosterStore} instance if successful, <code>null</code> else.
+     */
+    public static LogFileRosterStore open(File logFile) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(logFile.toPath()))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not open roster log file " + logFile, e);
+            return null;
+        }
+        return new LogFileRosterStore(logFile);
+    }
+
+    @Override
+    public synchronized List<Item> getEntries() {
+        Map<BareJid, Item> entries = new LinkedHashMap<>();
+        try {
+            replay(entries);
+        } catch (IOException | XmlPullParserException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Exception while reading the roster log " + logFile, e);
+            return null;
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    @Override
+    public synchronized Item getEntry(Jid bareJid) {
+        try {
+            ensureIndexLoaded();
+            Long offset = index.get(bareJid);
+            if (offset == null) {
+                return null;
+            }
+            Record record;
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+                file.seek(offset);
+                int length = checkLength(file.readInt(), file.length() - offset - 8);
+                byte[] body = new byte[length];
+                file.readFully(body);
+                record = Record.decode(body);
+            }
+            return record.parseItem();
+        } catch (IOException | XmlPullParserException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Exception while reading the roster log " + logFile, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String getRosterVersion() {
+        if (rosterVersion != null) {
+            return rosterVersion;
+        }
+
+        try {
+            // Read the version of the last record, which is located using the trailing length of the record.
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+                long fileLength = file.length();
+                if (fileLength >= MAGIC_LENGTH + 8) {
+                    file.seek(fileLength - 4);
+                    int length = file.readInt();
+                    long recordOffset = fileLength - 8 - (long) length;
+                    if (length >= 0 && recordOffset >= MAGIC_LENGTH) {
+                        // The length is bounded by the file size, as the record offset is within the file.
+                        file.seek(recordOffset);
+                        if (file.readInt() == length) {
+                            byte[] body = new byte[length];
+                            file.readFully(body);
+                            rosterVersion = Record.decode(body).version;
+                            return rosterVersion;
+                        }
+                    }
+                }
+            }
+
+            // The last record is incomplete or corrupt, replaying the log discards it and determines the version.
+            replay(null);
+            return rosterVersion;
+        } catch (IOException | XmlPullParserException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Exception while reading the roster log " + logFile, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized boolean addEntry(Item item, String version) {
+        return append(Record.forItem(item, version));
+    }
+
+    @Override
+    public synchronized boolean removeEntry(Jid bareJid, String version) {
+        return append(new Record(REMOVE_RECORD, version, bareJid.asBareJid(), ""));
+    }
+
+    @Override
+    public synchronized boolean resetEntries(Collection<Item> items, String version) {
+        return rewrite(items, version);
+    }
+
+    @Override
+    public synchronized void resetStore() {
+        rewrite(Collections.<Item>emptyList(), "");
+    }
+
+    private void ensureIndexLoaded() throws IOException, XmlPullParserException {
+        if (index != null) {
+            return;
+        }
+        replay(null);
+    }
+
+    /**
+     * Read the whole log sequentially, (re-)building the index. If the log ends with an incomplete record, then the log
+     * is truncated to the last complete record. A corrupt record which is followed by further data is not truncated,
+     * as this would silently discard the following records, but reported by throwing an exception.
+     *
+     * @param entries if not <code>null</code>, the map to put the entries of the roster into.
+     * @throws IOException if an I/O error occurred or the log contains a corrupt record.
+     * @throws XmlPullParserException if an entry could not be parsed.
+     */
+    private void replay(Map<BareJid, Item> entries) throws IOException, XmlPullParserException {
+        Map<BareJid, Long> index = new HashMap<>();
+        long recordCount = 0;
+        String rosterVersion = "";
+        long offset = MAGIC_LENGTH;
+        boolean truncated = false;
+
+        final long fileLength = Files.size(logFile.toPath());
+        try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(logFile.toPath()), 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a roster log file: " + logFile);
+            }
+            while (offset < fileLength) {
+                final long remaining = fileLength - offset;
+                if (remaining < 8) {
+                    LOGGER.warning("Discarding incomplete record at the end of the roster log " + logFile);
+                    truncated = true;
+                    break;
+                }
+
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Corrupt record length " + length + " at offset " + offset
+                                    + " of the roster log " + logFile);
+                }
+                if (length > remaining - 8) {
+                    // The record extends beyond the end of the log. Either it was only partially written, or its
+                    // length is corrupt, which is the case if the log still ends with a complete record.
+                    if (endsWithCompleteRecordAfter(offset, fileLength)) {
+                        throw new IOException("Corrupt record length " + length + " at offset " + offset
+                                        + " of the roster log " + logFile);
+                    }
+                    LOGGER.warning("Discarding incomplete record at the end of the roster log " + logFile);
+                    truncated = true;
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                in.readFully(body);
+                Record record;
+                try {
+                    if (in.readInt() != length) {
+                        throw new IllegalArgumentException("Record length mismatch");
+                    }
+                    record = Record.decode(body);
+                } catch (IllegalArgumentException e) {
+                    if (remaining - 8 != length) {
+                        throw new IOException("Corrupt record at offset " + offset + " of the roster log " + logFile, e);
+                    }
+                    LOGGER.log(Level.WARNING, "Discarding corrupt record at the end of the roster log " + logFile, e);
+                    truncated = true;
+                    break;
+                }
+
+                switch (record.type) {
+                case ITEM_RECORD:
+                    index.put(record.jid, offset);
+                    if (entries != null) {
+                        entries.put(record.jid, record.parseItem());
+                    }
+                    break;
+                case REMOVE_RECORD:
+                    index.remove(record.jid);
+                    if (entries != null) {
+                        entries.remove(record.jid);
+                    }
+                    break;
+                default:
+                    break;
+                }
+                rosterVersion = record.version;
+                recordCount++;
+                offset += 8 + length;
+            }
+        }
+
+        if (truncated) {
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                file.setLength(offset);
+            }
+        }
+
+        this.index = index;
+        this.recordCount = recordCount;
+        this.rosterVersion = rosterVersion;
+    }
+
+    /**
+     * Check if the log ends with a complete record which starts after the given offset. The last record is located
+     * using its trailing length, and it is considered complete if its leading length matches.
+     *
+     * @param offset the offset.
+     * @param fileLength the length of the log.
+     * @return <code>true</code> if the log ends with a complete record after the given offset.
+     * @throws IOException if an I/O error occurred.
+     */
+    private boolean endsWithCompleteRecordAfter(long offset, long fileLength) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            file.seek(fileLength - 4);
+            int length = file.readInt();
+            long recordOffset = fileLength - 8 - (long) length;
+            if (length < 0 || recordOffset <= offset) {
+                return false;
+            }
+            file.seek(recordOffset);
+            return file.readInt() == length;
+        }
+    }
+
+    /**
+     * Check that the given record length read from the log is positive and not larger than the number of bytes
+     * remaining in the log, so that a corrupt length results in an exception instead of a huge allocation or an empty
+     * record body, which lacks even the record type.
+     *
+     * @param length the length read from the log.
+     * @param remaining the number of bytes remaining in the log for the body of the record.
+     * @return the length.
+     * @throws IOException if the length is invalid.
+     */
+    private int checkLength(int length, long remaining) throws IOException {
+        if (length < 1 || length > remaining) {
+            throw new IOException("Corrupt record length " + length + " in the roster log " + logFile);
+        }
+        return length;
+    }
+
+    private boolean append(Record record) {
+        try {
+            // Determine the index before appending, so that the offset of the appended record is known.
+            ensureIndexLoaded();
+            long offset = logFile.length();
+            try (OutputStream out = Files.newOutputStream(logFile.toPath(), StandardOpenOption.APPEND)) {
+                record.writeTo(out);
+            }
+
+            switch (record.type) {
+            case ITEM_RECORD:
+                index.put(record.jid, offset);
+                break;
+            case REMOVE_RECORD:
+                index.remove(record.jid);
+                break;
+            default:
+                break;
+            }
+            recordCount++;
+            rosterVersion = record.version;
+        } catch (IOException | XmlPullParserException e) {
+            LOGGER.log(Level.WARNING, "Exception while appending to the roster log " + logFile, e);
+            // Force a replay, as the state of the log is unknown.
+            index = null;
+            rosterVersion = null;
+            return false;
+        }
+
+        maybeCompact();
+        return true;
+    }
+
+    private void maybeCompact() {
+        if (recordCount < COMPACTION_MIN_RECORDS || recordCount < 2L * index.size()) {
+            return;
+        }
+
+        try {
+            compact();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Exception while compacting the roster log " + logFile, e);
+        }
+    }
+
+    /**
+     * Compact the log by copying only the live records, i.e., the latest item record of every entry, into a new log,
+     * which then atomically replaces the log file. The records are copied verbatim, without parsing the entries.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    private void compact() throws IOException {
+        File tmpLogFile = new File(logFile.getPath() + ".tmp");
+        Map<BareJid, Long> compactedIndex = new HashMap<>(index.size() * 4 / 3 + 1);
+        try {
+            try (DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(Files.newInputStream(logFile.toPath()), 64 * 1024));
+                 DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(tmpLogFile.toPath()), 64 * 1024))) {
+                in.readInt();
+                out.writeInt(MAGIC);
+                final long fileLength = Files.size(logFile.toPath());
+                long offset = MAGIC_LENGTH;
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    length = checkLength(length, fileLength - offset - 8);
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    in.readInt();
+
+                    if (body[0] == ITEM_RECORD) {
+                        BareJid jid = Record.decode(body).jid;
+                        Long liveOffset = index.get(jid);
+                        if (liveOffset != null && liveOffset == offset) {
+                            compactedIndex.put(jid, (long) out.size());
+                            Record.writeFramed(out, body);
+                        }
+                    }
+                    offset += 8 + length;
+                }
+                new Record(VERSION_RECORD, rosterVersion, null, "").writeTo(out);
+            }
+            Files.move(tmpLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException e) {
+            tmpLogFile.delete();
+            throw e;
+        }
+
+        index = compactedIndex;
+        recordCount = compactedIndex.size() + 1;
+    }
+
+    /**
+     * Rewrite the log so that it contains only the given entries. The new log is written sequentially into a temporary
+     * file, which then atomically replaces the log file.
+     *
+     * @param items the entries.
+     * @param version the roster version.
+     * @return <code>true</code> if successful.
+     */
+    private boolean rewrite(Collection<Item> items, String version) {
+        File tmpLogFile = new File(logFile.getPath() + ".tmp");
+        Map<BareJid, Long> index = new HashMap<>(items.size() * 4 / 3 + 1);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(tmpLogFile.toPath()), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                for (Item item : items) {
+                    index.put(item.getJid(), (long) out.size());
+                    Record.forItem(item, version).writeTo(out);
+                }
+                new Record(VERSION_RECORD, version, null, "").writeTo(out);
+            }
+            Files.move(tmpLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Exception while writing the roster log " + logFile, e);
+            tmpLogFile.delete();
+            index = null;
+            rosterVersion = null;
+            return false;
+        }
+
+        this.index = index;
+        this.recordCount = index.size() + 1;
+        this.rosterVersion = version;
+        return true;
+    }
+
+    private static final class Record {
+        private final byte type;
+        private final String version;
+        private final BareJid jid;
+        private final String data;
+
+        private Record(byte type, String version, BareJid jid, String data) {
+            this.type = type;
+            this.version = version;
+            this.jid = jid;
+            this.data = data;
+        }
+
+        private static Record forItem(Item item, String version) {
+            return new Record(ITEM_RECORD, version, item.getJid(), item.toXML().toString());
+        }
+
+        private void writeTo(OutputStream outputStream) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(64 + data.length());
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            bodyOut.writeByte(type);
+            writeString(bodyOut, version);
+            writeString(bodyOut, jid == null ? "" : jid.toString());
+            writeString(bodyOut, data);
+            bodyOut.flush();
+
+            writeFramed(outputStream, body.toByteArray());
+        }
+
+        private static Record decode(byte[] body) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+                byte type = in.readByte();
+                String version = readString(in);
+                String jidString = readString(in);
+                String data = readString(in);
+                BareJid jid = jidString.isEmpty() ? null : JidCreate.bareFrom(jidString);
+                if ((type == ITEM_RECORD || type == REMOVE_RECORD) && jid == null) {
+                    throw new IllegalArgumentException("Roster log record without JID");
+                }
+                return new Record(type, version, jid, data);
+            } catch (EOFException e) {
+                throw new IllegalArgumentException("Truncated roster log record", e);
+            } catch (XmppStringprepException e) {
+                throw new IllegalArgumentException("Invalid JID in roster log record", e);
+            }
+        }
+
+        private Item parseItem() throws XmlPullParserException, IOException {
+            XmlPullParser parser = PacketParserUtils.getParserFor(data);
+            return RosterPacketProvider.parseItem(parser, JxmppContext.getDefaultContext());
+        }
+
+        /**
+         * Write the given record body framed by its length. The whole record is written at once, so that an append
+         * results in a single write.
+         *
+         * @param outputStream the output stream.
+         * @param body the body of the record.
+         * @throws IOException if an I/O error occurred.
+         */
+        private static void writeFramed(OutputStream outputStream, byte[] body) throws IOException {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(body.length + 8);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            recordOut.writeInt(body.length);
+            recordOut.write(body);
+            recordOut.writeInt(body.length);
+            recordOut.flush();
+            record.writeTo(outputStream);
+        }
+
+        private static void writeString(DataOutputStream out, String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            // The input stream reads from the record body, hence available() is the exact number of remaining bytes.
+            if (length < 0 || length > in.available()) {
+                throw new IllegalArgumentException("Invalid string length in roster log record: " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -63,7 +63,9 @@ public interface RosterStore {
     boolean addEntry(RosterPacket.Item item, String version);
 
     /**
-     * This method updates the store so that it contains only the given entries.
+     * This method updates the store so that it contains only the given entries. This is invoked with the full roster,
+     * which may consist of a very large number of entries, hence implementations should persist the entries as one
+     * batch, e.g., with one sequential write, instead of storing every entry on its own.
      *
      * @param items the entries to store
      * @param version the new roster version
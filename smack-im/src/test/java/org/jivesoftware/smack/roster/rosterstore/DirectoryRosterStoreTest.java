@@ -34,6 +34,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.JidTestUtil;
+import org.jxmpp.jid.impl.JidCreate;
 
 /**
  * Tests the implementation of {@link DirectoryRosterStore}.
@@ -192,4 +193,78 @@ public class DirectoryRosterStoreTest {
         assertEquals("Number of entries", 1, entries.size());
     }
 
+    /**
+     * Tests that roster pushes after a full roster reset are applied on top of the entries of the reset.
+     * @throws IOException if IO exception.
+     */
+    @Test
+    public void testStoreResetFollowedByPushes() throws IOException {
+        File storeDir = tmpFolder.newFolder();
+        DirectoryRosterStore store = DirectoryRosterStore.init(storeDir);
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Item item = new Item(JidCreate.bareFrom("contact" + i + "@example.org"), "Contact " + i);
+            item.addGroupName("Group " + (i % 3));
+            item.setItemType(ItemType.both);
+            items.add(item);
+        }
+        store.resetEntries(items, "1");
+
+        Item updatedItem = new Item(JidCreate.bareFrom("contact1@example.org"), "Updated Contact");
+        updatedItem.setItemType(ItemType.to);
+        store.addEntry(updatedItem, "2");
+        store.removeEntry(JidCreate.bareFrom("contact2@example.org"), "3");
+        Item newItem = new Item(JidCreate.bareFrom("new-contact@example.org"), null);
+        store.addEntry(newItem, "4");
+
+        store = DirectoryRosterStore.open(storeDir);
+        assertNotNull(store);
+        assertEquals("4", store.getRosterVersion());
+
+        List<Item> entries = store.getEntries();
+        assertEquals(100, entries.size());
+        assertNull(store.getEntry(JidCreate.bareFrom("contact2@example.org")));
+        assertEquals("Updated Contact", store.getEntry(JidCreate.bareFrom("contact1@example.org")).getName());
+        assertEquals(items.get(50).getGroupNames(), store.getEntry(JidCreate.bareFrom("contact50@example.org")).getGroupNames());
+        assertNotNull(store.getEntry(JidCreate.bareFrom("new-contact@example.org")));
+
+        // Re-adding a removed entry must revive it.
+        store.addEntry(items.get(2), "5");
+        assertEquals(101, store.getEntries().size());
+    }
+
+    /**
+     * Tests that lookups of entries of the entries file are served from its parsed index, that the index is refreshed
+     * when the entries file is rewritten, and that modifications of returned items do not affect the store.
+     * @throws IOException if IO exception.
+     */
+    @Test
+    public void testEntriesFileIndex() throws IOException {
+        File storeDir = tmpFolder.newFolder();
+        DirectoryRosterStore store = DirectoryRosterStore.init(storeDir);
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new Item(JidCreate.bareFrom("contact" + i + "@example.org"), "Contact " + i));
+        }
+        store.resetEntries(items, "1");
+
+        BareJid contact1 = JidCreate.bareFrom("contact1@example.org");
+        Item storedItem = store.getEntry(contact1);
+        assertEquals("Contact 1", storedItem.getName());
+        storedItem.setName("Modified");
+        storedItem.addGroupName("Modified Group");
+        assertEquals("Contact 1", store.getEntry(contact1).getName());
+        assertEquals(0, store.getEntry(contact1).getGroupNames().size());
+        store.getEntries().get(1).setName("Modified");
+        assertEquals("Contact 1", store.getEntries().get(1).getName());
+
+        items.clear();
+        items.add(new Item(contact1, "Reset Contact 1"));
+        store.resetEntries(items, "2");
+        assertEquals("Reset Contact 1", store.getEntry(contact1).getName());
+        assertNull(store.getEntry(JidCreate.bareFrom("contact2@example.org")));
+        assertEquals(1, store.getEntries().size());
+    }
 }
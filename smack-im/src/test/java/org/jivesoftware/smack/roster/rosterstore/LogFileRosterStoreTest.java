@@ -0,0 +1,197 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.roster.rosterstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket.Item;
+import org.jivesoftware.smack.roster.packet.RosterPacket.ItemType;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+public class LogFileRosterStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static BareJid jid(int i) throws XmppStringprepException {
+        return JidCreate.bareFrom("contact" + i + "@example.org");
+    }
+
+    private static Item item(int i, String name) throws XmppStringprepException {
+        Item item = new Item(jid(i), name);
+        item.setItemType(ItemType.both);
+        item.addGroupName("Group " + (i % 3));
+        return item;
+    }
+
+    @Test
+    public void openUninitialized() {
+        assertNull(LogFileRosterStore.open(tempDir.resolve("roster.log").toFile()));
+    }
+
+    @Test
+    public void initializedStoreIsEmpty() {
+        LogFileRosterStore store = LogFileRosterStore.init(tempDir.resolve("roster.log").toFile());
+        assertNotNull(store);
+        assertEquals("", store.getRosterVersion());
+        assertEquals(0, store.getEntries().size());
+    }
+
+    @Test
+    public void resetAddRemoveAndReopen() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(item(i, "Contact " + i));
+        }
+        assertTrue(store.resetEntries(items, "1"));
+
+        assertTrue(store.addEntry(item(1, "Updated Contact"), "2"));
+        assertTrue(store.removeEntry(jid(2), "3"));
+        assertTrue(store.addEntry(item(100, null), "4"));
+
+        store = LogFileRosterStore.open(logFile);
+        assertNotNull(store);
+        assertEquals("4", store.getRosterVersion());
+        assertEquals(100, store.getEntries().size());
+        assertNull(store.getEntry(jid(2)));
+        assertEquals("Updated Contact", store.getEntry(jid(1)).getName());
+        assertEquals(items.get(50).getGroupNames(), store.getEntry(jid(50)).getGroupNames());
+        assertNotNull(store.getEntry(jid(100)));
+    }
+
+    @Test
+    public void incompleteRecordIsDiscarded() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+        store.addEntry(item(1, "Contact 1"), "1");
+        long length = logFile.length();
+
+        // Simulate a crash while appending a record.
+        try (OutputStream out = Files.newOutputStream(logFile.toPath(), StandardOpenOption.APPEND)) {
+            out.write(new byte[] { 0, 0, 1, 0, 'A', 0 });
+        }
+
+        store = LogFileRosterStore.open(logFile);
+        assertEquals("1", store.getRosterVersion());
+        assertEquals(1, store.getEntries().size());
+        assertEquals(length, logFile.length());
+
+        store.addEntry(item(2, "Contact 2"), "2");
+        assertEquals(2, LogFileRosterStore.open(logFile).getEntries().size());
+    }
+
+    private static void overwriteInt(File file, long position, int value) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            randomAccessFile.writeInt(value);
+        }
+    }
+
+    @Test
+    public void corruptLastRecordIsDiscarded() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+        store.addEntry(item(1, "Contact 1"), "1");
+        long length = logFile.length();
+        store.addEntry(item(2, "Contact 2"), "2");
+
+        // Corrupt the trailing length of the last record.
+        overwriteInt(logFile, logFile.length() - 4, 42);
+
+        store = LogFileRosterStore.open(logFile);
+        assertEquals(1, store.getEntries().size());
+        assertEquals("1", store.getRosterVersion());
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void corruptRecordWithinTheLogIsNotTruncated() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+        store.addEntry(item(1, "Contact 1"), "1");
+        long secondRecordOffset = logFile.length();
+        store.addEntry(item(2, "Contact 2"), "2");
+        store.addEntry(item(3, "Contact 3"), "3");
+        long length = logFile.length();
+
+        // Corrupt the length of the version string within the body of the second record, which follows the record's
+        // length and type.
+        overwriteInt(logFile, secondRecordOffset + 5, Integer.MAX_VALUE);
+
+        store = LogFileRosterStore.open(logFile);
+        assertNull(store.getEntries());
+        assertNull(store.getEntry(jid(3)));
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void corruptRecordLengthWithinTheLogIsNotTruncated() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+        store.addEntry(item(1, "Contact 1"), "1");
+        long secondRecordOffset = logFile.length();
+        store.addEntry(item(2, "Contact 2"), "2");
+        store.addEntry(item(3, "Contact 3"), "3");
+        long length = logFile.length();
+
+        // A huge length must neither cause a huge allocation nor be mistaken for a partially written record.
+        overwriteInt(logFile, secondRecordOffset, Integer.MAX_VALUE - 8);
+
+        store = LogFileRosterStore.open(logFile);
+        assertNull(store.getEntries());
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void logIsCompacted() throws IOException {
+        File logFile = tempDir.resolve("roster.log").toFile();
+        LogFileRosterStore store = LogFileRosterStore.init(logFile);
+        store.addEntry(item(1, "Contact 1"), "0");
+        long initialLength = logFile.length();
+
+        for (int i = 0; i < 5000; i++) {
+            store.addEntry(item(2, "Contact 2 " + i), Integer.toString(i));
+        }
+
+        assertTrue(logFile.length() < initialLength * 2048);
+        store = LogFileRosterStore.open(logFile);
+        assertEquals("4999", store.getRosterVersion());
+        assertEquals(2, store.getEntries().size());
+        assertEquals("Contact 2 4999", store.getEntry(jid(2)).getName());
+    }
+}
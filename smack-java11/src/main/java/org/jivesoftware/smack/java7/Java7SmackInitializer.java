@@ -16,9 +16,14 @@
  */
 package org.jivesoftware.smack.java7;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.jivesoftware.smack.SmackConfiguration;
+import org.jivesoftware.smack.SmackExecutors;
 import org.jivesoftware.smack.initializer.SmackInitializer;
 import org.jivesoftware.smack.util.SystemUtil;
 import org.jivesoftware.smack.util.stringencoder.Base64;
@@ -41,7 +46,27 @@ public class Java7SmackInitializer implements SmackInitializer {
         SmackConfiguration.setDefaultHostnameVerifier(new XmppHostnameVerifier());
         Base64.setEncoder(Java7Base64Encoder.getInstance());
         Base64UrlSafeEncoder.setEncoder(Java7Base64UrlSafeEncoder.getInstance());
+        maybeEnableVirtualThreadsSupport();
         return null;
     }
 
+    private static void maybeEnableVirtualThreadsSupport() {
+        // Smack is compiled for Java 11, hence we have to use reflection to create virtual threads, which are available
+        // with Java 21 or higher.
+        final Method newVirtualThreadPerTaskExecutor;
+        try {
+            newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return;
+        }
+
+        SmackExecutors.setVirtualThreadExecutorServiceFactory(() -> {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
 }
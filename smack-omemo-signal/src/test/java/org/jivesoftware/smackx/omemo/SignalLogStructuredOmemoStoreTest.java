@@ -0,0 +1,222 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * This file is part of smack-omemo-signal.
+ *
+ * smack-omemo-signal is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301  USA
+ */
+package org.jivesoftware.smackx.omemo;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.jivesoftware.smackx.omemo.exceptions.CorruptedOmemoKeyException;
+import org.jivesoftware.smackx.omemo.internal.OmemoDevice;
+import org.jivesoftware.smackx.omemo.signal.SignalLogStructuredOmemoStore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.state.SessionRecord;
+
+/**
+ * Test the persistence of the {@link SignalLogStructuredOmemoStore} across re-opening the store.
+ */
+public class SignalLogStructuredOmemoStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final OmemoDevice alice;
+    private final OmemoDevice bob;
+
+    public SignalLogStructuredOmemoStoreTest() throws XmppStringprepException {
+        alice = new OmemoDevice(JidCreate.bareFrom("alice@wonderland.lit"), 123);
+        bob = new OmemoDevice(JidCreate.bareFrom("bob@builder.tv"), 987);
+    }
+
+    @Test
+    public void committedUpdatesSurviveReopening() throws IOException, CorruptedOmemoKeyException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        IdentityKeyPair identityKeyPair = store.generateOmemoIdentityKeyPair();
+        store.storeOmemoIdentityKeyPair(alice, identityKeyPair);
+        store.storeRawSession(alice, bob, new SessionRecord());
+        for (int i = 1; i <= 10; i++) {
+            store.storeOmemoMessageCounter(alice, bob, i);
+        }
+        store.storeOmemoPreKeys(alice, store.generateOmemoPreKeys(1, 5));
+        store.removeOmemoPreKey(alice, 3);
+        store.close();
+
+        SignalLogStructuredOmemoStore reopened = new SignalLogStructuredOmemoStore(base);
+        assertEquals(1, reopened.localDeviceIdsOf(alice.getJid()).size());
+        assertTrue(Arrays.equals(identityKeyPair.serialize(),
+                reopened.loadOmemoIdentityKeyPair(alice).serialize()));
+        assertTrue(reopened.containsRawSession(alice, bob));
+        assertEquals(10, reopened.loadOmemoMessageCounter(alice, bob));
+        assertEquals(4, reopened.loadOmemoPreKeys(alice).size());
+        assertNull(reopened.loadOmemoPreKey(alice, 3));
+    }
+
+    @Test
+    public void incompleteGroupCommitIsDiscarded() throws IOException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.storeOmemoMessageCounter(alice, bob, 42);
+        store.close();
+
+        // Simulate a crash while a group commit was written.
+        File logFile = logFileOf(base, alice);
+        long committedLength = logFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(committedLength);
+            file.writeInt(1000);
+            file.write(new byte[] {'P', 0, 0});
+        }
+
+        SignalLogStructuredOmemoStore reopened = new SignalLogStructuredOmemoStore(base);
+        assertEquals(42, reopened.loadOmemoMessageCounter(alice, bob));
+        assertEquals(committedLength, logFile.length());
+
+        reopened.storeOmemoMessageCounter(alice, bob, 43);
+        reopened.removeRawSession(alice, bob);
+        reopened.close();
+
+        SignalLogStructuredOmemoStore reopenedAgain = new SignalLogStructuredOmemoStore(base);
+        assertEquals(43, reopenedAgain.loadOmemoMessageCounter(alice, bob));
+        assertFalse(reopenedAgain.containsRawSession(alice, bob));
+    }
+
+    private File logFileOf(File base, OmemoDevice userDevice) {
+        return new File(new File(new File(base, LogStructuredOmemoStore.STORE),
+                userDevice.getJid().asUrlEncodedString()), userDevice.getDeviceId() + LogStructuredOmemoStore.LOG_SUFFIX);
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            int b = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(b ^ 0xff);
+        }
+    }
+
+    @Test
+    public void oversizedFrameLengthIsDiscarded() throws IOException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.storeOmemoMessageCounter(alice, bob, 42);
+        store.close();
+
+        File logFile = logFileOf(base, alice);
+        long committedLength = logFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(committedLength);
+            file.writeInt(Integer.MAX_VALUE);
+            file.write(new byte[16]);
+        }
+
+        SignalLogStructuredOmemoStore reopened = new SignalLogStructuredOmemoStore(base);
+        assertEquals(42, reopened.loadOmemoMessageCounter(alice, bob));
+        assertEquals(committedLength, logFile.length());
+    }
+
+    @Test
+    public void damagedFinalFrameIsDiscarded() throws IOException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.storeOmemoMessageCounter(alice, bob, 42);
+        store.commit();
+        File logFile = logFileOf(base, alice);
+        long firstCommitLength = logFile.length();
+        store.storeOmemoMessageCounter(alice, bob, 43);
+        store.close();
+
+        // The first byte of the final frame, after its length.
+        flipByte(logFile, firstCommitLength + 4);
+
+        SignalLogStructuredOmemoStore reopened = new SignalLogStructuredOmemoStore(base);
+        assertEquals(42, reopened.loadOmemoMessageCounter(alice, bob));
+        assertEquals(firstCommitLength, logFile.length());
+    }
+
+    @Test
+    public void damagedFrameFollowedByFurtherFramesIsKept() throws IOException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.storeOmemoMessageCounter(alice, bob, 42);
+        store.commit();
+        store.storeOmemoMessageCounter(alice, bob, 43);
+        store.close();
+
+        // The first byte of the first frame, after the magic and the frame length.
+        File logFile = logFileOf(base, alice);
+        long length = logFile.length();
+        flipByte(logFile, 8);
+
+        SignalLogStructuredOmemoStore reopened = new SignalLogStructuredOmemoStore(base);
+        try {
+            reopened.loadOmemoMessageCounter(alice, bob);
+            fail("Expected an IOException for the corrupt OMEMO log");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void groupCommitIsScheduled() throws IOException, InterruptedException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.setCommitDelayMillis(10);
+        store.storeOmemoMessageCounter(alice, bob, 42);
+
+        File logFile = logFileOf(base, alice);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (logFile.length() == 0) {
+            assertTrue("Group commit was not written", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // Wait for the group commit to complete.
+        store.close();
+
+        assertEquals(42, new SignalLogStructuredOmemoStore(base).loadOmemoMessageCounter(alice, bob));
+    }
+
+    @Test
+    public void purgeOwnDeviceKeysRemovesLog() throws IOException {
+        File base = tmp.newFolder();
+        SignalLogStructuredOmemoStore store = new SignalLogStructuredOmemoStore(base);
+        store.storeOmemoMessageCounter(alice, bob, 1);
+        store.commit();
+
+        store.purgeOwnDeviceKeys(alice);
+        assertTrue(store.localDeviceIdsOf(alice.getJid()).isEmpty());
+        assertEquals(0, new SignalLogStructuredOmemoStore(base).loadOmemoMessageCounter(alice, bob));
+    }
+}
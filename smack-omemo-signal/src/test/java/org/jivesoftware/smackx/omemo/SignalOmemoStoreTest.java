@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2017 Paul Schaub
+ * Copyright 2017 Paul Schaub, 2026 Florian Schmaus
  *
  * This file is part of smack-omemo-signal.
  *
@@ -28,6 +28,7 @@ import java.util.Collection;
 
 import org.jivesoftware.smackx.omemo.signal.SignalCachingOmemoStore;
 import org.jivesoftware.smackx.omemo.signal.SignalFileBasedOmemoStore;
+import org.jivesoftware.smackx.omemo.signal.SignalLogStructuredOmemoStore;
 import org.jivesoftware.smackx.omemo.signal.SignalOmemoKeyUtil;
 
 import org.junit.Test;
@@ -48,7 +49,8 @@ import org.whispersystems.libsignal.state.SignedPreKeyRecord;
 /**
  * smack-omemo-signal implementation of {@link OmemoStoreTest}.
  * This class executes tests of its super class with available implementations of {@link OmemoStore}.
- * So far this includes {@link SignalFileBasedOmemoStore}, {@link SignalCachingOmemoStore}.
+ * So far this includes {@link SignalFileBasedOmemoStore}, {@link SignalCachingOmemoStore} and
+ * {@link SignalLogStructuredOmemoStore}.
  */
 @RunWith(value = Parameterized.class)
 public class SignalOmemoStoreTest extends OmemoStoreTest<IdentityKeyPair, IdentityKey, PreKeyRecord, SignedPreKeyRecord, SessionRecord, SignalProtocolAddress, ECPublicKey, PreKeyBundle, SessionCipher> {
@@ -72,7 +74,9 @@ public class SignalOmemoStoreTest extends OmemoStoreTest<IdentityKeyPair, Identi
                 // Ephemeral caching store
                 { new SignalCachingOmemoStore()},
                 // Caching file based store
-                { new SignalCachingOmemoStore(new SignalFileBasedOmemoStore(temp.newFolder("cachingSigFileBased")))}
+                { new SignalCachingOmemoStore(new SignalFileBasedOmemoStore(temp.newFolder("cachingSigFileBased")))},
+                // Log structured store
+                { new SignalLogStructuredOmemoStore(temp.newFolder("sigLogStructured"))}
         });
     }
 
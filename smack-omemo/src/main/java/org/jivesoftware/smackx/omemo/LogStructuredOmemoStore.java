@@ -0,0 +1,1077 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.jivesoftware.smack.SmackExecutors;
+import org.jivesoftware.smack.util.stringencoder.BareJidEncoder;
+
+import org.jivesoftware.smackx.omemo.exceptions.CorruptedOmemoKeyException;
+import org.jivesoftware.smackx.omemo.internal.OmemoCachedDeviceList;
+import org.jivesoftware.smackx.omemo.internal.OmemoDevice;
+
+import org.jxmpp.jid.BareJid;
+
+/**
+ * Implementation of the {@link OmemoStore} class that keeps the data of every local device in a single append-only
+ * log file. The whole log of a device is loaded into memory with one sequential read when the device is accessed for
+ * the first time, all further reads are served from memory.
+ * <p>
+ * Updates are applied to the in-memory state immediately and written behind: all updates which happen within the
+ * {@link #setCommitDelayMillis(long) commit delay}, for example the session and message counter updates of many
+ * messages, are appended to the log as one group commit. A group commit is written as a single checksummed frame, and
+ * a frame that was only partially written, e.g. because the process crashed, is discarded as a whole when the log is
+ * read the next time. Hence a crash loses at most the updates of the last commit delay, but never leaves a device in a
+ * state which is partially updated by a group commit. Whether every group commit is synced to the storage device is
+ * controlled by {@link #setSyncOnCommit(boolean)}. Use {@link #commit()} to write all pending updates immediately.
+ * </p>
+ * <p>
+ * Once the log of a device contains considerably more superseded records than live entries, it is compacted by
+ * rewriting it with only the live entries.
+ * </p>
+ * <p>
+ * The store directory looks as follows:
+ * </p>
+ * <pre>
+ *  OMEMO_Log_Store/
+ *      'juliet%40capulet.lit'/     //Our bareJid
+ *          13371234.log            //The log of our device with the id 13371234
+ * </pre>
+ */
+public abstract class LogStructuredOmemoStore<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey, T_Sess, T_Addr, T_ECPub, T_Bundle, T_Ciph>
+        extends OmemoStore<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey, T_Sess, T_Addr, T_ECPub, T_Bundle, T_Ciph> {
+
+    private static final Logger LOGGER = Logger.getLogger(LogStructuredOmemoStore.class.getName());
+
+    private static final BareJidEncoder BARE_JID_ENCODER = new BareJidEncoder.UrlSafeEncoder();
+
+    static final String STORE = "OMEMO_Log_Store";
+    static final String LOG_SUFFIX = ".log";
+
+    private static final int MAGIC = 0x534d4f31;
+
+    private static final int MAGIC_LENGTH = 4;
+
+    private static final byte PUT_RECORD = 'P';
+    private static final byte DELETE_RECORD = 'D';
+
+    /**
+     * The minimum number of records before a log is considered for compaction.
+     */
+    private static final int COMPACTION_MIN_RECORDS = 4096;
+
+    /**
+     * The maximum delay before a failed group commit is retried.
+     */
+    private static final long MAX_COMMIT_RETRY_DELAY_MILLIS = 60 * 1000;
+
+    // Prefixes of the keys of the entries. Keys of per-contact entries are followed by the contact's bare JID, and keys
+    // of per-contact-device entries are additionally followed by '/' and the device id.
+    private static final String IDENTITY_KEY_PAIR = "identityKeyPair";
+    private static final String LAST_SIGNED_PRE_KEY_RENEWAL = "lastSignedPreKeyRenewal";
+    private static final String PRE_KEY = "preKey:";
+    private static final String SIGNED_PRE_KEY = "signedPreKey:";
+    private static final String IDENTITY_KEY = "identityKey:";
+    private static final String SESSION = "session:";
+    private static final String MESSAGE_COUNTER = "messageCounter:";
+    private static final String LAST_MESSAGE_RECEIVED_DATE = "lastMessageReceivedDate:";
+    private static final String LAST_DEVICEID_PUBLICATION_DATE = "lastDeviceIdPublicationDate:";
+    private static final String DEVICE_LIST_ACTIVE = "activeDevices:";
+    private static final String DEVICE_LIST_INACTIVE = "inactiveDevices:";
+
+    private final File storeDirectory;
+
+    /**
+     * Serializes group commits, compactions and purges of device logs. If both are required, this lock must be
+     * acquired before the monitor of this store.
+     */
+    private final Object commitLock = new Object();
+
+    /**
+     * The logs of the local devices which have been accessed so far. Guarded by this.
+     */
+    private final Map<OmemoDevice, DeviceLog> deviceLogs = new HashMap<>();
+
+    /**
+     * True if a group commit has been scheduled. Guarded by this.
+     */
+    private boolean commitScheduled;
+
+    /**
+     * The number of consecutive group commits which failed. Guarded by this.
+     */
+    private int failedCommits;
+
+    private volatile long commitDelayMillis = 100;
+
+    private volatile boolean syncOnCommit = true;
+
+    public LogStructuredOmemoStore(File basePath) {
+        super();
+        if (basePath == null) {
+            throw new IllegalStateException("No LogStructuredOmemoStore base path set.");
+        }
+        storeDirectory = new File(basePath, STORE);
+        storeDirectory.mkdirs();
+    }
+
+    /**
+     * Set the time updates are delayed before they are written as one group commit. A delay of zero results in every
+     * update being written immediately. The default is 100 milliseconds.
+     *
+     * @param commitDelayMillis the commit delay in milliseconds.
+     */
+    public void setCommitDelayMillis(long commitDelayMillis) {
+        if (commitDelayMillis < 0) {
+            throw new IllegalArgumentException("Commit delay must not be negative");
+        }
+        this.commitDelayMillis = commitDelayMillis;
+    }
+
+    /**
+     * Set whether every group commit is synced to the storage device. Disabling this increases the throughput, at the
+     * cost of possibly losing committed updates if the operating system crashes. The default is <code>true</code>.
+     *
+     * @param syncOnCommit true if group commits should be synced to the storage device.
+     */
+    public void setSyncOnCommit(boolean syncOnCommit) {
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    /**
+     * Write all pending updates to the logs.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            List<DeviceLog> logs;
+            synchronized (this) {
+                commitScheduled = false;
+                logs = new ArrayList<>(deviceLogs.values());
+            }
+
+            IOException exception = null;
+            for (DeviceLog log : logs) {
+                try {
+                    log.commit();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * Write all pending updates to the logs and close the log files. The store may still be used afterwards, in which
+     * case the log files are opened again.
+     *
+     * @throws IOException if an I/O error occurred.
+     */
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            commit();
+            synchronized (this) {
+                for (DeviceLog log : deviceLogs.values()) {
+                    log.closeChannel();
+                }
+            }
+        }
+    }
+
+    @Override
+    public T_IdKeyPair loadOmemoIdentityKeyPair(OmemoDevice userDevice)
+            throws CorruptedOmemoKeyException, IOException {
+        return keyUtil().identityKeyPairFromBytes(get(userDevice, IDENTITY_KEY_PAIR));
+    }
+
+    @Override
+    public void storeOmemoIdentityKeyPair(OmemoDevice userDevice, T_IdKeyPair identityKeyPair) throws IOException {
+        put(userDevice, IDENTITY_KEY_PAIR, keyUtil().identityKeyPairToBytes(identityKeyPair));
+    }
+
+    @Override
+    public void removeOmemoIdentityKeyPair(OmemoDevice userDevice) {
+        remove(userDevice, IDENTITY_KEY_PAIR);
+    }
+
+    @Override
+    public T_IdKey loadOmemoIdentityKey(OmemoDevice userDevice, OmemoDevice contactsDevice)
+            throws CorruptedOmemoKeyException, IOException {
+        byte[] bytes = get(userDevice, IDENTITY_KEY + deviceKey(contactsDevice));
+        return bytes != null ? keyUtil().identityKeyFromBytes(bytes) : null;
+    }
+
+    @Override
+    public void storeOmemoIdentityKey(OmemoDevice userDevice, OmemoDevice contactsDevice, T_IdKey contactsKey)
+            throws IOException {
+        put(userDevice, IDENTITY_KEY + deviceKey(contactsDevice), keyUtil().identityKeyToBytes(contactsKey));
+    }
+
+    @Override
+    public void removeOmemoIdentityKey(OmemoDevice userDevice, OmemoDevice contactsDevice) {
+        remove(userDevice, IDENTITY_KEY + deviceKey(contactsDevice));
+    }
+
+    @Override
+    public SortedSet<Integer> localDeviceIdsOf(BareJid localUser) {
+        SortedSet<Integer> deviceIds = new TreeSet<>();
+        String[] logFiles = getUserDirectory(localUser).list();
+        for (String logFile : logFiles != null ? logFiles : new String[0]) {
+            if (!logFile.endsWith(LOG_SUFFIX)) {
+                continue;
+            }
+            try {
+                deviceIds.add(Integer.parseInt(logFile.substring(0, logFile.length() - LOG_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        synchronized (this) {
+            // Devices whose log has not been committed yet.
+            for (Map.Entry<OmemoDevice, DeviceLog> entry : deviceLogs.entrySet()) {
+                OmemoDevice device = entry.getKey();
+                if (device.getJid().equals(localUser) && !entry.getValue().entries.isEmpty()) {
+                    deviceIds.add(device.getDeviceId());
+                }
+            }
+        }
+        return deviceIds;
+    }
+
+    @Override
+    public void storeOmemoMessageCounter(OmemoDevice userDevice, OmemoDevice contactsDevice, int counter)
+            throws IOException {
+        put(userDevice, MESSAGE_COUNTER + deviceKey(contactsDevice), ByteBuffer.allocate(4).putInt(counter).array());
+    }
+
+    @Override
+    public int loadOmemoMessageCounter(OmemoDevice userDevice, OmemoDevice contactsDevice) throws IOException {
+        byte[] bytes = get(userDevice, MESSAGE_COUNTER + deviceKey(contactsDevice));
+        if (bytes == null) {
+            return 0;
+        }
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public void setDateOfLastReceivedMessage(OmemoDevice userDevice, OmemoDevice contactsDevice, Date date)
+            throws IOException {
+        putLong(userDevice, LAST_MESSAGE_RECEIVED_DATE + deviceKey(contactsDevice), date.getTime());
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public Date getDateOfLastReceivedMessage(OmemoDevice userDevice, OmemoDevice contactsDevice) throws IOException {
+        Long date = getLong(userDevice, LAST_MESSAGE_RECEIVED_DATE + deviceKey(contactsDevice));
+        return date != null ? new Date(date) : null;
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public void setDateOfLastDeviceIdPublication(OmemoDevice userDevice, OmemoDevice contactsDevice, Date date)
+            throws IOException {
+        putLong(userDevice, LAST_DEVICEID_PUBLICATION_DATE + deviceKey(contactsDevice), date.getTime());
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public Date getDateOfLastDeviceIdPublication(OmemoDevice userDevice, OmemoDevice contactsDevice)
+            throws IOException {
+        Long date = getLong(userDevice, LAST_DEVICEID_PUBLICATION_DATE + deviceKey(contactsDevice));
+        return date != null ? new Date(date) : null;
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public void setDateOfLastSignedPreKeyRenewal(OmemoDevice userDevice, Date date) throws IOException {
+        putLong(userDevice, LAST_SIGNED_PRE_KEY_RENEWAL, date.getTime());
+    }
+
+    @Override
+    @SuppressWarnings("JavaUtilDate")
+    public Date getDateOfLastSignedPreKeyRenewal(OmemoDevice userDevice) throws IOException {
+        Long date = getLong(userDevice, LAST_SIGNED_PRE_KEY_RENEWAL);
+        return date != null ? new Date(date) : null;
+    }
+
+    @Override
+    public T_PreKey loadOmemoPreKey(OmemoDevice userDevice, int preKeyId) throws IOException {
+        byte[] bytes = get(userDevice, PRE_KEY + preKeyId);
+
+        if (bytes != null) {
+            try {
+                return keyUtil().preKeyFromBytes(bytes);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize preKey from bytes.", e);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void storeOmemoPreKey(OmemoDevice userDevice, int preKeyId, T_PreKey preKey) throws IOException {
+        put(userDevice, PRE_KEY + preKeyId, keyUtil().preKeyToBytes(preKey));
+    }
+
+    @Override
+    public void storeOmemoPreKeys(OmemoDevice userDevice, Map<Integer, T_PreKey> preKeyHashMap) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>(preKeyHashMap.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, T_PreKey> entry : preKeyHashMap.entrySet()) {
+            entries.put(PRE_KEY + entry.getKey(), keyUtil().preKeyToBytes(entry.getValue()));
+        }
+        putAll(userDevice, entries);
+    }
+
+    @Override
+    public void removeOmemoPreKey(OmemoDevice userDevice, int preKeyId) {
+        remove(userDevice, PRE_KEY + preKeyId);
+    }
+
+    @Override
+    @SuppressWarnings("NonApiType")
+    public TreeMap<Integer, T_PreKey> loadOmemoPreKeys(OmemoDevice userDevice) throws IOException {
+        TreeMap<Integer, T_PreKey> preKeys = new TreeMap<>();
+
+        for (Map.Entry<String, byte[]> entry : getAllWithPrefix(userDevice, PRE_KEY).entrySet()) {
+            try {
+                T_PreKey preKey = keyUtil().preKeyFromBytes(entry.getValue());
+                preKeys.put(Integer.parseInt(entry.getKey()), preKey);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize preKey from bytes.", e);
+            }
+        }
+
+        return preKeys;
+    }
+
+    @Override
+    public T_SigPreKey loadOmemoSignedPreKey(OmemoDevice userDevice, int signedPreKeyId) throws IOException {
+        byte[] bytes = get(userDevice, SIGNED_PRE_KEY + signedPreKeyId);
+        if (bytes != null) {
+            try {
+                return keyUtil().signedPreKeyFromBytes(bytes);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize signed preKey from bytes.", e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("NonApiType")
+    public TreeMap<Integer, T_SigPreKey> loadOmemoSignedPreKeys(OmemoDevice userDevice) throws IOException {
+        TreeMap<Integer, T_SigPreKey> signedPreKeys = new TreeMap<>();
+
+        for (Map.Entry<String, byte[]> entry : getAllWithPrefix(userDevice, SIGNED_PRE_KEY).entrySet()) {
+            try {
+                T_SigPreKey signedPreKey = keyUtil().signedPreKeyFromBytes(entry.getValue());
+                signedPreKeys.put(Integer.parseInt(entry.getKey()), signedPreKey);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize signed preKey.", e);
+            }
+        }
+
+        return signedPreKeys;
+    }
+
+    @Override
+    public void storeOmemoSignedPreKey(OmemoDevice userDevice,
+                                       int signedPreKeyId,
+                                       T_SigPreKey signedPreKey) throws IOException {
+        put(userDevice, SIGNED_PRE_KEY + signedPreKeyId, keyUtil().signedPreKeyToBytes(signedPreKey));
+    }
+
+    @Override
+    public void removeOmemoSignedPreKey(OmemoDevice userDevice, int signedPreKeyId) {
+        remove(userDevice, SIGNED_PRE_KEY + signedPreKeyId);
+    }
+
+    @Override
+    public T_Sess loadRawSession(OmemoDevice userDevice, OmemoDevice contactsDevice) throws IOException {
+        byte[] bytes = get(userDevice, SESSION + deviceKey(contactsDevice));
+        if (bytes != null) {
+            try {
+                return keyUtil().rawSessionFromBytes(bytes);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize raw session.", e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("NonApiType")
+    public HashMap<Integer, T_Sess> loadAllRawSessionsOf(OmemoDevice userDevice, BareJid contact) throws IOException {
+        HashMap<Integer, T_Sess> sessions = new HashMap<>();
+
+        for (Map.Entry<String, byte[]> entry : getAllWithPrefix(userDevice, SESSION + contactKey(contact)).entrySet()) {
+            try {
+                T_Sess session = keyUtil().rawSessionFromBytes(entry.getValue());
+                sessions.put(Integer.parseInt(entry.getKey()), session);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not deserialize raw session.", e);
+            }
+        }
+
+        return sessions;
+    }
+
+    @Override
+    public void storeRawSession(OmemoDevice userDevice, OmemoDevice contactsDevice, T_Sess session) throws IOException {
+        put(userDevice, SESSION + deviceKey(contactsDevice), keyUtil().rawSessionToBytes(session));
+    }
+
+    @Override
+    public void removeRawSession(OmemoDevice userDevice, OmemoDevice contactsDevice) {
+        remove(userDevice, SESSION + deviceKey(contactsDevice));
+    }
+
+    @Override
+    public void removeAllRawSessionsOf(OmemoDevice userDevice, BareJid contact) {
+        synchronized (this) {
+            try {
+                DeviceLog log = getDeviceLog(userDevice);
+                String prefix = SESSION + contactKey(contact);
+                for (String key : new ArrayList<>(withPrefix(log.entries, prefix).keySet())) {
+                    log.remove(key);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not remove the raw OMEMO sessions of " + contact, e);
+                return;
+            }
+        }
+        scheduleCommit();
+    }
+
+    @Override
+    public boolean containsRawSession(OmemoDevice userDevice, OmemoDevice contactsDevice) {
+        try {
+            return get(userDevice, SESSION + deviceKey(contactsDevice)) != null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the OMEMO log of " + userDevice, e);
+            return false;
+        }
+    }
+
+    @Override
+    public OmemoCachedDeviceList loadCachedDeviceList(OmemoDevice userDevice, BareJid contact) throws IOException {
+        OmemoCachedDeviceList cachedDeviceList = new OmemoCachedDeviceList();
+
+        if (contact == null) {
+            throw new IllegalArgumentException("Contact can not be null.");
+        }
+
+        byte[] active = get(userDevice, DEVICE_LIST_ACTIVE + contact);
+        if (active != null) {
+            cachedDeviceList.getActiveDevices().addAll(integersFromBytes(active));
+        }
+
+        byte[] inactive = get(userDevice, DEVICE_LIST_INACTIVE + contact);
+        if (inactive != null) {
+            cachedDeviceList.getInactiveDevices().addAll(integersFromBytes(inactive));
+        }
+
+        return cachedDeviceList;
+    }
+
+    @Override
+    public void storeCachedDeviceList(OmemoDevice userDevice,
+                                      BareJid contact,
+                                      OmemoCachedDeviceList contactsDeviceList) throws IOException {
+        if (contact == null) {
+            return;
+        }
+
+        Map<String, byte[]> entries = new HashMap<>(2);
+        entries.put(DEVICE_LIST_ACTIVE + contact, integersToBytes(contactsDeviceList.getActiveDevices()));
+        entries.put(DEVICE_LIST_INACTIVE + contact, integersToBytes(contactsDeviceList.getInactiveDevices()));
+        putAll(userDevice, entries);
+    }
+
+    @Override
+    public void purgeOwnDeviceKeys(OmemoDevice userDevice) {
+        synchronized (commitLock) {
+            synchronized (this) {
+                DeviceLog log = deviceLogs.remove(userDevice);
+                if (log != null) {
+                    log.closeChannel();
+                }
+                File logFile = getLogFile(userDevice);
+                if (logFile.exists() && !logFile.delete()) {
+                    LOGGER.log(Level.WARNING, "Deleting OMEMO log " + logFile.getAbsolutePath() + " failed.");
+                }
+            }
+        }
+    }
+
+    private File getUserDirectory(BareJid bareJid) {
+        return new File(storeDirectory, BARE_JID_ENCODER.encode(bareJid));
+    }
+
+    private File getLogFile(OmemoDevice userDevice) {
+        return new File(getUserDirectory(userDevice.getJid()), userDevice.getDeviceId() + LOG_SUFFIX);
+    }
+
+    private static String contactKey(BareJid contact) {
+        return contact.toString() + '/';
+    }
+
+    private static String deviceKey(OmemoDevice device) {
+        return contactKey(device.getJid()) + device.getDeviceId();
+    }
+
+    /**
+     * Get the entries whose key starts with the given prefix. As the keys are ordered, those form a contiguous range.
+     *
+     * @param entries the entries.
+     * @param prefix the prefix.
+     * @return a view of the entries whose key starts with the given prefix.
+     */
+    private static SortedMap<String, byte[]> withPrefix(TreeMap<String, byte[]> entries, String prefix) {
+        char last = prefix.charAt(prefix.length() - 1);
+        String upperBound = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+        return entries.subMap(prefix, upperBound);
+    }
+
+    private DeviceLog getDeviceLog(OmemoDevice userDevice) throws IOException {
+        assert Thread.holdsLock(this);
+
+        DeviceLog log = deviceLogs.get(userDevice);
+        if (log == null) {
+            log = new DeviceLog(getLogFile(userDevice));
+            log.replay();
+            deviceLogs.put(userDevice, log);
+        }
+        return log;
+    }
+
+    private synchronized byte[] get(OmemoDevice userDevice, String key) throws IOException {
+        return getDeviceLog(userDevice).entries.get(key);
+    }
+
+    /**
+     * Get the entries whose key starts with the given prefix, with the prefix removed from their keys.
+     *
+     * @param userDevice our OmemoDevice.
+     * @param prefix the prefix.
+     * @return the entries with the prefix removed from their keys.
+     * @throws IOException if an I/O error occurred.
+     */
+    private synchronized Map<String, byte[]> getAllWithPrefix(OmemoDevice userDevice, String prefix) throws IOException {
+        SortedMap<String, byte[]> entries = withPrefix(getDeviceLog(userDevice).entries, prefix);
+        Map<String, byte[]> result = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+        }
+        return result;
+    }
+
+    private Long getLong(OmemoDevice userDevice, String key) throws IOException {
+        byte[] bytes = get(userDevice, key);
+        if (bytes == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    private void put(OmemoDevice userDevice, String key, byte[] value) throws IOException {
+        synchronized (this) {
+            getDeviceLog(userDevice).put(key, value);
+        }
+        scheduleCommit();
+    }
+
+    private void putAll(OmemoDevice userDevice, Map<String, byte[]> entries) throws IOException {
+        synchronized (this) {
+            DeviceLog log = getDeviceLog(userDevice);
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                log.put(entry.getKey(), entry.getValue());
+            }
+        }
+        scheduleCommit();
+    }
+
+    private void putLong(OmemoDevice userDevice, String key, long value) throws IOException {
+        put(userDevice, key, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    private void remove(OmemoDevice userDevice, String key) {
+        synchronized (this) {
+            try {
+                getDeviceLog(userDevice).remove(key);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not remove " + key + " from the OMEMO log of " + userDevice, e);
+                return;
+            }
+        }
+        scheduleCommit();
+    }
+
+    private void scheduleCommit() {
+        final long commitDelayMillis = this.commitDelayMillis;
+        if (commitDelayMillis == 0) {
+            tryCommit();
+            return;
+        }
+
+        scheduleCommit(commitDelayMillis);
+    }
+
+    private void scheduleCommit(long delayMillis) {
+        synchronized (this) {
+            if (commitScheduled) {
+                return;
+            }
+            commitScheduled = true;
+        }
+
+        SmackExecutors.schedule(this::tryCommit, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write all pending updates to the logs. If that fails, the updates remain pending, and another group commit is
+     * scheduled with an exponentially increasing delay. Otherwise, the updates would only be written once an unrelated
+     * update schedules the next group commit.
+     */
+    private void tryCommit() {
+        try {
+            commit();
+        } catch (IOException e) {
+            long retryDelayMillis;
+            synchronized (this) {
+                int shift = Math.min(failedCommits++, 10);
+                retryDelayMillis = Math.min(Math.max(commitDelayMillis, 100) << shift, MAX_COMMIT_RETRY_DELAY_MILLIS);
+            }
+            LOGGER.log(Level.SEVERE, "Exception while committing to the OMEMO logs in " + storeDirectory
+                            + ", retrying in " + retryDelayMillis + "ms", e);
+            scheduleCommit(retryDelayMillis);
+            return;
+        }
+
+        synchronized (this) {
+            failedCommits = 0;
+        }
+    }
+
+    private static byte[] integersToBytes(Set<Integer> integers) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * integers.size());
+        for (int i : integers) {
+            buffer.putInt(i);
+        }
+        return buffer.array();
+    }
+
+    private static Set<Integer> integersFromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Set<Integer> integers = new HashSet<>(bytes.length / 3 + 1);
+        while (buffer.remaining() >= 4) {
+            integers.add(buffer.getInt());
+        }
+        return integers;
+    }
+
+    /**
+     * The log of a single local device. The entries and the pending records are guarded by the monitor of the store,
+     * the log file is only written while holding the commit lock of the store.
+     */
+    private final class DeviceLog {
+
+        private final File logFile;
+
+        private final TreeMap<String, byte[]> entries = new TreeMap<>();
+
+        /**
+         * The records which are not yet committed.
+         */
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        private DataOutputStream pendingOut = new DataOutputStream(pending);
+
+        private int pendingRecords;
+
+        /**
+         * The number of records in the log file.
+         */
+        private long recordCount;
+
+        private FileChannel channel;
+
+        private DeviceLog(File logFile) {
+            this.logFile = logFile;
+        }
+
+        private void put(String key, byte[] value) throws IOException {
+            entries.put(key, value);
+            pendingOut.writeByte(PUT_RECORD);
+            writeString(pendingOut, key);
+            pendingOut.writeInt(value.length);
+            pendingOut.write(value);
+            pendingRecords++;
+        }
+
+        private void remove(String key) throws IOException {
+            if (entries.remove(key) == null) {
+                return;
+            }
+            pendingOut.writeByte(DELETE_RECORD);
+            writeString(pendingOut, key);
+            pendingRecords++;
+        }
+
+        /**
+         * Read the whole log sequentially into memory. A frame which was only partially written, i.e., a damaged frame
+         * which extends to the end of the log, is discarded, and the log is truncated to the last complete frame. A
+         * damaged frame which is followed by further data is not the result of an interrupted write, in which case the
+         * log is kept as is and an exception is thrown.
+         *
+         * @throws IOException if an I/O error occurred or if the log is corrupt.
+         */
+        private void replay() throws IOException {
+            if (!logFile.exists()) {
+                return;
+            }
+
+            final long fileSize = Files.size(logFile.toPath());
+            if (fileSize < MAGIC_LENGTH) {
+                // The log was created, but its header was never completely written.
+                truncate(0);
+                return;
+            }
+
+            long offset = MAGIC_LENGTH;
+            CRC32 crc = new CRC32();
+
+            try (DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(Files.newInputStream(logFile.toPath()), 64 * 1024))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an OMEMO log file: " + logFile);
+                }
+
+                while (offset < fileSize) {
+                    // Every frame consists of its length, the frame itself and its checksum.
+                    final long remaining = fileSize - offset;
+                    if (remaining < 8) {
+                        discardIncompleteFrame(offset);
+                        return;
+                    }
+
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Invalid frame length " + length + " at offset " + offset
+                                        + " of the OMEMO log " + logFile);
+                    }
+                    // Reject the length before allocating the frame, as it may be damaged.
+                    if (length > remaining - 8) {
+                        discardIncompleteFrame(offset);
+                        return;
+                    }
+
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    crc.reset();
+                    crc.update(frame, 0, frame.length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        if (remaining == 8L + length) {
+                            // The final frame is damaged, most likely because it was not completely written.
+                            discardIncompleteFrame(offset);
+                            return;
+                        }
+                        throw new IOException("Checksum mismatch of the frame at offset " + offset
+                                        + " of the OMEMO log " + logFile);
+                    }
+
+                    try {
+                        recordCount += applyFrame(frame);
+                    } catch (EOFException e) {
+                        throw new IOException("Malformed frame at offset " + offset + " of the OMEMO log " + logFile, e);
+                    }
+                    offset += 8L + length;
+                }
+            }
+        }
+
+        private void discardIncompleteFrame(long offset) throws IOException {
+            LOGGER.warning("Discarding incomplete group commit at offset " + offset + " of the OMEMO log " + logFile);
+            truncate(offset);
+        }
+
+        private void truncate(long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+        }
+
+        private int applyFrame(byte[] frame) throws IOException {
+            // Decode the whole frame first, so that a corrupt frame is not partially applied.
+            Map<String, byte[]> puts = new HashMap<>();
+            Set<String> deletes = new HashSet<>();
+            int records = 0;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame))) {
+                while (in.available() > 0) {
+                    byte type = in.readByte();
+                    String key = readString(in);
+                    switch (type) {
+                    case PUT_RECORD:
+                        int length = in.readInt();
+                        if (length < 0 || length > in.available()) {
+                            throw new EOFException();
+                        }
+                        byte[] value = new byte[length];
+                        in.readFully(value);
+                        puts.put(key, value);
+                        deletes.remove(key);
+                        break;
+                    case DELETE_RECORD:
+                        puts.remove(key);
+                        deletes.add(key);
+                        break;
+                    default:
+                        throw new EOFException();
+                    }
+                    records++;
+                }
+            }
+
+            for (String key : deletes) {
+                entries.remove(key);
+            }
+            entries.putAll(puts);
+            return records;
+        }
+
+        /**
+         * Write the pending records as one frame to the log, or rewrite the log with only the live entries if it
+         * contains too many superseded records. Must be called while holding the commit lock, but not the monitor of
+         * the store.
+         *
+         * @throws IOException if an I/O error occurred.
+         */
+        private void commit() throws IOException {
+            byte[] frame;
+            int frameRecords;
+            TreeMap<String, byte[]> snapshot = null;
+            synchronized (LogStructuredOmemoStore.this) {
+                if (pendingRecords == 0) {
+                    return;
+                }
+
+                long records = recordCount + pendingRecords;
+                if (records >= COMPACTION_MIN_RECORDS && records >= 2L * entries.size()) {
+                    // The snapshot already contains the pending records.
+                    snapshot = new TreeMap<>(entries);
+                }
+
+                pendingOut.flush();
+                frame = pending.toByteArray();
+                frameRecords = pendingRecords;
+                pending = new ByteArrayOutputStream();
+                pendingOut = new DataOutputStream(pending);
+                pendingRecords = 0;
+            }
+
+            try {
+                if (snapshot != null) {
+                    compact(snapshot);
+                } else {
+                    append(frame, frameRecords);
+                }
+            } catch (IOException e) {
+                // Re-queue the records, so that they are written by the next group commit.
+                synchronized (LogStructuredOmemoStore.this) {
+                    ByteArrayOutputStream requeued = new ByteArrayOutputStream(frame.length + pending.size());
+                    requeued.write(frame);
+                    pendingOut.flush();
+                    pending.writeTo(requeued);
+                    pending = requeued;
+                    pendingOut = new DataOutputStream(pending);
+                    pendingRecords += frameRecords;
+                }
+                throw e;
+            }
+        }
+
+        private void append(byte[] frame, int frameRecords) throws IOException {
+            FileChannel channel = getChannel();
+            long size = channel.size();
+            try {
+                writeFully(channel, framed(frame));
+                if (syncOnCommit) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // Remove the partially written frame, so that subsequent frames are not appended after it.
+                channel.truncate(size);
+                throw e;
+            }
+
+            synchronized (LogStructuredOmemoStore.this) {
+                recordCount += frameRecords;
+            }
+        }
+
+        /**
+         * Rewrite the log with the given entries as a single frame. The new log is written into a temporary file,
+         * which then atomically replaces the log file.
+         *
+         * @param snapshot the live entries.
+         * @throws IOException if an I/O error occurred.
+         */
+        private void compact(TreeMap<String, byte[]> snapshot) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            DataOutputStream frameOut = new DataOutputStream(frame);
+            for (Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+                frameOut.writeByte(PUT_RECORD);
+                writeString(frameOut, entry.getKey());
+                frameOut.writeInt(entry.getValue().length);
+                frameOut.write(entry.getValue());
+            }
+            frameOut.flush();
+
+            File tmpLogFile = new File(logFile.getPath() + ".tmp");
+            try {
+                try (FileChannel tmpChannel = FileChannel.open(tmpLogFile.toPath(), StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeFully(tmpChannel, ByteBuffer.allocate(MAGIC_LENGTH).putInt(0, MAGIC));
+                    writeFully(tmpChannel, framed(frame.toByteArray()));
+                    tmpChannel.force(false);
+                }
+                closeChannel();
+                Files.move(tmpLogFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                tmpLogFile.delete();
+                throw e;
+            }
+
+            synchronized (LogStructuredOmemoStore.this) {
+                recordCount = snapshot.size();
+            }
+        }
+
+        private FileChannel getChannel() throws IOException {
+            if (channel != null) {
+                return channel;
+            }
+
+            logFile.getParentFile().mkdirs();
+            channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+            if (channel.size() == 0) {
+                writeFully(channel, ByteBuffer.allocate(MAGIC_LENGTH).putInt(0, MAGIC));
+            }
+            return channel;
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Exception while closing the OMEMO log " + logFile, e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Frame the given records by their length and their checksum.
+     *
+     * @param frame the records.
+     * @return the framed records.
+     */
+    private static ByteBuffer framed(byte[] frame) {
+        CRC32 crc = new CRC32();
+        crc.update(frame, 0, frame.length);
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length + 8);
+        buffer.putInt(frame.length);
+        buffer.put(frame);
+        buffer.putInt((int) crc.getValue());
+        ((java.nio.Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string from a frame, which is completely held in memory, hence {@link DataInputStream#available()} returns
+     * the number of the remaining bytes of the frame.
+     *
+     * @param in the stream of the frame.
+     * @return the string.
+     * @throws IOException if the frame is malformed.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
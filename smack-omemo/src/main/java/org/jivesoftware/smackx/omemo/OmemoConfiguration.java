@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2017 Paul Schaub
+ * Copyright 2017 Paul Schaub, 2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -239,4 +239,28 @@ public final class OmemoConfiguration {
     public static void setCompleteSessionWithEmptyMessage(boolean complete) {
         COMPLETE_SESSION_WITH_EMPTY_MESSAGE = complete;
     }
+
+    private static int MAX_CONCURRENT_BUNDLE_FETCHES = 16;
+
+    /**
+     * Set the maximum number of bundles which are fetched concurrently, when sessions with multiple devices need to be
+     * built, e.g., when sending the first message to a group chat.
+     *
+     * @param maxConcurrentBundleFetches maximum number of concurrent bundle fetches.
+     */
+    public static void setMaxConcurrentBundleFetches(int maxConcurrentBundleFetches) {
+        if (maxConcurrentBundleFetches <= 0) {
+            throw new IllegalArgumentException("maxConcurrentBundleFetches MUST be greater than 0.");
+        }
+        MAX_CONCURRENT_BUNDLE_FETCHES = maxConcurrentBundleFetches;
+    }
+
+    /**
+     * Get the maximum number of bundles which are fetched concurrently.
+     *
+     * @return maximum number of concurrent bundle fetches.
+     */
+    public static int getMaxConcurrentBundleFetches() {
+        return MAX_CONCURRENT_BUNDLE_FETCHES;
+    }
 }
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2017 Paul Schaub, 2019 Florian Schmaus
+ * Copyright 2017 Paul Schaub, 2019-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -41,11 +41,15 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
 import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.SmackFuture;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.NamedElement;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.StanzaError;
+import org.jivesoftware.smack.util.Pair;
 
 import org.jivesoftware.smackx.carbons.packet.CarbonExtension;
 import org.jivesoftware.smackx.mam.MamManager;
@@ -77,15 +81,20 @@ import org.jivesoftware.smackx.omemo.util.MessageOrOmemoMessage;
 import org.jivesoftware.smackx.omemo.util.OmemoConstants;
 import org.jivesoftware.smackx.omemo.util.OmemoMessageBuilder;
 import org.jivesoftware.smackx.pep.PepManager;
+import org.jivesoftware.smackx.pubsub.GetItemsRequest;
+import org.jivesoftware.smackx.pubsub.ItemsExtension;
 import org.jivesoftware.smackx.pubsub.LeafNode;
 import org.jivesoftware.smackx.pubsub.PayloadItem;
+import org.jivesoftware.smackx.pubsub.PubSubElementType;
 import org.jivesoftware.smackx.pubsub.PubSubException;
 import org.jivesoftware.smackx.pubsub.PubSubException.NotALeafNodeException;
 import org.jivesoftware.smackx.pubsub.PubSubManager;
+import org.jivesoftware.smackx.pubsub.packet.PubSub;
 
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.Jid;
+import org.jxmpp.util.cache.ExpirationCache;
 
 /**
  * This class contains OMEMO related logic and registers listeners etc.
@@ -109,11 +118,26 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
 
     private static final long MILLIS_PER_HOUR = 1000L * 60 * 60;
 
+    /* lifetime of an entry in the cache of failed bundle fetches */
+    private static final long FAILED_BUNDLE_FETCH_LIFETIME = 1000L * 60 * 15;
+
+    /* size of the cache of failed bundle fetches */
+    private static final int FAILED_BUNDLE_FETCH_MAX_SIZE = 500;
+
     private static OmemoService<?, ?, ?, ?, ?, ?, ?, ?, ?> INSTANCE;
 
     private OmemoStore<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey, T_Sess, T_Addr, T_ECPub, T_Bundle, T_Ciph> omemoStore;
     private final HashMap<OmemoManager, OmemoRatchet<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey, T_Sess, T_Addr, T_ECPub, T_Bundle, T_Ciph>> omemoRatchets = new HashMap<>();
 
+    /**
+     * Pairs of our device and a contact's device, for which we recently failed to build a session because the contact's
+     * device did not publish a bundle, and the reason. Those devices are skipped when encrypting messages until the entry
+     * expires, so that a single broken device does not cause a round-trip on every sent message. Transient failures,
+     * like a missing response, are not cached.
+     */
+    private final ExpirationCache<Pair<OmemoDevice, OmemoDevice>, Throwable> failedBundleFetches = new ExpirationCache<>(
+                    FAILED_BUNDLE_FETCH_MAX_SIZE, FAILED_BUNDLE_FETCH_LIFETIME);
+
     protected OmemoService() {
 
     }
@@ -356,7 +380,8 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
         // Do not encrypt for our own device.
         removeOurDevice(userDevice, contactsDevices);
 
-        buildMissingSessionsWithDevices(manager.getConnection(), userDevice, contactsDevices);
+        Map<OmemoDevice, Throwable> sessionFailures = buildMissingSessionsWithDevices(manager.getConnection(), userDevice,
+                        contactsDevices);
 
         Set<OmemoDevice> undecidedDevices = getUndecidedDevices(userDevice, manager.getTrustCallback(), contactsDevices);
         if (!undecidedDevices.isEmpty()) {
@@ -376,15 +401,11 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
         }
 
         for (OmemoDevice contactsDevice : contactsDevices) {
-            // Build missing sessions
-            if (!hasSession(userDevice, contactsDevice)) {
-                try {
-                    buildFreshSessionWithDevice(manager.getConnection(), userDevice, contactsDevice);
-                } catch (CorruptedOmemoKeyException | CannotEstablishOmemoSessionException e) {
-                    LOGGER.log(Level.WARNING, "Could not build session with " + contactsDevice + ".", e);
-                    skippedRecipients.put(contactsDevice, e);
-                    continue;
-                }
+            // Skip devices with which we could not build a missing session
+            Throwable sessionFailure = sessionFailures.get(contactsDevice);
+            if (sessionFailure != null) {
+                skippedRecipients.put(contactsDevice, sessionFailure);
+                continue;
             }
 
             int messageCounter = omemoStore.loadOmemoMessageCounter(userDevice, contactsDevice);
@@ -794,57 +815,166 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
             throw new CannotEstablishOmemoSessionException(contactsDevice, e);
         }
 
+        if (bundleElement == null) {
+            throw new CannotEstablishOmemoSessionException(contactsDevice,
+                            new SmackException.SmackMessageException(contactsDevice + " did not publish a bundle"));
+        }
+        buildSessionFromBundle(connection, userDevice, contactsDevice, bundleElement);
+
+        // We were able to build a session, hence there is no reason to skip the device anymore.
+        failedBundleFetches.remove(Pair.create(userDevice, contactsDevice));
+    }
+
+    /**
+     * Build a fresh OMEMO session with the contacts device from its bundle.
+     *
+     * @param connection authenticated XMPP connection
+     * @param userDevice our OmemoDevice
+     * @param contactsDevice OmemoDevice of a contact.
+     * @param bundleElement the bundle of the contacts device.
+     *
+     * @throws CorruptedOmemoKeyException if the bundle contains no valid preKeys.
+     */
+    // Package-private for unit testing purposes.
+    void buildSessionFromBundle(XMPPConnection connection, OmemoDevice userDevice, OmemoDevice contactsDevice,
+                    OmemoBundleElement bundleElement) throws CorruptedOmemoKeyException {
+        OmemoManager omemoManager = OmemoManager.getInstanceFor(connection, userDevice.getDeviceId());
+
         // Select random Bundle
         Map<Integer, T_Bundle> bundlesList = getOmemoStoreBackend().keyUtil().BUNDLE.bundles(bundleElement, contactsDevice);
         int randomIndex = new Random().nextInt(bundlesList.size());
         T_Bundle randomPreKeyBundle = new ArrayList<>(bundlesList.values()).get(randomIndex);
 
         // build the session
-        OmemoManager omemoManager = OmemoManager.getInstanceFor(connection, userDevice.getDeviceId());
         processBundle(omemoManager, randomPreKeyBundle, contactsDevice);
     }
 
+    /**
+     * Fetch the bundles of the given devices and build fresh OMEMO sessions with them. The bundles are fetched with
+     * pipelined PubSub requests, at most {@link OmemoConfiguration#getMaxConcurrentBundleFetches()} at the same time,
+     * instead of one round-trip after another. Every bundle is processed as soon as it was received, while the
+     * remaining bundles are still being fetched. Devices which recently did not publish a bundle are skipped.
+     *
+     * @param connection authenticated XMPP connection
+     * @param userDevice our OmemoDevice
+     * @param contactsDevices the devices of contacts.
+     * @return a map of the devices with which no session could be built, to the reason.
+     *
+     * @throws SmackException.NotConnectedException if the XMPP connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    // Package-private for unit testing purposes.
+    Map<OmemoDevice, Throwable> buildFreshSessionsWithDevices(XMPPConnection connection,
+                    OmemoDevice userDevice, Collection<OmemoDevice> contactsDevices)
+            throws SmackException.NotConnectedException, InterruptedException {
+        Map<OmemoDevice, Throwable> failures = new HashMap<>();
+
+        List<OmemoDevice> devicesToFetch = new ArrayList<>(contactsDevices.size());
+        List<PubSub> requests = new ArrayList<>(contactsDevices.size());
+        for (OmemoDevice contactsDevice : contactsDevices) {
+            if (contactsDevice.equals(userDevice)) {
+                // Do not build a session with yourself.
+                continue;
+            }
+
+            Throwable previousFailure = failedBundleFetches.lookup(Pair.create(userDevice, contactsDevice));
+            if (previousFailure != null) {
+                LOGGER.log(Level.FINE, "Skipping " + contactsDevice + ", as it recently did not publish a bundle.");
+                failures.put(contactsDevice, previousFailure);
+                continue;
+            }
+
+            devicesToFetch.add(contactsDevice);
+            requests.add(PubSub.createPubsubPacket(contactsDevice.getJid(), IQ.Type.get,
+                            new GetItemsRequest(contactsDevice.getBundleNodeName())));
+        }
+
+        if (requests.isEmpty()) {
+            return failures;
+        }
+
+        List<SmackFuture<IQ, Exception>> responses = connection.sendIqRequestsAsync(requests,
+                        OmemoConfiguration.getMaxConcurrentBundleFetches());
+
+        for (int i = 0; i < devicesToFetch.size(); i++) {
+            OmemoDevice contactsDevice = devicesToFetch.get(i);
+            Throwable failure;
+            // Whether the device did not publish a bundle, in which case there is no point in asking again soon.
+            boolean noBundlePublished;
+            try {
+                OmemoBundleElement bundleElement = bundleFromItemsResponse(responses.get(i).getOrThrow());
+                if (bundleElement != null) {
+                    buildSessionFromBundle(connection, userDevice, contactsDevice, bundleElement);
+                    continue;
+                }
+                failure = new CannotEstablishOmemoSessionException(contactsDevice,
+                                new SmackException.SmackMessageException(contactsDevice + " did not publish a bundle"));
+                noBundlePublished = true;
+            } catch (SmackException.NotConnectedException | InterruptedException e) {
+                throw e;
+            } catch (XMPPException.XMPPErrorException e) {
+                failure = new CannotEstablishOmemoSessionException(contactsDevice, e);
+                noBundlePublished = e.getStanzaError().getCondition() == StanzaError.Condition.item_not_found;
+            } catch (CorruptedOmemoKeyException e) {
+                failure = e;
+                noBundlePublished = false;
+            } catch (Exception e) {
+                // E.g., a NoResponseException, which may be just a temporary hiccup.
+                failure = new CannotEstablishOmemoSessionException(contactsDevice, e);
+                noBundlePublished = false;
+            }
+
+            LOGGER.log(Level.WARNING, userDevice + " cannot establish session with " + contactsDevice + ".", failure);
+            if (noBundlePublished) {
+                failedBundleFetches.put(Pair.create(userDevice, contactsDevice), failure);
+            }
+            failures.put(contactsDevice, failure);
+        }
+
+        return failures;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OmemoBundleElement bundleFromItemsResponse(IQ response) {
+        ItemsExtension itemsElement = ((PubSub) response).getExtension(PubSubElementType.ITEMS);
+        if (itemsElement == null || itemsElement.getItems().isEmpty()) {
+            return null;
+        }
+
+        List<? extends NamedElement> items = itemsElement.getItems();
+        return ((PayloadItem<OmemoBundleElement>) items.get(items.size() - 1)).getPayload();
+    }
+
     /**
      * Build sessions with all devices from the set, we don't have a session with yet.
-     * Return the set of all devices we have a session with afterwards.
+     * Return the devices we could not build a session with.
      *
      * @param connection authenticated XMPP connection
      * @param userDevice our OmemoDevice
      * @param devices set of devices we may want to build a session with if necessary
-     * @return set of all devices with sessions
+     * @return map of the devices without session, to the reason why no session could be built
      *
      * @throws SmackException.NotConnectedException if the XMPP connection is not connected.
      * @throws InterruptedException if the calling thread was interrupted.
-     * @throws SmackException.NoResponseException if there was no response from the remote entity.
      * @throws IOException if an I/O error occurred.
      */
-    private Set<OmemoDevice> buildMissingSessionsWithDevices(XMPPConnection connection,
+    private Map<OmemoDevice, Throwable> buildMissingSessionsWithDevices(XMPPConnection connection,
                                                              OmemoDevice userDevice,
                                                              Set<OmemoDevice> devices)
-            throws SmackException.NotConnectedException, InterruptedException, SmackException.NoResponseException, IOException {
+            throws SmackException.NotConnectedException, InterruptedException, IOException {
 
-        Set<OmemoDevice> devicesWithSession = new HashSet<>();
+        List<OmemoDevice> devicesWithoutSession = new ArrayList<>();
         for (OmemoDevice device : devices) {
-
-            if (hasSession(userDevice, device)) {
-                devicesWithSession.add(device);
-                continue;
-            }
-
-            try {
-                buildFreshSessionWithDevice(connection, userDevice, device);
-                devicesWithSession.add(device);
-            } catch (CannotEstablishOmemoSessionException e) {
-                LOGGER.log(Level.WARNING, userDevice + " cannot establish session with " + device +
-                        " because their bundle could not be fetched.", e);
-            } catch (CorruptedOmemoKeyException e) {
-                LOGGER.log(Level.WARNING, userDevice + " could not establish session with " + device +
-                        "because their bundle seems to be corrupt.", e);
+            if (!hasSession(userDevice, device)) {
+                devicesWithoutSession.add(device);
             }
+        }
 
+        if (devicesWithoutSession.isEmpty()) {
+            return Collections.emptyMap();
         }
 
-        return devicesWithSession;
+        return buildFreshSessionsWithDevices(connection, userDevice, devicesWithoutSession);
     }
 
     /**
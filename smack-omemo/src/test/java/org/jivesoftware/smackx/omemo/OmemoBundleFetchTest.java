@@ -0,0 +1,205 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smack.DummyConnection;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.StanzaError;
+
+import org.jivesoftware.smackx.omemo.element.OmemoBundleElement_VAxolotl;
+import org.jivesoftware.smackx.omemo.exceptions.CannotEstablishOmemoSessionException;
+import org.jivesoftware.smackx.omemo.internal.OmemoDevice;
+import org.jivesoftware.smackx.pubsub.ItemsExtension;
+import org.jivesoftware.smackx.pubsub.PayloadItem;
+import org.jivesoftware.smackx.pubsub.packet.PubSub;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.impl.JidCreate;
+import org.mockito.Mockito;
+
+public class OmemoBundleFetchTest {
+
+    private static final int WAIT_SECONDS = 5;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final int defaultMaxConcurrentBundleFetches = OmemoConfiguration.getMaxConcurrentBundleFetches();
+
+    /**
+     * The devices with which a session was built.
+     */
+    private final List<OmemoDevice> sessions = Collections.synchronizedList(new ArrayList<>());
+
+    private DummyConnection connection;
+
+    private OmemoService<?, ?, ?, ?, ?, ?, ?, ?, ?> service;
+
+    private OmemoDevice alice;
+
+    private OmemoDevice bob;
+
+    private OmemoDevice carol;
+
+    private OmemoDevice dave;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        connection = DummyConnection.newConnectedDummyConnection();
+        connection.setReplyTimeout(500);
+
+        service = mock(OmemoService.class, withSettings().useConstructor().defaultAnswer(Mockito.CALLS_REAL_METHODS));
+        doAnswer(invocation -> sessions.add(invocation.getArgument(2)))
+                        .when(service).buildSessionFromBundle(any(), any(), any(), any());
+
+        alice = new OmemoDevice(JidCreate.bareFrom("alice@wonderland.lit"), 1);
+        bob = new OmemoDevice(JidCreate.bareFrom("bob@builder.tv"), 2);
+        carol = new OmemoDevice(JidCreate.bareFrom("carol@example.org"), 3);
+        dave = new OmemoDevice(JidCreate.bareFrom("dave@example.org"), 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        OmemoConfiguration.setMaxConcurrentBundleFetches(defaultMaxConcurrentBundleFetches);
+    }
+
+    private Future<Map<OmemoDevice, Throwable>> buildFreshSessions(OmemoDevice userDevice,
+                    OmemoDevice... contactsDevices) {
+        List<OmemoDevice> devices = List.of(contactsDevices);
+        return executor.submit(() -> service.buildFreshSessionsWithDevices(connection, userDevice, devices));
+    }
+
+    private PubSub nextBundleRequest() throws InterruptedException {
+        PubSub request = connection.getSentPacket(WAIT_SECONDS);
+        assertTrue(request != null, "Bundle request was not sent");
+        return request;
+    }
+
+    private void respondWithBundle(PubSub request) {
+        OmemoBundleElement_VAxolotl bundle = new OmemoBundleElement_VAxolotl(1, new byte[] { 1 }, new byte[] { 2 },
+                        new byte[] { 3 }, Map.of(1, new byte[] { 4 }));
+        ItemsExtension items = new ItemsExtension(ItemsExtension.ItemsElementType.items, "bundle",
+                        List.of(new PayloadItem<>(bundle)));
+        PubSub response = PubSub.createPubsubPacket(null, IQ.Type.result, items);
+        response.setFrom(request.getTo());
+        response.setTo(request.getFrom());
+        response.setStanzaId(request.getStanzaId());
+        connection.processStanza(response);
+    }
+
+    private void respondWithError(PubSub request, StanzaError.Condition condition) {
+        connection.processStanza(IQ.createErrorResponse(request, condition));
+    }
+
+    private static Throwable causeOf(Throwable failure) {
+        assertTrue(failure instanceof CannotEstablishOmemoSessionException, String.valueOf(failure));
+        return failure.getCause();
+    }
+
+    @Test
+    public void bundlesAreFetchedPipelined() throws Exception {
+        OmemoConfiguration.setMaxConcurrentBundleFetches(2);
+        Future<Map<OmemoDevice, Throwable>> result = buildFreshSessions(alice, bob, carol, dave);
+
+        // The first two requests are sent without awaiting a response.
+        PubSub bobRequest = nextBundleRequest();
+        PubSub carolRequest = nextBundleRequest();
+        assertEquals(bob.getJid(), bobRequest.getTo());
+        assertEquals(carol.getJid(), carolRequest.getTo());
+        assertNull(connection.getSentPacket(0));
+
+        // Responses may arrive out of order, every one frees a slot for the next request.
+        respondWithBundle(carolRequest);
+        PubSub daveRequest = nextBundleRequest();
+        assertEquals(dave.getJid(), daveRequest.getTo());
+        respondWithBundle(daveRequest);
+        respondWithBundle(bobRequest);
+
+        assertTrue(result.get(WAIT_SECONDS, TimeUnit.SECONDS).isEmpty());
+        assertEquals(List.of(bob, carol, dave), sessions);
+    }
+
+    @Test
+    public void onlyMissingBundlesAreCached() throws Exception {
+        Future<Map<OmemoDevice, Throwable>> result = buildFreshSessions(alice, bob, carol, dave);
+
+        PubSub bobRequest = nextBundleRequest();
+        PubSub carolRequest = nextBundleRequest();
+        PubSub daveRequest = nextBundleRequest();
+        respondWithError(bobRequest, StanzaError.Condition.item_not_found);
+        respondWithError(carolRequest, StanzaError.Condition.internal_server_error);
+        // There is no response for dave's bundle.
+
+        Map<OmemoDevice, Throwable> failures = result.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(3, failures.size());
+        assertTrue(causeOf(failures.get(bob)) instanceof XMPPException.XMPPErrorException);
+        assertTrue(causeOf(failures.get(carol)) instanceof XMPPException.XMPPErrorException);
+        assertTrue(causeOf(failures.get(dave)) instanceof SmackException.NoResponseException);
+        assertTrue(sessions.isEmpty());
+        assertNull(connection.getSentPacket(0));
+
+        // Bob's device is skipped, as it did not publish a bundle. The transient failures are retried.
+        result = buildFreshSessions(alice, bob, carol, dave);
+        carolRequest = nextBundleRequest();
+        daveRequest = nextBundleRequest();
+        assertEquals(carol.getJid(), carolRequest.getTo());
+        assertEquals(dave.getJid(), daveRequest.getTo());
+        respondWithBundle(carolRequest);
+        respondWithBundle(daveRequest);
+
+        failures = result.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton(bob), failures.keySet());
+        assertTrue(causeOf(failures.get(bob)) instanceof XMPPException.XMPPErrorException);
+        assertEquals(List.of(carol, dave), sessions);
+        assertNull(connection.getSentPacket(0));
+    }
+
+    @Test
+    public void failureCacheIsKeyedByUserDevice() throws Exception {
+        Future<Map<OmemoDevice, Throwable>> result = buildFreshSessions(alice, bob);
+        respondWithError(nextBundleRequest(), StanzaError.Condition.item_not_found);
+        assertEquals(Collections.singleton(bob), result.get(WAIT_SECONDS, TimeUnit.SECONDS).keySet());
+
+        // Another device of ours does not skip bob's device.
+        result = buildFreshSessions(carol, bob);
+        respondWithBundle(nextBundleRequest());
+        assertTrue(result.get(WAIT_SECONDS, TimeUnit.SECONDS).isEmpty());
+        assertEquals(List.of(bob), sessions);
+    }
+}
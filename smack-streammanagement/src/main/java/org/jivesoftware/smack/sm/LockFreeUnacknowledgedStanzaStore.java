@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+
+/**
+ * An {@link UnacknowledgedStanzaStore} for a single producer, which {@link #add(Stanza) adds} the stanzas, and a
+ * single consumer, which processes the acknowledgements. Stanzas are kept in a fixed-size ring which is accessed
+ * without locking. Once the ring is full, the stanzas are added to an {@link UnacknowledgedStanzaOverflow} instead, so
+ * that the producer never blocks. The overflow is only used, and locked, until the consumer caught up with it.
+ * <p>
+ * {@link #acknowledge(long)}, {@link #drain()} and {@link #reset()} are consumer operations and must not be invoked
+ * concurrently.
+ * </p>
+ */
+public final class LockFreeUnacknowledgedStanzaStore implements UnacknowledgedStanzaStore {
+
+    private static final long MASK_32_BIT = 0xffffffffL;
+
+    private final Stanza[] ring;
+
+    private final int mask;
+
+    private final UnacknowledgedStanzaOverflow overflow;
+
+    /**
+     * The number of stanzas the producer put into the ring. Only written by the producer.
+     */
+    private volatile long tail;
+
+    /**
+     * The number of stanzas the consumer removed from the ring. Only written by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * The number of stanzas in the overflow. While this is not zero, the producer adds all stanzas to the overflow, in
+     * order to preserve their order.
+     */
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    private volatile long serverHandledCount;
+
+    public LockFreeUnacknowledgedStanzaStore(int capacity) {
+        this(capacity, UnacknowledgedStanzaOverflow.inMemory());
+    }
+
+    public LockFreeUnacknowledgedStanzaStore(int capacity, UnacknowledgedStanzaOverflow overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int ringSize = Integer.highestOneBit(capacity);
+        if (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+        ring = new Stanza[ringSize];
+        mask = ringSize - 1;
+        this.overflow = overflow;
+        // The overflow may be shared with a previous store, drop what is left from it.
+        overflow.clear();
+    }
+
+    @Override
+    public void add(Stanza stanza) throws IOException {
+        final long currentTail = tail;
+        if (overflowSize.get() == 0 && currentTail - head < ring.length) {
+            ring[(int) currentTail & mask] = stanza;
+            // The volatile write publishes the stanza to the consumer.
+            tail = currentTail + 1;
+            return;
+        }
+
+        synchronized (overflow) {
+            overflow.add(stanza);
+        }
+        overflowSize.incrementAndGet();
+    }
+
+    private Stanza poll() throws IOException {
+        final long currentHead = head;
+        if (currentHead != tail) {
+            int index = (int) currentHead & mask;
+            Stanza stanza = ring[index];
+            ring[index] = null;
+            head = currentHead + 1;
+            return stanza;
+        }
+
+        // Since the ring is empty, the overflow, if not empty, contains the oldest stanzas.
+        if (overflowSize.get() == 0) {
+            return null;
+        }
+        Stanza stanza;
+        synchronized (overflow) {
+            stanza = overflow.poll();
+        }
+        overflowSize.decrementAndGet();
+        return stanza;
+    }
+
+    @Override
+    public List<Stanza> acknowledge(long handledCount) throws StreamManagementCounterError, IOException {
+        final long previousServerHandledCount = serverHandledCount;
+        // The counter wraps around at 2^32, see XEP-0198 § 4.
+        final long ackedStanzasCount = (handledCount - previousServerHandledCount) & MASK_32_BIT;
+        if (ackedStanzasCount == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Stanza> ackedStanzas = new ArrayList<>((int) Math.min(ackedStanzasCount, size()));
+        for (long i = 0; i < ackedStanzasCount; i++) {
+            Stanza ackedStanza = poll();
+            // If the server acknowledged a stanza, then it must be in this store.
+            if (ackedStanza == null) {
+                throw new StreamManagementCounterError(handledCount, previousServerHandledCount, ackedStanzasCount,
+                                ackedStanzas);
+            }
+            ackedStanzas.add(ackedStanza);
+        }
+
+        serverHandledCount = handledCount;
+        return ackedStanzas;
+    }
+
+    @Override
+    public long getServerHandledCount() {
+        return serverHandledCount;
+    }
+
+    @Override
+    public int size() {
+        return (int) (tail - head) + overflowSize.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public List<Stanza> drain() throws IOException {
+        final List<Stanza> unacknowledgedStanzas = new ArrayList<>(size());
+        Stanza stanza;
+        while ((stanza = poll()) != null) {
+            unacknowledgedStanzas.add(stanza);
+        }
+        return unacknowledgedStanzas;
+    }
+
+    @Override
+    public List<Stanza> reset() throws IOException {
+        final List<Stanza> unacknowledgedStanzas = drain();
+        serverHandledCount = 0;
+        return unacknowledgedStanzas;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.jivesoftware.smack.SmackConfiguration;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.parsing.SmackParsingException;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+
+/**
+ * An {@link UnacknowledgedStanzaOverflow} which keeps the serialized stanzas in a memory-mapped file, so that a burst of
+ * unacknowledged stanzas does not need to be held on the heap.
+ * <p>
+ * Each stanza is stored as record consisting of the length of its UTF-8 encoded XML representation, followed by the
+ * encoded XML. The file is created once the first stanza is added, is truncated when opened, and grows as needed. The
+ * contents are parsed again once a stanza is retrieved, hence retrieved stanzas are equal, but not identical, to the
+ * added ones.
+ * </p>
+ * <p>
+ * Instances should be {@link #close() closed} once they are no longer used, which also deletes the file.
+ * </p>
+ */
+public final class MappedFileUnacknowledgedStanzaOverflow implements UnacknowledgedStanzaOverflow, Closeable {
+
+    private static final int INITIAL_MAPPING_SIZE = 64 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES;
+
+    private final File file;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int readPosition;
+
+    private int writePosition;
+
+    public MappedFileUnacknowledgedStanzaOverflow(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void add(Stanza stanza) throws IOException {
+        byte[] bytes = stanza.toXML(XmlEnvironment.EMPTY).toString().getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(RECORD_HEADER_SIZE + bytes.length);
+
+        buffer.putInt(writePosition, bytes.length);
+        ((Buffer) buffer).position(writePosition + RECORD_HEADER_SIZE);
+        buffer.put(bytes);
+        writePosition += RECORD_HEADER_SIZE + bytes.length;
+    }
+
+    private void ensureCapacity(int recordSize) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        if (buffer != null && writePosition + recordSize <= buffer.capacity()) {
+            return;
+        }
+
+        if (buffer != null && readPosition > 0) {
+            // Move the records not yet retrieved to the start of the file.
+            ((Buffer) buffer).limit(writePosition).position(readPosition);
+            buffer.compact();
+            writePosition -= readPosition;
+            readPosition = 0;
+            if (writePosition + recordSize <= buffer.capacity()) {
+                return;
+            }
+        }
+
+        long mappingSize = buffer != null ? buffer.capacity() : INITIAL_MAPPING_SIZE;
+        while (mappingSize < writePosition + recordSize) {
+            mappingSize *= 2;
+        }
+        if (mappingSize > Integer.MAX_VALUE) {
+            throw new IOException("Unacknowledged stanza overflow file " + file + " exceeds maximum size");
+        }
+
+        // The new mapping covers the old one, so the records already written stay accessible.
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize);
+    }
+
+    @Override
+    public Stanza poll() throws IOException {
+        if (readPosition == writePosition) {
+            return null;
+        }
+
+        int length = buffer.getInt(readPosition);
+        byte[] bytes = new byte[length];
+        ((Buffer) buffer).position(readPosition + RECORD_HEADER_SIZE);
+        buffer.get(bytes);
+        readPosition += RECORD_HEADER_SIZE + length;
+
+        if (readPosition == writePosition) {
+            // Start from the beginning of the file again once the overflow is empty.
+            readPosition = writePosition = 0;
+        }
+
+        try {
+            XmlPullParser parser = PacketParserUtils.getParserFor(new ByteArrayInputStream(bytes));
+            return PacketParserUtils.parseStanza(parser, null, SmackConfiguration.getDefaultJxmppContext());
+        } catch (XmlPullParserException | SmackParsingException e) {
+            throw new IOException("Could not parse stanza from unacknowledged stanza overflow file " + file, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        readPosition = writePosition = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear();
+        buffer = null;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            channel = null;
+            if (!file.delete()) {
+                throw new IOException("Could not delete unacknowledged stanza overflow file " + file);
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2019-2020 Florian Schmaus
+ * Copyright 2019-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,32 +16,469 @@
  */
 package org.jivesoftware.smack.sm;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.SmackException.NotLoggedInException;
+import org.jivesoftware.smack.SmackException.OutgoingQueueFullException;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.XMPPException.FailedNonzaException;
 import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection.AuthenticatedAndResourceBoundStateDescriptor;
 import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection.AuthenticatedButUnboundStateDescriptor;
 import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection.ResourceBindingStateDescriptor;
 import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnectionModule;
+import org.jivesoftware.smack.c2s.StreamManagementHooks;
 import org.jivesoftware.smack.c2s.internal.ModularXmppClientToServerConnectionInternal;
 import org.jivesoftware.smack.c2s.internal.WalkStateGraphContext;
 import org.jivesoftware.smack.compression.CompressionModule.CompressionStateDescriptor;
+import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.fsm.State;
 import org.jivesoftware.smack.fsm.StateDescriptor;
 import org.jivesoftware.smack.fsm.StateTransitionResult;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamIdDoesNotMatchException;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementNotEnabledException;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckAnswer;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckRequest;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Enable;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Enabled;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Failed;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Resume;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Resumed;
+import org.jivesoftware.smack.sm.packet.StreamManagement.StreamManagementFeature;
+import org.jivesoftware.smack.sm.predicates.Predicate;
+import org.jivesoftware.smack.sm.provider.AckAnswerProvider;
+import org.jivesoftware.smack.sm.provider.AckRequestProvider;
+import org.jivesoftware.smack.sm.provider.EnabledProvider;
+import org.jivesoftware.smack.sm.provider.FailedProvider;
+import org.jivesoftware.smack.sm.provider.ResumedProvider;
+import org.jivesoftware.smack.util.StringUtils;
 
+/**
+ * Stream Management (XEP-0198) for {@link org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection}.
+ * <p>
+ * Stanzas sent after Stream Management was enabled are kept in a bounded {@link UnacknowledgedStanzaRingBuffer} until
+ * the server acknowledges them. Senders block, or fail in case of the non-blocking send methods, once the number of
+ * unacknowledged stanzas reaches the capacity of the buffer. Acknowledgement requests are issued based on the
+ * configured {@link #addRequestAckPredicate(StanzaFilter) predicates}, but there is at most one outstanding request:
+ * Further requests are deferred until the server answered the outstanding one.
+ * </p>
+ */
 public class StreamManagementModule extends ModularXmppClientToServerConnectionModule<StreamManagementModuleDescriptor> {
 
+    private static final Logger LOGGER = Logger.getLogger(StreamManagementModule.class.getName());
+
+    static {
+        ProviderManager.addNonzaProvider(EnabledProvider.INSTANCE);
+        ProviderManager.addNonzaProvider(FailedProvider.INSTANCE);
+        ProviderManager.addNonzaProvider(ResumedProvider.INSTANCE);
+        ProviderManager.addNonzaProvider(AckAnswerProvider.INSTANCE);
+        ProviderManager.addNonzaProvider(AckRequestProvider.INSTANCE);
+    }
+
+    /**
+     * The maximum number of unacknowledged stanzas.
+     */
+    private static final int UNACKNOWLEDGED_STANZAS_CAPACITY = 1024;
+
+    /**
+     * Request an acknowledgement regardless of the predicates once this number of stanzas is unacknowledged.
+     */
+    private static final int UNACKNOWLEDGED_STANZAS_HIGH_WATER_MARK = UNACKNOWLEDGED_STANZAS_CAPACITY / 2;
+
     protected StreamManagementModule(StreamManagementModuleDescriptor moduleDescriptor,
                     ModularXmppClientToServerConnectionInternal connectionInternal) {
         super(moduleDescriptor, connectionInternal);
+
+        connectionInternal.buildNonzaCallback()
+            .listenFor(Enabled.class, e -> onEnabled())
+            .listenFor(AckAnswer.class, a -> onAckAnswer(a))
+            .listenFor(AckRequest.class, r -> onAckRequest())
+            .install();
     }
 
     private boolean useSm = true;
 
     private boolean useSmResumption = true;
 
+    /**
+     * The client's preferred maximum resumption time in seconds.
+     */
+    private int clientMaxResumptionTime = -1;
+
+    /**
+     * The server's preferred maximum resumption time in seconds.
+     */
+    private int serverMaxResumptionTime = -1;
+
+    // Package-private for unit testing purposes.
+    final UnacknowledgedStanzaRingBuffer unacknowledgedStanzas = new UnacknowledgedStanzaRingBuffer(
+                    UNACKNOWLEDGED_STANZAS_CAPACITY);
+
+    /**
+     * Predicates that determine if an stream management ack should be requested from the server. The linked hash set
+     * ensures that the predicates are invoked in the order they were added.
+     */
+    private final Set<StanzaFilter> requestAckPredicates = new LinkedHashSet<>();
+
+    private final Collection<StanzaListener> stanzaAcknowledgedListeners = new ConcurrentLinkedQueue<>();
+
+    private final Collection<StanzaListener> stanzaDroppedListeners = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The ID of the stream that is currently resumable, or <code>null</code> if there is none.
+     */
+    private String smSessionId;
+
+    /**
+     * The time in milliseconds the connection was instantly shut down, or -1.
+     */
+    private long instantShutdownTimestamp = -1;
+
+    /**
+     * Set once the server enabled or resumed Stream Management, read by various threads.
+     */
+    private volatile boolean smEnabled;
+
+    private boolean streamResumed;
+
+    /**
+     * Set once the element enabling Stream Management was written. From then on, every sent stanza is added to the
+     * unacknowledged stanzas.
+     */
+    private boolean countOutgoingStanzas;
+
+    /**
+     * The counter for stanzas handled by the client, only modified by the thread processing the incoming elements.
+     * Package-private for unit testing purposes.
+     */
+    long clientHandledStanzasCount;
+
+    /**
+     * The number of stanzas that are going to be, or already were, added to the unacknowledged stanzas, but are not
+     * yet acknowledged. Stanzas which are sent before the element enabling Stream Management was written are never
+     * added to the unacknowledged stanzas, and hence are not counted.
+     */
+    private int queuedStanzas;
+
+    /**
+     * The stanzas which were counted in {@link #queuedStanzas} when they were queued, but which were not yet sent.
+     */
+    private final Set<Stanza> countedQueuedStanzas = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private boolean ackRequestOutstanding;
+
+    private boolean ackRequestDeferred;
+
+    private final StreamManagementHooks streamManagementHooks = new StreamManagementHooks() {
+        @Override
+        public void beforeStanzaQueued(Stanza stanza) throws InterruptedException {
+            synchronized (StreamManagementModule.this) {
+                while (smEnabled && queuedStanzas >= UNACKNOWLEDGED_STANZAS_CAPACITY) {
+                    StreamManagementModule.this.wait();
+                }
+                countQueuedStanza(stanza);
+            }
+        }
+
+        @Override
+        public boolean tryBeforeStanzaQueued(Stanza stanza) {
+            synchronized (StreamManagementModule.this) {
+                if (smEnabled && queuedStanzas >= UNACKNOWLEDGED_STANZAS_CAPACITY) {
+                    return false;
+                }
+                countQueuedStanza(stanza);
+                return true;
+            }
+        }
+
+        @Override
+        public void stanzaNotQueued(Stanza stanza) {
+            synchronized (StreamManagementModule.this) {
+                if (countedQueuedStanzas.remove(stanza)) {
+                    releaseQueuedStanzas(1);
+                }
+            }
+        }
+
+        @Override
+        public void onTopLevelStreamElementSent(TopLevelStreamElement element) {
+            if (element instanceof Enable) {
+                synchronized (StreamManagementModule.this) {
+                    countOutgoingStanzas = true;
+                }
+                return;
+            }
+            if (!(element instanceof Stanza)) {
+                return;
+            }
+
+            Stanza stanza = (Stanza) element;
+            boolean requestAck;
+            synchronized (StreamManagementModule.this) {
+                boolean counted = countedQueuedStanzas.remove(stanza);
+                if (!countOutgoingStanzas) {
+                    if (counted) {
+                        releaseQueuedStanzas(1);
+                    }
+                    return;
+                }
+                if (!counted) {
+                    // The stanza was queued before the element enabling Stream Management was written, but it is
+                    // sent afterwards. It now takes up capacity, like every other unacknowledged stanza.
+                    queuedStanzas++;
+                }
+                unacknowledgedStanzas.add(stanza);
+                requestAck = shouldRequestAck(stanza);
+            }
+            if (requestAck) {
+                requestAckNonBlocking();
+            }
+        }
+
+        @Override
+        public void onIncomingStanzaHandled() {
+            if (!smEnabled) {
+                return;
+            }
+            clientHandledStanzasCount = SMUtils.incrementHeight(clientHandledStanzasCount);
+        }
+
+        @Override
+        public boolean requestAcknowledgement() {
+            if (!smEnabled) {
+                return false;
+            }
+            synchronized (StreamManagementModule.this) {
+                if (ackRequestOutstanding) {
+                    // The answer to the outstanding request will do.
+                    return true;
+                }
+                ackRequestOutstanding = true;
+                ackRequestDeferred = false;
+            }
+            return requestAckNonBlocking();
+        }
+
+        @Override
+        public void beforeShutdown(boolean instant) {
+            if (!instant && smEnabled) {
+                // Try to send a last acknowledgement. Most servers won't find this information helpful, as the state
+                // is dropped after a clean disconnect anyways. OTOH it doesn't hurt much either.
+                sendAckNonBlocking();
+            }
+
+            synchronized (StreamManagementModule.this) {
+                smEnabled = false;
+                countOutgoingStanzas = false;
+                ackRequestOutstanding = false;
+                ackRequestDeferred = false;
+                queuedStanzas = 0;
+                countedQueuedStanzas.clear();
+
+                if (instant) {
+                    instantShutdownTimestamp = System.currentTimeMillis();
+                } else {
+                    // The stream is closed, hence it can not be resumed. We do not re-send the unacknowledged stanzas,
+                    // as they could include an unavailable presence.
+                    smSessionId = null;
+                    unacknowledgedStanzas.reset();
+                }
+
+                // Wake up the threads waiting for capacity.
+                StreamManagementModule.this.notifyAll();
+            }
+        }
+    };
+
+    @Override
+    protected StreamManagementHooks getStreamManagementHooks() {
+        return streamManagementHooks;
+    }
+
+    private void countQueuedStanza(Stanza stanza) {
+        assert Thread.holdsLock(this);
+
+        if (!countOutgoingStanzas) {
+            // The stanza may still be sent after the element enabling Stream Management, in which case it gets counted
+            // once it is added to the unacknowledged stanzas.
+            return;
+        }
+        if (countedQueuedStanzas.add(stanza)) {
+            queuedStanzas++;
+        }
+    }
+
+    private boolean shouldRequestAck(Stanza stanza) {
+        assert Thread.holdsLock(this);
+
+        boolean requestAck = ackRequestDeferred || unacknowledgedStanzas.size() >= UNACKNOWLEDGED_STANZAS_HIGH_WATER_MARK;
+        if (!requestAck) {
+            synchronized (requestAckPredicates) {
+                for (StanzaFilter requestAckPredicate : requestAckPredicates) {
+                    if (requestAckPredicate.accept(stanza)) {
+                        requestAck = true;
+                        break;
+                    }
+                }
+            }
+        }
+        if (!requestAck) {
+            return false;
+        }
+
+        if (ackRequestOutstanding) {
+            // Batch the acknowledgement requests: The answer to the outstanding request does not cover this stanza,
+            // hence request another acknowledgement once the answer was received.
+            ackRequestDeferred = true;
+            return false;
+        }
+
+        ackRequestOutstanding = true;
+        ackRequestDeferred = false;
+        return true;
+    }
+
+    private boolean requestAckNonBlocking() {
+        try {
+            connectionInternal.connection.sendNonzaNonBlocking(AckRequest.INSTANCE);
+        } catch (NotConnectedException | OutgoingQueueFullException e) {
+            LOGGER.log(Level.FINER, "Could not request acknowledgement, deferring request", e);
+            synchronized (this) {
+                ackRequestOutstanding = false;
+                ackRequestDeferred = true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void sendAckNonBlocking() {
+        final AckAnswer ackAnswer = new AckAnswer(clientHandledStanzasCount);
+        try {
+            connectionInternal.connection.sendNonzaNonBlocking(ackAnswer);
+        } catch (OutgoingQueueFullException e) {
+            // Must not block the thread processing the incoming elements.
+            connectionInternal.asyncGo(() -> {
+                try {
+                    connectionInternal.connection.sendNonza(ackAnswer);
+                } catch (NotConnectedException | InterruptedException e2) {
+                    LOGGER.log(Level.FINE, "Could not send acknowledgement", e2);
+                }
+            });
+        } catch (NotConnectedException e) {
+            LOGGER.log(Level.FINE, "Could not send acknowledgement as connection is not connected", e);
+        }
+    }
+
+    private void onEnabled() {
+        // Invoked by the thread processing the incoming elements: All stanzas received from now on are counted.
+        clientHandledStanzasCount = 0;
+        smEnabled = true;
+    }
+
+    private void onAckRequest() {
+        if (!smEnabled) {
+            LOGGER.warning("SM Ack Request received while SM is not enabled");
+            return;
+        }
+        sendAckNonBlocking();
+    }
+
+    private void onAckAnswer(AckAnswer ackAnswer) {
+        if (!smEnabled) {
+            LOGGER.fine("Ignoring SM Ack Answer received while SM is not enabled");
+            return;
+        }
+
+        try {
+            processHandledCount(ackAnswer.getHandledCount());
+        } catch (StreamManagementCounterError e) {
+            connectionInternal.notifyConnectionError(e);
+            return;
+        }
+
+        boolean requestAck = false;
+        synchronized (this) {
+            ackRequestOutstanding = false;
+            if (ackRequestDeferred && !unacknowledgedStanzas.isEmpty()) {
+                ackRequestOutstanding = true;
+                requestAck = true;
+            }
+            ackRequestDeferred = false;
+        }
+        if (requestAck) {
+            requestAckNonBlocking();
+        }
+    }
+
+    private void processHandledCount(long handledCount) throws StreamManagementCounterError {
+        final List<Stanza> ackedStanzas = unacknowledgedStanzas.acknowledge(handledCount);
+        if (ackedStanzas.isEmpty()) {
+            return;
+        }
+
+        releaseQueuedStanzas(ackedStanzas.size());
+
+        if (stanzaAcknowledgedListeners.isEmpty()) {
+            return;
+        }
+        connectionInternal.asyncGo(() -> invokeListeners(stanzaAcknowledgedListeners, ackedStanzas));
+    }
+
+    private synchronized void releaseQueuedStanzas(int count) {
+        queuedStanzas = Math.max(0, queuedStanzas - count);
+        notifyAll();
+    }
+
+    private static void invokeListeners(Collection<StanzaListener> listeners, List<Stanza> stanzas) {
+        for (Stanza stanza : stanzas) {
+            for (StanzaListener listener : listeners) {
+                try {
+                    listener.processStanza(stanza);
+                } catch (InterruptedException | NotConnectedException | NotLoggedInException e) {
+                    LOGGER.log(Level.FINER, "Stanza listener threw exception", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the stanzas which were not acknowledged in a previous stream that could not be resumed. Those are either
+     * handed to the stanza dropped listeners, or, if there are none, re-sent.
+     */
+    private void handleStanzasOfPreviousStream(List<Stanza> stanzas) throws NotConnectedException, InterruptedException {
+        if (stanzas.isEmpty()) {
+            return;
+        }
+
+        if (!stanzaDroppedListeners.isEmpty()) {
+            invokeListeners(stanzaDroppedListeners, stanzas);
+            return;
+        }
+
+        for (Stanza stanza : stanzas) {
+            connectionInternal.send(stanza);
+        }
+    }
+
     public static final class EnableStreamManagementStateDescriptor extends StateDescriptor {
 
         private EnableStreamManagementStateDescriptor() {
-            super(StreamManagementModule.EnableStreamManagementState.class, 198, StateDescriptor.Property.notImplemented);
+            super(StreamManagementModule.EnableStreamManagementState.class, 198);
 
             addPredeccessor(ResourceBindingStateDescriptor.class);
             addSuccessor(AuthenticatedAndResourceBoundStateDescriptor.class);
@@ -57,7 +494,8 @@ public class StreamManagementModule extends ModularXmppClientToServerConnectionM
 
     }
 
-    private EnableStreamManagementState constructEnableStreamMangementState(
+    // Package-private for unit testing purposes.
+    EnableStreamManagementState constructEnableStreamMangementState(
                     EnableStreamManagementStateDescriptor enableStreamManagementStateDescriptor,
                     ModularXmppClientToServerConnectionInternal connectionInternal) {
         return new EnableStreamManagementState(enableStreamManagementStateDescriptor, connectionInternal);
@@ -75,18 +513,73 @@ public class StreamManagementModule extends ModularXmppClientToServerConnectionM
                 return new StateTransitionResult.TransitionImpossibleReason("Stream management not enabled");
             }
 
-            return new StateTransitionResult.TransitionImpossibleBecauseNotImplemented(stateDescriptor);
+            if (!isSmAvailable()) {
+                return new StateTransitionResult.TransitionImpossibleReason("Stream management not supported by service");
+            }
+
+            return null;
         }
 
         @Override
-        public StateTransitionResult.AttemptResult transitionInto(WalkStateGraphContext walkStateGraphContext) {
-            throw new IllegalStateException("SM not implemented");
+        public StateTransitionResult.AttemptResult transitionInto(WalkStateGraphContext walkStateGraphContext)
+                        throws SmackException, InterruptedException, XMPPException {
+            final List<Stanza> stanzasOfPreviousStream;
+            synchronized (StreamManagementModule.this) {
+                // We either failed to resume a previous stream, or did not even try. Drop the state of the previous
+                // stream, but remember its unacknowledged stanzas.
+                smSessionId = null;
+                instantShutdownTimestamp = -1;
+                streamResumed = false;
+                stanzasOfPreviousStream = unacknowledgedStanzas.reset();
+            }
+
+            Enabled enabled;
+            try {
+                enabled = connectionInternal.sendAndWaitForResponse(new Enable(useSmResumption, clientMaxResumptionTime),
+                                Enabled.class, Failed.class);
+            } catch (FailedNonzaException e) {
+                synchronized (StreamManagementModule.this) {
+                    countOutgoingStanzas = false;
+                    // The stanzas sent in between are not going to be acknowledged.
+                    unacknowledgedStanzas.reset();
+                    countedQueuedStanzas.clear();
+                    queuedStanzas = 0;
+                    StreamManagementModule.this.notifyAll();
+                }
+                handleStanzasOfPreviousStream(stanzasOfPreviousStream);
+                return new StateTransitionResult.FailureCausedByException<>(e);
+            }
+
+            if (enabled.isResumeSet()) {
+                String id = enabled.getId();
+                if (StringUtils.isNullOrEmpty(id)) {
+                    throw new SmackException.SmackMessageException(
+                                    "Stream Management 'enabled' element with resume attribute but without session id received");
+                }
+                synchronized (StreamManagementModule.this) {
+                    smSessionId = id;
+                    serverMaxResumptionTime = enabled.getMaxResumptionTime();
+                }
+            }
+
+            synchronized (requestAckPredicates) {
+                if (requestAckPredicates.isEmpty()) {
+                    // Assure that we have at lest one predicate set up that so that we request acks for the server
+                    // and eventually flush some stanzas from the unacknowledged stanzas.
+                    requestAckPredicates.add(Predicate.forMessagesOrAfter5Stanzas());
+                }
+            }
+
+            handleStanzasOfPreviousStream(stanzasOfPreviousStream);
+
+            return new StateTransitionResult.Success(
+                            "Stream Management enabled" + (enabled.isResumeSet() ? " (resumable)" : ""));
         }
     }
 
     public static final class ResumeStreamStateDescriptor extends StateDescriptor {
         private ResumeStreamStateDescriptor() {
-            super(StreamManagementModule.ResumeStreamState.class, 198, StateDescriptor.Property.notImplemented);
+            super(StreamManagementModule.ResumeStreamState.class, 198);
 
             addPredeccessor(AuthenticatedButUnboundStateDescriptor.class);
             addSuccessor(AuthenticatedAndResourceBoundStateDescriptor.class);
@@ -102,7 +595,8 @@ public class StreamManagementModule extends ModularXmppClientToServerConnectionM
 
     }
 
-    private ResumeStreamState constructResumeStreamState(
+    // Package-private for unit testing purposes.
+    ResumeStreamState constructResumeStreamState(
                     ResumeStreamStateDescriptor resumeStreamStateDescriptor,
                     ModularXmppClientToServerConnectionInternal connectionInternal) {
         return new ResumeStreamState(resumeStreamStateDescriptor, connectionInternal);
@@ -121,12 +615,69 @@ public class StreamManagementModule extends ModularXmppClientToServerConnectionM
                 return new StateTransitionResult.TransitionImpossibleReason("Stream resumption not enabled");
             }
 
-            return new StateTransitionResult.TransitionImpossibleBecauseNotImplemented(stateDescriptor);
+            if (!isSmAvailable()) {
+                return new StateTransitionResult.TransitionImpossibleReason("Stream management not supported by service");
+            }
+
+            if (!isSmResumptionPossible()) {
+                return new StateTransitionResult.TransitionImpossibleReason("No resumable stream");
+            }
+
+            return null;
         }
 
         @Override
-        public StateTransitionResult.AttemptResult transitionInto(WalkStateGraphContext walkStateGraphContext) {
-            throw new IllegalStateException("Stream resumption not implemented");
+        public StateTransitionResult.AttemptResult transitionInto(WalkStateGraphContext walkStateGraphContext)
+                        throws SmackException, InterruptedException, XMPPException {
+            final String previd;
+            final long handledCount;
+            synchronized (StreamManagementModule.this) {
+                previd = smSessionId;
+                handledCount = clientHandledStanzasCount;
+            }
+
+            Resumed resumed;
+            try {
+                resumed = connectionInternal.sendAndWaitForResponse(new Resume(handledCount, previd), Resumed.class,
+                                Failed.class);
+            } catch (FailedNonzaException e) {
+                // Failing to resume the previous stream is non-fatal, as we can simply continue with resource binding
+                // in this case.
+                synchronized (StreamManagementModule.this) {
+                    smSessionId = null;
+                }
+                return new StateTransitionResult.FailureCausedByException<>(e);
+            }
+
+            if (!previd.equals(resumed.getPrevId())) {
+                throw new StreamIdDoesNotMatchException(previd, resumed.getPrevId());
+            }
+
+            // First, drop the stanzas already handled by the server.
+            processHandledCount(resumed.getHandledCount());
+
+            // Then re-send what is left. The stanzas get added to the unacknowledged stanzas again once they are sent.
+            final List<Stanza> stanzasToResend;
+            synchronized (StreamManagementModule.this) {
+                stanzasToResend = unacknowledgedStanzas.drain();
+                instantShutdownTimestamp = -1;
+                streamResumed = true;
+                countOutgoingStanzas = true;
+                smEnabled = true;
+            }
+            for (Stanza stanza : stanzasToResend) {
+                connectionInternal.send(stanza);
+            }
+            // If there where stanzas re-sent, then request an acknowledgement for them, as the predicates may not
+            // have matched.
+            if (!stanzasToResend.isEmpty()) {
+                connectionInternal.send(AckRequest.INSTANCE);
+            }
+
+            connectionInternal.setStreamResumed(true);
+
+            return new StateTransitionResult.Success(
+                            "Stream resumed, " + stanzasToResend.size() + " stanzas re-sent");
         }
     }
 
@@ -138,4 +689,169 @@ public class StreamManagementModule extends ModularXmppClientToServerConnectionM
         this.useSmResumption = useSmResumption;
     }
 
+    /**
+     * Set the preferred maximum resumption time in seconds.
+     *
+     * @param resumptionTime the preferred resumption time in seconds.
+     */
+    public void setPreferredResumptionTime(int resumptionTime) {
+        clientMaxResumptionTime = resumptionTime;
+    }
+
+    /**
+     * Get the maximum resumption time in seconds after which a managed stream can be resumed.
+     * <p>
+     * This method will return {@link Integer#MAX_VALUE} if neither the client nor the server specify a maximum
+     * resumption time.
+     * </p>
+     *
+     * @return the maximum resumption time in seconds or {@link Integer#MAX_VALUE} if none set.
+     */
+    public int getMaxSmResumptionTime() {
+        int clientResumptionTime = clientMaxResumptionTime > 0 ? clientMaxResumptionTime : Integer.MAX_VALUE;
+        int serverResumptionTime = serverMaxResumptionTime > 0 ? serverMaxResumptionTime : Integer.MAX_VALUE;
+        return Math.min(clientResumptionTime, serverResumptionTime);
+    }
+
+    /**
+     * Returns true if Stream Management is supported by the server.
+     *
+     * @return true if Stream Management is supported by the server.
+     */
+    public boolean isSmAvailable() {
+        return connectionInternal.connection.hasFeature(StreamManagementFeature.QNAME);
+    }
+
+    /**
+     * Returns true if Stream Management was successfully negotiated with the server.
+     *
+     * @return true if Stream Management was negotiated.
+     */
+    public boolean isSmEnabled() {
+        return smEnabled;
+    }
+
+    /**
+     * Returns true if the stream was successfully resumed with help of Stream Management.
+     *
+     * @return true if the stream was resumed.
+     */
+    public synchronized boolean streamWasResumed() {
+        return streamResumed;
+    }
+
+    /**
+     * Returns true if the connection was instantly shut down, e.g. because of a connection error, and the stream can
+     * be resumed.
+     *
+     * @return true if the stream is resumable.
+     */
+    public synchronized boolean isSmResumptionPossible() {
+        if (smSessionId == null || instantShutdownTimestamp < 0) {
+            return false;
+        }
+
+        long maxResumptionMillis = ((long) getMaxSmResumptionTime()) * 1000;
+        return System.currentTimeMillis() <= instantShutdownTimestamp + maxResumptionMillis;
+    }
+
+    public int getUnacknowledgedStanzasCount() {
+        return unacknowledgedStanzas.size();
+    }
+
+    /**
+     * Add a predicate for Stream Management acknowledgment requests.
+     * <p>
+     * Those predicates are used to determine when a Stream Management acknowledgement request is sent to the server.
+     * If not predicate is configured, the {@link Predicate#forMessagesOrAfter5Stanzas()} will be used.
+     * </p>
+     *
+     * @param predicate the predicate to add.
+     * @return if the predicate was not already active.
+     */
+    public boolean addRequestAckPredicate(StanzaFilter predicate) {
+        synchronized (requestAckPredicates) {
+            return requestAckPredicates.add(predicate);
+        }
+    }
+
+    /**
+     * Remove the given predicate for Stream Management acknowledgment request.
+     *
+     * @param predicate the predicate to remove.
+     * @return true if the predicate was removed.
+     */
+    public boolean removeRequestAckPredicate(StanzaFilter predicate) {
+        synchronized (requestAckPredicates) {
+            return requestAckPredicates.remove(predicate);
+        }
+    }
+
+    /**
+     * Remove all predicates for Stream Management acknowledgment requests.
+     */
+    public void removeAllRequestAckPredicates() {
+        synchronized (requestAckPredicates) {
+            requestAckPredicates.clear();
+        }
+    }
+
+    /**
+     * Send an unconditional Stream Management acknowledgement request to the server.
+     *
+     * @throws StreamManagementNotEnabledException if Stream Management is not enabled.
+     * @throws NotConnectedException if the connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    public void requestSmAcknowledgement() throws StreamManagementNotEnabledException, NotConnectedException, InterruptedException {
+        if (!smEnabled) {
+            throw new StreamManagementNotEnabledException();
+        }
+        synchronized (this) {
+            ackRequestOutstanding = true;
+            ackRequestDeferred = false;
+        }
+        connectionInternal.connection.sendNonza(AckRequest.INSTANCE);
+    }
+
+    /**
+     * Send an unconditional Stream Management acknowledgement to the server.
+     *
+     * @throws StreamManagementNotEnabledException if Stream Management is not enabled.
+     * @throws NotConnectedException if the connection is not connected.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    public void sendSmAcknowledgement() throws StreamManagementNotEnabledException, NotConnectedException, InterruptedException {
+        if (!smEnabled) {
+            throw new StreamManagementNotEnabledException();
+        }
+        connectionInternal.connection.sendNonza(new AckAnswer(clientHandledStanzasCount));
+    }
+
+    /**
+     * Add a Stanza acknowledged listener, which is invoked every time a Stanza has been acknowledged by the server.
+     *
+     * @param listener the listener to add.
+     */
+    public void addStanzaAcknowledgedListener(StanzaListener listener) {
+        stanzaAcknowledgedListeners.add(listener);
+    }
+
+    public boolean removeStanzaAcknowledgedListener(StanzaListener listener) {
+        return stanzaAcknowledgedListeners.remove(listener);
+    }
+
+    /**
+     * Add a Stanza dropped listener, which is invoked for every unacknowledged stanza of a stream that could not be
+     * resumed. If at least one listener is configured, no attempt will be made to re-send those stanzas.
+     *
+     * @param listener the listener to add.
+     */
+    public void addStanzaDroppedListener(StanzaListener listener) {
+        stanzaDroppedListeners.add(listener);
+    }
+
+    public boolean removeStanzaDroppedListener(StanzaListener listener) {
+        return stanzaDroppedListeners.remove(listener);
+    }
 }
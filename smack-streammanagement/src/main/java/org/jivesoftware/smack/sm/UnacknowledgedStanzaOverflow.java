@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.jivesoftware.smack.packet.Stanza;
+
+/**
+ * A FIFO queue which takes the unacknowledged stanzas that do not fit into the ring of a
+ * {@link LockFreeUnacknowledgedStanzaStore}. Implementations do not need to be thread-safe.
+ *
+ * @see MappedFileUnacknowledgedStanzaOverflow
+ */
+public interface UnacknowledgedStanzaOverflow {
+
+    void add(Stanza stanza) throws IOException;
+
+    /**
+     * Retrieve and remove the oldest stanza.
+     *
+     * @return the oldest stanza or <code>null</code> if this overflow is empty.
+     * @throws IOException if the stanza could not be retrieved.
+     */
+    Stanza poll() throws IOException;
+
+    void clear();
+
+    /**
+     * Create a new overflow which keeps the stanzas in memory.
+     *
+     * @return a new in-memory overflow.
+     */
+    static UnacknowledgedStanzaOverflow inMemory() {
+        return new UnacknowledgedStanzaOverflow() {
+            private final Queue<Stanza> stanzas = new ArrayDeque<>();
+
+            @Override
+            public void add(Stanza stanza) {
+                stanzas.add(stanza);
+            }
+
+            @Override
+            public Stanza poll() {
+                return stanzas.poll();
+            }
+
+            @Override
+            public void clear() {
+                stanzas.clear();
+            }
+        };
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+
+/**
+ * The stanzas sent but not yet acknowledged by the server, indexed by their Stream Management sequence number. The
+ * first stanza sent after {@link #reset()} has the sequence number 1, which is the value of 'h' the server reports once
+ * it handled this stanza. Acknowledging stanzas only moves the head of the ring, and hence runs in time proportional to
+ * the number of acknowledged stanzas.
+ * <p>
+ * The buffer is bounded by its capacity. Callers are expected to throttle the stanzas they send accordingly, but the
+ * buffer grows instead of dropping stanzas if the capacity is exceeded nevertheless.
+ * </p>
+ */
+public final class UnacknowledgedStanzaRingBuffer implements UnacknowledgedStanzaStore {
+
+    private static final long MASK_32_BIT = 0xffffffffL;
+
+    private Stanza[] ring;
+
+    private int mask;
+
+    /**
+     * The number of stanzas acknowledged by the server since the last reset.
+     */
+    private long head;
+
+    /**
+     * The number of stanzas sent since the last reset.
+     */
+    private long tail;
+
+    public UnacknowledgedStanzaRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int ringSize = Integer.highestOneBit(capacity);
+        if (ringSize < capacity) {
+            ringSize <<= 1;
+        }
+        ring = new Stanza[ringSize];
+        mask = ringSize - 1;
+    }
+
+    @Override
+    public synchronized void add(Stanza stanza) {
+        if (tail - head == ring.length) {
+            grow();
+        }
+        ring[(int) tail & mask] = stanza;
+        tail++;
+    }
+
+    private void grow() {
+        Stanza[] newRing = new Stanza[ring.length * 2];
+        int newMask = newRing.length - 1;
+        for (long sequence = head; sequence < tail; sequence++) {
+            newRing[(int) sequence & newMask] = ring[(int) sequence & mask];
+        }
+        ring = newRing;
+        mask = newMask;
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return tail == head;
+    }
+
+    @Override
+    public synchronized long getServerHandledCount() {
+        return head & MASK_32_BIT;
+    }
+
+    /**
+     * Process the handled count 'h' reported by the server.
+     *
+     * @param handledCount the value of 'h' reported by the server.
+     * @return the stanzas which got acknowledged, in the order they were sent.
+     * @throws StreamManagementCounterError if the server acknowledged stanzas which were never sent.
+     */
+    @Override
+    public synchronized List<Stanza> acknowledge(long handledCount) throws StreamManagementCounterError {
+        // The counter wraps around at 2^32, see XEP-0198 § 4.
+        final long ackedStanzasCount = (handledCount - head) & MASK_32_BIT;
+        if (ackedStanzasCount == 0) {
+            return Collections.emptyList();
+        }
+
+        final int size = (int) (tail - head);
+        final int acknowledgeable = (int) Math.min(ackedStanzasCount, size);
+        final List<Stanza> ackedStanzas = new ArrayList<>(acknowledgeable);
+        for (int i = 0; i < acknowledgeable; i++) {
+            int index = (int) head & mask;
+            ackedStanzas.add(ring[index]);
+            ring[index] = null;
+            head++;
+        }
+
+        if (ackedStanzasCount > size) {
+            throw new StreamManagementCounterError(handledCount, (head - acknowledgeable) & MASK_32_BIT,
+                            ackedStanzasCount, ackedStanzas);
+        }
+
+        return ackedStanzas;
+    }
+
+    /**
+     * Remove all stanzas from this buffer and reset the sequence numbers.
+     *
+     * @return the stanzas that were not acknowledged, in the order they were sent.
+     */
+    @Override
+    public synchronized List<Stanza> reset() {
+        final List<Stanza> unacknowledgedStanzas = new ArrayList<>(size());
+        for (; head < tail; head++) {
+            int index = (int) head & mask;
+            unacknowledgedStanzas.add(ring[index]);
+            ring[index] = null;
+        }
+        head = tail = 0;
+        return unacknowledgedStanzas;
+    }
+
+    /**
+     * Let the sequence numbers of an empty buffer continue at the given value. Package-private for unit testing
+     * purposes, as it is not feasible to send 2^32 stanzas in order to test the wrap around of 'h'.
+     *
+     * @param sequenceNumber the number of stanzas considered sent and acknowledged.
+     */
+    synchronized void setSequenceNumber(long sequenceNumber) {
+        if (tail != head) {
+            throw new IllegalStateException("Buffer is not empty");
+        }
+        head = tail = sequenceNumber;
+    }
+
+    /**
+     * Remove all unacknowledged stanzas from this buffer, but keep the sequence numbers. This is used when stanzas are
+     * re-sent after the stream was resumed, in which case they are going to get added again.
+     *
+     * @return the stanzas that were not acknowledged, in the order they were sent.
+     */
+    @Override
+    public synchronized List<Stanza> drain() {
+        final List<Stanza> unacknowledgedStanzas = new ArrayList<>(size());
+        while (tail > head) {
+            tail--;
+            int index = (int) tail & mask;
+            unacknowledgedStanzas.add(ring[index]);
+            ring[index] = null;
+        }
+        Collections.reverse(unacknowledgedStanzas);
+        return unacknowledgedStanzas;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+
+/**
+ * A store for the stanzas sent, but not yet acknowledged by the server. Stanzas are acknowledged in the order they
+ * were added, based on the handled count 'h' reported by the server.
+ */
+public interface UnacknowledgedStanzaStore {
+
+    /**
+     * Add a stanza which is about to be sent.
+     *
+     * @param stanza the stanza.
+     * @throws IOException if the stanza could not be stored.
+     */
+    void add(Stanza stanza) throws IOException;
+
+    /**
+     * Process the handled count 'h' reported by the server.
+     *
+     * @param handledCount the value of 'h' reported by the server.
+     * @return the stanzas which got acknowledged, in the order they were sent.
+     * @throws StreamManagementCounterError if the server acknowledged stanzas which were never sent.
+     * @throws IOException if a stored stanza could not be retrieved.
+     */
+    List<Stanza> acknowledge(long handledCount) throws StreamManagementCounterError, IOException;
+
+    /**
+     * Get the number of stanzas handled by the server, as last reported by it.
+     *
+     * @return the last known value of 'h'.
+     */
+    long getServerHandledCount();
+
+    int size();
+
+    boolean isEmpty();
+
+    /**
+     * Remove all unacknowledged stanzas from this store, but keep the handled count. This is used when stanzas are
+     * re-sent after the stream was resumed, in which case they are going to get added again.
+     *
+     * @return the stanzas that were not acknowledged, in the order they were sent.
+     * @throws IOException if a stored stanza could not be retrieved.
+     */
+    List<Stanza> drain() throws IOException;
+
+    /**
+     * Remove all stanzas from this store and reset the handled count.
+     *
+     * @return the stanzas that were not acknowledged, in the order they were sent.
+     * @throws IOException if a stored stanza could not be retrieved.
+     */
+    List<Stanza> reset() throws IOException;
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LockFreeUnacknowledgedStanzaStoreTest {
+
+    private static List<String> addStanzas(UnacknowledgedStanzaStore store, int first, int count) throws IOException {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            String id = "id-" + i;
+            ids.add(id);
+            store.add(StanzaBuilder.buildMessage(id).setBody("Message " + i).build());
+        }
+        return ids;
+    }
+
+    private static List<String> idsOf(List<Stanza> stanzas) {
+        List<String> ids = new ArrayList<>(stanzas.size());
+        for (Stanza stanza : stanzas) {
+            ids.add(stanza.getStanzaId());
+        }
+        return ids;
+    }
+
+    private static void assertOverflowPreservesOrder(UnacknowledgedStanzaOverflow overflow)
+                    throws IOException, StreamManagementCounterError {
+        UnacknowledgedStanzaStore store = new LockFreeUnacknowledgedStanzaStore(4, overflow);
+        List<String> ids = addStanzas(store, 0, 10);
+        assertEquals(10, store.size());
+
+        // Acknowledge the stanzas in the ring and some in the overflow.
+        assertEquals(ids.subList(0, 6), idsOf(store.acknowledge(6)));
+
+        // New stanzas must go after the ones still in the overflow.
+        ids.addAll(addStanzas(store, 10, 3));
+        assertEquals(ids.subList(6, 13), idsOf(store.acknowledge(13)));
+        assertTrue(store.isEmpty());
+
+        // Once the overflow is empty, the ring is used again.
+        ids.addAll(addStanzas(store, 13, 2));
+        assertEquals(ids.subList(13, 15), idsOf(store.drain()));
+        assertEquals(13, store.getServerHandledCount());
+    }
+
+    @Test
+    public void inMemoryOverflowPreservesOrder() throws IOException, StreamManagementCounterError {
+        assertOverflowPreservesOrder(UnacknowledgedStanzaOverflow.inMemory());
+    }
+
+    @Test
+    public void mappedFileOverflowPreservesOrder(@TempDir File tempDir) throws IOException, StreamManagementCounterError {
+        File file = new File(tempDir, "unacked");
+        try (MappedFileUnacknowledgedStanzaOverflow overflow = new MappedFileUnacknowledgedStanzaOverflow(file)) {
+            assertOverflowPreservesOrder(overflow);
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void mappedFileOverflowGrows(@TempDir File tempDir) throws IOException {
+        try (MappedFileUnacknowledgedStanzaOverflow overflow = new MappedFileUnacknowledgedStanzaOverflow(
+                        new File(tempDir, "unacked"))) {
+            // Enough stanzas to exceed the initial mapping.
+            final int count = 5000;
+            for (int i = 0; i < count; i++) {
+                overflow.add(StanzaBuilder.buildMessage("id-" + i).setBody("Message " + i).build());
+            }
+            for (int i = 0; i < count; i++) {
+                assertEquals("id-" + i, overflow.poll().getStanzaId());
+            }
+            assertEquals(null, overflow.poll());
+        }
+    }
+
+    @Test
+    public void acknowledgingUnsentStanzasThrows() throws IOException {
+        UnacknowledgedStanzaStore store = new LockFreeUnacknowledgedStanzaStore(2);
+        addStanzas(store, 0, 3);
+
+        assertThrows(StreamManagementCounterError.class, () -> store.acknowledge(4));
+    }
+
+    @Test
+    public void resetRestartsHandledCount() throws IOException, StreamManagementCounterError {
+        UnacknowledgedStanzaStore store = new LockFreeUnacknowledgedStanzaStore(2);
+        List<String> ids = addStanzas(store, 0, 3);
+        store.acknowledge(1);
+
+        assertEquals(ids.subList(1, 3), idsOf(store.reset()));
+        assertEquals(0, store.getServerHandledCount());
+
+        ids = addStanzas(store, 3, 1);
+        assertEquals(ids, idsOf(store.acknowledge(1)));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jivesoftware.smack.NonzaCallback;
+import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection;
+import org.jivesoftware.smack.c2s.StreamManagementHooks;
+import org.jivesoftware.smack.c2s.internal.ModularXmppClientToServerConnectionInternal;
+import org.jivesoftware.smack.fsm.State;
+import org.jivesoftware.smack.fsm.StateTransitionResult;
+import org.jivesoftware.smack.packet.Nonza;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.packet.TopLevelStreamElement;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckAnswer;
+import org.jivesoftware.smack.sm.packet.StreamManagement.AckRequest;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Enable;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Enabled;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Failed;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Resume;
+import org.jivesoftware.smack.sm.packet.StreamManagement.Resumed;
+import org.jivesoftware.smack.sm.packet.StreamManagement.StreamManagementFeature;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StreamManagementModuleTest {
+
+    private static final String STREAM_ID = "stream-id";
+
+    private static final int CAPACITY = 1024;
+
+    private final Map<Class<?>, NonzaCallback.NonzaListener<?>> nonzaListeners = new HashMap<>();
+
+    /**
+     * The nonzas the module sent via the non-blocking send method, i.e. acknowledgements and acknowledgement requests.
+     */
+    private final List<Nonza> sentNonzas = new ArrayList<>();
+
+    /**
+     * The elements the module sent via {@link ModularXmppClientToServerConnectionInternal#send(TopLevelStreamElement)}.
+     */
+    private final List<TopLevelStreamElement> sentElements = new ArrayList<>();
+
+    private ModularXmppClientToServerConnectionInternal connectionInternal;
+
+    private StreamManagementModule module;
+
+    private StreamManagementHooks hooks;
+
+    private int stanzaCount;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ModularXmppClientToServerConnection connection = mock(ModularXmppClientToServerConnection.class);
+        when(connection.hasFeature(StreamManagementFeature.QNAME)).thenReturn(true);
+        doAnswer(invocation -> sentNonzas.add(invocation.getArgument(0))).when(connection).sendNonzaNonBlocking(any());
+
+        NonzaCallback.Builder nonzaCallbackBuilder = mock(NonzaCallback.Builder.class);
+        when(nonzaCallbackBuilder.listenFor(any(), any())).thenAnswer(invocation -> {
+            nonzaListeners.put(invocation.getArgument(0), invocation.getArgument(1));
+            return nonzaCallbackBuilder;
+        });
+
+        connectionInternal = mock(ModularXmppClientToServerConnectionInternal.class,
+                        withSettings().useConstructor(connection, null, null, null));
+        when(connectionInternal.buildNonzaCallback()).thenReturn(nonzaCallbackBuilder);
+        doAnswer(invocation -> {
+            Runnable runnable = invocation.getArgument(0);
+            runnable.run();
+            return null;
+        }).when(connectionInternal).asyncGo(any());
+        doAnswer(invocation -> {
+            TopLevelStreamElement element = invocation.getArgument(0);
+            sentElements.add(element);
+            if (element instanceof Stanza) {
+                hooks.beforeStanzaQueued((Stanza) element);
+                hooks.onTopLevelStreamElementSent(element);
+            }
+            return null;
+        }).when(connectionInternal).send(any());
+        when(connectionInternal.sendAndWaitForResponse(any(Enable.class), eq(Enabled.class), eq(Failed.class)))
+                        .thenAnswer(invocation -> {
+                            hooks.onTopLevelStreamElementSent(invocation.getArgument(0));
+                            return new Enabled(STREAM_ID, true);
+                        });
+
+        module = new StreamManagementModule(new StreamManagementModuleDescriptor(), connectionInternal);
+        hooks = module.getStreamManagementHooks();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <N extends Nonza> void receive(N nonza) throws Exception {
+        NonzaCallback.NonzaListener<N> listener = (NonzaCallback.NonzaListener<N>) nonzaListeners.get(nonza.getClass());
+        listener.accept(nonza);
+    }
+
+    private void enable() throws Exception {
+        State enableState = module.constructEnableStreamMangementState(null, connectionInternal);
+        StateTransitionResult.AttemptResult result = enableState.transitionInto(null);
+        assertTrue(result instanceof StateTransitionResult.Success, result.toString());
+        receive(new Enabled(STREAM_ID, true));
+        assertTrue(module.isSmEnabled());
+    }
+
+    private Stanza nextStanza() {
+        return StanzaBuilder.buildMessage("id-" + stanzaCount++).build();
+    }
+
+    private List<Stanza> send(int count) throws InterruptedException {
+        List<Stanza> stanzas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Stanza stanza = nextStanza();
+            hooks.beforeStanzaQueued(stanza);
+            hooks.onTopLevelStreamElementSent(stanza);
+            stanzas.add(stanza);
+        }
+        return stanzas;
+    }
+
+    @Test
+    public void stanzasSentBeforeEnableDoNotTakeUpCapacity() throws Exception {
+        send(CAPACITY);
+
+        // Queued before the element enabling Stream Management was written, but sent afterwards.
+        Stanza queuedBeforeEnable = nextStanza();
+        hooks.beforeStanzaQueued(queuedBeforeEnable);
+
+        enable();
+        hooks.onTopLevelStreamElementSent(queuedBeforeEnable);
+        assertEquals(1, module.getUnacknowledgedStanzasCount());
+
+        List<Stanza> stanzas = send(CAPACITY - 1);
+        assertEquals(CAPACITY, module.getUnacknowledgedStanzasCount());
+        assertFalse(hooks.tryBeforeStanzaQueued(nextStanza()));
+
+        receive(new AckAnswer(1));
+        assertTrue(hooks.tryBeforeStanzaQueued(nextStanza()));
+        assertEquals(stanzas.size(), module.getUnacknowledgedStanzasCount());
+    }
+
+    @Test
+    public void acknowledgementReleasesCapacity() throws Exception {
+        List<Stanza> acknowledged = new ArrayList<>();
+        module.addStanzaAcknowledgedListener(acknowledged::add);
+        enable();
+
+        List<Stanza> stanzas = send(CAPACITY);
+        assertFalse(hooks.tryBeforeStanzaQueued(nextStanza()));
+
+        receive(new AckAnswer(10));
+        assertEquals(stanzas.subList(0, 10), acknowledged);
+        assertEquals(CAPACITY - 10, module.getUnacknowledgedStanzasCount());
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(hooks.tryBeforeStanzaQueued(nextStanza()));
+        }
+        assertFalse(hooks.tryBeforeStanzaQueued(nextStanza()));
+
+        // A stanza that could not be queued after all gives its capacity back.
+        Stanza notQueued = nextStanza();
+        receive(new AckAnswer(11));
+        assertTrue(hooks.tryBeforeStanzaQueued(notQueued));
+        assertFalse(hooks.tryBeforeStanzaQueued(nextStanza()));
+        hooks.stanzaNotQueued(notQueued);
+        assertTrue(hooks.tryBeforeStanzaQueued(nextStanza()));
+    }
+
+    @Test
+    public void handledCountWrapsAround() throws Exception {
+        enable();
+        module.unacknowledgedStanzas.setSequenceNumber(0xffffffffL - 1);
+
+        // The sequence numbers of those stanzas are 2^32 - 1, 0, 1 and 2.
+        List<Stanza> stanzas = send(4);
+        receive(new AckAnswer(1));
+        assertEquals(1, module.getUnacknowledgedStanzasCount());
+        assertEquals(1, module.unacknowledgedStanzas.getServerHandledCount());
+
+        receive(new AckAnswer(2));
+        assertTrue(module.unacknowledgedStanzas.isEmpty());
+        assertTrue(hooks.tryBeforeStanzaQueued(stanzas.get(0)));
+
+        // The counter of the stanzas handled by the client wraps around too.
+        module.clientHandledStanzasCount = 0xffffffffL;
+        hooks.onIncomingStanzaHandled();
+        receive(AckRequest.INSTANCE);
+        AckAnswer ackAnswer = (AckAnswer) sentNonzas.get(sentNonzas.size() - 1);
+        assertEquals(0, ackAnswer.getHandledCount());
+    }
+
+    @Test
+    public void resumptionReplaysUnacknowledgedStanzas() throws Exception {
+        enable();
+        List<Stanza> stanzas = send(3);
+        hooks.beforeShutdown(true);
+        assertFalse(module.isSmEnabled());
+        assertTrue(module.isSmResumptionPossible());
+
+        when(connectionInternal.sendAndWaitForResponse(any(Resume.class), eq(Resumed.class), eq(Failed.class)))
+                        .thenReturn(new Resumed(1, STREAM_ID));
+        State resumeState = module.constructResumeStreamState(null, connectionInternal);
+        StateTransitionResult.AttemptResult result = resumeState.transitionInto(null);
+        assertTrue(result instanceof StateTransitionResult.Success, result.toString());
+
+        assertEquals(List.of(stanzas.get(1), stanzas.get(2), AckRequest.INSTANCE), sentElements);
+        assertTrue(module.isSmEnabled());
+        assertTrue(module.streamWasResumed());
+        assertEquals(2, module.getUnacknowledgedStanzasCount());
+
+        // The re-sent stanzas keep their sequence numbers.
+        receive(new AckAnswer(3));
+        assertTrue(module.unacknowledgedStanzas.isEmpty());
+
+        // And all capacity is available again.
+        send(CAPACITY);
+        assertFalse(hooks.tryBeforeStanzaQueued(nextStanza()));
+    }
+}
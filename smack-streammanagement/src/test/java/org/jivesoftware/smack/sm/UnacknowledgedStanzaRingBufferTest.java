@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.sm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
+
+import org.junit.jupiter.api.Test;
+
+public class UnacknowledgedStanzaRingBufferTest {
+
+    private static List<Stanza> addStanzas(UnacknowledgedStanzaRingBuffer buffer, int count) {
+        List<Stanza> stanzas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Stanza stanza = StanzaBuilder.buildMessage("id-" + i).build();
+            stanzas.add(stanza);
+            buffer.add(stanza);
+        }
+        return stanzas;
+    }
+
+    @Test
+    public void acknowledgeInOrder() throws StreamManagementCounterError {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(8);
+        List<Stanza> stanzas = addStanzas(buffer, 5);
+
+        assertEquals(stanzas.subList(0, 2), buffer.acknowledge(2));
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getServerHandledCount());
+
+        // Acknowledging the same 'h' again is a no-op.
+        assertTrue(buffer.acknowledge(2).isEmpty());
+
+        assertEquals(stanzas.subList(2, 5), buffer.acknowledge(5));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void handledCountWrapsAround() throws StreamManagementCounterError {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(4);
+        List<Stanza> stanzas = addStanzas(buffer, 3);
+
+        // Only the lower 32 bits of 'h' are significant.
+        assertEquals(stanzas.subList(0, 3), buffer.acknowledge((1L << 32) + 3));
+    }
+
+    @Test
+    public void acknowledgingUnsentStanzasThrows() {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(4);
+        addStanzas(buffer, 2);
+
+        StreamManagementCounterError error = assertThrows(StreamManagementCounterError.class,
+                        () -> buffer.acknowledge(3));
+        assertEquals(2, error.getAckedStanzas().size());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void growsBeyondCapacity() throws StreamManagementCounterError {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(4);
+        addStanzas(buffer, 3);
+        buffer.acknowledge(2);
+
+        List<Stanza> stanzas = addStanzas(buffer, 10);
+        assertEquals(11, buffer.size());
+
+        List<Stanza> acked = buffer.acknowledge(13);
+        assertEquals(stanzas, acked.subList(1, acked.size()));
+    }
+
+    @Test
+    public void drainKeepsSequenceNumbers() throws StreamManagementCounterError {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(4);
+        List<Stanza> stanzas = addStanzas(buffer, 3);
+        buffer.acknowledge(1);
+
+        List<Stanza> drained = buffer.drain();
+        assertEquals(stanzas.subList(1, 3), drained);
+        assertTrue(buffer.isEmpty());
+
+        // Re-sending the drained stanzas continues with the sequence numbers 2 and 3.
+        for (Stanza stanza : drained) {
+            buffer.add(stanza);
+        }
+        assertEquals(drained, buffer.acknowledge(3));
+    }
+
+    @Test
+    public void resetRestartsSequenceNumbers() throws StreamManagementCounterError {
+        UnacknowledgedStanzaRingBuffer buffer = new UnacknowledgedStanzaRingBuffer(4);
+        List<Stanza> stanzas = addStanzas(buffer, 3);
+        buffer.acknowledge(1);
+
+        assertEquals(stanzas.subList(1, 3), buffer.reset());
+        assertEquals(0, buffer.getServerHandledCount());
+
+        List<Stanza> newStanzas = addStanzas(buffer, 1);
+        assertEquals(newStanzas, buffer.acknowledge(1));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Nagle-like policy for coalescing outgoing top-level elements into fewer writes, flushes and TLS records. The policy
+ * keeps a moving average of the time between two elements being queued for sending. Only if the queue is refilled
+ * faster than the maximum delay, the writer should wait, for about one average inter-arrival time, for further elements
+ * before it flushes. Otherwise, for example if only a single element is sent every now and then, the writer should
+ * flush immediately, so that the latency of sporadic elements is not increased.
+ * <p>
+ * {@link #elementQueued()} may be invoked concurrently by multiple threads. Updates may get lost in this case, which
+ * is acceptable for a heuristic.
+ * </p>
+ */
+public final class AdaptiveWriteCoalescing {
+
+    public static final long DEFAULT_MAX_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * The longest inter-arrival time taken into account, relative to the maximum delay. Limiting the inter-arrival time
+     * ensures that a few quickly queued elements after an idle period are sufficient to enable coalescing.
+     */
+    private static final int MAX_INTER_ARRIVAL_FACTOR = 16;
+
+    private final long maxDelayNanos;
+
+    private final long maxInterArrivalNanos;
+
+    private volatile long lastQueuedNanos;
+
+    private volatile long averageInterArrivalNanos;
+
+    public AdaptiveWriteCoalescing() {
+        this(DEFAULT_MAX_DELAY_NANOS);
+    }
+
+    public AdaptiveWriteCoalescing(long maxDelayNanos) {
+        if (maxDelayNanos <= 0) {
+            throw new IllegalArgumentException("Maximum delay must be positive");
+        }
+        this.maxDelayNanos = maxDelayNanos;
+        maxInterArrivalNanos = MAX_INTER_ARRIVAL_FACTOR * maxDelayNanos;
+        averageInterArrivalNanos = maxInterArrivalNanos;
+        lastQueuedNanos = System.nanoTime() - maxInterArrivalNanos;
+    }
+
+    /**
+     * Record that an element was queued for sending.
+     */
+    public void elementQueued() {
+        elementQueued(System.nanoTime());
+    }
+
+    void elementQueued(long nowNanos) {
+        final long interArrivalNanos = Math.min(nowNanos - lastQueuedNanos, maxInterArrivalNanos);
+        lastQueuedNanos = nowNanos;
+
+        final long average = averageInterArrivalNanos;
+        // Exponentially weighted moving average with alpha = 1/4.
+        averageInterArrivalNanos = average + (interArrivalNanos - average) / 4;
+    }
+
+    /**
+     * Get the time the writer should wait for further elements before flushing, after the queue ran empty.
+     *
+     * @return the delay in nanoseconds, or zero if the writer should flush immediately.
+     */
+    public long getFlushDelayNanos() {
+        return getFlushDelayNanos(System.nanoTime());
+    }
+
+    long getFlushDelayNanos(long nowNanos) {
+        final long average = averageInterArrivalNanos;
+        if (average > maxDelayNanos) {
+            return 0;
+        }
+        // If no element was queued for longer than the maximum delay, then the burst is over.
+        if (nowNanos - lastQueuedNanos > maxDelayNanos) {
+            return 0;
+        }
+        return Math.max(average, 1);
+    }
+
+    public long getMaxDelayNanos() {
+        return maxDelayNanos;
+    }
+}
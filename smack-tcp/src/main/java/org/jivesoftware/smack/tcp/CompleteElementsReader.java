@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+
+/**
+ * A reader over a queue of character sequences, which are appended by the reactor thread once the XMPP XML splitter
+ * has found a complete top-level element. The reader never blocks. If the consumer tries to read while no data is
+ * available, which means that the XML parser would have blocked, an {@link IOException} is thrown.
+ */
+final class CompleteElementsReader extends Reader {
+
+    private final ArrayDeque<CharSequence> pendingCharSequences = new ArrayDeque<>();
+
+    private CharSequence current;
+    private int currentPosition;
+
+    private boolean closed;
+
+    void append(CharSequence charSequence) {
+        if (charSequence.length() == 0) {
+            return;
+        }
+        pendingCharSequences.add(charSequence);
+    }
+
+    boolean hasRemaining() {
+        return current != null || !pendingCharSequences.isEmpty();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Reader closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = 0;
+        while (read < len) {
+            if (current == null) {
+                current = pendingCharSequences.poll();
+                currentPosition = 0;
+                if (current == null) {
+                    break;
+                }
+            }
+
+            final int currentLength = current.length();
+            final int count = Math.min(len - read, currentLength - currentPosition);
+            if (current instanceof String) {
+                ((String) current).getChars(currentPosition, currentPosition + count, cbuf, off + read);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    cbuf[off + read + i] = current.charAt(currentPosition + i);
+                }
+            }
+            currentPosition += count;
+            read += count;
+
+            if (currentPosition == currentLength) {
+                current = null;
+            }
+        }
+
+        if (read == 0) {
+            throw new IOException("No complete element available, the XML parser tried to read beyond the last complete element");
+        }
+
+        return read;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        current = null;
+        pendingCharSequences.clear();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import java.io.IOException;
+
+import org.jivesoftware.smack.c2s.internal.ModularXmppClientToServerConnectionInternal;
+import org.jivesoftware.smack.util.ParserUtils;
+import org.jivesoftware.smack.xml.SmackXmlParser;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+
+/**
+ * Parses the incoming XMPP stream with a single XML pull parser per stream. Instead of wrapping every top-level
+ * element into the stream open and close tags and parsing the result with a fresh parser, the complete elements as
+ * determined by the XMPP XML splitter are appended to the reader of a long-lived parser, which is then advanced by
+ * exactly one top-level element. Since only complete elements are fed into the parser, it never blocks on the reactor
+ * thread.
+ */
+final class IncrementalXmppStreamParser {
+
+    private final ModularXmppClientToServerConnectionInternal connectionInternal;
+
+    private CompleteElementsReader reader;
+
+    private XmlPullParser parser;
+
+    IncrementalXmppStreamParser(ModularXmppClientToServerConnectionInternal connectionInternal) {
+        this.connectionInternal = connectionInternal;
+    }
+
+    void onStreamOpen(String streamOpen) {
+        // Every stream (re-)open, e.g. after TLS has been established, starts a new XML document.
+        reset();
+
+        reader = new CompleteElementsReader();
+        reader.append(streamOpen);
+
+        try {
+            parser = SmackXmlParser.newXmlParser(reader);
+            ParserUtils.forwardToStartElement(parser);
+        } catch (XmlPullParserException | IOException e) {
+            connectionInternal.notifyConnectionError(e);
+            return;
+        }
+
+        connectionInternal.onStreamOpen(parser);
+    }
+
+    void onCompleteElement(String completeElement) {
+        final XmlPullParser parser = this.parser;
+        if (parser == null) {
+            throw new IllegalStateException("Received top-level element before stream open");
+        }
+
+        reader.append(completeElement);
+
+        try {
+            XmlPullParser.Event event = parser.next();
+            while (event != XmlPullParser.Event.START_ELEMENT) {
+                if (event == XmlPullParser.Event.END_DOCUMENT || event == XmlPullParser.Event.END_ELEMENT) {
+                    throw new IOException("Unexpected " + event + " while looking for the next top-level element");
+                }
+                event = parser.next();
+            }
+        } catch (XmlPullParserException | IOException e) {
+            connectionInternal.notifyConnectionError(e);
+            return;
+        }
+
+        connectionInternal.parseAndProcessElement(parser);
+    }
+
+    void reset() {
+        if (reader != null) {
+            reader.close();
+        }
+        reader = null;
+        parser = null;
+    }
+}
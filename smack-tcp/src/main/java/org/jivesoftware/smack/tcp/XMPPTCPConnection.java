@@ -34,8 +34,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
@@ -76,6 +74,7 @@ import org.jivesoftware.smack.compression.XMPPInputOutputStream;
 import org.jivesoftware.smack.datatypes.UInt16;
 import org.jivesoftware.smack.filter.StanzaFilter;
 import org.jivesoftware.smack.internal.SmackTlsContext;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.Element;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Message;
@@ -87,11 +86,14 @@ import org.jivesoftware.smack.packet.StreamOpen;
 import org.jivesoftware.smack.packet.TopLevelStreamElement;
 import org.jivesoftware.smack.proxy.ProxyInfo;
 import org.jivesoftware.smack.sasl.packet.SaslNonza;
+import org.jivesoftware.smack.sm.LockFreeUnacknowledgedStanzaStore;
 import org.jivesoftware.smack.sm.SMUtils;
 import org.jivesoftware.smack.sm.StreamManagementException;
 import org.jivesoftware.smack.sm.StreamManagementException.StreamIdDoesNotMatchException;
 import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementCounterError;
 import org.jivesoftware.smack.sm.StreamManagementException.StreamManagementNotEnabledException;
+import org.jivesoftware.smack.sm.UnacknowledgedStanzaOverflow;
+import org.jivesoftware.smack.sm.UnacknowledgedStanzaStore;
 import org.jivesoftware.smack.sm.packet.StreamManagement;
 import org.jivesoftware.smack.sm.packet.StreamManagement.AckAnswer;
 import org.jivesoftware.smack.sm.packet.StreamManagement.AckRequest;
@@ -181,14 +183,24 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
      */
     private BundleAndDeferCallback bundleAndDeferCallback = defaultBundleAndDeferCallback;
 
+    private static boolean useAdaptiveWriteCoalescingDefault;
+
+    /**
+     * The adaptive write coalescing policy, or <code>null</code> if adaptive write coalescing is disabled.
+     * <p>
+     * Like {@link #bundleAndDeferCallback}, this field is deliberately not 'volatile'.
+     * </p>
+     */
+    private AdaptiveWriteCoalescing adaptiveWriteCoalescing = useAdaptiveWriteCoalescingDefault
+                    ? new AdaptiveWriteCoalescing() : null;
+
     private static boolean useSmDefault = true;
 
     private static boolean useSmResumptionDefault = true;
 
     /**
      * The stream ID of the stream that is currently resumable, i.e. the stream we hold the state
-     * for in {@link #clientHandledStanzasCount}, {@link #serverHandledStanzasCount} and
-     * {@link #unacknowledgedStanzas}.
+     * for in {@link #clientHandledStanzasCount} and {@link #unacknowledgedStanzas}.
      */
     private String smSessionId;
 
@@ -225,12 +237,6 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
     private boolean useSm = useSmDefault;
     private boolean useSmResumption = useSmResumptionDefault;
 
-    /**
-     * The counter that the server sends the client about it's current height. For example, if the server sends
-     * {@code <a h='42'/>}, then this will be set to 42 (while also handling the {@link #unacknowledgedStanzas} queue).
-     */
-    private long serverHandledStanzasCount = 0;
-
     /**
      * The counter for stanzas handled ("received") by the client.
      * <p>
@@ -242,7 +248,17 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
      */
     private long clientHandledStanzasCount = 0;
 
-    private BlockingQueue<Stanza> unacknowledgedStanzas;
+    /**
+     * The stanzas sent but not yet acknowledged by the server. The writer thread adds the stanzas, while the reader
+     * thread processes the acknowledgements. The store also tracks the counter that the server sends the client about
+     * its current height.
+     */
+    private UnacknowledgedStanzaStore unacknowledgedStanzas;
+
+    /**
+     * The overflow for the unacknowledged stanzas, or <code>null</code> to keep the overflow in memory.
+     */
+    private UnacknowledgedStanzaOverflow unacknowledgedStanzaOverflow;
 
     /**
      * Set to true if Stream Management was at least once enabled for this connection.
@@ -419,7 +435,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         if (unacknowledgedStanzas != null) {
             // There was a previous connection with SM enabled but that was either not resumable or
             // failed to resume. Make sure that we (re-)send the unacknowledged stanzas.
-            unacknowledgedStanzas.drainTo(previouslyUnackedStanzas);
+            previouslyUnackedStanzas = unacknowledgedStanzas.drain();
             // Reset unacknowledged stanzas to 'null' to signal that we never send 'enable' in this
             // XMPP session (There maybe was an enabled in a previous XMPP session of this
             // connection instance though). This is used in writePackets to decide if stanzas should
@@ -434,8 +450,8 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         bindResourceAndEstablishSession(resource);
 
         if (isSmAvailable() && useSm) {
-            // Remove what is maybe left from previously stream managed sessions
-            serverHandledStanzasCount = 0;
+            // The unacknowledged stanzas, and with it the server handled stanzas count, are created once the
+            // 'enable' nonza is sent.
             sendNonza(new Enable(useSmResumption, smClientMaxResumptionTime));
             // XEP-198 3. Enabling Stream Management. If the server response to 'Enable' is 'Failed'
             // then this is a non recoverable error and we therefore throw an exception.
@@ -1079,8 +1095,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                             // First, drop the stanzas already handled by the server
                             processHandledCount(resumed.getHandledCount());
                             // Then re-send what is left in the unacknowledged queue
-                            List<Stanza> stanzasToResend = new ArrayList<>(unacknowledgedStanzas.size());
-                            unacknowledgedStanzas.drainTo(stanzasToResend);
+                            List<Stanza> stanzasToResend = unacknowledgedStanzas.drain();
                             for (Stanza stanza : stanzasToResend) {
                                 XMPPTCPConnection.this.sendInternal(stanza);
                             }
@@ -1213,6 +1228,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
          */
         private boolean shouldBundleAndDefer;
 
+        /**
+         * An element taken from the queue while waiting for further elements before flushing. It will be returned by
+         * the next invocation of {@link #nextStreamElement()}.
+         */
+        private Element coalescedElement;
+
         private boolean running;
 
         /**
@@ -1282,6 +1303,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 // If the method above did not throw, then the sending thread was interrupted
                 throw e;
             }
+            elementQueued();
         }
 
         /**
@@ -1298,6 +1320,22 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 throwNotConnectedExceptionIfDoneAndResumptionNotPossible();
                 throw new OutgoingQueueFullException();
             }
+            elementQueued();
+        }
+
+        private void elementQueued() {
+            final AdaptiveWriteCoalescing adaptiveWriteCoalescing = XMPPTCPConnection.this.adaptiveWriteCoalescing;
+            if (adaptiveWriteCoalescing != null) {
+                adaptiveWriteCoalescing.elementQueued();
+            }
+            recordQueueDepth();
+        }
+
+        private void recordQueueDepth() {
+            final SmackMetrics metrics = SmackMetrics.getIfEnabled();
+            if (metrics != null) {
+                metrics.outgoingQueueDepth.record(queue.size());
+            }
         }
 
         /**
@@ -1318,6 +1356,12 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
          * @return the next element for writing or null.
          */
         private Element nextStreamElement() {
+            final Element coalescedElement = this.coalescedElement;
+            if (coalescedElement != null) {
+                this.coalescedElement = null;
+                return coalescedElement;
+            }
+
             // It is important the we check if the queue is empty before removing an element from it
             if (queue.isEmpty()) {
                 shouldBundleAndDefer = true;
@@ -1378,7 +1422,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                         // The client needs to add messages to the unacknowledged stanzas queue
                         // right after it sent 'enabled'. Stanza will be added once
                         // unacknowledgedStanzas is not null.
-                        unacknowledgedStanzas = new ArrayBlockingQueue<>(UNACKKNOWLEDGED_STANZAS_QUEUE_SIZE);
+                        unacknowledgedStanzas = newUnacknowledgedStanzaStore();
                     }
                     maybeAddToUnacknowledgedStanzas(packet);
 
@@ -1395,7 +1439,7 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                         writer.write(elementXml.toString());
                     }
 
-                    if (queue.isEmpty()) {
+                    if (queue.isEmpty() && !awaitFurtherElement()) {
                         writer.flush();
                     }
                     if (packet != null) {
@@ -1405,8 +1449,8 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 if (!instantShutdown) {
                     // Flush out the rest of the queue.
                     try {
-                        while (!queue.isEmpty()) {
-                            Element packet = queue.remove();
+                        Element packet;
+                        while ((packet = pollRemainingElement()) != null) {
                             if (packet instanceof Stanza) {
                                 Stanza stanza = (Stanza) packet;
                                 maybeAddToUnacknowledgedStanzas(stanza);
@@ -1455,22 +1499,57 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
             }
         }
 
+        /**
+         * Wait a short moment for a further element, if adaptive write coalescing is enabled and the queue is currently
+         * being refilled quickly. This allows writing multiple elements with a single flush.
+         *
+         * @return <code>true</code> if a further element was taken from the queue, <code>false</code> otherwise.
+         */
+        private boolean awaitFurtherElement() {
+            final AdaptiveWriteCoalescing adaptiveWriteCoalescing = XMPPTCPConnection.this.adaptiveWriteCoalescing;
+            if (adaptiveWriteCoalescing == null) {
+                return false;
+            }
+
+            final long flushDelayNanos = adaptiveWriteCoalescing.getFlushDelayNanos();
+            if (flushDelayNanos == 0) {
+                return false;
+            }
+
+            try {
+                coalescedElement = queue.poll(flushDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // The queue was shut down, or a spurious interrupt occurred. In both cases, flush now.
+                return false;
+            }
+            return coalescedElement != null;
+        }
+
+        private Element pollRemainingElement() {
+            final Element coalescedElement = this.coalescedElement;
+            if (coalescedElement != null) {
+                this.coalescedElement = null;
+                return coalescedElement;
+            }
+            return queue.poll();
+        }
+
         private void drainWriterQueueToUnacknowledgedStanzas() {
-            List<Element> elements = new ArrayList<>(queue.size());
+            List<Element> elements = new ArrayList<>(queue.size() + 1);
+            if (coalescedElement != null) {
+                elements.add(coalescedElement);
+                coalescedElement = null;
+            }
             queue.drainTo(elements);
-            for (int i = 0; i < elements.size(); i++) {
-                Element element = elements.get(i);
-                // If the unacknowledgedStanza queue is full, then bail out with a warning message. See SMACK-844.
-                if (unacknowledgedStanzas.remainingCapacity() == 0) {
-                    StreamManagementException.UnacknowledgedQueueFullException exception = StreamManagementException.UnacknowledgedQueueFullException
-                            .newWith(i, elements, unacknowledgedStanzas);
-                    LOGGER.log(Level.WARNING,
-                            "Some stanzas may be lost as not all could be drained to the unacknowledged stanzas queue", exception);
-                    return;
-                }
-                if (element instanceof Stanza) {
-                    unacknowledgedStanzas.add((Stanza) element);
+            try {
+                for (Element element : elements) {
+                    if (element instanceof Stanza) {
+                        unacknowledgedStanzas.add((Stanza) element);
+                    }
                 }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING,
+                        "Some stanzas may be lost as not all could be drained to the unacknowledged stanzas", e);
             }
         }
 
@@ -1486,14 +1565,9 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                     writer.write(AckRequest.INSTANCE.toXML().toString());
                 }
 
-                try {
-                    // It is important the we put the stanza in the unacknowledged stanza
-                    // queue before we put it on the wire
-                    unacknowledgedStanzas.put(stanza);
-                }
-                catch (InterruptedException e) {
-                    throw new IllegalStateException(e);
-                }
+                // It is important the we put the stanza in the unacknowledged stanzas before we put it on the wire.
+                // Note that this never blocks: Stanzas exceeding the capacity of the ring go into the overflow.
+                unacknowledgedStanzas.add(stanza);
             }
         }
     }
@@ -1561,6 +1635,28 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         smClientMaxResumptionTime = resumptionTime;
     }
 
+    /**
+     * Set the overflow for the unacknowledged stanzas. Stream Management keeps up to
+     * {@link PacketWriter#UNACKKNOWLEDGED_STANZAS_QUEUE_SIZE} unacknowledged stanzas in a ring, the ones exceeding
+     * this capacity, e.g. because acknowledgements are lagging, go into the overflow. By default, the overflow is kept
+     * in memory. The overflow is used for the next stream management session, it is the callers responsibility to
+     * close it once it is no longer used.
+     *
+     * @param unacknowledgedStanzaOverflow the overflow, or <code>null</code> to keep the overflow in memory.
+     * @see org.jivesoftware.smack.sm.MappedFileUnacknowledgedStanzaOverflow
+     */
+    public void setUnacknowledgedStanzaOverflow(UnacknowledgedStanzaOverflow unacknowledgedStanzaOverflow) {
+        this.unacknowledgedStanzaOverflow = unacknowledgedStanzaOverflow;
+    }
+
+    private UnacknowledgedStanzaStore newUnacknowledgedStanzaStore() {
+        UnacknowledgedStanzaOverflow overflow = unacknowledgedStanzaOverflow;
+        if (overflow == null) {
+            overflow = UnacknowledgedStanzaOverflow.inMemory();
+        }
+        return new LockFreeUnacknowledgedStanzaStore(PacketWriter.UNACKKNOWLEDGED_STANZAS_QUEUE_SIZE, overflow);
+    }
+
     /**
      * Add a predicate for Stream Management acknowledgment requests.
      * <p>
@@ -1622,6 +1718,20 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         packetWriter.sendNonBlocking(AckRequest.INSTANCE);
     }
 
+    @Override
+    public boolean requestSmAcknowledgementIfEnabled() {
+        if (!isSmEnabled()) {
+            return false;
+        }
+        try {
+            requestSmAcknowledgementNonBlockingInternal();
+        } catch (NotConnectedException | OutgoingQueueFullException e) {
+            LOGGER.log(Level.FINER, "Could not request Stream Management acknowledgement", e);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Send a unconditional Stream Management acknowledgment to the server.
      * <p>
@@ -1848,20 +1958,11 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         return Math.min(clientResumptionTime, serverResumptionTime);
     }
 
-    private void processHandledCount(long handledCount) throws StreamManagementCounterError {
-        long ackedStanzasCount = SMUtils.calculateDelta(handledCount, serverHandledStanzasCount);
-        final List<Stanza> ackedStanzas = new ArrayList<>(
-                        ackedStanzasCount <= Integer.MAX_VALUE ? (int) ackedStanzasCount
-                                        : Integer.MAX_VALUE);
-        for (long i = 0; i < ackedStanzasCount; i++) {
-            Stanza ackedStanza = unacknowledgedStanzas.poll();
-            // If the server ack'ed a stanza, then it must be in the
-            // unacknowledged stanza queue. There can be no exception.
-            if (ackedStanza == null) {
-                throw new StreamManagementCounterError(handledCount, serverHandledStanzasCount,
-                                ackedStanzasCount, ackedStanzas);
-            }
-            ackedStanzas.add(ackedStanza);
+    private void processHandledCount(long handledCount) throws StreamManagementCounterError, IOException {
+        // Processing the acknowledgement only takes time proportional to the number of acknowledged stanzas.
+        final List<Stanza> ackedStanzas = unacknowledgedStanzas.acknowledge(handledCount);
+        if (ackedStanzas.isEmpty()) {
+            return;
         }
 
         boolean atLeastOneStanzaAcknowledgedListener = false;
@@ -1911,8 +2012,6 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
                 }
             });
         }
-
-        serverHandledStanzasCount = handledCount;
     }
 
     /**
@@ -1941,6 +2040,38 @@ public class XMPPTCPConnection extends AbstractXMPPConnection {
         this.bundleAndDeferCallback = bundleAndDeferCallback;
     }
 
+    /**
+     * Set if adaptive write coalescing is enabled by default for new connections.
+     *
+     * @param useAdaptiveWriteCoalescing <code>true</code> to enable adaptive write coalescing by default.
+     * @see #setUseAdaptiveWriteCoalescing(boolean)
+     */
+    public static void setUseAdaptiveWriteCoalescingDefault(boolean useAdaptiveWriteCoalescing) {
+        XMPPTCPConnection.useAdaptiveWriteCoalescingDefault = useAdaptiveWriteCoalescing;
+    }
+
+    /**
+     * Set if adaptive write coalescing is enabled for this connection.
+     * <p>
+     * If enabled, the writer thread will wait a few microseconds for further stanzas before flushing, but only while
+     * stanzas are queued for sending in quick succession. This reduces the number of system calls and TLS records, for
+     * example when many small presences or receipts are sent. Unlike {@link BundleAndDeferCallback}, which defers the
+     * stanzas for a fixed time in order to save energy, it does not delay sporadically sent stanzas.
+     * </p>
+     *
+     * @param useAdaptiveWriteCoalescing <code>true</code> to enable adaptive write coalescing.
+     * @see AdaptiveWriteCoalescing
+     */
+    public void setUseAdaptiveWriteCoalescing(boolean useAdaptiveWriteCoalescing) {
+        if (useAdaptiveWriteCoalescing) {
+            if (adaptiveWriteCoalescing == null) {
+                adaptiveWriteCoalescing = new AdaptiveWriteCoalescing();
+            }
+        } else {
+            adaptiveWriteCoalescing = null;
+        }
+    }
+
 
     /**
      * Returns the local address currently in use for this connection.
@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2019-2024 Florian Schmaus
+ * Copyright 2019-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -68,6 +69,7 @@ import org.jivesoftware.smack.fsm.State;
 import org.jivesoftware.smack.fsm.StateDescriptor;
 import org.jivesoftware.smack.fsm.StateTransitionResult;
 import org.jivesoftware.smack.internal.SmackTlsContext;
+import org.jivesoftware.smack.metrics.SmackMetrics;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smack.packet.StartTls;
 import org.jivesoftware.smack.packet.StreamClose;
@@ -81,8 +83,9 @@ import org.jivesoftware.smack.tcp.rce.RemoteXmppTcpConnectionEndpoints;
 import org.jivesoftware.smack.tcp.rce.RemoteXmppTcpConnectionEndpoints.Result;
 import org.jivesoftware.smack.tcp.rce.Rfc6120TcpRemoteConnectionEndpoint;
 import org.jivesoftware.smack.util.CollectionUtil;
+import org.jivesoftware.smack.util.DirectByteBufferPool;
 import org.jivesoftware.smack.util.StringUtils;
-import org.jivesoftware.smack.util.UTF8;
+import org.jivesoftware.smack.util.Utf8Encoder;
 import org.jivesoftware.smack.util.XmlStringBuilder;
 import org.jivesoftware.smack.util.rce.RemoteConnectionEndpointLookupFailure;
 
@@ -104,6 +107,9 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
     private static final int MAX_ELEMENT_SIZE = 64 * 1024;
 
+    // TODO: Make the size of the incoming buffer configurable.
+    private static final int INCOMING_BUFFER_SIZE = 2 * 4096;
+
     private final XmppTcpNioTransport tcpNioTransport;
 
     private SelectionKey selectionKey;
@@ -121,22 +127,44 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
     private ByteBuffer outgoingBuffer;
     private ByteBuffer filteredOutgoingBuffer;
     private final List<ByteBuffer> networkOutgoingBuffers = new ArrayList<>();
+    private ByteBuffer[] networkOutgoingBuffersArray = new ByteBuffer[8];
     private long networkOutgoingBuffersBytes;
 
-    // TODO: Make the size of the incomingBuffer configurable.
-    private final ByteBuffer incomingBuffer = ByteBuffer.allocateDirect(2 * 4096);
+    /**
+     * The pool of direct byte buffers shared with all other connections of the reactor. Used for the incoming buffer,
+     * which is only acquired for the duration of a channel selected callback, and for the encoded outgoing elements.
+     */
+    private final DirectByteBufferPool bufferPool;
+
+    /**
+     * The pooled buffers holding encoded outgoing data. A buffer is released once it was consumed, i.e., has no
+     * remaining bytes, by either the output filters or the socket channel.
+     */
+    private final List<ByteBuffer> pooledOutgoingBuffers = new ArrayList<>();
 
     private final ReentrantLock channelSelectedCallbackLock = new ReentrantLock();
 
+    /**
+     * The adaptive write coalescing policy, or {@code null} if adaptive write coalescing is disabled.
+     */
+    private final AdaptiveWriteCoalescing adaptiveWriteCoalescing;
+
     private long totalBytesRead;
     private long totalBytesWritten;
     private long totalBytesReadAfterFilter;
     private long totalBytesWrittenBeforeFilter;
     private long handledChannelSelectedCallbacks;
+    private long pooledOutgoingBufferEncodes;
+    private long unpooledOutgoingBufferEncodes;
     private long callbackPreemtBecauseBytesWritten;
     private long callbackPreemtBecauseBytesRead;
     private int sslEngineDelegatedTasks;
     private int maxPendingSslEngineDelegatedTasks;
+    private long writeCoalescingWaits;
+    private long writeCoalescingHits;
+    private long networkWrites;
+    private long tlsRecordsWrapped;
+    private long tlsRecordBytesWrapped;
 
     private final LongAdder setWriteInterestAfterChannelSelectedCallback = new LongAdder();
     private final LongAdder reactorThreadAlreadyRacing = new LongAdder();
@@ -150,6 +178,23 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
     private boolean pendingWriteInterestAfterRead;
 
+    /**
+     * Whether the output filters retain the data of the last written element, awaiting further outgoing elements, and
+     * wait for the scheduled deferred flush. Only accessed while holding the channel selected callback lock.
+     */
+    private boolean flushDeferred;
+
+    /**
+     * Whether a deferred flush is currently scheduled with the reactor.
+     */
+    private volatile boolean deferredFlushScheduled;
+
+    /**
+     * Set by the deferred flush once it is due, causing the next channel selected callback to flush the data retained by
+     * the output filters.
+     */
+    private volatile boolean deferredFlushDue;
+
     /**
      * Note that this field is effective final, but due to https://stackoverflow.com/q/30360824/194894 we have to declare it non-final.
      */
@@ -160,12 +205,20 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
      */
     private XmppXmlSplitter outputDebugSplitter;
 
+    /**
+     * The single-pass parser of the incoming stream, or {@code null} if incremental parsing is disabled. Note that this
+     * field is effective final, but due to https://stackoverflow.com/q/30360824/194894 we have to declare it non-final.
+     */
+    private IncrementalXmppStreamParser incrementalStreamParser;
+
     private static final Level STREAM_OPEN_CLOSE_DEBUG_LOG_LEVEL = Level.FINER;
 
     XmppTcpTransportModule(XmppTcpTransportModuleDescriptor moduleDescriptor, ModularXmppClientToServerConnectionInternal connectionInternal) {
         super(moduleDescriptor, connectionInternal);
 
         tcpNioTransport = new XmppTcpNioTransport(connectionInternal);
+        bufferPool = connectionInternal.getBufferPool();
+        adaptiveWriteCoalescing = moduleDescriptor.isAdaptiveWriteCoalescingEnabled() ? new AdaptiveWriteCoalescing() : null;
 
         XmlPrinter incomingDebugPrettyPrinter = null;
         final SmackDebugger debugger = connectionInternal.smackDebugger;
@@ -185,6 +238,10 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         XmppXmlSplitter xmppXmlSplitter = new XmppXmlSplitter(MAX_ELEMENT_SIZE, xmppElementCallback,
                 incomingDebugPrettyPrinter);
         splitter = new Utf8ByteXmppXmlSplitter(xmppXmlSplitter);
+
+        if (moduleDescriptor.isIncrementalParsingEnabled()) {
+            incrementalStreamParser = new IncrementalXmppStreamParser(connectionInternal);
+        }
     }
 
     private final XmppElementCallback xmppElementCallback = new XmppElementCallback() {
@@ -198,6 +255,11 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
             connectionInternal.withSmackDebugger(debugger -> debugger.onIncomingElementCompleted());
 
+            if (incrementalStreamParser != null) {
+                incrementalStreamParser.onCompleteElement(completeElement);
+                return;
+            }
+
             String wrappedCompleteElement = streamOpen + completeElement + streamClose;
             connectionInternal.parseAndProcessElement(wrappedCompleteElement);
         }
@@ -253,6 +315,11 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             this.streamOpen = streamOpen.toString();
             this.streamClose = streamClose.toString();
 
+            if (incrementalStreamParser != null) {
+                incrementalStreamParser.onStreamOpen(this.streamOpen);
+                return;
+            }
+
             connectionInternal.onStreamOpen(this.streamOpen);
         }
 
@@ -282,6 +349,10 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
         long callbackBytesRead = 0;
         long callbackBytesWritten = 0;
+        long callbackBytesReadAfterFilter = 0;
+        long callbackBytesWrittenBeforeFilter = 0;
+
+        ByteBuffer incomingBuffer = null;
 
         try {
             boolean destinationAddressChanged = false;
@@ -289,8 +360,16 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             TopLevelStreamElement currentlyOutgonigTopLevelStreamElement = null;
             StringBuilder outgoingStreamForDebugger = null;
 
+            if (deferredFlushDue) {
+                deferredFlushDue = false;
+                if (flushDeferred) {
+                    flushDeferred = false;
+                    pendingOutputFilterData = true;
+                }
+            }
+
             writeLoop: while (true) {
-                final boolean moreDataAvailable = !isLastPartOfElement || !connectionInternal.outgoingElementsQueue.isEmpty();
+                boolean moreDataAvailable = !isLastPartOfElement || !connectionInternal.outgoingElementsQueue.isEmpty();
 
                 if (filteredOutgoingBuffer != null || !networkOutgoingBuffers.isEmpty()) {
                     if (filteredOutgoingBuffer != null) {
@@ -303,10 +382,14 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         }
                     }
 
-                    ByteBuffer[] output = networkOutgoingBuffers.toArray(new ByteBuffer[networkOutgoingBuffers.size()]);
+                    final int networkOutgoingBuffersCount = networkOutgoingBuffers.size();
+                    if (networkOutgoingBuffersArray.length < networkOutgoingBuffersCount) {
+                        networkOutgoingBuffersArray = new ByteBuffer[2 * networkOutgoingBuffersCount];
+                    }
+                    ByteBuffer[] output = networkOutgoingBuffers.toArray(networkOutgoingBuffersArray);
                     long bytesWritten;
                     try {
-                        bytesWritten = selectedSocketChannel.write(output);
+                        bytesWritten = selectedSocketChannel.write(output, 0, networkOutgoingBuffersCount);
                     } catch (IOException e) {
                         // We have seen here so far
                         // - IOException "Broken pipe"
@@ -320,6 +403,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                     }
 
                     callbackBytesWritten += bytesWritten;
+                    networkWrites++;
 
                     networkOutgoingBuffersBytes -= bytesWritten;
 
@@ -335,6 +419,8 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         }
                     }
 
+                    releaseConsumedOutgoingBuffers();
+
                     // Prevent one callback from dominating the reactor thread. Break out of the write-loop if we have
                     // written a certain amount.
                     if (callbackBytesWritten > CALLBACK_MAX_BYTES_WRITEN) {
@@ -344,13 +430,22 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                     }
                 } else if (outgoingBuffer != null || pendingOutputFilterData) {
                     pendingOutputFilterData = false;
+                    // If there is no new outgoing data, then the filters are about to output the data they retained,
+                    // which includes the data of the elements already handed to them.
+                    final boolean flushingRetainedData = outgoingBuffer == null;
 
                     if (outgoingBuffer != null) {
-                        totalBytesWrittenBeforeFilter += outgoingBuffer.remaining();
+                        callbackBytesWrittenBeforeFilter += outgoingBuffer.remaining();
                         if (isLastPartOfElement) {
                             assert currentlyOutgonigTopLevelStreamElement != null;
                             currentlyOutgoingElements.add(currentlyOutgonigTopLevelStreamElement);
                         }
+                        // If this is the last part of the last queued element, then the filters will produce their
+                        // output, e.g., a TLS record, which will then be written to the socket. Unless the flush is
+                        // deferred, in which case the filters retain the data, awaiting further outgoing elements.
+                        if (!moreDataAvailable) {
+                            moreDataAvailable = deferFlush();
+                        }
                     }
 
                     ByteBuffer outputFilterInputData = outgoingBuffer;
@@ -374,6 +469,8 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         }
                     }
 
+                    releaseConsumedOutgoingBuffers();
+
                     // It is ok if outputFilterInputData is 'null' here, this is expected behavior.
                     if (outputFilterInputData != null && outputFilterInputData.hasRemaining()) {
                         filteredOutgoingBuffer = outputFilterInputData;
@@ -387,7 +484,8 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         pendingWriteInterestAfterRead = true;
                     }
 
-                    if (filteredOutgoingBuffer != null && isLastPartOfElement) {
+                    if (filteredOutgoingBuffer != null && (isLastPartOfElement || flushingRetainedData)
+                                    && !currentlyOutgoingElements.isEmpty()) {
                         bufferToElementMap.put(filteredOutgoingBuffer, new ArrayList<>(currentlyOutgoingElements));
                         currentlyOutgoingElements.clear();
                     }
@@ -398,7 +496,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                     }
                 } else if (outgoingCharSequenceIterator != null) {
                     CharSequence nextCharSequence = outgoingCharSequenceIterator.next();
-                    outgoingBuffer = UTF8.encode(nextCharSequence);
+                    outgoingBuffer = encodeOutgoing(nextCharSequence);
                     if (!outgoingCharSequenceIterator.hasNext()) {
                         outgoingCharSequenceIterator = null;
                         isLastPartOfElement = true;
@@ -424,6 +522,11 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         }
                     }
                 } else if (!connectionInternal.outgoingElementsQueue.isEmpty()) {
+                    if (flushDeferred) {
+                        // A further outgoing element arrived before the deferred flush was due.
+                        flushDeferred = false;
+                        writeCoalescingHits++;
+                    }
                     currentlyOutgonigTopLevelStreamElement = connectionInternal.outgoingElementsQueue.poll();
                     if (currentlyOutgonigTopLevelStreamElement instanceof Stanza) {
                         Stanza currentlyOutgoingStanza = (Stanza) currentlyOutgonigTopLevelStreamElement;
@@ -459,6 +562,10 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                     break;
                 }
 
+                if (incomingBuffer == null) {
+                    incomingBuffer = bufferPool.acquire(INCOMING_BUFFER_SIZE);
+                }
+
                 int bytesRead;
                 ((java.nio.Buffer) incomingBuffer).clear();
                 try {
@@ -525,7 +632,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                 ((java.nio.Buffer) filteredIncomingBuffer).flip();
                 final int bytesReadAfterFilter = filteredIncomingBuffer.remaining();
 
-                totalBytesReadAfterFilter += bytesReadAfterFilter;
+                callbackBytesReadAfterFilter += bytesReadAfterFilter;
 
                 try {
                     splitter.write(filteredIncomingBuffer);
@@ -537,6 +644,19 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         } finally {
             totalBytesWritten += callbackBytesWritten;
             totalBytesRead += callbackBytesRead;
+            totalBytesWrittenBeforeFilter += callbackBytesWrittenBeforeFilter;
+            totalBytesReadAfterFilter += callbackBytesReadAfterFilter;
+
+            SmackMetrics metrics = SmackMetrics.getIfEnabled();
+            if (metrics != null) {
+                metrics.bytesWrittenToNetwork.add(callbackBytesWritten);
+                metrics.bytesReadFromNetwork.add(callbackBytesRead);
+                metrics.bytesWrittenBeforeFilters.add(callbackBytesWrittenBeforeFilter);
+                metrics.bytesReadAfterFilters.add(callbackBytesReadAfterFilter);
+            }
+
+            // The input filters and the splitter do not retain the incoming buffer, hence we can release it here.
+            bufferPool.release(incomingBuffer);
 
             channelSelectedCallbackLock.unlock();
         }
@@ -557,6 +677,74 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         connectionInternal.setInterestOps(selectionKey, newInterestedOps);
     }
 
+    /**
+     * Defer the flush of the output filters for a short moment, if adaptive write coalescing is enabled and the outgoing
+     * elements queue is currently being refilled quickly. The output filters retain the data of the last written element
+     * until either further outgoing elements arrive or the deferred flush scheduled with the reactor is due. Only the TLS
+     * filter retains data, hence the flush is only deferred if TLS is used.
+     *
+     * @return {@code true} if the flush was deferred, {@code false} otherwise.
+     */
+    private boolean deferFlush() {
+        if (adaptiveWriteCoalescing == null || tlsState == null) {
+            return false;
+        }
+
+        final long flushDelayNanos = adaptiveWriteCoalescing.getFlushDelayNanos();
+        if (flushDelayNanos == 0) {
+            return false;
+        }
+
+        writeCoalescingWaits++;
+        flushDeferred = true;
+        if (!deferredFlushScheduled) {
+            deferredFlushScheduled = true;
+            connectionInternal.schedule(this::onDeferredFlushDue, flushDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    private void onDeferredFlushDue() {
+        deferredFlushScheduled = false;
+        deferredFlushDue = true;
+        afterOutgoingElementsQueueModified();
+    }
+
+    private ByteBuffer encodeOutgoing(CharSequence charSequence) {
+        final int encodedLength = Utf8Encoder.encodedLength(charSequence);
+        if (encodedLength > bufferPool.getMaxBufferSize()) {
+            unpooledOutgoingBufferEncodes++;
+            ByteBuffer buffer = ByteBuffer.allocate(encodedLength);
+            Utf8Encoder.encode(charSequence, buffer);
+            ((java.nio.Buffer) buffer).flip();
+            return buffer;
+        }
+
+        // Note that the XML escaping of the element's parts is performed while encoding.
+        ByteBuffer buffer = bufferPool.acquire(encodedLength);
+        Utf8Encoder.encode(charSequence, buffer);
+        ((java.nio.Buffer) buffer).flip();
+
+        pooledOutgoingBufferEncodes++;
+        pooledOutgoingBuffers.add(buffer);
+        return buffer;
+    }
+
+    private void releaseConsumedOutgoingBuffers() {
+        if (pooledOutgoingBuffers.isEmpty()) {
+            return;
+        }
+
+        for (Iterator<ByteBuffer> it = pooledOutgoingBuffers.iterator(); it.hasNext();) {
+            ByteBuffer pooledOutgoingBuffer = it.next();
+            if (pooledOutgoingBuffer.hasRemaining()) {
+                continue;
+            }
+            it.remove();
+            bufferPool.release(pooledOutgoingBuffer);
+        }
+    }
+
     private void handleReadWriteIoException(IOException e) {
         if (e instanceof ClosedChannelException && !tcpNioTransport.isConnected()) {
             // The connection is already closed.
@@ -656,6 +844,9 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
         @Override
         protected void notifyAboutNewOutgoingElements() {
+            if (adaptiveWriteCoalescing != null) {
+                adaptiveWriteCoalescing.elementQueued();
+            }
             afterOutgoingElementsQueueModified();
         }
 
@@ -873,7 +1064,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
             SmackTlsContext smackTlsContext = connectionInternal.getSmackTlsContext();
 
-            tlsState = new TlsState(smackTlsContext);
+            tlsState = new TlsState(smackTlsContext, remoteAddress.getPort());
             connectionInternal.addXmppInputOutputFilter(tlsState);
 
             channelSelectedCallbackLock.lock();
@@ -921,17 +1112,34 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         LOGGER.log(SSL_ENGINE_DEBUG_LOG_LEVEL, "SSLEngineResult of " + operation + "(): " + result);
     }
 
-    private final class TlsState implements XmppInputOutputFilter {
+    // Package-private for unit testing purposes.
+    final class TlsState implements XmppInputOutputFilter {
 
         private static final int MAX_PENDING_OUTPUT_BYTES = 8096;
 
+        /**
+         * The maximum number of plaintext bytes of a single TLS record, see RFC 8446 § 5.1.
+         */
+        private static final int MAX_RECORD_PLAINTEXT_BYTES = 16 * 1024;
+
+        /**
+         * The maximum number of full TLS records which are wrapped into a single network buffer and then written with a
+         * single write, if TLS record batching is enabled. The actual number is further limited by the maximum buffer
+         * size of the buffer pool.
+         */
+        private static final int MAX_BATCHED_RECORDS_PER_WRITE = 4;
+
         private final SmackTlsContext smackTlsContext;
         private final SSLEngine engine;
 
+        private final boolean recordBatching;
+        private final int batchedRecordsPerWrite;
+        private final int maxPendingOutputBytes;
+        private final int packetBufferSize;
+
         private TlsHandshakeStatus handshakeStatus = TlsHandshakeStatus.initial;
         private SSLException handshakeException;
 
-        private ByteBuffer myNetData;
         private ByteBuffer peerAppData;
 
         private final List<ByteBuffer> pendingOutputData = new ArrayList<>();
@@ -946,7 +1154,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         private long unwrapInBytes;
         private long unwrapOutBytes;
 
-        private TlsState(SmackTlsContext smackTlsContext) throws IOException {
+        TlsState(SmackTlsContext smackTlsContext, int peerPort) throws IOException {
             this.smackTlsContext = smackTlsContext;
 
             // Call createSSLEngine()'s variant with two parameters as this allows for TLS session resumption.
@@ -961,14 +1169,24 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             // TODO: Should we use the ACE representation of the XMPP service domain? Compare with f60e4055ec529f0b8160acedf13275592ab10a4b
             // If yes, then we should probably introduce getXmppServiceDomainAceEncodedIfPossible().
             String peerHost = connectionInternal.connection.getConfiguration().getXMPPServiceDomain().toString();
-            engine = smackTlsContext.sslContext.createSSLEngine(peerHost, remoteAddress.getPort());
+            engine = smackTlsContext.sslContext.createSSLEngine(peerHost, peerPort);
             engine.setUseClientMode(true);
 
             SSLSession session = engine.getSession();
             int applicationBufferSize = session.getApplicationBufferSize();
-            int packetBufferSize = session.getPacketBufferSize();
-
-            myNetData = ByteBuffer.allocateDirect(packetBufferSize);
+            packetBufferSize = session.getPacketBufferSize();
+
+            recordBatching = moduleDescriptor.isTlsRecordBatchingEnabled();
+            if (recordBatching) {
+                // Accumulate enough data to fill multiple TLS records, all of which are wrapped into a single network
+                // buffer, which must still be served by the buffer pool.
+                int pooledRecords = bufferPool.getMaxBufferSize() / packetBufferSize;
+                batchedRecordsPerWrite = Math.max(1, Math.min(pooledRecords, MAX_BATCHED_RECORDS_PER_WRITE));
+                maxPendingOutputBytes = batchedRecordsPerWrite * MAX_RECORD_PLAINTEXT_BYTES;
+            } else {
+                batchedRecordsPerWrite = 1;
+                maxPendingOutputBytes = MAX_PENDING_OUTPUT_BYTES;
+            }
             peerAppData = ByteBuffer.allocate(applicationBufferSize);
         }
 
@@ -978,20 +1196,22 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             if (outputData != null) {
                 pendingOutputData.add(outputData);
                 pendingOutputBytes += outputData.remaining();
-                if (moreDataAvailable && pendingOutputBytes < MAX_PENDING_OUTPUT_BYTES) {
+                if (moreDataAvailable && pendingOutputBytes < maxPendingOutputBytes) {
                     return OutputResult.NO_OUTPUT;
                 }
             }
 
             ByteBuffer[] outputDataArray = pendingOutputData.toArray(new ByteBuffer[pendingOutputData.size()]);
 
-            ((java.nio.Buffer) myNetData).clear();
+            // The network buffer is borrowed from the buffer pool and released once it was written to the socket.
+            ByteBuffer myNetData = bufferPool.acquire(getNetDataCapacity());
 
             while (true) {
                 SSLEngineResult result;
                 try {
                     result = engine.wrap(outputDataArray, myNetData);
                 } catch (SSLException e) {
+                    bufferPool.release(myNetData);
                     handleSslException(e);
                     throw e;
                 }
@@ -1001,10 +1221,17 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                 SSLEngineResult.Status engineResultStatus = result.getStatus();
 
                 pendingOutputBytes -= result.bytesConsumed();
+                // Remove the consumed output data right away, as it may be released to the buffer pool, and hence
+                // re-used, once it has no remaining bytes.
+                pruneBufferList(pendingOutputData);
 
                 if (engineResultStatus == SSLEngineResult.Status.OK) {
                     wrapInBytes += result.bytesConsumed();
                     wrapOutBytes += result.bytesProduced();
+                    if (result.bytesProduced() > 0) {
+                        tlsRecordsWrapped++;
+                        tlsRecordBytesWrapped += result.bytesProduced();
+                    }
 
                     SSLEngineResult.HandshakeStatus handshakeStatus = handleHandshakeStatus(result);
                     switch (handshakeStatus) {
@@ -1018,7 +1245,7 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                         case NEED_TASK:
                             // Note that we also set pendingOutputFilterData in the OutputResult in the NEED_TASK case, as
                             // we also want to retry the wrap() operation above in this case.
-                            return new OutputResult(true, myNetData);
+                            return toOutputResult(true, myNetData);
                         default:
                             break;
                     }
@@ -1026,14 +1253,24 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
                 switch (engineResultStatus) {
                 case OK:
+                    // SSLEngine's wrap() produces at most one TLS record. If record batching is enabled, then wrap the
+                    // remaining data into further records, as long as there is room for a full record in myNetData.
+                    if (recordBatching && result.bytesConsumed() > 0 && !pendingOutputData.isEmpty()
+                                    && myNetData.remaining() >= packetBufferSize) {
+                        outputDataArray = pendingOutputData.toArray(new ByteBuffer[pendingOutputData.size()]);
+                        continue;
+                    }
                     // No need to outputData.compact() here, since we do not reuse the buffer.
-                    // Clean up the pending output data.
-                    pruneBufferList(pendingOutputData);
-                    return new OutputResult(!pendingOutputData.isEmpty(), myNetData);
+                    return toOutputResult(!pendingOutputData.isEmpty(), myNetData);
                 case CLOSED:
+                    bufferPool.release(myNetData);
                     pendingOutputData.clear();
                     return OutputResult.NO_OUTPUT;
                 case BUFFER_OVERFLOW:
+                    if (recordBatching && myNetData.position() > 0) {
+                        // There is no room for a further record, write the already wrapped ones first.
+                        return toOutputResult(true, myNetData);
+                    }
                     LOGGER.warning("SSLEngine status BUFFER_OVERFLOW, this is hopefully uncommon");
                     int outputDataRemaining = outputData != null ? outputData.remaining() : 0;
                     int newCapacity = (int) (1.3 * outputDataRemaining);
@@ -1041,9 +1278,11 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                     if (newCapacity <= myNetData.capacity()) {
                         newCapacity = 2 * myNetData.capacity();
                     }
-                    ByteBuffer newMyNetData = ByteBuffer.allocateDirect(newCapacity);
+                    ByteBuffer newMyNetData = bufferPool.acquire(newCapacity);
                     ((java.nio.Buffer) myNetData).flip();
                     newMyNetData.put(myNetData);
+                    // Note that myNetData was not yet handed out, hence it can be released here.
+                    bufferPool.release(myNetData);
                     myNetData = newMyNetData;
                     continue;
                 case BUFFER_UNDERFLOW:
@@ -1053,6 +1292,29 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             }
         }
 
+        /**
+         * Get the capacity of the network buffer for the pending output data. If record batching is enabled, then the
+         * network buffer is sized for the number of records required by the pending output data, up to the number of
+         * batched records per write.
+         *
+         * @return the capacity of the network buffer.
+         */
+        private int getNetDataCapacity() {
+            if (!recordBatching) {
+                return packetBufferSize;
+            }
+
+            int records = (pendingOutputBytes + MAX_RECORD_PLAINTEXT_BYTES - 1) / MAX_RECORD_PLAINTEXT_BYTES;
+            records = Math.max(1, Math.min(records, batchedRecordsPerWrite));
+            return records * packetBufferSize;
+        }
+
+        private OutputResult toOutputResult(boolean pendingFilterData, ByteBuffer myNetData) {
+            // Release the network buffer to the pool once it was consumed.
+            pooledOutgoingBuffers.add(myNetData);
+            return new OutputResult(pendingFilterData, myNetData);
+        }
+
         @SuppressWarnings("ReferenceEquality")
         @Override
         public ByteBuffer input(ByteBuffer inputData) throws SSLException {
@@ -1063,13 +1325,25 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
                 assert pendingInputData != inputData;
 
                 int accumulatedDataBytes = pendingInputData.remaining() + inputData.remaining();
-                accumulatedData = ByteBuffer.allocate(accumulatedDataBytes);
+                accumulatedData = bufferPool.acquire(accumulatedDataBytes);
                 accumulatedData.put(pendingInputData)
                                .put(inputData);
                 ((java.nio.Buffer) accumulatedData).flip();
+                bufferPool.release(pendingInputData);
                 pendingInputData = null;
             }
 
+            try {
+                return unwrap(accumulatedData);
+            } finally {
+                // Remaining data of accumulatedData was copied by addAsPendingInputData().
+                if (accumulatedData != inputData) {
+                    bufferPool.release(accumulatedData);
+                }
+            }
+        }
+
+        private ByteBuffer unwrap(ByteBuffer accumulatedData) throws SSLException {
             ((java.nio.Buffer) peerAppData).clear();
 
             while (true) {
@@ -1145,9 +1419,9 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             // Note that we can not simply write
             // pendingInputData = byteBuffer;
             // we have to copy the provided byte buffer, because it is possible that this byteBuffer is re-used by some
-            // higher layer. That is, here 'byteBuffer' is typically 'incomingBuffer', which is a direct buffer only
-            // allocated once per connection for performance reasons and hence re-used for read() calls.
-            pendingInputData = ByteBuffer.allocate(byteBuffer.remaining());
+            // higher layer. That is, here 'byteBuffer' is typically 'incomingBuffer', which is a direct buffer from the
+            // reactor's buffer pool, which is released after the channel selected callback.
+            pendingInputData = bufferPool.acquire(byteBuffer.remaining());
             pendingInputData.put(byteBuffer);
             ((java.nio.Buffer) pendingInputData).flip();
 
@@ -1329,6 +1603,10 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         this.selectionKey = null;
         this.socketChannel = null;
 
+        if (incrementalStreamParser != null) {
+            incrementalStreamParser.reset();
+        }
+
         selectionKeyAttachment = null;
         remoteAddress = null;
     }
@@ -1360,6 +1638,15 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
         public final long callbackPreemtBecauseBytesRead;
         public final int sslEngineDelegatedTasks;
         public final int maxPendingSslEngineDelegatedTasks;
+        public final long pooledOutgoingBufferEncodes;
+        public final long unpooledOutgoingBufferEncodes;
+        public final long writeCoalescingWaits;
+        public final long writeCoalescingHits;
+        public final long networkWrites;
+        public final long tlsRecordsWrapped;
+        public final double tlsRecordsPerWrite;
+        public final double bytesPerTlsRecord;
+        public final DirectByteBufferPool.Stats bufferPoolStats;
 
         private Stats(XmppTcpTransportModule connection) {
             totalBytesWritten = connection.totalBytesWritten;
@@ -1384,6 +1671,17 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
 
             sslEngineDelegatedTasks = connection.sslEngineDelegatedTasks;
             maxPendingSslEngineDelegatedTasks = connection.maxPendingSslEngineDelegatedTasks;
+
+            pooledOutgoingBufferEncodes = connection.pooledOutgoingBufferEncodes;
+            unpooledOutgoingBufferEncodes = connection.unpooledOutgoingBufferEncodes;
+            writeCoalescingWaits = connection.writeCoalescingWaits;
+            writeCoalescingHits = connection.writeCoalescingHits;
+            networkWrites = connection.networkWrites;
+            tlsRecordsWrapped = connection.tlsRecordsWrapped;
+            // Avoid NaN before the first write.
+            tlsRecordsPerWrite = networkWrites > 0 ? (double) tlsRecordsWrapped / networkWrites : 0;
+            bytesPerTlsRecord = tlsRecordsWrapped > 0 ? (double) connection.tlsRecordBytesWrapped / tlsRecordsWrapped : 0;
+            bufferPoolStats = connection.bufferPool.getStats();
         }
 
         private transient String toStringCache;
@@ -1413,6 +1711,16 @@ public class XmppTcpTransportModule extends ModularXmppClientToServerConnectionM
             + "callback-preemt-because-bytes-written: " + callbackPreemtBecauseBytesWritten + '\n'
             + "ssl-engine-delegated-tasks: " + sslEngineDelegatedTasks + '\n'
             + "max-pending-ssl-engine-delegated-tasks: " + maxPendingSslEngineDelegatedTasks + '\n'
+            + "pooled-outgoing-buffer-encodes: " + pooledOutgoingBufferEncodes + '\n'
+            + "unpooled-outgoing-buffer-encodes: " + unpooledOutgoingBufferEncodes + '\n'
+            + "write-coalescing-waits: " + writeCoalescingWaits + '\n'
+            + "write-coalescing-hits: " + writeCoalescingHits + '\n'
+            + "network-writes: " + networkWrites + '\n'
+            + "tls-records-wrapped: " + tlsRecordsWrapped + '\n'
+            + "tls-records-per-write: " + tlsRecordsPerWrite + '\n'
+            + "bytes-per-tls-record: " + bytesPerTlsRecord + '\n'
+            + "Reactor buffer pool\n"
+            + bufferPoolStats
             ;
 
             return toStringCache;
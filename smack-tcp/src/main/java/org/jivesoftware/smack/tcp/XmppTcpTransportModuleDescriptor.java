@@ -1,6 +1,6 @@
 /*
  *
- * Copyright 2019-2024 Florian Schmaus
+ * Copyright 2019-2026 Florian Schmaus
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,10 +30,16 @@ public class XmppTcpTransportModuleDescriptor extends ModularXmppClientToServerC
 
     private final boolean startTls;
     private final boolean directTls;
+    private final boolean incrementalParsing;
+    private final boolean adaptiveWriteCoalescing;
+    private final boolean tlsRecordBatching;
 
     public XmppTcpTransportModuleDescriptor(Builder builder) {
         startTls = builder.startTls;
         directTls = builder.directTls;
+        incrementalParsing = builder.incrementalParsing;
+        adaptiveWriteCoalescing = builder.adaptiveWriteCoalescing;
+        tlsRecordBatching = builder.tlsRecordBatching;
     }
 
     @Override
@@ -63,6 +69,18 @@ public class XmppTcpTransportModuleDescriptor extends ModularXmppClientToServerC
         return directTls;
     }
 
+    public boolean isIncrementalParsingEnabled() {
+        return incrementalParsing;
+    }
+
+    public boolean isAdaptiveWriteCoalescingEnabled() {
+        return adaptiveWriteCoalescing;
+    }
+
+    public boolean isTlsRecordBatchingEnabled() {
+        return tlsRecordBatching;
+    }
+
     public static final class Builder extends ModularXmppClientToServerConnectionModuleDescriptor.Builder {
 
         // Invoked via reflection.
@@ -75,6 +93,12 @@ public class XmppTcpTransportModuleDescriptor extends ModularXmppClientToServerC
 
         private boolean directTls = false;
 
+        private boolean incrementalParsing = false;
+
+        private boolean adaptiveWriteCoalescing = false;
+
+        private boolean tlsRecordBatching = false;
+
         public Builder disableDirectTls() {
             directTls = false;
             return this;
@@ -85,6 +109,50 @@ public class XmppTcpTransportModuleDescriptor extends ModularXmppClientToServerC
             return this;
         }
 
+        /**
+         * Enable single-pass parsing of the incoming XMPP stream. If enabled, every complete top-level element is fed
+         * into one long-lived XML pull parser per stream, instead of being wrapped into the stream open and close tags
+         * and parsed again by a fresh parser. This avoids the string concatenation, the parser creation and the
+         * re-parsing of the stream open tag for every incoming element.
+         * <p>
+         * Note that this requires an XML pull parser implementation which does not read beyond the end tag of a
+         * top-level element. This is the case for smack-xmlparser-xpp3 and smack-xmlparser-stax.
+         * </p>
+         *
+         * @return a reference to this builder.
+         */
+        public Builder enableIncrementalParsing() {
+            incrementalParsing = true;
+            return this;
+        }
+
+        /**
+         * Enable adaptive write coalescing. If enabled, the reactor will defer writing TLS records to the socket for a
+         * short moment, awaiting further outgoing elements, but only while elements are queued for sending in quick
+         * succession. The reactor thread is not blocked while the write is deferred. This reduces the number of system calls and TLS records, for example when many small presences or receipts
+         * are sent, without delaying sporadically sent elements.
+         *
+         * @return a reference to this builder.
+         * @see AdaptiveWriteCoalescing
+         */
+        public Builder enableAdaptiveWriteCoalescing() {
+            adaptiveWriteCoalescing = true;
+            return this;
+        }
+
+        /**
+         * Enable TLS record batching. If enabled, the outgoing data of multiple queued elements is accumulated until
+         * multiple TLS records can be filled up to their maximum size of 16 KiB, which are then written to the socket
+         * with a single write. Fewer and larger records reduce the per-record overhead, i.e., the framing and the MAC.
+         * Smaller amounts of data are still sent right away once the outgoing elements queue is empty.
+         *
+         * @return a reference to this builder.
+         */
+        public Builder enableTlsRecordBatching() {
+            tlsRecordBatching = true;
+            return this;
+        }
+
         @Override
         protected XmppTcpTransportModuleDescriptor build() {
             return new XmppTcpTransportModuleDescriptor(this);
@@ -0,0 +1,59 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveWriteCoalescingTest {
+
+    private static final long MICROSECOND = TimeUnit.MICROSECONDS.toNanos(1);
+
+    @Test
+    public void sporadicElementsAreNotDelayed() {
+        AdaptiveWriteCoalescing coalescing = new AdaptiveWriteCoalescing(50 * MICROSECOND);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 100; i++) {
+            now += TimeUnit.MILLISECONDS.toNanos(10);
+            coalescing.elementQueued(now);
+            assertEquals(0, coalescing.getFlushDelayNanos(now));
+        }
+    }
+
+    @Test
+    public void quicklyQueuedElementsAreCoalesced() {
+        AdaptiveWriteCoalescing coalescing = new AdaptiveWriteCoalescing(50 * MICROSECOND);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 100; i++) {
+            now += 5 * MICROSECOND;
+            coalescing.elementQueued(now);
+        }
+
+        long flushDelayNanos = coalescing.getFlushDelayNanos(now);
+        assertTrue(flushDelayNanos > 0 && flushDelayNanos <= 50 * MICROSECOND,
+                        "Unexpected flush delay " + flushDelayNanos);
+
+        // Once no further elements are queued, the burst is over.
+        assertEquals(0, coalescing.getFlushDelayNanos(now + 100 * MICROSECOND));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.test.util.SmackTestUtil;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.util.ParserUtils;
+import org.jivesoftware.smack.xml.XmlPullParser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.jxmpp.JxmppContext;
+
+public class CompleteElementsReaderTest {
+
+    private static final String STREAM_OPEN = "<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'>";
+
+    @Test
+    public void readerThrowsInsteadOfBlocking() throws IOException {
+        CompleteElementsReader reader = new CompleteElementsReader();
+        reader.append("<a/>");
+
+        char[] buf = new char[16];
+        assertEquals(4, reader.read(buf, 0, buf.length));
+        assertFalse(reader.hasRemaining());
+
+        assertThrows(IOException.class, () -> reader.read(buf, 0, buf.length));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SmackTestUtil.XmlPullParserKind.class)
+    public void parserDoesNotReadBeyondCompleteElements(SmackTestUtil.XmlPullParserKind parserKind) throws Exception {
+        CompleteElementsReader reader = new CompleteElementsReader();
+        reader.append(STREAM_OPEN);
+
+        XmlPullParser parser = parserKind.factory.newXmlPullParser(reader);
+        ParserUtils.forwardToStartElement(parser);
+        assertEquals("stream", parser.getName());
+
+        for (int i = 0; i < 3; i++) {
+            reader.append("<message to='juliet@example.org' id='id-" + i + "'><body>Hi " + i + "</body></message>");
+            reader.append("<r xmlns='urn:xmpp:sm:3'/>");
+
+            assertEquals(XmlPullParser.Event.START_ELEMENT, parser.next());
+            Message message = PacketParserUtils.parseMessage(parser, null, JxmppContext.getDefaultContext());
+            assertEquals("id-" + i, message.getStanzaId());
+            assertEquals("Hi " + i, message.getBody());
+
+            assertEquals(XmlPullParser.Event.START_ELEMENT, parser.next());
+            assertEquals("r", parser.getName());
+            assertEquals(XmlPullParser.Event.END_ELEMENT, parser.next());
+
+            assertFalse(reader.hasRemaining());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jivesoftware.smack.c2s.internal.ModularXmppClientToServerConnectionInternal;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.test.util.SmackTestUtil;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smack.xml.SmackXmlParser;
+import org.jivesoftware.smack.xml.XmlPullParser;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.jxmpp.JxmppContext;
+import org.jxmpp.xml.splitter.Utf8ByteXmppXmlSplitter;
+import org.jxmpp.xml.splitter.XmppElementCallback;
+import org.jxmpp.xml.splitter.XmppXmlSplitter;
+
+public class IncrementalXmppStreamParserTest {
+
+    private static final String STREAM_OPEN = "<stream:stream xmlns='jabber:client' xmlns:stream='http://etherx.jabber.org/streams'>";
+
+    // Contains multi-byte UTF-8 characters, so that some splits happen within a character.
+    private static final String[] ELEMENTS = {
+        "<message to='juliet@example.org' id='id-0'><body>Grüße 😀</body></message>",
+        "<r xmlns='urn:xmpp:sm:3'/>",
+        "<message to='juliet@example.org' id='id-1'><body>€ 1</body></message>",
+    };
+
+    /**
+     * Splits the incoming stream at every byte position into two reads and asserts that the single-pass parser only
+     * processes the elements which are complete after each read, and that the element split across both reads is
+     * processed once the second read completes it.
+     *
+     * @param parserKind the XML pull parser implementation to use.
+     * @throws Exception if an exception occurs.
+     */
+    @ParameterizedTest
+    @EnumSource(SmackTestUtil.XmlPullParserKind.class)
+    public void elementsSplitAcrossReads(SmackTestUtil.XmlPullParserKind parserKind) throws Exception {
+        SmackXmlParser.setXmlPullParserFactory(parserKind.factory);
+        try {
+            byte[] elements = String.join("", ELEMENTS).getBytes(StandardCharsets.UTF_8);
+            for (int split = 1; split < elements.length; split++) {
+                List<String> processed = new ArrayList<>();
+                ModularXmppClientToServerConnectionInternal connectionInternal = newConnectionInternal(processed);
+                Utf8ByteXmppXmlSplitter splitter = newSplitter(new IncrementalXmppStreamParser(connectionInternal));
+
+                splitter.write(ByteBuffer.wrap(STREAM_OPEN.getBytes(StandardCharsets.UTF_8)));
+
+                splitter.write(ByteBuffer.wrap(elements, 0, split));
+                assertEquals(completeElementsWithin(split), processed.size(), "Split at byte " + split);
+
+                splitter.write(ByteBuffer.wrap(elements, split, elements.length - split));
+                assertEquals(List.of("id-0", "r", "id-1"), processed, "Split at byte " + split);
+
+                verify(connectionInternal, never()).notifyConnectionError(any());
+            }
+        } finally {
+            SmackXmlParser.setXmlPullParserFactory(null);
+        }
+    }
+
+    private static int completeElementsWithin(int byteCount) {
+        int complete = 0;
+        int end = 0;
+        for (String element : ELEMENTS) {
+            end += element.getBytes(StandardCharsets.UTF_8).length;
+            if (end > byteCount) {
+                break;
+            }
+            complete++;
+        }
+        return complete;
+    }
+
+    private static ModularXmppClientToServerConnectionInternal newConnectionInternal(List<String> processed)
+                    throws Exception {
+        ModularXmppClientToServerConnectionInternal connectionInternal = mock(
+                        ModularXmppClientToServerConnectionInternal.class);
+        doAnswer(invocation -> {
+            XmlPullParser parser = invocation.getArgument(0);
+            if (parser.getName().equals(Message.ELEMENT)) {
+                Message message = PacketParserUtils.parseMessage(parser, null, JxmppContext.getDefaultContext());
+                processed.add(message.getStanzaId());
+            } else {
+                processed.add(parser.getName());
+                PacketParserUtils.parseElement(parser);
+            }
+            return null;
+        }).when(connectionInternal).parseAndProcessElement(any(XmlPullParser.class));
+        return connectionInternal;
+    }
+
+    private static Utf8ByteXmppXmlSplitter newSplitter(IncrementalXmppStreamParser incrementalStreamParser) {
+        XmppElementCallback callback = new XmppElementCallback() {
+            @Override
+            public void onCompleteElement(String completeElement) {
+                incrementalStreamParser.onCompleteElement(completeElement);
+            }
+
+            @Override
+            public void streamOpened(String prefix, Map<String, String> attributes) {
+                incrementalStreamParser.onStreamOpen(STREAM_OPEN);
+            }
+
+            @Override
+            public void streamClosed() {
+                // Not used by this test.
+            }
+        };
+        return new Utf8ByteXmppXmlSplitter(new XmppXmlSplitter(64 * 1024, callback, null));
+    }
+}
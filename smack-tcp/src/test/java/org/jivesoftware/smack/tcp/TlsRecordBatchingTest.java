@@ -0,0 +1,195 @@
+/*
+ *
+ * Copyright 2026 Florian Schmaus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smack.tcp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+
+import org.jivesoftware.smack.XmppInputOutputFilter;
+import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnection;
+import org.jivesoftware.smack.c2s.ModularXmppClientToServerConnectionConfiguration;
+import org.jivesoftware.smack.c2s.internal.ModularXmppClientToServerConnectionInternal;
+import org.jivesoftware.smack.internal.SmackTlsContext;
+import org.jivesoftware.smack.util.DirectByteBufferPool;
+
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.impl.JidCreate;
+
+public class TlsRecordBatchingTest {
+
+    private static final int MAX_RECORD_PLAINTEXT_BYTES = 16 * 1024;
+
+    private static final int RECORD_OVERHEAD_BYTES = 325;
+
+    private static final int PACKET_BUFFER_SIZE = MAX_RECORD_PLAINTEXT_BYTES + RECORD_OVERHEAD_BYTES;
+
+    private final DirectByteBufferPool bufferPool = new DirectByteBufferPool(1024 * 1024);
+
+    /**
+     * Wraps at most one record of up to 16 KiB plaintext, like SSLEngine does.
+     */
+    private static SSLEngineResult wrap(ByteBuffer[] srcs, ByteBuffer dst) {
+        int available = 0;
+        for (ByteBuffer src : srcs) {
+            available += src.remaining();
+        }
+        int consumed = Math.min(available, MAX_RECORD_PLAINTEXT_BYTES);
+        if (dst.remaining() < consumed + RECORD_OVERHEAD_BYTES) {
+            return new SSLEngineResult(SSLEngineResult.Status.BUFFER_OVERFLOW,
+                            SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING, 0, 0);
+        }
+
+        int toConsume = consumed;
+        for (ByteBuffer src : srcs) {
+            while (toConsume > 0 && src.hasRemaining()) {
+                dst.put(src.get());
+                toConsume--;
+            }
+        }
+        dst.put(new byte[RECORD_OVERHEAD_BYTES]);
+        return new SSLEngineResult(SSLEngineResult.Status.OK, SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING,
+                        consumed, consumed + RECORD_OVERHEAD_BYTES);
+    }
+
+    private XmppTcpTransportModule newModule(boolean tlsRecordBatching) throws Exception {
+        ModularXmppClientToServerConnectionConfiguration configuration = mock(
+                        ModularXmppClientToServerConnectionConfiguration.class);
+        when(configuration.getXMPPServiceDomain()).thenReturn(JidCreate.domainBareFrom("example.org"));
+        ModularXmppClientToServerConnection connection = mock(ModularXmppClientToServerConnection.class);
+        when(connection.getConfiguration()).thenReturn(configuration);
+
+        ModularXmppClientToServerConnectionInternal connectionInternal = mock(
+                        ModularXmppClientToServerConnectionInternal.class,
+                        withSettings().useConstructor(connection, null, null, null));
+        when(connectionInternal.getBufferPool()).thenReturn(bufferPool);
+
+        XmppTcpTransportModuleDescriptor moduleDescriptor = mock(XmppTcpTransportModuleDescriptor.class);
+        when(moduleDescriptor.isTlsRecordBatchingEnabled()).thenReturn(tlsRecordBatching);
+
+        return new XmppTcpTransportModule(moduleDescriptor, connectionInternal);
+    }
+
+    private static XmppInputOutputFilter newTlsState(XmppTcpTransportModule module) throws Exception {
+        SSLSession session = mock(SSLSession.class);
+        when(session.getApplicationBufferSize()).thenReturn(MAX_RECORD_PLAINTEXT_BYTES);
+        when(session.getPacketBufferSize()).thenReturn(PACKET_BUFFER_SIZE);
+
+        SSLEngine engine = mock(SSLEngine.class);
+        when(engine.getSession()).thenReturn(session);
+        when(engine.wrap(any(ByteBuffer[].class), any(ByteBuffer.class))).thenAnswer(
+                        invocation -> wrap(invocation.getArgument(0), invocation.getArgument(1)));
+
+        SSLContext sslContext = mock(SSLContext.class);
+        when(sslContext.createSSLEngine(anyString(), anyInt())).thenReturn(engine);
+
+        return module.new TlsState(new SmackTlsContext(sslContext, null, null), 5222);
+    }
+
+    private static ByteBuffer plaintext(int size) {
+        return ByteBuffer.allocate(size);
+    }
+
+    private static ByteBuffer flipped(XmppInputOutputFilter.OutputResult outputResult) {
+        ByteBuffer output = outputResult.filteredOutputData;
+        ((java.nio.Buffer) output).flip();
+        return output;
+    }
+
+    @Test
+    public void statsBeforeFirstWriteAreNotNan() throws Exception {
+        XmppTcpTransportModule.Stats stats = newModule(true).getStats();
+        assertEquals(0, stats.tlsRecordsPerWrite);
+        assertEquals(0, stats.bytesPerTlsRecord);
+    }
+
+    @Test
+    public void multipleRecordsAreWrappedIntoOnePooledBuffer() throws Exception {
+        XmppTcpTransportModule module = newModule(true);
+        XmppInputOutputFilter tlsState = newTlsState(module);
+
+        // The default maximum buffer size of the pool, 64 KiB, holds three full records.
+        for (int i = 0; i < 3; i++) {
+            XmppInputOutputFilter.OutputResult outputResult = tlsState.output(plaintext(MAX_RECORD_PLAINTEXT_BYTES),
+                            true, false, true);
+            assertNull(outputResult.filteredOutputData);
+        }
+
+        XmppInputOutputFilter.OutputResult outputResult = tlsState.output(plaintext(MAX_RECORD_PLAINTEXT_BYTES), true,
+                        false, true);
+        ByteBuffer output = flipped(outputResult);
+        assertTrue(outputResult.pendingFilterData);
+        assertEquals(3 * PACKET_BUFFER_SIZE, output.remaining());
+        assertTrue(output.isDirect());
+        assertTrue(output.capacity() <= bufferPool.getMaxBufferSize());
+
+        // Flush the remaining record.
+        outputResult = tlsState.output(null, false, false, false);
+        output = flipped(outputResult);
+        assertFalse(outputResult.pendingFilterData);
+        assertEquals(PACKET_BUFFER_SIZE, output.remaining());
+
+        XmppTcpTransportModule.Stats stats = module.getStats();
+        assertEquals(4, stats.tlsRecordsWrapped);
+        assertEquals(PACKET_BUFFER_SIZE, stats.bytesPerTlsRecord);
+        assertEquals(0, stats.bufferPoolStats.allocatedUnpooled);
+    }
+
+    @Test
+    public void networkBufferIsSizedForPendingData() throws Exception {
+        XmppInputOutputFilter tlsState = newTlsState(newModule(true));
+
+        XmppInputOutputFilter.OutputResult outputResult = tlsState.output(plaintext(1000), true, false, false);
+        ByteBuffer output = flipped(outputResult);
+        assertFalse(outputResult.pendingFilterData);
+        assertEquals(1000 + RECORD_OVERHEAD_BYTES, output.remaining());
+        // No room for the maximum number of batched records is borrowed for a single small record.
+        assertTrue(output.capacity() < 2 * PACKET_BUFFER_SIZE);
+    }
+
+    @Test
+    public void withoutBatchingEveryRecordIsOutputSeparately() throws Exception {
+        XmppTcpTransportModule module = newModule(false);
+        XmppInputOutputFilter tlsState = newTlsState(module);
+
+        XmppInputOutputFilter.OutputResult outputResult = tlsState.output(plaintext(2 * MAX_RECORD_PLAINTEXT_BYTES),
+                        true, false, false);
+        ByteBuffer output = flipped(outputResult);
+        assertTrue(outputResult.pendingFilterData);
+        assertEquals(PACKET_BUFFER_SIZE, output.remaining());
+
+        outputResult = tlsState.output(null, false, false, false);
+        output = flipped(outputResult);
+        assertFalse(outputResult.pendingFilterData);
+        assertEquals(PACKET_BUFFER_SIZE, output.remaining());
+        assertEquals(2, module.getStats().tlsRecordsWrapped);
+    }
+}